@@ -16,6 +16,7 @@
 package org.gephi.attribute.api;
 
 import org.gephi.graph.api.EdgeIterable;
+import org.gephi.graph.api.GraphView;
 import org.gephi.graph.api.NodeIterable;
 
 /**
@@ -35,4 +36,28 @@ public interface TimestampIndex {
     public EdgeIterable getEdges(double timestamp);
 
     public EdgeIterable getEdges(double from, double to);
+
+    /**
+     * Returns a new view with the nodes present at <code>timestamp</code> and
+     * the edges between them.
+     * <p>
+     * The view belongs to the caller and stays registered until it's
+     * destroyed with <code>GraphModel.destroyView()</code>. This takes the
+     * write lock, so it can't be called while holding a read lock.
+     *
+     * @param timestamp timestamp
+     * @return a new view
+     */
+    public GraphView getSnapshotView(double timestamp);
+
+    /**
+     * Returns a new view with the nodes present between <code>from</code> and
+     * <code>to</code> and the edges between them. See
+     * <code>getSnapshotView(double)</code> for who owns the view.
+     *
+     * @param from lower bound, inclusive
+     * @param to upper bound, inclusive
+     * @return a new view
+     */
+    public GraphView getSnapshotView(double from, double to);
 }
@@ -57,7 +57,7 @@ public final class TimestampFloatSet extends TimestampValueSet<Float> {
     @Override
     public void remove(int timestampIndex) {
         final int removeIndex = removeInner(timestampIndex);
-        if (removeIndex > 0) {
+        if (removeIndex >= 0) {
             if (removeIndex != size) {
                 System.arraycopy(values, removeIndex + 1, values, removeIndex, size - removeIndex);
             }
@@ -100,6 +100,16 @@ public final class TimestampFloatSet extends TimestampValueSet<Float> {
         }
     }
 
+    @Override
+    public void trimToSize() {
+        super.trimToSize();
+        if (values.length > size) {
+            float[] newArray = new float[size];
+            System.arraycopy(values, 0, newArray, 0, size);
+            values = newArray;
+        }
+    }
+
     @Override
     public void clear() {
         super.clear();
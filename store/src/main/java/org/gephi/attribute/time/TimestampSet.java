@@ -99,12 +99,12 @@ public class TimestampSet {
     }
 
     public boolean contains(int timestampIndex) {
-        int index = Arrays.binarySearch(array, timestampIndex);
-        return index >= 0 && index < size;
+        int index = Arrays.binarySearch(array, 0, size, timestampIndex);
+        return index >= 0;
     }
 
     public int[] getTimestamps() {
-        if (size < array.length - 1) {
+        if (size < array.length) {
             int[] res = new int[size];
             System.arraycopy(array, 0, res, 0, size);
             return res;
@@ -113,6 +113,14 @@ public class TimestampSet {
         }
     }
 
+    public void trimToSize() {
+        if (array.length > size) {
+            int[] newArray = new int[size];
+            System.arraycopy(array, 0, newArray, 0, size);
+            array = newArray;
+        }
+    }
+
     public void clear() {
         size = 0;
         array = new int[0];
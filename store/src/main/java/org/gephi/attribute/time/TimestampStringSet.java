@@ -53,7 +53,7 @@ public final class TimestampStringSet extends TimestampValueSet<String> {
     @Override
     public void remove(int timestampIndex) {
         final int removeIndex = removeInner(timestampIndex);
-        if (removeIndex > 0) {
+        if (removeIndex >= 0) {
             if (removeIndex != size) {
                 System.arraycopy(values, removeIndex + 1, values, removeIndex, size - removeIndex);
             }
@@ -71,7 +71,7 @@ public final class TimestampStringSet extends TimestampValueSet<String> {
 
     @Override
     public String[] toArray() {
-        if (size < values.length - 1) {
+        if (size < values.length) {
             final String[] res = new String[size];
             System.arraycopy(values, 0, res, 0, size);
             return res;
@@ -80,6 +80,16 @@ public final class TimestampStringSet extends TimestampValueSet<String> {
         }
     }
 
+    @Override
+    public void trimToSize() {
+        super.trimToSize();
+        if (values.length > size) {
+            String[] newArray = new String[size];
+            System.arraycopy(values, 0, newArray, 0, size);
+            values = newArray;
+        }
+    }
+
     @Override
     public void clear() {
         super.clear();
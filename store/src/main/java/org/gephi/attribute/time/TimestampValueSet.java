@@ -93,16 +93,16 @@ public abstract class TimestampValueSet<T> {
     }
 
     protected int getIndex(int timestampIndex) {
-        return Arrays.binarySearch(array, timestampIndex);
+        return Arrays.binarySearch(array, 0, size, timestampIndex);
     }
 
     public boolean contains(int timestampIndex) {
-        int index = Arrays.binarySearch(array, timestampIndex);
-        return index >= 0 && index < size;
+        int index = Arrays.binarySearch(array, 0, size, timestampIndex);
+        return index >= 0;
     }
 
     public int[] getTimestamps() {
-        if (size < array.length - 1) {
+        if (size < array.length) {
             int[] res = new int[size];
             System.arraycopy(array, 0, res, 0, size);
             return res;
@@ -111,6 +111,14 @@ public abstract class TimestampValueSet<T> {
         }
     }
 
+    public void trimToSize() {
+        if (array.length > size) {
+            int[] newArray = new int[size];
+            System.arraycopy(array, 0, newArray, 0, size);
+            array = newArray;
+        }
+    }
+
     public void clear() {
         size = 0;
         array = new int[0];
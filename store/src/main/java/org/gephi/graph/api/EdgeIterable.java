@@ -72,5 +72,9 @@ public interface EdgeIterable extends ElementIterable<Edge> {
         @Override
         public void doBreak() {
         }
+
+        @Override
+        public void close() {
+        }
     }
 }
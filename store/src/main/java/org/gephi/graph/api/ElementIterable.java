@@ -15,6 +15,7 @@
  */
 package org.gephi.graph.api;
 
+import java.io.Closeable;
 import java.util.Collection;
 import java.util.Iterator;
 
@@ -22,7 +23,7 @@ import java.util.Iterator;
  *
  * @author mbastian
  */
-public interface ElementIterable<T extends Element> extends Iterable<T> {
+public interface ElementIterable<T extends Element> extends Iterable<T>, Closeable {
 
     @Override
     public Iterator<T> iterator();
@@ -32,4 +33,7 @@ public interface ElementIterable<T extends Element> extends Iterable<T> {
     public Collection<T> toCollection();
 
     public void doBreak();
+
+    @Override
+    public void close();
 }
@@ -53,6 +53,10 @@ public interface Graph {
 
     public EdgeIterable getEdges();
 
+    public NodeIterable getNodesSnapshot();
+
+    public EdgeIterable getEdgesSnapshot();
+
     public EdgeIterable getSelfLoops();
 
     public NodeIterable getNeighbors(Node node);
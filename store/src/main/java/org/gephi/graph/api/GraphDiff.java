@@ -15,6 +15,8 @@
  */
 package org.gephi.graph.api;
 
+import org.gephi.attribute.api.Column;
+
 /**
  *
  * @author mbastian
@@ -28,4 +30,12 @@ public interface GraphDiff {
     public EdgeIterable getAddedEdges();
 
     public EdgeIterable getRemovedEdges();
+
+    public NodeIterable getChangedNodes();
+
+    public EdgeIterable getChangedEdges();
+
+    public NodeIterable getChangedNodes(Column column);
+
+    public EdgeIterable getChangedEdges(Column column);
 }
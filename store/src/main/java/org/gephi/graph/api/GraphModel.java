@@ -39,6 +39,8 @@ public interface GraphModel {
 
     public UndirectedSubgraph getUndirectedGraph(GraphView view);
 
+    public Graph snapshot();
+
     public GraphView getVisibleView();
 
     public void setVisibleView(GraphView view);
@@ -77,5 +79,19 @@ public interface GraphModel {
 
     public TimestampIndex getTimestampIndex(GraphView view);
 
+    /**
+     * Releases the resources registered outside the model, such as the lock
+     * statistics MBean and the listener dispatch thread.
+     */
+    public void dispose();
+
     public GraphObserver getGraphObserver(Graph graph, boolean withGraphDiff);
+
+    public void addGraphListener(Graph graph, GraphListener listener);
+
+    public void removeGraphListener(GraphListener listener);
+
+    public void setGraphListenerInterval(long interval);
+
+    public LockStatistics getLockStatistics();
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.api;
+
+/**
+ *
+ * @author mbastian
+ */
+public interface LockSiteStatistics {
+
+    public String getSite();
+
+    public long getReadCount();
+
+    public long getWriteCount();
+
+    public LockHistogram getReadWaitTime();
+
+    public LockHistogram getWriteWaitTime();
+
+    public LockHistogram getReadHoldTime();
+
+    public LockHistogram getWriteHoldTime();
+}
@@ -72,5 +72,9 @@ public interface NodeIterable extends ElementIterable<Node> {
         @Override
         public void doBreak() {
         }
+
+        @Override
+        public void close() {
+        }
     }
 }
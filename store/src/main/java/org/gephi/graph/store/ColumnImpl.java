@@ -15,6 +15,7 @@
  */
 package org.gephi.graph.store;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Origin;
 
@@ -33,6 +34,8 @@ public class ColumnImpl implements Column {
     protected final boolean indexed;
     //Store Id
     protected int storeId = ColumnStore.NULL_ID;
+    //Version
+    protected final AtomicInteger version = new AtomicInteger();
 
     public ColumnImpl(String id, Class typeClass, String title, Object defaultValue, Origin origin, boolean indexed) {
         if (id == null || id.isEmpty()) {
@@ -94,6 +97,14 @@ public class ColumnImpl implements Column {
         this.storeId = storeId;
     }
 
+    public int getVersion() {
+        return version.get();
+    }
+
+    protected void incrementVersion() {
+        version.incrementAndGet();
+    }
+
     @Override
     public String toString() {
         return title + " (" + typeClass.toString() + ")";
@@ -47,6 +47,10 @@ public class ColumnStore<T extends Element> implements Iterable<ColumnImpl> {
     protected final IndexStore<T> indexStore;
     //Locking (optional)
     protected final GraphLock lock;
+    //Journal (optional)
+    protected GraphJournal journal;
+    //Lazily loaded attributes (optional)
+    protected volatile LazyAttributeLoader attributeLoader;
     //Variables
     protected int length;
 
@@ -67,6 +71,28 @@ public class ColumnStore<T extends Element> implements Iterable<ColumnImpl> {
         idMap.defaultReturnValue(NULL_SHORT);
     }
 
+    /**
+     * Creates a store holding the same columns as <code>source</code>, with
+     * its own index. The columns keep their indices.
+     *
+     * @param source store to copy the columns from
+     * @param lock lock of the new store
+     */
+    protected ColumnStore(ColumnStore<T> source, GraphLock lock) {
+        this(source.elementType, source.indexStore != null, lock);
+        idMap.putAll(source.idMap);
+        System.arraycopy(source.columns, 0, columns, 0, source.length);
+        garbageQueue.addAll(source.garbageQueue);
+        length = source.length;
+        if (indexStore != null) {
+            for (int i = 0; i < length; i++) {
+                if (columns[i] != null) {
+                    indexStore.addColumn(columns[i]);
+                }
+            }
+        }
+    }
+
     public void addColumn(final Column column) {
         checkNonNullColumnObject(column);
         checkIndexStatus(column);
@@ -93,6 +119,9 @@ public class ColumnStore<T extends Element> implements Iterable<ColumnImpl> {
                 if (indexStore != null) {
                     indexStore.addColumn(columnImpl);
                 }
+                if (journal != null) {
+                    journal.columnAdded(this, columnImpl);
+                }
             } else {
                 throw new IllegalArgumentException("The column already exist");
             }
@@ -115,9 +144,16 @@ public class ColumnStore<T extends Element> implements Iterable<ColumnImpl> {
 
             int intId = shortToInt(id);
             columns[intId] = null;
+            LazyAttributeLoader loader = attributeLoader;
+            if (loader != null) {
+                loader.columnRemoved(this, intId);
+            }
             if (indexStore != null) {
                 indexStore.removeColumn((ColumnImpl) column);
             }
+            if (journal != null) {
+                journal.columnRemoved(this, columnImpl);
+            }
             columnImpl.setStoreId(NULL_ID);
         } finally {
             writeUnlock();
@@ -0,0 +1,1230 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import cern.colt.bitvector.BitVector;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.utils.DataInputOutput;
+
+/**
+ * Columnar binary snapshot of a graph store.
+ * <p>
+ * Elements are written as typed columns (ids, source and target indices,
+ * types, weights, properties, one block per attribute column) together with
+ * the precomputed adjacency lists. Store ids are compacted, so the node and
+ * edge indices in the file are the store ids after loading. Reading maps the
+ * file and fills the stores with bulk array copies instead of replaying
+ * additions.
+ * <p>
+ * The file starts with a header made of a magic number, the format version
+ * and a directory giving the offset and length of each section. Strings used
+ * more than once by ids and attributes are stored once in a string table
+ * section and referenced by their position.
+ *
+ * @author mbastian
+ */
+public class ColumnarSerialization {
+
+    //Format
+    static final int MAGIC = 0x47534346;
+    static final int FORMAT_VERSION = 3;
+    //Sections
+    static final int SECTION_METADATA = 0;
+    static final int SECTION_NODES = 1;
+    static final int SECTION_NODE_ATTRIBUTES = 2;
+    static final int SECTION_NODE_PROPERTIES = 3;
+    static final int SECTION_EDGES = 4;
+    static final int SECTION_EDGE_ATTRIBUTES = 5;
+    static final int SECTION_EDGE_PROPERTIES = 6;
+    static final int SECTION_ADJACENCY = 7;
+    static final int SECTION_VIEWS = 8;
+    static final int SECTION_STRINGS = 9;
+    static final int SECTION_COUNT = 10;
+    //Version 2 snapshots have no string table
+    static final int SECTION_COUNT_V2 = 9;
+    static final int HEADER_SIZE = 12 + SECTION_COUNT * 16;
+    //Id columns
+    static final byte IDS_INTEGER = 0;
+    static final byte IDS_LONG = 1;
+    static final byte IDS_OBJECT = 2;
+    //Write buffer
+    static final int BUFFER_SIZE = 1 << 16;
+    //Minimum number of elements linked per task
+    static final int RANGE_SIZE = 4096;
+    //Memory budget of eager reads
+    static final long EAGER = -1;
+    //Store
+    protected final GraphStore store;
+    protected final Serialization serialization;
+
+    public ColumnarSerialization(GraphStore graphStore) {
+        store = graphStore;
+        serialization = new Serialization(graphStore);
+    }
+
+    public void write(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            write(raf.getChannel());
+        } finally {
+            raf.close();
+        }
+    }
+
+    public void write(FileChannel channel) throws IOException {
+        store.autoReadLock();
+        try {
+            store.loadAttributes();
+            NodeImpl[] nodes = new NodeImpl[store.nodeStore.size()];
+            int[] nodeIndex = new int[store.nodeStore.maxStoreId()];
+            Arrays.fill(nodeIndex, NodeStore.NULL_ID);
+            int n = 0;
+            for (Node node : store.nodeStore) {
+                NodeImpl nodeImpl = (NodeImpl) node;
+                nodeIndex[nodeImpl.storeId] = n;
+                nodes[n++] = nodeImpl;
+            }
+            EdgeImpl[] edges = new EdgeImpl[store.edgeStore.size()];
+            int[] edgeIndex = new int[store.edgeStore.maxStoreId()];
+            Arrays.fill(edgeIndex, EdgeStore.NULL_ID);
+            int e = 0;
+            for (Edge edge : store.edgeStore) {
+                EdgeImpl edgeImpl = (EdgeImpl) edge;
+                edgeIndex[edgeImpl.storeId] = e;
+                edges[e++] = edgeImpl;
+            }
+
+            //String table, referenced by all sections
+            Object2IntOpenHashMap<String> counts = new Object2IntOpenHashMap<String>();
+            for (int i = 0; i < nodes.length; i++) {
+                Serialization.countStrings(nodes[i], counts);
+            }
+            for (int i = 0; i < edges.length; i++) {
+                Serialization.countStrings(edges[i], counts);
+            }
+            DataInputOutput strings = new DataInputOutput();
+            serialization.serializeStringTable(strings, Serialization.getSharedStrings(counts));
+
+            long start = channel.position();
+            long[] offsets = new long[SECTION_COUNT];
+            long[] lengths = new long[SECTION_COUNT];
+            ColumnWriter out = new ColumnWriter(channel, start + HEADER_SIZE);
+            try {
+                for (int section = 0; section < SECTION_COUNT; section++) {
+                    offsets[section] = out.position();
+                    if (section == SECTION_STRINGS) {
+                        out.putBlob(strings);
+                    } else {
+                        writeSection(out, section, nodes, nodeIndex, edges, edgeIndex);
+                    }
+                    out.flush();
+                    lengths[section] = out.position() - offsets[section];
+                }
+            } finally {
+                serialization.setStringTable(null);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putInt(SECTION_COUNT);
+            for (int section = 0; section < SECTION_COUNT; section++) {
+                header.putLong(offsets[section] - start);
+                header.putLong(lengths[section]);
+            }
+            header.flip();
+            long position = start;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+            channel.position(out.position());
+        } finally {
+            store.autoReadUnlock();
+        }
+    }
+
+    public GraphStore read(File file) throws IOException, ClassNotFoundException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return read(raf.getChannel());
+        } finally {
+            raf.close();
+        }
+    }
+
+    public GraphStore read(FileChannel channel) throws IOException, ClassNotFoundException {
+        int threads = GraphStoreConfiguration.SERIALIZATION_THREADS;
+        if (threads <= 1) {
+            return read(channel, null);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return read(channel, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Reads a snapshot into this empty store. The sections and attribute
+     * columns are decoded in parallel on the given executor, then nodes and
+     * edges are created and linked by ranges before being added to the store.
+     *
+     * @param channel channel positioned at the beginning of the snapshot
+     * @param executor executor to decode with, or null to decode in the
+     * current thread
+     * @return the store
+     * @throws IOException if the snapshot can't be read
+     * @throws ClassNotFoundException if an attribute class can't be found
+     */
+    public GraphStore read(FileChannel channel, ExecutorService executor) throws IOException, ClassNotFoundException {
+        return read(channel, executor, EAGER);
+    }
+
+    public GraphStore readLazy(File file, long memoryBudget) throws IOException, ClassNotFoundException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return readLazy(raf.getChannel(), memoryBudget);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the topology of a snapshot into this empty store but leaves the
+     * static attribute columns in the mapped file. A column is decoded, and
+     * indexed, the first time it's accessed. Once the encoded size of the
+     * loaded columns exceeds the memory budget, the least recently used ones
+     * which haven't been modified are dropped and decoded again when needed.
+     * The mapping stays valid after the channel is closed.
+     *
+     * @param channel channel positioned at the beginning of the snapshot
+     * @param memoryBudget encoded size of the columns kept loaded, in bytes
+     * @return the store
+     * @throws IOException if the snapshot can't be read
+     * @throws ClassNotFoundException if an attribute class can't be found
+     * @see LazyAttributeLoader
+     */
+    public GraphStore readLazy(FileChannel channel, long memoryBudget) throws IOException, ClassNotFoundException {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("The memory budget can't be negative");
+        }
+        return read(channel, null, memoryBudget);
+    }
+
+    private GraphStore read(FileChannel channel, ExecutorService executor, long memoryBudget) throws IOException, ClassNotFoundException {
+        ColumnReader[] sections = mapSections(channel);
+
+        store.autoWriteLock();
+        try {
+            if (!store.nodeStore.isEmpty() || !store.edgeStore.isEmpty()) {
+                throw new IOException("The store is not empty");
+            }
+            Loader loader = new Loader(sections, executor, memoryBudget != EAGER);
+            loader.decode();
+            NodeImpl[] nodes = loader.createNodes();
+            EdgeImpl[] edges = loader.createEdges(nodes);
+            loader.linkHeads(nodes, edges);
+
+            store.nodeStore.load(nodes);
+            store.edgeStore.load(edges);
+            if (memoryBudget == EAGER) {
+                for (int i = 0; i < nodes.length; i++) {
+                    nodes[i].indexAttributes();
+                }
+                for (int i = 0; i < edges.length; i++) {
+                    edges[i].indexAttributes();
+                }
+            } else {
+                LazyAttributeLoader attributeLoader = new LazyAttributeLoader(store, memoryBudget, nodes, loader.nodeAttributes, edges, loader.edgeAttributes);
+                attributeLoader.indexAttributes();
+                attributeLoader.attach();
+            }
+
+            readViews(sections[SECTION_VIEWS]);
+        } finally {
+            store.autoWriteUnlock();
+        }
+        return store;
+    }
+
+    private ColumnReader[] mapSections(FileChannel channel) throws IOException {
+        long start = channel.position();
+        if (channel.size() - start < 12) {
+            throw new IOException("The file isn't a columnar graph snapshot");
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, start, 12);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("The file isn't a columnar graph snapshot");
+        }
+        int formatVersion = header.getInt();
+        if (formatVersion > FORMAT_VERSION) {
+            throw new IOException("Unsupported columnar snapshot version " + formatVersion);
+        }
+        int sectionCount = header.getInt();
+        if (sectionCount != (formatVersion > 2 ? SECTION_COUNT : SECTION_COUNT_V2)) {
+            throw new IOException("Unexpected number of sections: " + sectionCount);
+        }
+        if (channel.size() - start < 12 + sectionCount * 16) {
+            throw new IOException("The file isn't a columnar graph snapshot");
+        }
+        header = channel.map(FileChannel.MapMode.READ_ONLY, start + 12, sectionCount * 16);
+        ColumnReader[] sections = new ColumnReader[SECTION_COUNT];
+        for (int section = 0; section < sectionCount; section++) {
+            long offset = header.getLong();
+            long length = header.getLong();
+            if (offset < 12 + sectionCount * 16 || length > Integer.MAX_VALUE || start + offset + length > channel.size()) {
+                throw new IOException("The section " + section + " is corrupted");
+            }
+            sections[section] = new ColumnReader(channel.map(FileChannel.MapMode.READ_ONLY, start + offset, length), formatVersion);
+        }
+        return sections;
+    }
+
+    private void writeSection(ColumnWriter out, int section, NodeImpl[] nodes, int[] nodeIndex, EdgeImpl[] edges, int[] edgeIndex) throws IOException {
+        switch (section) {
+            case SECTION_METADATA:
+                DataInputOutput blob = new DataInputOutput();
+                serialization.serializeMetadata(blob);
+                out.putBlob(blob);
+                break;
+            case SECTION_NODES:
+                writeIds(out, nodes);
+                break;
+            case SECTION_NODE_ATTRIBUTES:
+                writeAttributes(out, nodes);
+                break;
+            case SECTION_NODE_PROPERTIES:
+                writeNodeProperties(out, nodes);
+                break;
+            case SECTION_EDGES:
+                writeEdges(out, edges, nodeIndex);
+                break;
+            case SECTION_EDGE_ATTRIBUTES:
+                writeAttributes(out, edges);
+                break;
+            case SECTION_EDGE_PROPERTIES:
+                writeEdgeProperties(out, edges);
+                break;
+            case SECTION_ADJACENCY:
+                writeAdjacency(out, nodes, edges, edgeIndex);
+                break;
+            case SECTION_VIEWS:
+                writeViews(out, nodeIndex, nodes.length, edgeIndex, edges.length);
+                break;
+        }
+    }
+
+    //Ids
+    private void writeIds(ColumnWriter out, ElementImpl[] elements) throws IOException {
+        int length = elements.length;
+        out.putInt(length);
+
+        byte kind = getIdKind(elements);
+        out.putByte(kind);
+        if (kind == IDS_INTEGER) {
+            int[] ids = new int[length];
+            for (int i = 0; i < length; i++) {
+                ids[i] = (Integer) elements[i].id;
+            }
+            out.putInts(ids);
+        } else if (kind == IDS_LONG) {
+            long[] ids = new long[length];
+            for (int i = 0; i < length; i++) {
+                ids[i] = (Long) elements[i].id;
+            }
+            out.putLongs(ids);
+        } else {
+            DataInputOutput blob = new DataInputOutput();
+            for (int i = 0; i < length; i++) {
+                serialization.serialize(blob, elements[i].id);
+            }
+            out.putBlob(blob);
+        }
+    }
+
+    private byte getIdKind(ElementImpl[] elements) {
+        boolean integers = true;
+        boolean longs = true;
+        for (int i = 0; i < elements.length && (integers || longs); i++) {
+            Object id = elements[i].id;
+            integers &= id instanceof Integer;
+            longs &= id instanceof Long;
+        }
+        return integers ? IDS_INTEGER : longs ? IDS_LONG : IDS_OBJECT;
+    }
+
+    //Nodes
+    private void writeNodeProperties(ColumnWriter out, NodeImpl[] nodes) throws IOException {
+        int length = nodes.length;
+        boolean enabled = length > 0 && nodes[0].properties != null;
+        out.putByte((byte) (enabled ? 1 : 0));
+        if (!enabled) {
+            return;
+        }
+        out.putInt(length);
+        float[] x = new float[length];
+        float[] y = new float[length];
+        float[] z = new float[length];
+        float[] size = new float[length];
+        int[] rgba = new int[length];
+        byte[] fixed = new byte[length];
+        DataInputOutput textProperties = new DataInputOutput();
+        for (int i = 0; i < length; i++) {
+            NodeImpl.NodePropertiesImpl properties = nodes[i].properties;
+            x[i] = properties.x;
+            y[i] = properties.y;
+            z[i] = properties.z;
+            size[i] = properties.size;
+            rgba[i] = properties.rgba;
+            fixed[i] = (byte) (properties.fixed ? 1 : 0);
+            serialization.serialize(textProperties, properties.textProperties);
+        }
+        out.putFloats(x);
+        out.putFloats(y);
+        out.putFloats(z);
+        out.putFloats(size);
+        out.putInts(rgba);
+        out.putBytes(fixed);
+        out.putBlob(textProperties);
+    }
+
+    //Edges
+    private void writeEdges(ColumnWriter out, EdgeImpl[] edges, int[] nodeIndex) throws IOException {
+        writeIds(out, edges);
+
+        int length = edges.length;
+        int[] source = new int[length];
+        int[] target = new int[length];
+        int[] type = new int[length];
+        double[] weight = new double[length];
+        byte[] flags = new byte[length];
+        for (int i = 0; i < length; i++) {
+            EdgeImpl edge = edges[i];
+            source[i] = nodeIndex[edge.source.storeId];
+            target[i] = nodeIndex[edge.target.storeId];
+            type[i] = edge.type;
+            weight[i] = edge.weight;
+            flags[i] = edge.flags;
+        }
+        out.putInts(source);
+        out.putInts(target);
+        out.putInts(type);
+        out.putDoubles(weight);
+        out.putBytes(flags);
+    }
+
+    private void writeEdgeProperties(ColumnWriter out, EdgeImpl[] edges) throws IOException {
+        int length = edges.length;
+        boolean enabled = length > 0 && edges[0].properties != null;
+        out.putByte((byte) (enabled ? 1 : 0));
+        if (!enabled) {
+            return;
+        }
+        out.putInt(length);
+        int[] rgba = new int[length];
+        DataInputOutput textProperties = new DataInputOutput();
+        for (int i = 0; i < length; i++) {
+            EdgeImpl.EdgePropertiesImpl properties = edges[i].properties;
+            rgba[i] = properties.rgba;
+            serialization.serialize(textProperties, properties.textProperties);
+        }
+        out.putInts(rgba);
+        out.putBlob(textProperties);
+    }
+
+    //Attributes, one block per column
+    private void writeAttributes(ColumnWriter out, ElementImpl[] elements) throws IOException {
+        int length = elements.length;
+        int[] attributeLengths = new int[length];
+        int columns = 0;
+        for (int i = 0; i < length; i++) {
+            attributeLengths[i] = elements[i].attributes.length;
+            columns = Math.max(columns, attributeLengths[i]);
+        }
+        out.putInt(length);
+        out.putInts(attributeLengths);
+        out.putInt(columns);
+        Object[] values = new Object[length];
+        for (int column = 0; column < columns; column++) {
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                if (column < attributeLengths[i]) {
+                    values[count++] = elements[i].attributes[column];
+                }
+            }
+            DataInputOutput blob = new DataInputOutput();
+            serialization.serializeColumnValues(blob, count == length ? values : Arrays.copyOf(values, count));
+            out.putBlob(blob);
+        }
+    }
+
+    //Adjacency
+    private void writeAdjacency(ColumnWriter out, NodeImpl[] nodes, EdgeImpl[] edges, int[] edgeIndex) throws IOException {
+        int typeCount = store.edgeStore.longDictionary.length;
+        int nodeCount = nodes.length;
+        int[] headOut = new int[nodeCount * typeCount];
+        int[] headIn = new int[nodeCount * typeCount];
+        int[] outDegree = new int[nodeCount];
+        int[] inDegree = new int[nodeCount];
+        int[] mutualDegree = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            NodeImpl node = nodes[i];
+            for (int type = 0; type < typeCount; type++) {
+                EdgeImpl outEdge = type < node.headOut.length ? node.headOut[type] : null;
+                EdgeImpl inEdge = type < node.headIn.length ? node.headIn[type] : null;
+                headOut[i * typeCount + type] = outEdge != null ? edgeIndex[outEdge.storeId] : EdgeStore.NULL_ID;
+                headIn[i * typeCount + type] = inEdge != null ? edgeIndex[inEdge.storeId] : EdgeStore.NULL_ID;
+            }
+            outDegree[i] = node.outDegree;
+            inDegree[i] = node.inDegree;
+            mutualDegree[i] = node.mutualDegree;
+        }
+
+        int edgeCount = edges.length;
+        int[] nextOut = new int[edgeCount];
+        int[] previousOut = new int[edgeCount];
+        int[] nextIn = new int[edgeCount];
+        int[] previousIn = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            EdgeImpl edge = edges[i];
+            nextOut[i] = remap(edge.nextOutEdge, edgeIndex);
+            previousOut[i] = remap(edge.previousOutEdge, edgeIndex);
+            nextIn[i] = remap(edge.nextInEdge, edgeIndex);
+            previousIn[i] = remap(edge.previousInEdge, edgeIndex);
+        }
+
+        out.putInt(typeCount);
+        out.putInts(headOut);
+        out.putInts(headIn);
+        out.putInts(outDegree);
+        out.putInts(inDegree);
+        out.putInts(mutualDegree);
+        out.putInts(nextOut);
+        out.putInts(previousOut);
+        out.putInts(nextIn);
+        out.putInts(previousIn);
+    }
+
+    private static int remap(int storeId, int[] index) {
+        return storeId != EdgeStore.NULL_ID ? index[storeId] : EdgeStore.NULL_ID;
+    }
+
+    //Views, with bit vectors remapped to the compacted store ids
+    private void writeViews(ColumnWriter out, int[] nodeIndex, int nodeCount, int[] edgeIndex, int edgeCount) throws IOException {
+        GraphViewStore viewStore = store.viewStore;
+        GraphViewImpl[] views = viewStore.views;
+
+        out.putInt(viewStore.length);
+        out.putInt(views.length);
+        for (GraphViewImpl view : views) {
+            out.putByte((byte) (view != null ? 1 : 0));
+            if (view == null) {
+                continue;
+            }
+            out.putByte((byte) (view.nodeViewOnly ? 1 : 0));
+            out.putInt(view.storeId);
+            out.putInt(view.nodeCount);
+            out.putInt(view.edgeCount);
+            out.putInt(view.mutualEdgesCount);
+            out.putInts(view.typeCounts);
+            out.putInts(view.mutualEdgeTypeCounts);
+            out.putLongs(GraphViewImpl.remapBitVector(view.nodeBitVector, nodeIndex, nodeCount).elements());
+            out.putLongs(GraphViewImpl.remapBitVector(view.edgeBitVector, edgeIndex, edgeCount).elements());
+        }
+        out.putInts(viewStore.garbageQueue.toIntArray());
+    }
+
+    private void readViews(ColumnReader in) throws IOException {
+        GraphViewStore viewStore = store.viewStore;
+
+        int length = in.getInt();
+        GraphViewImpl[] views = new GraphViewImpl[in.getInt()];
+        int nodeBits = store.nodeStore.maxStoreId();
+        int edgeBits = store.edgeStore.maxStoreId();
+        for (int i = 0; i < views.length; i++) {
+            if (in.getByte() == 0) {
+                continue;
+            }
+            GraphViewImpl view = new GraphViewImpl(store, in.getByte() == 1);
+            view.storeId = in.getInt();
+            view.nodeCount = in.getInt();
+            view.edgeCount = in.getInt();
+            view.mutualEdgesCount = in.getInt();
+            view.typeCounts = in.getInts();
+            view.mutualEdgeTypeCounts = in.getInts();
+            view.nodeBitVector = new BitVector(in.getLongs(wordCount(nodeBits)), nodeBits);
+            view.edgeBitVector = new BitVector(in.getLongs(wordCount(edgeBits)), edgeBits);
+            views[i] = view;
+        }
+        int[] garbages = in.getInts();
+
+        viewStore.length = length;
+        viewStore.views = views;
+        for (int i = 0; i < garbages.length; i++) {
+            viewStore.garbageQueue.add(garbages[i]);
+        }
+    }
+
+    private static BitVector remapBitVector(BitVector bitVector, int[] index, int count) {
+        BitVector remapped = new BitVector(count);
+        int size = Math.min(bitVector.size(), index.length);
+        for (int storeId = 0; storeId < size; storeId++) {
+            if (index[storeId] != EdgeStore.NULL_ID && bitVector.getQuick(storeId)) {
+                remapped.putQuick(index[storeId], true);
+            }
+        }
+        return remapped;
+    }
+
+    private static int wordCount(int bits) {
+        return (bits + 63) >> 6;
+    }
+
+    /**
+     * Decoded columns of a snapshot, filled by the decoding tasks and turned
+     * into linked elements afterwards.
+     */
+    protected class Loader {
+
+        protected final ColumnReader[] sections;
+        protected final ExecutorService executor;
+        protected final boolean lazy;
+        //Shared strings
+        protected String[] strings;
+        //Nodes
+        protected Object[] nodeIds;
+        protected AttributeColumns nodeAttributes;
+        protected float[] x;
+        protected float[] y;
+        protected float[] z;
+        protected float[] size;
+        protected int[] nodeRgba;
+        protected byte[] fixed;
+        protected TextPropertiesImpl[] nodeTextProperties;
+        //Edges
+        protected Object[] edgeIds;
+        protected AttributeColumns edgeAttributes;
+        protected int[] source;
+        protected int[] target;
+        protected int[] type;
+        protected double[] weight;
+        protected byte[] flags;
+        protected int[] edgeRgba;
+        protected TextPropertiesImpl[] edgeTextProperties;
+        //Adjacency
+        protected int typeCount;
+        protected int[] headOut;
+        protected int[] headIn;
+        protected int[] outDegree;
+        protected int[] inDegree;
+        protected int[] mutualDegree;
+        protected int[] nextOut;
+        protected int[] previousOut;
+        protected int[] nextIn;
+        protected int[] previousIn;
+
+        public Loader(ColumnReader[] sections, ExecutorService executor, boolean lazy) {
+            this.sections = sections;
+            this.executor = executor;
+            this.lazy = lazy;
+        }
+
+        public void decode() throws IOException, ClassNotFoundException {
+            if (sections[SECTION_STRINGS] != null) {
+                strings = (String[]) new Serialization(store).deserialize(sections[SECTION_STRINGS].getBlob());
+            }
+            //Columns are needed to tell which attributes can be loaded lazily
+            newSerialization().deserializeMetadata(sections[SECTION_METADATA].getBlob());
+
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    nodeIds = readIds(sections[SECTION_NODES], newSerialization());
+                    return null;
+                }
+            });
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    decodeNodeProperties(sections[SECTION_NODE_PROPERTIES]);
+                    return null;
+                }
+            });
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    decodeEdges(sections[SECTION_EDGES]);
+                    return null;
+                }
+            });
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    decodeEdgeProperties(sections[SECTION_EDGE_PROPERTIES]);
+                    return null;
+                }
+            });
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    decodeAdjacency(sections[SECTION_ADJACENCY]);
+                    return null;
+                }
+            });
+            nodeAttributes = addAttributeTasks(sections[SECTION_NODE_ATTRIBUTES], store.nodeColumnStore, tasks);
+            edgeAttributes = addAttributeTasks(sections[SECTION_EDGE_ATTRIBUTES], store.edgeColumnStore, tasks);
+            invokeAll(tasks);
+
+            if (nodeAttributes.lengths.length != nodeIds.length || edgeAttributes.lengths.length != edgeIds.length) {
+                throw new IOException("The attributes don't match the elements");
+            }
+        }
+
+        public NodeImpl[] createNodes() throws IOException, ClassNotFoundException {
+            final NodeImpl[] nodes = new NodeImpl[nodeIds.length];
+            forEachRange(nodes.length, new RangeTask() {
+                @Override
+                public void run(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        NodeImpl node = new NodeImpl(nodeIds[i], store);
+                        node.attributes = nodeAttributes.get(i);
+                        NodeImpl.NodePropertiesImpl properties = node.properties;
+                        if (properties != null && x != null) {
+                            properties.x = x[i];
+                            properties.y = y[i];
+                            properties.z = z[i];
+                            properties.size = size[i];
+                            properties.rgba = nodeRgba[i];
+                            properties.fixed = fixed[i] == 1;
+                            if (properties.textProperties != null) {
+                                properties.setTextProperties(nodeTextProperties[i]);
+                            }
+                        }
+                        node.outDegree = outDegree[i];
+                        node.inDegree = inDegree[i];
+                        node.mutualDegree = mutualDegree[i];
+                        nodes[i] = node;
+                    }
+                }
+            });
+            return nodes;
+        }
+
+        public EdgeImpl[] createEdges(final NodeImpl[] nodes) throws IOException, ClassNotFoundException {
+            final EdgeImpl[] edges = new EdgeImpl[edgeIds.length];
+            forEachRange(edges.length, new RangeTask() {
+                @Override
+                public void run(int from, int to) throws IOException {
+                    for (int i = from; i < to; i++) {
+                        if (source[i] < 0 || source[i] >= nodes.length || target[i] < 0 || target[i] >= nodes.length) {
+                            throw new IOException("The edge source of target can't be found");
+                        }
+                        EdgeImpl edge = new EdgeImpl(edgeIds[i], store, nodes[source[i]], nodes[target[i]], type[i], weight[i], (flags[i] & EdgeImpl.DIRECTED_BYTE) != 0);
+                        edge.flags = flags[i];
+                        edge.attributes = edgeAttributes.get(i);
+                        EdgeImpl.EdgePropertiesImpl properties = edge.properties;
+                        if (properties != null && edgeRgba != null) {
+                            properties.rgba = edgeRgba[i];
+                            if (properties.textProperties != null) {
+                                properties.setTextProperties(edgeTextProperties[i]);
+                            }
+                        }
+                        edge.nextOutEdge = nextOut[i];
+                        edge.previousOutEdge = previousOut[i];
+                        edge.nextInEdge = nextIn[i];
+                        edge.previousInEdge = previousIn[i];
+                        edges[i] = edge;
+                    }
+                }
+            });
+            return edges;
+        }
+
+        public void linkHeads(final NodeImpl[] nodes, final EdgeImpl[] edges) throws IOException, ClassNotFoundException {
+            forEachRange(nodes.length, new RangeTask() {
+                @Override
+                public void run(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        nodes[i].headOut = getHeads(headOut, i * typeCount, edges);
+                        nodes[i].headIn = getHeads(headIn, i * typeCount, edges);
+                    }
+                }
+            });
+        }
+
+        private EdgeImpl[] getHeads(int[] heads, int offset, EdgeImpl[] edges) {
+            int length = GraphStoreConfiguration.EDGESTORE_DEFAULT_TYPE_COUNT;
+            for (int t = typeCount - 1; t >= length; t--) {
+                if (heads[offset + t] != EdgeStore.NULL_ID) {
+                    length = t + 1;
+                    break;
+                }
+            }
+            EdgeImpl[] array = new EdgeImpl[length];
+            for (int t = 0; t < Math.min(length, typeCount); t++) {
+                int head = heads[offset + t];
+                if (head != EdgeStore.NULL_ID) {
+                    array[t] = edges[head];
+                }
+            }
+            return array;
+        }
+
+        private void decodeNodeProperties(ColumnReader in) throws IOException, ClassNotFoundException {
+            if (in.getByte() == 0) {
+                return;
+            }
+            int length = in.getInt();
+            x = in.getFloats(length);
+            y = in.getFloats(length);
+            z = in.getFloats(length);
+            size = in.getFloats(length);
+            nodeRgba = in.getInts(length);
+            fixed = in.getBytes(length);
+            nodeTextProperties = readTextProperties(in.getBlob(), length, newSerialization());
+        }
+
+        private void decodeEdges(ColumnReader in) throws IOException, ClassNotFoundException {
+            edgeIds = readIds(in, newSerialization());
+            int length = edgeIds.length;
+            source = in.getInts(length);
+            target = in.getInts(length);
+            type = in.getInts(length);
+            weight = in.getDoubles(length);
+            flags = in.getBytes(length);
+        }
+
+        private void decodeEdgeProperties(ColumnReader in) throws IOException, ClassNotFoundException {
+            if (in.getByte() == 0) {
+                return;
+            }
+            int length = in.getInt();
+            edgeRgba = in.getInts(length);
+            edgeTextProperties = readTextProperties(in.getBlob(), length, newSerialization());
+        }
+
+        private void decodeAdjacency(ColumnReader in) throws IOException {
+            typeCount = in.getInt();
+            headOut = in.getInts();
+            headIn = in.getInts();
+            int nodeCount = headOut.length / Math.max(1, typeCount);
+            outDegree = in.getInts(nodeCount);
+            inDegree = in.getInts(nodeCount);
+            mutualDegree = in.getInts(nodeCount);
+            nextOut = in.getInts();
+            int edgeCount = nextOut.length;
+            previousOut = in.getInts(edgeCount);
+            nextIn = in.getInts(edgeCount);
+            previousIn = in.getInts(edgeCount);
+        }
+
+        private AttributeColumns addAttributeTasks(ColumnReader in, ColumnStore columnStore, List<Callable<Void>> tasks) throws IOException {
+            int length = in.getInt();
+            final AttributeColumns columns = new AttributeColumns(in.getInts(length), in.getInt(), in.formatVersion > 1);
+            columns.strings = strings;
+            for (int column = 0; column < columns.values.length; column++) {
+                if (lazy && LazyAttributeLoader.isLazy(columnStore, column)) {
+                    columns.blocks[column] = in.getBlobBuffer();
+                    continue;
+                }
+                final int c = column;
+                final DataInputOutput blob = in.getBlob();
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        columns.decode(c, blob, newSerialization());
+                        return null;
+                    }
+                });
+            }
+            return columns;
+        }
+
+        private Serialization newSerialization() {
+            Serialization serialization = new Serialization(store);
+            serialization.setStringTable(strings);
+            return serialization;
+        }
+
+        private void forEachRange(int length, final RangeTask task) throws IOException, ClassNotFoundException {
+            int chunk = executor == null ? length : Math.max(RANGE_SIZE, length / (GraphStoreConfiguration.SERIALIZATION_THREADS * 4) + 1);
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int from = 0; from < length; from += chunk) {
+                final int start = from;
+                final int end = Math.min(length, from + chunk);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        task.run(start, end);
+                        return null;
+                    }
+                });
+            }
+            invokeAll(tasks);
+        }
+
+        private void invokeAll(List<Callable<Void>> tasks) throws IOException, ClassNotFoundException {
+            try {
+                if (executor == null) {
+                    for (Callable<Void> task : tasks) {
+                        task.call();
+                    }
+                } else {
+                    for (Future<Void> future : executor.invokeAll(tasks)) {
+                        future.get();
+                    }
+                }
+            } catch (ExecutionException e) {
+                rethrow(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading the snapshot");
+            } catch (Exception e) {
+                rethrow(e);
+            }
+        }
+    }
+
+    protected static abstract class RangeTask {
+
+        public abstract void run(int from, int to) throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Attribute values decoded column by column. Lazily loaded columns keep
+     * their mapped block instead of values.
+     */
+    protected static class AttributeColumns {
+
+        protected final int[] lengths;
+        protected final Object[][] values;
+        protected final ByteBuffer[] blocks;
+        //Version 1 snapshots store one tagged value per element
+        protected final boolean encoded;
+        //String table of the snapshot, if any
+        protected String[] strings;
+
+        public AttributeColumns(int[] lengths, int columns, boolean encoded) {
+            this.lengths = lengths;
+            this.values = new Object[columns][];
+            this.blocks = new ByteBuffer[columns];
+            this.encoded = encoded;
+        }
+
+        public void decode(int column, DataInputOutput blob, Serialization serialization) throws IOException, ClassNotFoundException {
+            values[column] = decodeColumn(column, blob, serialization);
+        }
+
+        public Object[] decodeColumn(int column, DataInputOutput blob, Serialization serialization) throws IOException, ClassNotFoundException {
+            Object[] columnValues = new Object[lengths.length];
+            if (encoded) {
+                int count = 0;
+                for (int i = 0; i < lengths.length; i++) {
+                    if (column < lengths[i]) {
+                        count++;
+                    }
+                }
+                Object[] present = serialization.deserializeColumnValues(blob, count);
+                int index = 0;
+                for (int i = 0; i < lengths.length; i++) {
+                    if (column < lengths[i]) {
+                        columnValues[i] = present[index++];
+                    }
+                }
+            } else {
+                for (int i = 0; i < lengths.length; i++) {
+                    if (column < lengths[i]) {
+                        columnValues[i] = serialization.deserialize(blob);
+                    }
+                }
+            }
+            return columnValues;
+        }
+
+        public Object[] get(int index) {
+            Object[] attributes = new Object[lengths[index]];
+            for (int column = 0; column < attributes.length; column++) {
+                if (values[column] != null) {
+                    attributes[column] = values[column][index];
+                }
+            }
+            return attributes;
+        }
+    }
+
+    private static Object[] readIds(ColumnReader in, Serialization serialization) throws IOException, ClassNotFoundException {
+        int length = in.getInt();
+        byte kind = in.getByte();
+
+        Object[] ids = new Object[length];
+        if (kind == IDS_INTEGER) {
+            int[] intIds = in.getInts(length);
+            for (int i = 0; i < length; i++) {
+                ids[i] = intIds[i];
+            }
+        } else if (kind == IDS_LONG) {
+            long[] longIds = in.getLongs(length);
+            for (int i = 0; i < length; i++) {
+                ids[i] = longIds[i];
+            }
+        } else {
+            DataInputOutput blob = in.getBlob();
+            for (int i = 0; i < length; i++) {
+                ids[i] = serialization.deserialize(blob);
+            }
+        }
+        return ids;
+    }
+
+    private static TextPropertiesImpl[] readTextProperties(DataInputOutput blob, int length, Serialization serialization) throws IOException, ClassNotFoundException {
+        TextPropertiesImpl[] textProperties = new TextPropertiesImpl[length];
+        for (int i = 0; i < length; i++) {
+            textProperties[i] = (TextPropertiesImpl) serialization.deserialize(blob);
+        }
+        return textProperties;
+    }
+
+    private static void rethrow(Throwable t) throws IOException, ClassNotFoundException {
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t instanceof ClassNotFoundException) {
+            throw (ClassNotFoundException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new RuntimeException(t);
+    }
+
+    /**
+     * Buffered writer of primitive arrays to a channel, at an explicit
+     * position.
+     */
+    protected static class ColumnWriter {
+
+        protected final FileChannel channel;
+        protected final ByteBuffer buffer;
+        protected long position;
+
+        public ColumnWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        public long position() {
+            return position + buffer.position();
+        }
+
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        public void putByte(byte b) throws IOException {
+            ensureRemaining(1);
+            buffer.put(b);
+        }
+
+        public void putInt(int i) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(i);
+        }
+
+        public void putBytes(byte[] array) throws IOException {
+            putBytes(array, 0, array.length);
+        }
+
+        public void putBytes(byte[] array, int offset, int length) throws IOException {
+            while (length > 0) {
+                ensureRemaining(1);
+                int count = Math.min(buffer.remaining(), length);
+                buffer.put(array, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        public void putInts(int[] array) throws IOException {
+            putInt(array.length);
+            int offset = 0;
+            while (offset < array.length) {
+                ensureRemaining(4);
+                int count = Math.min(buffer.remaining() >> 2, array.length - offset);
+                buffer.asIntBuffer().put(array, offset, count);
+                buffer.position(buffer.position() + (count << 2));
+                offset += count;
+            }
+        }
+
+        public void putLongs(long[] array) throws IOException {
+            putInt(array.length);
+            int offset = 0;
+            while (offset < array.length) {
+                ensureRemaining(8);
+                int count = Math.min(buffer.remaining() >> 3, array.length - offset);
+                buffer.asLongBuffer().put(array, offset, count);
+                buffer.position(buffer.position() + (count << 3));
+                offset += count;
+            }
+        }
+
+        public void putFloats(float[] array) throws IOException {
+            putInt(array.length);
+            int offset = 0;
+            while (offset < array.length) {
+                ensureRemaining(4);
+                int count = Math.min(buffer.remaining() >> 2, array.length - offset);
+                buffer.asFloatBuffer().put(array, offset, count);
+                buffer.position(buffer.position() + (count << 2));
+                offset += count;
+            }
+        }
+
+        public void putDoubles(double[] array) throws IOException {
+            putInt(array.length);
+            int offset = 0;
+            while (offset < array.length) {
+                ensureRemaining(8);
+                int count = Math.min(buffer.remaining() >> 3, array.length - offset);
+                buffer.asDoubleBuffer().put(array, offset, count);
+                buffer.position(buffer.position() + (count << 3));
+                offset += count;
+            }
+        }
+
+        public void putBlob(DataInputOutput blob) throws IOException {
+            putInt(blob.getPos());
+            putBytes(blob.getBuf(), 0, blob.getPos());
+        }
+    }
+
+    /**
+     * Reader of primitive arrays from a mapped section, with bulk copies.
+     */
+    protected static class ColumnReader {
+
+        protected final ByteBuffer buffer;
+        protected final int formatVersion;
+
+        public ColumnReader(ByteBuffer buffer, int formatVersion) {
+            this.buffer = buffer;
+            this.formatVersion = formatVersion;
+        }
+
+        public byte getByte() {
+            return buffer.get();
+        }
+
+        public int getInt() {
+            return buffer.getInt();
+        }
+
+        public byte[] getBytes(int expected) {
+            byte[] array = new byte[expected];
+            buffer.get(array);
+            return array;
+        }
+
+        public int[] getInts() throws IOException {
+            int length = buffer.getInt(buffer.position());
+            return getInts(length);
+        }
+
+        public int[] getInts(int expected) throws IOException {
+            checkLength(expected);
+            int[] array = new int[expected];
+            buffer.asIntBuffer().get(array);
+            buffer.position(buffer.position() + (expected << 2));
+            return array;
+        }
+
+        public long[] getLongs(int expected) throws IOException {
+            checkLength(expected);
+            long[] array = new long[expected];
+            buffer.asLongBuffer().get(array);
+            buffer.position(buffer.position() + (expected << 3));
+            return array;
+        }
+
+        public float[] getFloats(int expected) throws IOException {
+            checkLength(expected);
+            float[] array = new float[expected];
+            buffer.asFloatBuffer().get(array);
+            buffer.position(buffer.position() + (expected << 2));
+            return array;
+        }
+
+        public double[] getDoubles(int expected) throws IOException {
+            checkLength(expected);
+            double[] array = new double[expected];
+            buffer.asDoubleBuffer().get(array);
+            buffer.position(buffer.position() + (expected << 3));
+            return array;
+        }
+
+        public DataInputOutput getBlob() {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new DataInputOutput(bytes);
+        }
+
+        //Slice of the mapping, nothing is copied
+        public ByteBuffer getBlobBuffer() {
+            int length = buffer.getInt();
+            ByteBuffer blob = buffer.slice();
+            blob.limit(length);
+            buffer.position(buffer.position() + length);
+            return blob;
+        }
+
+        private void checkLength(int expected) throws IOException {
+            int length = buffer.getInt();
+            if (length != expected) {
+                throw new IOException("Expected a column of " + expected + " values but found " + length);
+            }
+        }
+    }
+}
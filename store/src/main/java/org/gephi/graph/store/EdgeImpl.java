@@ -99,6 +99,7 @@ public class EdgeImpl extends ElementImpl implements Edge {
     @Override
     public void setWeight(double weight) {
         this.weight = weight;
+        propertyChanged();
     }
 
     public int getNextOutEdge() {
@@ -211,26 +212,31 @@ public class EdgeImpl extends ElementImpl implements Edge {
     @Override
     public void setR(float r) {
         properties.setR(r);
+        propertyChanged();
     }
 
     @Override
     public void setG(float g) {
         properties.setG(g);
+        propertyChanged();
     }
 
     @Override
     public void setB(float b) {
         properties.setB(b);
+        propertyChanged();
     }
 
     @Override
     public void setAlpha(float a) {
         properties.setAlpha(a);
+        propertyChanged();
     }
 
     @Override
     public void setColor(Color color) {
         properties.setColor(color);
+        propertyChanged();
     }
 
     @Override
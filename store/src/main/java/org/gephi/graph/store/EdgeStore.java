@@ -20,6 +20,7 @@ import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -47,6 +48,11 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
     protected int[] mutualEdgesTypeSize;
     //Locking (optional)
     protected final GraphLock lock;
+    //Concurrent additions
+    protected final Object allocationLock;
+    protected final Object[] nodeStripes;
+    //Snapshot iterators
+    protected final ElementArrayPool elementArrayPool;
     //Version
     protected final GraphVersion version;
     //Types counting (optional)
@@ -57,6 +63,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
     public EdgeStore() {
         initStore();
         this.lock = null;
+        this.allocationLock = new Object();
+        this.nodeStripes = createStripes();
+        this.elementArrayPool = new ElementArrayPool(GraphStoreConfiguration.ITERATOR_SNAPSHOT_POOL_SIZE);
         this.edgeTypeStore = null;
         this.viewStore = null;
         this.version = null;
@@ -65,6 +74,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
     public EdgeStore(final EdgeTypeStore edgeTypeStore, final GraphLock lock, final GraphViewStore viewStore, final GraphVersion graphVersion) {
         initStore();
         this.lock = lock;
+        this.allocationLock = new Object();
+        this.nodeStripes = createStripes();
+        this.elementArrayPool = new ElementArrayPool(GraphStoreConfiguration.ITERATOR_SNAPSHOT_POOL_SIZE);
         this.edgeTypeStore = edgeTypeStore;
         this.viewStore = viewStore;
         this.version = graphVersion;
@@ -86,6 +98,14 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         this.mutualEdgesTypeSize = new int[GraphStoreConfiguration.EDGESTORE_DEFAULT_TYPE_COUNT];
     }
 
+    private static Object[] createStripes() {
+        Object[] stripes = new Object[GraphStoreConfiguration.EDGESTORE_LOCK_STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        return stripes;
+    }
+
     private void ensureCapacity(final int capacity) {
         assert capacity > 0;
 
@@ -97,6 +117,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
                     if (blocksCount == blocks.length) {
                         EdgeBlock[] newBlocks = new EdgeBlock[blocksCount + 1];
                         System.arraycopy(blocks, 0, newBlocks, 0, blocks.length);
+                        publish();
                         blocks = newBlocks;
                     }
                     EdgeBlock block = blocks[blocksCount];
@@ -108,6 +129,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
                         currentBlockIndex = blocksCount;
                         currentBlock = block;
                     }
+                    publish();
                     blocksCount++;
                 }
                 break;
@@ -270,15 +292,29 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
     public void clear() {
         if (!isEmpty()) {
             incrementVersion();
+            if (version != null) {
+                version.resetChangeLog();
+            }
         }
 
         for (EdgeStoreIterator itr = new EdgeStoreIterator(); itr.hasNext();) {
             EdgeImpl edge = itr.next();
             edge.setStoreId(EdgeStore.NULL_ID);
+            //Nodes stay in the node store, without adjacency
+            clearAdjacency(edge.source);
+            clearAdjacency(edge.target);
         }
         initStore();
     }
 
+    private void clearAdjacency(NodeImpl node) {
+        Arrays.fill(node.headOut, null);
+        Arrays.fill(node.headIn, null);
+        node.inDegree = 0;
+        node.outDegree = 0;
+        node.mutualDegree = 0;
+    }
+
     @Override
     public int size() {
         return size;
@@ -441,6 +477,81 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         return null;
     }
 
+    /**
+     * Looks up an edge by id while other threads may be adding edges with
+     * <code>addConcurrently()</code>. The lookup is guarded by
+     * <code>allocationLock</code> in the concurrent write mode and is the
+     * same as <code>get(id)</code> otherwise.
+     *
+     * @param id edge id
+     * @return found edge, or null if not found
+     */
+    public EdgeImpl getConcurrently(final Object id) {
+        if (!isConcurrentWriting()) {
+            return get(id);
+        }
+        synchronized (allocationLock) {
+            return get(id);
+        }
+    }
+
+    public EdgeImpl getConcurrently(final Node source, final Node target, final int type) {
+        if (!isConcurrentWriting()) {
+            return get(source, target, type);
+        }
+        synchronized (allocationLock) {
+            if (type >= longDictionary.length) {
+                return null;
+            }
+            synchronized (longDictionary[type]) {
+                return get(source, target, type);
+            }
+        }
+    }
+
+    public boolean containsConcurrently(final Edge edge) {
+        if (!isConcurrentWriting()) {
+            return contains(edge);
+        }
+        synchronized (allocationLock) {
+            return contains(edge);
+        }
+    }
+
+    public boolean isAdjacentConcurrently(final Node node1, final Node node2, final int type) {
+        if (!isConcurrentWriting()) {
+            return isAdjacent(node1, node2, type);
+        }
+        checkValidNodeObject(node1);
+        checkValidNodeObject(node2);
+        synchronized (allocationLock) {
+            if (type >= longDictionary.length) {
+                return false;
+            }
+            synchronized (longDictionary[type]) {
+                return contains((NodeImpl) node1, (NodeImpl) node2, type);
+            }
+        }
+    }
+
+    public boolean isAdjacentConcurrently(final Node node1, final Node node2) {
+        if (!isConcurrentWriting()) {
+            return isAdjacent(node1, node2);
+        }
+        checkValidNodeObject(node1);
+        checkValidNodeObject(node2);
+        synchronized (allocationLock) {
+            for (int i = 0; i < longDictionary.length; i++) {
+                synchronized (longDictionary[i]) {
+                    if (contains((NodeImpl) node1, (NodeImpl) node2, i)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     private EdgeImpl getMutual(final EdgeImpl edge) {
         return get(edge.target, edge.source, edge.type);
     }
@@ -469,21 +580,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
 
             incrementVersion();
 
-            if (garbageSize > 0) {
-                for (int i = 0; i < blocksCount; i++) {
-                    EdgeBlock edgeBlock = blocks[i];
-                    if (edgeBlock.hasGarbage()) {
-                        edgeBlock.set(edge);
-                        garbageSize--;
-                        dictionary.put(edge.getId(), edge.storeId);
-                        break;
-                    }
-                }
-            } else {
-                ensureCapacity(1);
-                currentBlock.add(edge);
-                dictionary.put(edge.getId(), edge.storeId);
-            }
+            allocate(edge);
 
             insertOutEdge(edge);
             insertInEdge(edge);
@@ -492,6 +589,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
             target.inDegree++;
 
             dico.put(longId, edge.storeId);
+            if (version != null) {
+                version.edgeAdded(edge);
+            }
             if (viewStore != null) {
                 viewStore.addEdge(edge);
             }
@@ -513,6 +613,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
                 undirectedSize++;
             }
 
+            publish();
             size++;
             return true;
         } else if (isValidIndex(edge.storeId) && get(edge.storeId) == edge) {
@@ -522,6 +623,120 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
+    /**
+     * Adds an edge while other threads may be adding edges as well.
+     * <p>
+     * The caller is a thread registered in the concurrent write mode, which
+     * keeps other readers and structural operations out. Edges sharing an
+     * endpoint are serialized by the node stripes, the edge type dictionary
+     * is guarded by its own monitor and the slot allocation by
+     * <code>allocationLock</code>.
+     *
+     * @param e edge to add
+     * @return true if added, false if it already exists
+     */
+    public boolean addConcurrently(final Edge e) {
+        checkNonNullEdgeObject(e);
+
+        EdgeImpl edge = (EdgeImpl) e;
+        if (edge.storeId != EdgeStore.NULL_ID) {
+            throw new IllegalArgumentException("The edge already belongs to a store");
+        }
+        checkSourceTargets(edge);
+
+        int type = edge.type;
+        boolean directed = edge.isDirected();
+        NodeImpl source = edge.source;
+        NodeImpl target = edge.target;
+        long longId = getLongId(source, target, directed);
+
+        Long2IntOpenHashMap dico;
+        synchronized (allocationLock) {
+            ensureLongDictionaryCapacity(type);
+            dico = longDictionary[type];
+        }
+
+        //Lock stripes in a fixed order so edges in both directions can't deadlock
+        int sourceStripe = source.storeId & (nodeStripes.length - 1);
+        int targetStripe = target.storeId & (nodeStripes.length - 1);
+        synchronized (nodeStripes[Math.min(sourceStripe, targetStripe)]) {
+            synchronized (nodeStripes[Math.max(sourceStripe, targetStripe)]) {
+                synchronized (dico) {
+                    checkUndirectedNotExist(edge);
+                    if (dico.containsKey(longId)) {
+                        return false;
+                    }
+                }
+
+                synchronized (allocationLock) {
+                    checkIdDoesntExist(e.getId());
+                    incrementVersion();
+                    allocate(edge);
+                    if (!directed) {
+                        undirectedSize++;
+                    }
+                    size++;
+                }
+
+                synchronized (dico) {
+                    dico.put(longId, edge.storeId);
+                }
+
+                insertOutEdge(edge);
+                insertInEdge(edge);
+
+                source.outDegree++;
+                target.inDegree++;
+
+                synchronized (allocationLock) {
+                    if (version != null) {
+                        version.edgeAdded(edge);
+                    }
+                    if (viewStore != null) {
+                        viewStore.addEdge(edge);
+                    }
+                    edge.indexAttributes();
+                }
+
+                if (directed && !edge.isSelfLoop()) {
+                    EdgeImpl mutual;
+                    synchronized (dico) {
+                        mutual = getMutual(edge);
+                    }
+                    if (mutual != null) {
+                        edge.setMutual(true);
+                        mutual.setMutual(true);
+                        source.mutualDegree++;
+                        target.mutualDegree++;
+                        synchronized (allocationLock) {
+                            mutualEdgesSize++;
+                            mutualEdgesTypeSize[type]++;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+    }
+
+    private void allocate(final EdgeImpl edge) {
+        if (garbageSize > 0) {
+            for (int i = 0; i < blocksCount; i++) {
+                EdgeBlock edgeBlock = blocks[i];
+                if (edgeBlock.hasGarbage()) {
+                    edgeBlock.set(edge);
+                    garbageSize--;
+                    dictionary.put(edge.getId(), edge.storeId);
+                    break;
+                }
+            }
+        } else {
+            ensureCapacity(1);
+            currentBlock.add(edge);
+            dictionary.put(edge.getId(), edge.storeId);
+        }
+    }
+
     @Override
     public boolean remove(final Object o) {
         checkNonNullEdgeObject(o);
@@ -532,6 +747,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
             checkEdgeExists(edge);
 
             incrementVersion();
+            if (version != null) {
+                version.edgeRemoved(edge);
+            }
 
             if (viewStore != null) {
                 viewStore.removeEdge(edge);
@@ -865,7 +1083,32 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
 
     @Override
     public void doBreak() {
-        readUnlock();
+        if (lock != null) {
+            lock.unlockLastIterator(this);
+        }
+    }
+
+    @Override
+    public void close() {
+        doBreak();
+    }
+
+    public EdgeSnapshotIterator snapshotIterator(Iterator<Edge> iterator) {
+        return new EdgeSnapshotIterator(iterator);
+    }
+
+    GraphLock.IteratorHold lockIterator() {
+        if (lock != null) {
+            lock.checkNotConcurrentWriting();
+            return lock.lockIterator(this);
+        }
+        return null;
+    }
+
+    void unlockIterator(GraphLock.IteratorHold hold) {
+        if (hold != null) {
+            lock.unlockIterator(hold);
+        }
     }
 
     void checkUndirectedNotExist(EdgeImpl edge) {
@@ -970,8 +1213,16 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
+    //Single writer mode, makes the appends so far visible to lock-free readers
+    void publish() {
+        if (lock != null) {
+            lock.publish();
+        }
+    }
+
     void readLock() {
         if (lock != null) {
+            lock.checkNotConcurrentWriting();
             lock.readLock();
         }
     }
@@ -982,6 +1233,16 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
+    boolean isConcurrentWriting() {
+        return lock != null && lock.isConcurrentWriting();
+    }
+
+    void checkNotConcurrentWriting() {
+        if (lock != null) {
+            lock.checkNotConcurrentWriting();
+        }
+    }
+
     void checkWriteLock() {
         if (lock != null) {
             lock.checkHoldWriteLock();
@@ -1005,6 +1266,113 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         return currentBlock.offset + currentBlock.nodeLength;
     }
 
+    /**
+     * Bulk loads edges into this empty store. Edges get consecutive store ids
+     * in array order. The adjacency pointers, node heads, degrees and mutual
+     * flags are expected to be already set, consistently with these store ids.
+     * Attributes aren't indexed and the version isn't incremented.
+     *
+     * @param edges edges to load
+     */
+    void load(final EdgeImpl[] edges) {
+        if (size > 0 || garbageSize > 0) {
+            throw new IllegalArgumentException("The store is not empty");
+        }
+        int length = edges.length;
+        if (length == 0) {
+            return;
+        }
+        ensureCapacity(length);
+        dictionary = new Object2IntOpenHashMap(Math.max(GraphStoreConfiguration.EDGESTORE_DEFAULT_DICTIONARY_SIZE, length), GraphStoreConfiguration.EDGESTORE_DICTIONARY_LOAD_FACTOR);
+        dictionary.defaultReturnValue(NULL_ID);
+
+        int loaded = 0;
+        while (true) {
+            int count = Math.min(currentBlock.getCapacity(), length - loaded);
+            currentBlock.addAll(edges, loaded, count);
+            loaded += count;
+            if (loaded == length) {
+                break;
+            }
+            currentBlockIndex++;
+            currentBlock = blocks[currentBlockIndex];
+        }
+
+        int mutualEdges = 0;
+        for (int i = 0; i < length; i++) {
+            EdgeImpl edge = edges[i];
+            int type = edge.type;
+            boolean directed = edge.isDirected();
+            dictionary.put(edge.getId(), edge.storeId);
+            ensureLongDictionaryCapacity(type);
+            longDictionary[type].put(getLongId(edge.source, edge.target, directed), edge.storeId);
+            //Both edges of a mutual pair are flagged, count the pair once
+            if (edge.isMutual() && edge.source.storeId < edge.target.storeId) {
+                mutualEdges++;
+                mutualEdgesTypeSize[type]++;
+            }
+            if (!directed) {
+                undirectedSize++;
+            }
+        }
+        mutualEdgesSize = mutualEdges;
+        if (viewStore != null) {
+            viewStore.addEdge(edges[length - 1]);
+        }
+        publish();
+        size = length;
+    }
+
+    /**
+     * Renumbers the store ids densely, in iteration order, rewrites the
+     * adjacency links and releases the blocks which aren't needed anymore. The
+     * edge dictionaries are rebuilt as well, so this should also be called
+     * when the node store ids changed. The returned array maps the previous
+     * store ids to the new ones, it is null if the store had no garbage.
+     *
+     * @param nodesCompacted true if the node store ids changed
+     * @return previous to new store ids, or null
+     */
+    int[] compact(boolean nodesCompacted) {
+        boolean hasGarbage = garbageSize > 0;
+        if (!hasGarbage && !nodesCompacted) {
+            return null;
+        }
+        int[] storeIdMap = new int[maxStoreId()];
+        Arrays.fill(storeIdMap, NULL_ID);
+        EdgeImpl[] edges = new EdgeImpl[size];
+        int index = 0;
+        for (int i = 0; i < blocksCount; i++) {
+            EdgeBlock block = blocks[i];
+            for (int j = 0; j < block.nodeLength; j++) {
+                EdgeImpl edge = block.backingArray[j];
+                if (edge != null) {
+                    storeIdMap[edge.storeId] = index;
+                    edges[index++] = edge;
+                }
+            }
+        }
+        for (EdgeImpl edge : edges) {
+            edge.nextOutEdge = remapStoreId(storeIdMap, edge.nextOutEdge);
+            edge.previousOutEdge = remapStoreId(storeIdMap, edge.previousOutEdge);
+            edge.nextInEdge = remapStoreId(storeIdMap, edge.nextInEdge);
+            edge.previousInEdge = remapStoreId(storeIdMap, edge.previousInEdge);
+        }
+
+        //Keep the type count, views and iterators rely on it
+        int typeCount = longDictionary.length;
+        initStore();
+        ensureLongDictionaryCapacity(typeCount - 1);
+        undirectedSize = 0;
+        mutualEdgesSize = 0;
+        load(edges);
+        return hasGarbage ? storeIdMap : null;
+    }
+
+    private static int remapStoreId(int[] storeIdMap, int storeId) {
+        return storeId == NULL_ID ? NULL_ID : storeIdMap[storeId];
+    }
+
     protected static long getLongId(NodeImpl source, NodeImpl target, boolean directed) {
         if (directed) {
             long edgeId = ((long) source.storeId) << NODE_BITS;
@@ -1043,15 +1411,26 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
 
         public void add(EdgeImpl k) {
-            int i = nodeLength++;
-            backingArray[i] = k;
+            int i = nodeLength;
             k.setStoreId(i + offset);
+            backingArray[i] = k;
+            //Fill the slot before the length, lock-free readers skip empty slots
+            nodeLength = i + 1;
+        }
+
+        public void addAll(EdgeImpl[] k, int from, int length) {
+            int i = nodeLength;
+            System.arraycopy(k, from, backingArray, i, length);
+            for (int j = 0; j < length; j++) {
+                k[from + j].setStoreId(i + j + offset);
+            }
+            nodeLength = i + length;
         }
 
         public void set(EdgeImpl k) {
             int i = garbageArray[--garbageLength] - Short.MIN_VALUE;
-            backingArray[i] = k;
             k.setStoreId(i + offset);
+            backingArray[i] = k;
         }
 
         public EdgeImpl get(int id) {
@@ -1071,7 +1450,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
-    protected class EdgeStoreIterator implements Iterator<Edge> {
+    protected class EdgeStoreIterator implements Iterator<Edge>, GraphLock.HoldingIterator {
+
+        protected final GraphLock.IteratorHold hold;
 
         protected int blockIndex;
         protected EdgeImpl[] backingArray;
@@ -1080,11 +1461,16 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         protected EdgeImpl pointer;
 
         public EdgeStoreIterator() {
-            readLock();
+            this.hold = lockIterator();
             this.backingArray = blocks[blockIndex].backingArray;
             this.blockLength = blocks[blockIndex].nodeLength;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return hold;
+        }
+
         @Override
         public boolean hasNext() {
             pointer = null;
@@ -1100,7 +1486,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
                 }
             }
             if (pointer == null) {
-                readUnlock();
+                unlockIterator(hold);
                 return false;
             }
             return true;
@@ -1160,7 +1546,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
-    protected final class EdgeInOutIterator implements Iterator<Edge> {
+    protected final class EdgeInOutIterator implements Iterator<Edge>, GraphLock.HoldingIterator {
+
+        protected final GraphLock.IteratorHold hold;
 
         protected final int outTypeLength;
         protected final int inTypeLength;
@@ -1172,13 +1560,18 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         protected boolean out = true;
 
         public EdgeInOutIterator(NodeImpl node) {
-            readLock();
+            this.hold = lockIterator();
             outArray = node.headOut;
             outTypeLength = outArray.length;
             inArray = node.headIn;
             inTypeLength = inArray.length;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return hold;
+        }
+
         @Override
         public boolean hasNext() {
             if (pointer == null) {
@@ -1206,7 +1599,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
                 }
 
                 if (pointer == null) {
-                    readUnlock();
+                    unlockIterator(hold);
                     return false;
                 }
             }
@@ -1248,7 +1641,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
-    protected final class EdgeOutIterator implements Iterator<Edge> {
+    protected final class EdgeOutIterator implements Iterator<Edge>, GraphLock.HoldingIterator {
+
+        protected final GraphLock.IteratorHold hold;
 
         protected final int typeLength;
         protected EdgeImpl[] outArray;
@@ -1257,11 +1652,16 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         protected EdgeImpl lastEdge;
 
         public EdgeOutIterator(NodeImpl node) {
-            readLock();
+            this.hold = lockIterator();
             outArray = node.headOut;
             typeLength = outArray.length;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return hold;
+        }
+
         @Override
         public boolean hasNext() {
             if (pointer == null) {
@@ -1269,7 +1669,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
                     pointer = outArray[typeIndex++];
                 }
                 if (pointer == null) {
-                    readUnlock();
+                    unlockIterator(hold);
                     return false;
                 }
             }
@@ -1295,7 +1695,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
-    protected final class EdgeInIterator implements Iterator<Edge> {
+    protected final class EdgeInIterator implements Iterator<Edge>, GraphLock.HoldingIterator {
+
+        protected final GraphLock.IteratorHold hold;
 
         protected final int typeLength;
         protected EdgeImpl[] inArray;
@@ -1304,11 +1706,16 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         protected EdgeImpl lastEdge;
 
         public EdgeInIterator(NodeImpl node) {
-            readLock();
+            this.hold = lockIterator();
             inArray = node.headIn;
             typeLength = inArray.length;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return hold;
+        }
+
         @Override
         public boolean hasNext() {
             if (pointer == null) {
@@ -1316,7 +1723,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
                     pointer = inArray[typeIndex++];
                 }
                 if (pointer == null) {
-                    readUnlock();
+                    unlockIterator(hold);
                     return false;
                 }
             }
@@ -1342,7 +1749,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
-    protected final class EdgeTypeInOutIterator implements Iterator<Edge> {
+    protected final class EdgeTypeInOutIterator implements Iterator<Edge>, GraphLock.HoldingIterator {
+
+        protected final GraphLock.IteratorHold hold;
 
         protected final int type;
         protected EdgeImpl lastEdge;
@@ -1352,13 +1761,18 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
 
         public EdgeTypeInOutIterator(NodeImpl node, int type) {
             this.type = type;
-            readLock();
+            this.hold = lockIterator();
             EdgeImpl[] outArray = node.headOut;
             EdgeImpl[] inArray = node.headIn;
             outPointer = type < outArray.length ? outArray[type] : null;
             inPointer = type < inArray.length ? inArray[type] : null;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return hold;
+        }
+
         @Override
         public boolean hasNext() {
             if (outPointer == null) {
@@ -1374,7 +1788,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
                     }
                 }
                 if (inPointer == null) {
-                    readUnlock();
+                    unlockIterator(hold);
                     return false;
                 }
             }
@@ -1425,7 +1839,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
-    protected final class EdgeTypeOutIterator implements Iterator<Edge> {
+    protected final class EdgeTypeOutIterator implements Iterator<Edge>, GraphLock.HoldingIterator {
+
+        protected final GraphLock.IteratorHold hold;
 
         protected final int type;
         protected EdgeImpl lastEdge;
@@ -1433,15 +1849,20 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
 
         public EdgeTypeOutIterator(NodeImpl node, int type) {
             this.type = type;
-            readLock();
+            this.hold = lockIterator();
             EdgeImpl[] outArray = node.headOut;
             pointer = type < outArray.length ? outArray[type] : null;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return hold;
+        }
+
         @Override
         public boolean hasNext() {
             if (pointer == null) {
-                readUnlock();
+                unlockIterator(hold);
                 return false;
             }
             return true;
@@ -1471,7 +1892,9 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
-    protected final class EdgeTypeInIterator implements Iterator<Edge> {
+    protected final class EdgeTypeInIterator implements Iterator<Edge>, GraphLock.HoldingIterator {
+
+        protected final GraphLock.IteratorHold hold;
 
         protected final int type;
         protected EdgeImpl lastEdge;
@@ -1479,15 +1902,20 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
 
         public EdgeTypeInIterator(NodeImpl node, int type) {
             this.type = type;
-            readLock();
+            this.hold = lockIterator();
             EdgeImpl[] inArray = node.headIn;
             pointer = type < inArray.length ? inArray[type] : null;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return hold;
+        }
+
         @Override
         public boolean hasNext() {
             if (pointer == null) {
-                readUnlock();
+                unlockIterator(hold);
                 return false;
             }
             return true;
@@ -1517,7 +1945,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
-    protected class NeighborsIterator implements Iterator<Node> {
+    protected class NeighborsIterator implements Iterator<Node>, GraphLock.HoldingIterator {
 
         protected final NodeImpl node;
         protected final Iterator<Edge> itr;
@@ -1527,6 +1955,11 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
             this.itr = itr;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return GraphLock.getIteratorHold(itr);
+        }
+
         @Override
         public boolean hasNext() {
             return itr.hasNext();
@@ -1570,7 +2003,7 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
         }
     }
 
-    protected final class UndirectedIterator implements Iterator<Edge> {
+    protected final class UndirectedIterator implements Iterator<Edge>, GraphLock.HoldingIterator {
 
         protected final Iterator<Edge> itr;
         protected EdgeImpl pointer;
@@ -1579,6 +2012,11 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
             this.itr = itr;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return GraphLock.getIteratorHold(itr);
+        }
+
         @Override
         public boolean hasNext() {
             pointer = null;
@@ -1601,4 +2039,82 @@ public class EdgeStore implements Collection<Edge>, EdgeIterable {
             itr.remove();
         }
     }
+
+    protected final class EdgeSnapshotIterator implements Iterator<Edge> {
+
+        protected ElementImpl[] elements;
+        protected final int length;
+        protected int cursor;
+        protected EdgeImpl pointer;
+
+        public EdgeSnapshotIterator(Iterator<Edge> iterator) {
+            //Copy the elements while the iterator holds the lock, it's released once consumed
+            ElementImpl[] array = elementArrayPool.borrow(size);
+            int count = 0;
+            try {
+                while (iterator.hasNext()) {
+                    if (count == array.length) {
+                        array = Arrays.copyOf(array, count * 2);
+                    }
+                    array[count++] = (EdgeImpl) iterator.next();
+                }
+            } catch (RuntimeException e) {
+                elementArrayPool.release(array, count);
+                doBreak();
+                throw e;
+            }
+            this.elements = array;
+            this.length = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            pointer = null;
+            while (pointer == null && cursor < length) {
+                pointer = resolve((EdgeImpl) elements[cursor++]);
+            }
+            if (pointer == null && elements != null) {
+                elementArrayPool.release(elements, length);
+                elements = null;
+            }
+            return pointer != null;
+        }
+
+        @Override
+        public EdgeImpl next() {
+            return pointer;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Not supported.");
+        }
+
+        private EdgeImpl resolve(EdgeImpl edge) {
+            if (lock != null) {
+                long stamp = lock.tryOptimisticRead();
+                try {
+                    boolean contained = contains(edge);
+                    if (lock.validate(stamp)) {
+                        return contained ? edge : null;
+                    }
+                } catch (RuntimeException e) {
+                    //Retried under the read lock
+                }
+                lock.readLock();
+                try {
+                    return contains(edge) ? edge : null;
+                } finally {
+                    lock.readUnlock();
+                }
+            }
+            return contains(edge) ? edge : null;
+        }
+
+        //Skips removed elements, even if their slot has been reused
+        private boolean contains(EdgeImpl edge) {
+            int id = edge.storeId;
+            return isValidIndex(id) && blocks[id / GraphStoreConfiguration.EDGESTORE_BLOCK_SIZE].get(id) == edge;
+        }
+    }
 }
@@ -41,6 +41,8 @@ public class EdgeTypeStore {
     protected final Short2ObjectMap idMap;
     protected final ShortSortedSet garbageQueue;
     protected int length;
+    //Journal (optional)
+    protected GraphJournal journal;
 
     public EdgeTypeStore() {
         if (MAX_SIZE >= Short.MAX_VALUE - Short.MIN_VALUE + 1) {
@@ -86,6 +88,9 @@ public class EdgeTypeStore {
             }
             labelMap.put(label, id);
             idMap.put(id, label);
+            if (journal != null) {
+                journal.edgeTypeAdded(label);
+            }
         }
         return shortToInt(id);
     }
@@ -99,6 +104,9 @@ public class EdgeTypeStore {
         }
         idMap.remove(id);
         garbageQueue.add(id);
+        if (journal != null) {
+            journal.edgeTypeRemoved(label);
+        }
 
         int intId = shortToInt(id);
         return intId;
@@ -112,7 +120,9 @@ public class EdgeTypeStore {
         if (label != null) {
             labelMap.remove(label);
             garbageQueue.add(id);
-
+            if (journal != null) {
+                journal.edgeTypeRemoved(label);
+            }
         }
         return label;
     }
@@ -143,6 +153,13 @@ public class EdgeTypeStore {
         //TODO
     }
 
+    protected void copy(final EdgeTypeStore source) {
+        labelMap.putAll(source.labelMap);
+        idMap.putAll(source.idMap);
+        garbageQueue.addAll(source.garbageQueue);
+        length = source.length;
+    }
+
     public int size() {
         return length - garbageQueue.size();
     }
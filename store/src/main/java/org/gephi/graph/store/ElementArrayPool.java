@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Small pool of element arrays reused by snapshot iterators.
+ *
+ * @author mbastian
+ */
+public class ElementArrayPool {
+
+    protected final ConcurrentLinkedQueue<ElementImpl[]> arrays;
+    protected final int maxSize;
+
+    public ElementArrayPool(int maxSize) {
+        this.arrays = new ConcurrentLinkedQueue<ElementImpl[]>();
+        this.maxSize = maxSize;
+    }
+
+    public ElementImpl[] borrow(int minLength) {
+        ElementImpl[] array = arrays.poll();
+        if (array == null || array.length < minLength) {
+            return new ElementImpl[Math.max(minLength, 16)];
+        }
+        return array;
+    }
+
+    public void release(ElementImpl[] array, int length) {
+        //Pooled arrays mustn't keep removed elements alive
+        Arrays.fill(array, 0, length, null);
+        if (arrays.size() < maxSize) {
+            arrays.offer(array);
+        }
+    }
+}
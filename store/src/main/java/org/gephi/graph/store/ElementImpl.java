@@ -16,8 +16,6 @@
 package org.gephi.graph.store;
 
 import java.util.Set;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import org.gephi.attribute.api.Column;
 import org.gephi.attribute.time.TimestampBooleanSet;
 import org.gephi.attribute.time.TimestampByteSet;
@@ -58,6 +56,54 @@ public abstract class ElementImpl implements Element {
 
     abstract boolean isValid();
 
+    abstract int getStoreId();
+
+    protected void copyAttributes(ElementImpl source) {
+        source.pinAttributes();
+        Object[] sourceAttributes = source.attributes;
+        Object[] copy = new Object[sourceAttributes.length];
+        for (int i = 0; i < sourceAttributes.length; i++) {
+            Object value = sourceAttributes[i];
+            if (value instanceof TimestampSet) {
+                value = new TimestampSet(((TimestampSet) value).getTimestamps());
+            } else if (value instanceof TimestampValueSet) {
+                TimestampValueSet valueSet = (TimestampValueSet) value;
+                TimestampValueSet valueSetCopy = newTimestampValueSet(source.getColumnStore().getColumnByIndex(i).getTypeClass());
+                int[] timestamps = valueSet.getTimestamps();
+                Object[] values = valueSet.toArray();
+                for (int j = 0; j < timestamps.length; j++) {
+                    valueSetCopy.put(timestamps[j], values[j]);
+                }
+                value = valueSetCopy;
+            }
+            copy[i] = value;
+        }
+        attributes = copy;
+    }
+
+    protected void attributeChanged(Column column) {
+        if (graphStore != null && isValid()) {
+            if (column != null) {
+                ((ColumnImpl) column).incrementVersion();
+            }
+            graphStore.attributeChanged(this, column);
+        }
+    }
+
+    //Only tracked while an observer computes diffs, and hasGraphChanged() ignores it
+    protected void propertyChanged() {
+        if (graphStore != null && graphStore.diffObservers.get() > 0 && isValid()) {
+            graphStore.propertyChanged(this);
+        }
+    }
+
+    protected GraphJournal getJournal() {
+        if (graphStore != null && isValid()) {
+            return graphStore.journal;
+        }
+        return null;
+    }
+
     @Override
     public Object getId() {
         return id;
@@ -66,7 +112,11 @@ public abstract class ElementImpl implements Element {
     @Override
     public String getLabel() {
         if (GraphStoreConfiguration.ENABLE_ELEMENT_LABEL && attributes.length > GraphStoreConfiguration.ELEMENT_LABEL_INDEX) {
-            return (String) attributes[GraphStoreConfiguration.ELEMENT_LABEL_INDEX];
+            Object label = attributes[GraphStoreConfiguration.ELEMENT_LABEL_INDEX];
+            if (label == null) {
+                label = getLazyAttribute(GraphStoreConfiguration.ELEMENT_LABEL_INDEX);
+            }
+            return (String) label;
         }
         return null;
     }
@@ -85,6 +135,9 @@ public abstract class ElementImpl implements Element {
         if (index < attributes.length) {
             res = attributes[index];
         }
+        if (res == null) {
+            res = getLazyAttribute(index);
+        }
         if (res == null) {
             return column.getDefaultValue();
         }
@@ -93,6 +146,7 @@ public abstract class ElementImpl implements Element {
 
     @Override
     public Object[] getAttributes() {
+        pinAttributes();
         return attributes;
     }
 
@@ -108,10 +162,12 @@ public abstract class ElementImpl implements Element {
 
     @Override
     public Object removeAttribute(Column column) {
+        checkWritable();
         checkColumn(column);
 
         ColumnStore columnStore = getColumnStore();
         int index = column.getIndex();
+        pinAttribute(index);
         if (index < attributes.length) {
             Object oldValue = attributes[index];
             attributes[index] = null;
@@ -123,6 +179,11 @@ public abstract class ElementImpl implements Element {
                     writeUnlock();
                 }
             }
+            attributeChanged(column);
+            GraphJournal journal = getJournal();
+            if (journal != null) {
+                journal.attributeRemoved(this, column);
+            }
             return oldValue;
         }
         return null;
@@ -130,14 +191,25 @@ public abstract class ElementImpl implements Element {
 
     @Override
     public void setLabel(String label) {
+        checkWritable();
         if (GraphStoreConfiguration.ENABLE_ELEMENT_LABEL) {
             int index = GraphStoreConfiguration.ELEMENT_LABEL_INDEX;
+            pinAttribute(index);
+            label = intern(label);
             if (index >= attributes.length) {
                 Object[] newArray = new Object[index + 1];
                 System.arraycopy(attributes, 0, newArray, 0, attributes.length);
                 attributes = newArray;
             }
             attributes[index] = label;
+            ColumnStore columnStore = getColumnStore();
+            if (columnStore != null && isValid()) {
+                attributeChanged(columnStore.getColumnByIndex(index));
+                GraphJournal journal = getJournal();
+                if (journal != null) {
+                    journal.labelSet(this, label);
+                }
+            }
         }
     }
 
@@ -148,11 +220,16 @@ public abstract class ElementImpl implements Element {
 
     @Override
     public void setAttribute(Column column, Object value) {
+        checkWritable();
         checkType(column, value);
         checkColumn(column);
 
+        if (value instanceof String) {
+            value = intern((String) value);
+        }
         int index = column.getIndex();
         ColumnStore columnStore = getColumnStore();
+        pinAttribute(index);
         Object oldValue = null;
         if (index >= attributes.length) {
             Object[] newArray = new Object[index + 1];
@@ -171,6 +248,11 @@ public abstract class ElementImpl implements Element {
             }
         }
         attributes[index] = value;
+        attributeChanged(column);
+        GraphJournal journal = getJournal();
+        if (journal != null) {
+            journal.attributeSet(this, column, value);
+        }
     }
 
     @Override
@@ -180,8 +262,9 @@ public abstract class ElementImpl implements Element {
 
     @Override
     public void setAttribute(Column column, Object value, double timestamp) {
+        checkWritable();
         checkEnabledTimestampSet();
-        checkType(column, value);
+        checkTimestampAttribute(column, value);
         checkDouble(timestamp);
         checkColumn(column);
 
@@ -189,32 +272,7 @@ public abstract class ElementImpl implements Element {
         if (timestampStore != null) {
             writeLock();
             try {
-                int index = column.getIndex();
-                Object oldValue = null;
-                if (index >= attributes.length) {
-                    Object[] newArray = new Object[index + 1];
-                    System.arraycopy(attributes, 0, newArray, 0, attributes.length);
-                    attributes = newArray;
-                } else {
-                    oldValue = attributes[index];
-                }
-
-                TimestampValueSet dynamicValue = null;
-                if (oldValue == null) {
-                    try {
-                        dynamicValue = (TimestampValueSet) column.getTypeClass().newInstance();
-                    } catch (InstantiationException ex) {
-                        Logger.getLogger(ElementImpl.class.getName()).log(Level.SEVERE, null, ex);
-                    } catch (IllegalAccessException ex) {
-                        Logger.getLogger(ElementImpl.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                } else {
-                    dynamicValue = (TimestampValueSet) oldValue;
-                }
-
-
-                int timestampIndex = timestampStore.getTimestampIndex(timestamp);
-                dynamicValue.put(timestampIndex, value);
+                setAttribute(timestampStore, column, value, timestamp);
             } finally {
                 writeUnlock();
             }
@@ -223,8 +281,37 @@ public abstract class ElementImpl implements Element {
         }
     }
 
+    protected void setAttribute(TimestampStore timestampStore, Column column, Object value, double timestamp) {
+        int index = column.getIndex();
+        Object oldValue = null;
+        if (index >= attributes.length) {
+            Object[] newArray = new Object[index + 1];
+            System.arraycopy(attributes, 0, newArray, 0, attributes.length);
+            attributes = newArray;
+        } else {
+            oldValue = attributes[index];
+        }
+
+        TimestampValueSet dynamicValue;
+        if (oldValue == null) {
+            dynamicValue = newTimestampValueSet(column.getTypeClass());
+            attributes[index] = dynamicValue;
+        } else {
+            dynamicValue = (TimestampValueSet) oldValue;
+        }
+
+        int timestampIndex = timestampStore.getTimestampIndex(timestamp);
+        dynamicValue.put(timestampIndex, value);
+        attributeChanged(column);
+        GraphJournal journal = getJournal();
+        if (journal != null) {
+            journal.attributeSet(this, column, value, timestamp);
+        }
+    }
+
     @Override
     public boolean addTimestamp(double timestamp) {
+        checkWritable();
         checkEnabledTimestampSet();
         checkDouble(timestamp);
 
@@ -232,19 +319,7 @@ public abstract class ElementImpl implements Element {
         if (timestampStore != null) {
             writeLock();
             try {
-                TimestampSet timestampSet = getTimestampSet();
-                if (timestampSet == null) {
-                    timestampSet = new TimestampSet();
-                    int index = GraphStoreConfiguration.ELEMENT_TIMESTAMP_INDEX;
-                    if (index >= attributes.length) {
-                        Object[] newArray = new Object[index + 1];
-                        System.arraycopy(attributes, 0, newArray, 0, attributes.length);
-                        attributes = newArray;
-                    }
-                    attributes[index] = timestampSet;
-                }
-                final int timestampIndex = timestampStore.addElement(timestamp, this);
-                return timestampSet.add(timestampIndex);
+                return addTimestamp(timestampStore, timestamp);
             } finally {
                 writeUnlock();
             }
@@ -252,8 +327,29 @@ public abstract class ElementImpl implements Element {
         return false;
     }
 
+    protected boolean addTimestamp(TimestampStore timestampStore, double timestamp) {
+        TimestampSet timestampSet = getTimestampSet();
+        if (timestampSet == null) {
+            timestampSet = new TimestampSet();
+            int index = GraphStoreConfiguration.ELEMENT_TIMESTAMP_INDEX;
+            if (index >= attributes.length) {
+                Object[] newArray = new Object[index + 1];
+                System.arraycopy(attributes, 0, newArray, 0, attributes.length);
+                attributes = newArray;
+            }
+            attributes[index] = timestampSet;
+        }
+        final int timestampIndex = timestampStore.addElement(timestamp, this);
+        GraphJournal journal = getJournal();
+        if (journal != null) {
+            journal.timestampAdded(this, timestamp);
+        }
+        return timestampSet.add(timestampIndex);
+    }
+
     @Override
     public boolean removeTimestamp(double timestamp) {
+        checkWritable();
         checkEnabledTimestampSet();
         checkDouble(timestamp);
 
@@ -264,6 +360,10 @@ public abstract class ElementImpl implements Element {
                 final TimestampStore timestampStore = getTimestampStore();
                 if (timestampStore != null) {
                     final int timestampIndex = timestampStore.removeElement(timestamp, this);
+                    GraphJournal journal = getJournal();
+                    if (journal != null) {
+                        journal.timestampRemoved(this, timestamp);
+                    }
                     return timestampSet.remove(timestampIndex);
                 }
             } finally {
@@ -313,6 +413,7 @@ public abstract class ElementImpl implements Element {
 
     @Override
     public void clearAttributes() {
+        pinAttributes();
         writeLock();
         try {
             if (isValid()) {
@@ -324,6 +425,10 @@ public abstract class ElementImpl implements Element {
                 if (timestampStore != null) {
                     timestampStore.clear(this);
                 }
+                GraphJournal journal = getJournal();
+                if (journal != null) {
+                    journal.attributesCleared(this);
+                }
             }
 
 
@@ -338,6 +443,40 @@ public abstract class ElementImpl implements Element {
         }
     }
 
+    //Shares equal strings when the factory pools them
+    private String intern(String str) {
+        if (graphStore != null) {
+            return graphStore.factory.intern(str);
+        }
+        return str;
+    }
+
+    //Lazily loaded attributes
+    private Object getLazyAttribute(int index) {
+        ColumnStore columnStore = getColumnStore();
+        LazyAttributeLoader attributeLoader = columnStore != null ? columnStore.attributeLoader : null;
+        if (attributeLoader != null) {
+            return attributeLoader.getAttribute(this, index);
+        }
+        return null;
+    }
+
+    private void pinAttribute(int index) {
+        ColumnStore columnStore = getColumnStore();
+        LazyAttributeLoader attributeLoader = columnStore != null ? columnStore.attributeLoader : null;
+        if (attributeLoader != null) {
+            attributeLoader.pin(columnStore, index);
+        }
+    }
+
+    private void pinAttributes() {
+        ColumnStore columnStore = getColumnStore();
+        LazyAttributeLoader attributeLoader = columnStore != null ? columnStore.attributeLoader : null;
+        if (attributeLoader != null) {
+            attributeLoader.pinAll(columnStore);
+        }
+    }
+
     protected GraphStore getGraphStore() {
         return graphStore;
     }
@@ -349,6 +488,29 @@ public abstract class ElementImpl implements Element {
         return null;
     }
 
+    private TimestampValueSet newTimestampValueSet(Class typeClass) {
+        if (typeClass.equals(TimestampDoubleSet.class)) {
+            return new TimestampDoubleSet();
+        } else if (typeClass.equals(TimestampFloatSet.class)) {
+            return new TimestampFloatSet();
+        } else if (typeClass.equals(TimestampIntegerSet.class)) {
+            return new TimestampIntegerSet();
+        } else if (typeClass.equals(TimestampLongSet.class)) {
+            return new TimestampLongSet();
+        } else if (typeClass.equals(TimestampShortSet.class)) {
+            return new TimestampShortSet();
+        } else if (typeClass.equals(TimestampByteSet.class)) {
+            return new TimestampByteSet();
+        } else if (typeClass.equals(TimestampBooleanSet.class)) {
+            return new TimestampBooleanSet();
+        } else if (typeClass.equals(TimestampCharSet.class)) {
+            return new TimestampCharSet();
+        } else if (typeClass.equals(TimestampStringSet.class)) {
+            return new TimestampStringSet();
+        }
+        throw new IllegalArgumentException("The column type is not dynamic");
+    }
+
     private void checkEnabledTimestampSet() {
         if (!GraphStoreConfiguration.ENABLE_ELEMENT_TIMESTAMP_SET) {
             throw new RuntimeException("Can't call timestamp methods if they are disabled");
@@ -361,6 +523,12 @@ public abstract class ElementImpl implements Element {
         }
     }
 
+    private void checkWritable() {
+        if (graphStore != null) {
+            graphStore.checkWritable();
+        }
+    }
+
     private void checkColumn(Column column) {
         if (column.getIndex() == ColumnStore.NULL_ID) {
             throw new IllegalArgumentException("The column does not exist");
@@ -395,7 +563,14 @@ public abstract class ElementImpl implements Element {
         }
     }
 
-    private void checkType(Column column, Object value) {
+    protected static void checkTimestampAttribute(Column column, Object value) {
+        if (!TimestampValueSet.class.isAssignableFrom(column.getTypeClass())) {
+            throw new IllegalArgumentException("The column is not dynamic");
+        }
+        checkType(column, value);
+    }
+
+    private static void checkType(Column column, Object value) {
         if (value != null) {
             Class typeClass = column.getTypeClass();
             if (TimestampValueSet.class.isAssignableFrom(typeClass)) {
@@ -409,7 +584,8 @@ public abstract class ElementImpl implements Element {
                         || (value instanceof String && !typeClass.equals(TimestampStringSet.class))
                         || (value instanceof Character && !typeClass.equals(TimestampCharSet.class))) {
                     throw new IllegalArgumentException("The object class does not match with the dynamic type (" + typeClass.getName() + ")");
-                } else {
+                } else if (!typeClass.equals(value.getClass())
+                        && !(value instanceof Number || value instanceof Boolean || value instanceof String || value instanceof Character)) {
                     throw new IllegalArgumentException("Unknown TimestampValueSet class");
                 }
             } else if (!value.getClass().equals(typeClass)) {
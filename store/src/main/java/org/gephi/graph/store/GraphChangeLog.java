@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+/**
+ * Bounded ring buffer of node and edge additions and removals, attached to a
+ * {@link GraphVersion}. Observers read it from their last position to compute
+ * diffs and fall back to a full rescan when the entries they need were
+ * overwritten or a bulk change reset the log.
+ *
+ * @author mbastian
+ */
+public class GraphChangeLog {
+
+    //Const
+    protected static final byte NODE_ADDED = 0;
+    protected static final byte NODE_REMOVED = 1;
+    protected static final byte EDGE_ADDED = 2;
+    protected static final byte EDGE_REMOVED = 3;
+    //Data
+    protected final int capacity;
+    protected final ElementImpl[] elements;
+    protected final int[] storeIds;
+    protected final byte[] types;
+    protected long sequence;
+    protected long resetSequence;
+
+    public GraphChangeLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.elements = new ElementImpl[capacity];
+        this.storeIds = new int[capacity];
+        this.types = new byte[capacity];
+    }
+
+    protected void add(byte type, ElementImpl element, int storeId) {
+        int index = (int) (sequence % capacity);
+        elements[index] = element;
+        storeIds[index] = storeId;
+        types[index] = type;
+        sequence++;
+    }
+
+    protected void reset() {
+        sequence++;
+        resetSequence = sequence;
+        for (int i = 0; i < capacity; i++) {
+            elements[i] = null;
+        }
+    }
+
+    protected boolean isAvailable(long position) {
+        return position >= resetSequence && sequence - position <= capacity;
+    }
+
+    protected int index(long position) {
+        return (int) (position % capacity);
+    }
+}
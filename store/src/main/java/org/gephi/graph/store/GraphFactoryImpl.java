@@ -15,6 +15,9 @@
  */
 package org.gephi.graph.store;
 
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.GraphFactory;
@@ -30,9 +33,12 @@ public class GraphFactoryImpl implements GraphFactory {
     protected final AtomicInteger EDGE_IDS = new AtomicInteger();
     //Store
     protected final GraphStore store;
+    //String pool (optional)
+    protected volatile Map<String, WeakReference<String>> stringPool;
 
     public GraphFactoryImpl(GraphStore store) {
         this.store = store;
+        setStringPool(GraphStoreConfiguration.ENABLE_STRING_POOL);
     }
 
     @Override
@@ -60,6 +66,58 @@ public class GraphFactoryImpl implements GraphFactory {
         return new NodeImpl(id, store);
     }
 
+    /**
+     * Enables or disables the pooling of labels and string attribute values,
+     * so equal strings share the same instance. Pooled strings are weakly
+     * referenced.
+     *
+     * @param enabled true to enable the pool
+     */
+    public synchronized void setStringPool(boolean enabled) {
+        if (!enabled) {
+            stringPool = null;
+        } else if (stringPool == null) {
+            stringPool = new WeakHashMap<String, WeakReference<String>>();
+        }
+    }
+
+    public boolean isStringPool() {
+        return stringPool != null;
+    }
+
+    /**
+     * Returns the pooled instance equal to <code>str</code>, or
+     * <code>str</code> itself if the pool is disabled.
+     *
+     * @param str string to intern
+     * @return pooled string
+     */
+    public String intern(String str) {
+        Map<String, WeakReference<String>> pool = stringPool;
+        if (pool == null || str == null) {
+            return str;
+        }
+        synchronized (pool) {
+            WeakReference<String> ref = pool.get(str);
+            String pooled = ref != null ? ref.get() : null;
+            if (pooled == null) {
+                pool.put(str, new WeakReference<String>(str));
+                pooled = str;
+            }
+            return pooled;
+        }
+    }
+
+    protected int getStringPoolSize() {
+        Map<String, WeakReference<String>> pool = stringPool;
+        if (pool == null) {
+            return 0;
+        }
+        synchronized (pool) {
+            return pool.size();
+        }
+    }
+
     protected int getNodeCounter() {
         return NODE_IDS.get();
     }
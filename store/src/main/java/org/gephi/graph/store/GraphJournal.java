@@ -0,0 +1,1099 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.zip.CRC32;
+import org.gephi.attribute.api.Column;
+import org.gephi.attribute.api.Origin;
+import org.gephi.attribute.time.TimestampSet;
+import org.gephi.attribute.time.TimestampValueSet;
+import org.gephi.graph.store.EdgeImpl.EdgePropertiesImpl;
+import org.gephi.graph.store.NodeImpl.NodePropertiesImpl;
+import org.gephi.graph.utils.DataInputOutput;
+
+/**
+ * Write-ahead journal persistence of a graph store.
+ * <p>
+ * The directory holds a columnar snapshot and a journal of the mutations done
+ * since that snapshot, both tagged with the same generation. Mutations of the
+ * nodes, edges, attributes, columns, edge types, timestamps and views are
+ * appended as records encoded with the <code>Serialization</code> type codes
+ * and made durable by <code>flush()</code>. Each record is framed with its
+ * length and CRC32 so a torn tail left by a crash is detected and dropped when
+ * the journal is replayed.
+ * <p>
+ * <code>compact()</code> writes a new snapshot and starts an empty journal of
+ * the next generation, the previous files are deleted once the new ones are
+ * on disk. It runs automatically from <code>flush()</code> when the journal
+ * grows over <code>JOURNAL_COMPACTION_SIZE</code>.
+ * <p>
+ * Node and edge properties (position, size, color, fixed flag and text
+ * properties) are not journaled: they are written with the elements when
+ * those are added, but later changes are lost on recovery unless
+ * <code>compact()</code> runs after them. Property setters are called
+ * repeatedly by layouts and keep no reference to the store, so callers which
+ * need them durable should compact, for instance at the end of a layout.
+ *
+ * @author mbastian
+ */
+public class GraphJournal {
+
+    //Format
+    static final int MAGIC = 0x47534a4c;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final String SNAPSHOT_EXTENSION = ".snapshot";
+    static final String JOURNAL_EXTENSION = ".journal";
+    static final String TEMP_EXTENSION = ".tmp";
+    static final String FILE_PREFIX = "graph-";
+    //Records
+    static final byte NODE_ADDED = 1;
+    static final byte NODE_REMOVED = 2;
+    static final byte EDGE_ADDED = 3;
+    static final byte EDGE_REMOVED = 4;
+    static final byte ATTRIBUTE_SET = 5;
+    static final byte ATTRIBUTE_REMOVED = 6;
+    static final byte TIMESTAMP_ATTRIBUTE_SET = 7;
+    static final byte LABEL_SET = 8;
+    static final byte ATTRIBUTES_CLEARED = 9;
+    static final byte ELEMENT_TIMESTAMP_ADDED = 10;
+    static final byte ELEMENT_TIMESTAMP_REMOVED = 11;
+    static final byte COLUMN_ADDED = 12;
+    static final byte COLUMN_REMOVED = 13;
+    static final byte EDGE_TYPE_ADDED = 14;
+    static final byte EDGE_TYPE_REMOVED = 15;
+    static final byte CLEARED = 16;
+    static final byte EDGES_CLEARED = 17;
+    static final byte TIMESTAMPS_COMPACTED = 18;
+    static final byte TIMESTAMP_EVICTED = 19;
+    static final byte RETENTION_CHANGED = 20;
+    static final byte VIEW_CREATED = 21;
+    static final byte VIEW_DESTROYED = 22;
+    static final byte VIEW_NODE_ADDED = 23;
+    static final byte VIEW_NODE_REMOVED = 24;
+    static final byte VIEW_EDGE_ADDED = 25;
+    static final byte VIEW_EDGE_REMOVED = 26;
+    static final byte VIEW_CLEARED = 27;
+    static final byte VIEW_EDGES_CLEARED = 28;
+    static final byte VIEW_FILLED = 29;
+    //Element kinds
+    static final byte KIND_NODE = 0;
+    static final byte KIND_EDGE = 1;
+    //Values
+    static final byte VALUE_PLAIN = 0;
+    static final byte VALUE_TIMESTAMP_SET = 1;
+    static final byte VALUE_TIMESTAMP_VALUE_SET = 2;
+    //Write buffer
+    static final int BUFFER_SIZE = 1 << 16;
+    //Store
+    protected final GraphStore store;
+    protected final File directory;
+    protected final Serialization serialization;
+    //Records
+    protected final DataInputOutput record;
+    protected final DataInputOutput pending;
+    protected final CRC32 crc;
+    //Views the journal records, others are only persisted by compactions
+    protected final Set<GraphViewImpl> views;
+    //File
+    protected RandomAccessFile file;
+    protected FileChannel channel;
+    protected long generation;
+    protected long size;
+
+    public GraphJournal(GraphStore store, File directory) {
+        if (store == null || directory == null) {
+            throw new NullPointerException();
+        }
+        this.store = store;
+        this.directory = directory;
+        this.serialization = new Serialization(store);
+        this.record = new DataInputOutput();
+        this.pending = new DataInputOutput();
+        this.crc = new CRC32();
+        this.views = Collections.newSetFromMap(new IdentityHashMap<GraphViewImpl, Boolean>());
+    }
+
+    /**
+     * Opens the journal and starts recording the store mutations.
+     * <p>
+     * If the directory already contains a snapshot, it is loaded in the store,
+     * which must be empty, and the journal is replayed up to the last complete
+     * record. Otherwise the current content of the store is written as the
+     * first snapshot.
+     *
+     * @throws IOException if the files can't be read or written, or if the
+     * journal doesn't match the snapshot
+     * @throws ClassNotFoundException if an attribute class can't be found
+     */
+    public void open() throws IOException, ClassNotFoundException {
+        if (store.version == null) {
+            throw new UnsupportedOperationException("The journal requires the observers to be enabled");
+        }
+        if (store.journal != null) {
+            throw new RuntimeException("A journal is already open on this store");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("The directory can't be created: " + directory);
+        }
+
+        long lastGeneration = findLastGeneration();
+        if (lastGeneration < 0) {
+            store.autoReadLock();
+            try {
+                synchronized (this) {
+                    generation = 0;
+                    writeSnapshot(generation);
+                    createJournal(generation);
+                    attach();
+                }
+            } finally {
+                store.autoReadUnlock();
+            }
+            deleteStaleFiles();
+            return;
+        }
+
+        if (store.getNodeCount() > 0 || store.getEdgeCount() > 0) {
+            throw new IOException("The store is not empty");
+        }
+        File snapshotFile = getSnapshotFile(lastGeneration);
+        new ColumnarSerialization(store).read(snapshotFile);
+
+        boolean dirty;
+        store.autoWriteLock();
+        try {
+            synchronized (this) {
+                generation = lastGeneration;
+                dirty = recover();
+                attach();
+            }
+        } finally {
+            store.autoWriteUnlock();
+        }
+        deleteStaleFiles();
+        if (dirty) {
+            //Start from a snapshot of the recovered store
+            compact();
+        }
+    }
+
+    /**
+     * Writes the pending records and forces them to disk. The journal is
+     * compacted if it grew over <code>JOURNAL_COMPACTION_SIZE</code>.
+     *
+     * @throws IOException if the journal can't be written
+     */
+    public void flush() throws IOException {
+        boolean full;
+        synchronized (this) {
+            checkOpen();
+            writePending();
+            channel.force(false);
+            full = size > GraphStoreConfiguration.JOURNAL_COMPACTION_SIZE;
+        }
+        if (full) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the store and starts an empty journal. The
+     * previous snapshot and journal are deleted once the new files are on
+     * disk.
+     *
+     * @throws IOException if the files can't be written
+     */
+    public void compact() throws IOException {
+        store.autoReadLock();
+        try {
+            synchronized (this) {
+                checkOpen();
+                long nextGeneration = generation + 1;
+                writeSnapshot(nextGeneration);
+
+                RandomAccessFile oldFile = file;
+                pending.reset();
+                createJournal(nextGeneration);
+                oldFile.close();
+                generation = nextGeneration;
+                trackViews();
+            }
+        } finally {
+            store.autoReadUnlock();
+        }
+        deleteStaleFiles();
+    }
+
+    /**
+     * Flushes the pending records and stops recording.
+     *
+     * @throws IOException if the journal can't be written
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                writePending();
+                channel.force(false);
+            } finally {
+                detach();
+                file.close();
+                file = null;
+                channel = null;
+            }
+        }
+    }
+
+    public synchronized long getJournalSize() {
+        return size + pending.getPos();
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    public boolean isOpen() {
+        return channel != null;
+    }
+
+    //Store hooks
+    protected synchronized void nodeAdded(NodeImpl node) {
+        begin(NODE_ADDED);
+        write(node.id);
+        writeAttributes(node);
+        write(node.properties);
+        end();
+    }
+
+    protected synchronized void nodeRemoved(NodeImpl node) {
+        begin(NODE_REMOVED);
+        write(node.id);
+        end();
+    }
+
+    protected synchronized void edgeAdded(EdgeImpl edge) {
+        begin(EDGE_ADDED);
+        write(edge.id);
+        write(edge.source.id);
+        write(edge.target.id);
+        write(edge.type);
+        write(edge.weight);
+        write(edge.isDirected());
+        writeAttributes(edge);
+        write(edge.properties);
+        end();
+    }
+
+    protected synchronized void edgeRemoved(EdgeImpl edge) {
+        begin(EDGE_REMOVED);
+        write(edge.id);
+        end();
+    }
+
+    protected synchronized void attributeSet(ElementImpl element, Column column, Object value) {
+        beginElement(ATTRIBUTE_SET, element);
+        write(column.getId());
+        writeValue(value);
+        end();
+    }
+
+    protected synchronized void attributeRemoved(ElementImpl element, Column column) {
+        beginElement(ATTRIBUTE_REMOVED, element);
+        write(column.getId());
+        end();
+    }
+
+    protected synchronized void attributeSet(ElementImpl element, Column column, Object value, double timestamp) {
+        beginElement(TIMESTAMP_ATTRIBUTE_SET, element);
+        write(column.getId());
+        write(value);
+        write(timestamp);
+        end();
+    }
+
+    protected synchronized void labelSet(ElementImpl element, String label) {
+        beginElement(LABEL_SET, element);
+        write(label);
+        end();
+    }
+
+    protected synchronized void attributesCleared(ElementImpl element) {
+        beginElement(ATTRIBUTES_CLEARED, element);
+        end();
+    }
+
+    protected synchronized void timestampAdded(ElementImpl element, double timestamp) {
+        beginElement(ELEMENT_TIMESTAMP_ADDED, element);
+        write(timestamp);
+        end();
+    }
+
+    protected synchronized void timestampRemoved(ElementImpl element, double timestamp) {
+        beginElement(ELEMENT_TIMESTAMP_REMOVED, element);
+        write(timestamp);
+        end();
+    }
+
+    protected synchronized void columnAdded(ColumnStore columnStore, ColumnImpl column) {
+        begin(COLUMN_ADDED);
+        write(getKind(columnStore));
+        write(column.id);
+        write(column.title);
+        write(column.origin);
+        write(column.typeClass);
+        write(column.defaultValue);
+        write(column.indexed);
+        end();
+    }
+
+    protected synchronized void columnRemoved(ColumnStore columnStore, ColumnImpl column) {
+        begin(COLUMN_REMOVED);
+        write(getKind(columnStore));
+        write(column.id);
+        end();
+    }
+
+    protected synchronized void edgeTypeAdded(Object label) {
+        begin(EDGE_TYPE_ADDED);
+        write(label);
+        end();
+    }
+
+    protected synchronized void edgeTypeRemoved(Object label) {
+        begin(EDGE_TYPE_REMOVED);
+        write(label);
+        end();
+    }
+
+    protected synchronized void cleared() {
+        begin(CLEARED);
+        end();
+    }
+
+    protected synchronized void edgesCleared() {
+        begin(EDGES_CLEARED);
+        end();
+    }
+
+    protected synchronized void timestampsCompacted() {
+        begin(TIMESTAMPS_COMPACTED);
+        end();
+    }
+
+    protected synchronized void timestampEvicted(double timestamp) {
+        begin(TIMESTAMP_EVICTED);
+        write(timestamp);
+        end();
+    }
+
+    protected synchronized void retentionChanged(double window, int count) {
+        begin(RETENTION_CHANGED);
+        write(window);
+        write(count);
+        end();
+    }
+
+    //View hooks
+    protected synchronized void viewCreated(GraphViewImpl view, GraphViewImpl source) {
+        if (source != null && !views.contains(source)) {
+            //Copies of views that aren't recorded can't be replayed
+            return;
+        }
+        views.add(view);
+        begin(VIEW_CREATED);
+        write(view.storeId);
+        write(view.nodeViewOnly);
+        write(source != null ? source.storeId : GraphViewStore.NULL_VIEW);
+        end();
+    }
+
+    protected synchronized void viewDestroyed(GraphViewImpl view) {
+        if (views.remove(view)) {
+            beginView(VIEW_DESTROYED, view);
+            end();
+        }
+    }
+
+    protected synchronized void viewNodeAdded(GraphViewImpl view, NodeImpl node) {
+        if (views.contains(view)) {
+            beginView(VIEW_NODE_ADDED, view);
+            write(node.id);
+            end();
+        }
+    }
+
+    protected synchronized void viewNodeRemoved(GraphViewImpl view, NodeImpl node) {
+        if (views.contains(view)) {
+            beginView(VIEW_NODE_REMOVED, view);
+            write(node.id);
+            end();
+        }
+    }
+
+    protected synchronized void viewEdgeAdded(GraphViewImpl view, EdgeImpl edge) {
+        if (views.contains(view)) {
+            beginView(VIEW_EDGE_ADDED, view);
+            write(edge.id);
+            end();
+        }
+    }
+
+    protected synchronized void viewEdgeRemoved(GraphViewImpl view, EdgeImpl edge) {
+        if (views.contains(view)) {
+            beginView(VIEW_EDGE_REMOVED, view);
+            write(edge.id);
+            end();
+        }
+    }
+
+    protected synchronized void viewCleared(GraphViewImpl view) {
+        if (views.contains(view)) {
+            beginView(VIEW_CLEARED, view);
+            end();
+        }
+    }
+
+    protected synchronized void viewEdgesCleared(GraphViewImpl view) {
+        if (views.contains(view)) {
+            beginView(VIEW_EDGES_CLEARED, view);
+            end();
+        }
+    }
+
+    protected synchronized void viewFilled(GraphViewImpl view) {
+        if (views.contains(view)) {
+            beginView(VIEW_FILLED, view);
+            end();
+        }
+    }
+
+    //Attach
+    private void attach() {
+        trackViews();
+        store.journal = this;
+        store.version.journal = this;
+        store.nodeColumnStore.journal = this;
+        store.edgeColumnStore.journal = this;
+        store.edgeTypeStore.journal = this;
+    }
+
+    private void detach() {
+        store.journal = null;
+        store.version.journal = null;
+        store.nodeColumnStore.journal = null;
+        store.edgeColumnStore.journal = null;
+        store.edgeTypeStore.journal = null;
+        views.clear();
+    }
+
+    private void trackViews() {
+        views.clear();
+        GraphViewStore viewStore = store.viewStore;
+        for (int i = 0; i < viewStore.length; i++) {
+            if (viewStore.views[i] != null) {
+                views.add(viewStore.views[i]);
+            }
+        }
+    }
+
+    //Records
+    private void begin(byte type) {
+        record.reset();
+        try {
+            record.writeByte(type);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void beginElement(byte type, ElementImpl element) {
+        begin(type);
+        write(element instanceof NodeImpl ? KIND_NODE : KIND_EDGE);
+        write(element.id);
+    }
+
+    private void beginView(byte type, GraphViewImpl view) {
+        begin(type);
+        write(view.storeId);
+    }
+
+    private void write(Object obj) {
+        try {
+            serialization.serialize(record, obj);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeAttributes(ElementImpl element) {
+        Object[] attributes = element.attributes;
+        write(attributes.length);
+        for (int i = 0; i < attributes.length; i++) {
+            writeValue(attributes[i]);
+        }
+    }
+
+    private void writeValue(Object value) {
+        //Timestamp indices are only valid in this store, timestamps are written instead
+        try {
+            if (value instanceof TimestampSet) {
+                record.writeByte(VALUE_TIMESTAMP_SET);
+                write(store.timestampStore.getTimestamps(((TimestampSet) value).getTimestamps()));
+            } else if (value instanceof TimestampValueSet) {
+                TimestampValueSet valueSet = (TimestampValueSet) value;
+                record.writeByte(VALUE_TIMESTAMP_VALUE_SET);
+                write(store.timestampStore.getTimestamps(valueSet.getTimestamps()));
+                write(valueSet.toArray());
+            } else {
+                record.writeByte(VALUE_PLAIN);
+                write(value);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void end() {
+        if (channel == null) {
+            return;
+        }
+        byte[] buf = record.getBuf();
+        int length = record.getPos();
+        crc.reset();
+        crc.update(buf, 0, length);
+        try {
+            pending.writeInt(length);
+            pending.writeInt((int) crc.getValue());
+            pending.write(buf, 0, length);
+            if (pending.getPos() >= BUFFER_SIZE) {
+                writePending();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writePending() throws IOException {
+        int length = pending.getPos();
+        if (length > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(pending.getBuf(), 0, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            size += length;
+            pending.reset();
+        }
+    }
+
+    //Recovery
+    private boolean recover() throws IOException {
+        File journalFile = getJournalFile(generation);
+        if (!journalFile.exists()) {
+            createJournal(generation);
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        FileChannel fileChannel = raf.getChannel();
+        long length = fileChannel.size();
+        if (length > Integer.MAX_VALUE) {
+            raf.close();
+            throw new IOException("The journal is too large");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining() && fileChannel.read(buffer) >= 0) {
+        }
+        buffer.flip();
+
+        if (buffer.remaining() < HEADER_SIZE) {
+            //Crashed while the journal was created
+            raf.close();
+            createJournal(generation);
+            return false;
+        }
+        if (buffer.getInt() != MAGIC) {
+            raf.close();
+            throw new IOException("The file isn't a graph journal");
+        }
+        if (buffer.getInt() != FORMAT_VERSION) {
+            raf.close();
+            throw new IOException("The journal format version isn't supported");
+        }
+        if (buffer.getLong() != generation) {
+            raf.close();
+            throw new IOException("The journal doesn't belong to the snapshot");
+        }
+
+        Replay replay = new Replay();
+        int records = 0;
+        int valid = buffer.position();
+        DataInputOutput input = new DataInputOutput();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int recordLength = buffer.getInt();
+            int recordCrc = buffer.getInt();
+            if (recordLength <= 0 || recordLength > buffer.remaining()) {
+                break;
+            }
+            byte[] bytes = new byte[recordLength];
+            buffer.get(bytes);
+            crc.reset();
+            crc.update(bytes, 0, recordLength);
+            if ((int) crc.getValue() != recordCrc) {
+                break;
+            }
+            input.reset(bytes);
+            try {
+                replay.apply(input);
+            } catch (ClassNotFoundException e) {
+                raf.close();
+                throw new IOException(e);
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+            valid = buffer.position();
+            records++;
+        }
+
+        //Drop the torn tail
+        boolean truncated = valid < length;
+        if (truncated) {
+            fileChannel.truncate(valid);
+            fileChannel.force(false);
+        }
+        fileChannel.position(valid);
+        file = raf;
+        channel = fileChannel;
+        size = valid;
+        return records > 0 || truncated;
+    }
+
+    private class Replay {
+
+        private final Int2ObjectMap<GraphViewImpl> viewMap;
+
+        public Replay() {
+            viewMap = new Int2ObjectOpenHashMap<GraphViewImpl>();
+            GraphViewStore viewStore = store.viewStore;
+            for (int i = 0; i < viewStore.length; i++) {
+                if (viewStore.views[i] != null) {
+                    viewMap.put(i, viewStore.views[i]);
+                }
+            }
+        }
+
+        public void apply(DataInputOutput in) throws IOException, ClassNotFoundException {
+            byte type = in.readByte();
+            switch (type) {
+                case NODE_ADDED: {
+                    NodeImpl node = (NodeImpl) store.factory.newNode(read(in));
+                    readAttributes(in, node);
+                    NodePropertiesImpl properties = (NodePropertiesImpl) read(in);
+                    if (properties != null && node.properties != null) {
+                        node.setNodeProperties(properties);
+                    }
+                    if (!store.addNode(node)) {
+                        throw new IOException("The node already exists: " + node.id);
+                    }
+                    break;
+                }
+                case NODE_REMOVED:
+                    store.removeNode(getNode(read(in)));
+                    break;
+                case EDGE_ADDED: {
+                    Object id = read(in);
+                    NodeImpl source = getNode(read(in));
+                    NodeImpl target = getNode(read(in));
+                    int edgeType = (Integer) read(in);
+                    double weight = (Double) read(in);
+                    boolean directed = (Boolean) read(in);
+                    EdgeImpl edge = (EdgeImpl) store.factory.newEdge(id, source, target, edgeType, weight, directed);
+                    readAttributes(in, edge);
+                    EdgePropertiesImpl properties = (EdgePropertiesImpl) read(in);
+                    if (properties != null && edge.properties != null) {
+                        edge.setEdgeProperties(properties);
+                    }
+                    if (!store.addEdge(edge)) {
+                        throw new IOException("The edge already exists: " + id);
+                    }
+                    break;
+                }
+                case EDGE_REMOVED:
+                    store.removeEdge(getEdge(read(in)));
+                    break;
+                case ATTRIBUTE_SET: {
+                    ElementImpl element = readElement(in);
+                    ColumnImpl column = getColumn(element.getColumnStore(), read(in));
+                    Object value = readValue(in);
+                    if (value instanceof TimestampedValue) {
+                        element.removeAttribute(column);
+                        setTimestampedValue(element, column, (TimestampedValue) value);
+                    } else {
+                        element.setAttribute(column, value);
+                    }
+                    break;
+                }
+                case ATTRIBUTE_REMOVED: {
+                    ElementImpl element = readElement(in);
+                    element.removeAttribute(getColumn(element.getColumnStore(), read(in)));
+                    break;
+                }
+                case TIMESTAMP_ATTRIBUTE_SET: {
+                    ElementImpl element = readElement(in);
+                    ColumnImpl column = getColumn(element.getColumnStore(), read(in));
+                    Object value = read(in);
+                    element.setAttribute(column, value, (Double) read(in));
+                    break;
+                }
+                case LABEL_SET: {
+                    ElementImpl element = readElement(in);
+                    element.setLabel((String) read(in));
+                    break;
+                }
+                case ATTRIBUTES_CLEARED: {
+                    //Edge removals clear the attributes after the removal record
+                    byte kind = (Byte) read(in);
+                    Object id = read(in);
+                    ElementImpl element = kind == KIND_NODE ? store.getNode(id) : store.getEdge(id);
+                    if (element != null) {
+                        element.clearAttributes();
+                    }
+                    break;
+                }
+                case ELEMENT_TIMESTAMP_ADDED: {
+                    ElementImpl element = readElement(in);
+                    element.addTimestamp((Double) read(in));
+                    break;
+                }
+                case ELEMENT_TIMESTAMP_REMOVED: {
+                    ElementImpl element = readElement(in);
+                    element.removeTimestamp((Double) read(in));
+                    break;
+                }
+                case COLUMN_ADDED: {
+                    ColumnStore columnStore = getColumnStore((Byte) read(in));
+                    String id = (String) read(in);
+                    String title = (String) read(in);
+                    Origin origin = (Origin) read(in);
+                    Class typeClass = (Class) read(in);
+                    Object defaultValue = read(in);
+                    boolean indexed = (Boolean) read(in);
+                    columnStore.addColumn(new ColumnImpl(id, typeClass, title, defaultValue, origin, indexed));
+                    break;
+                }
+                case COLUMN_REMOVED: {
+                    ColumnStore columnStore = getColumnStore((Byte) read(in));
+                    columnStore.removeColumn(getColumn(columnStore, read(in)));
+                    break;
+                }
+                case EDGE_TYPE_ADDED:
+                    store.edgeTypeStore.addType(read(in));
+                    break;
+                case EDGE_TYPE_REMOVED:
+                    store.edgeTypeStore.removeType(read(in));
+                    break;
+                case CLEARED:
+                    store.clear();
+                    break;
+                case EDGES_CLEARED:
+                    store.clearEdges();
+                    break;
+                case TIMESTAMPS_COMPACTED:
+                    store.timestampStore.compact();
+                    break;
+                case TIMESTAMP_EVICTED:
+                    store.timestampStore.evictTimestamp((Double) read(in));
+                    break;
+                case RETENTION_CHANGED:
+                    store.timestampStore.setRetentionWindow((Double) read(in));
+                    store.timestampStore.setRetentionCount((Integer) read(in));
+                    break;
+                case VIEW_CREATED: {
+                    int id = (Integer) read(in);
+                    boolean nodesOnly = (Boolean) read(in);
+                    int sourceId = (Integer) read(in);
+                    GraphViewImpl view;
+                    if (sourceId != GraphViewStore.NULL_VIEW) {
+                        view = store.viewStore.createView(getView(sourceId));
+                    } else if (nodesOnly) {
+                        view = store.viewStore.createNodeView();
+                    } else {
+                        view = store.viewStore.createView();
+                    }
+                    viewMap.put(id, view);
+                    break;
+                }
+                case VIEW_DESTROYED: {
+                    int id = (Integer) read(in);
+                    GraphViewImpl view = getView(id);
+                    viewMap.remove(id);
+                    store.viewStore.destroyView(view);
+                    break;
+                }
+                case VIEW_NODE_ADDED: {
+                    GraphViewImpl view = getView((Integer) read(in));
+                    view.addNode(getNode(read(in)));
+                    break;
+                }
+                case VIEW_NODE_REMOVED: {
+                    //View removals done by store removals are already applied
+                    GraphViewImpl view = getView((Integer) read(in));
+                    NodeImpl node = store.getNode(read(in));
+                    if (node != null) {
+                        view.removeNode(node);
+                    }
+                    break;
+                }
+                case VIEW_EDGE_ADDED: {
+                    GraphViewImpl view = getView((Integer) read(in));
+                    view.addEdge(getEdge(read(in)));
+                    break;
+                }
+                case VIEW_EDGE_REMOVED: {
+                    GraphViewImpl view = getView((Integer) read(in));
+                    EdgeImpl edge = store.getEdge(read(in));
+                    if (edge != null) {
+                        view.removeEdge(edge);
+                    }
+                    break;
+                }
+                case VIEW_CLEARED:
+                    getView((Integer) read(in)).clear();
+                    break;
+                case VIEW_EDGES_CLEARED:
+                    getView((Integer) read(in)).clearEdges();
+                    break;
+                case VIEW_FILLED:
+                    getView((Integer) read(in)).fill();
+                    break;
+                default:
+                    throw new IOException("Unknown journal record " + type);
+            }
+        }
+
+        private Object read(DataInputOutput in) throws IOException, ClassNotFoundException {
+            return serialization.deserialize(in);
+        }
+
+        private void readAttributes(DataInputOutput in, ElementImpl element) throws IOException, ClassNotFoundException {
+            int length = (Integer) read(in);
+            Object[] values = new Object[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = readValue(in);
+            }
+            Object[] attributes = new Object[length];
+            for (int i = 0; i < length; i++) {
+                if (!(values[i] instanceof TimestampedValue)) {
+                    attributes[i] = values[i];
+                }
+            }
+            element.attributes = attributes;
+            for (int i = 0; i < length; i++) {
+                if (values[i] instanceof TimestampedValue) {
+                    ColumnImpl column = (ColumnImpl) element.getColumnStore().getColumnByIndex(i);
+                    setTimestampedValue(element, column, (TimestampedValue) values[i]);
+                }
+            }
+        }
+
+        private Object readValue(DataInputOutput in) throws IOException, ClassNotFoundException {
+            byte kind = in.readByte();
+            if (kind == VALUE_PLAIN) {
+                return read(in);
+            }
+            double[] timestamps = (double[]) read(in);
+            Object[] values = kind == VALUE_TIMESTAMP_VALUE_SET ? (Object[]) read(in) : null;
+            return new TimestampedValue(timestamps, values);
+        }
+
+        private void setTimestampedValue(ElementImpl element, ColumnImpl column, TimestampedValue value) {
+            TimestampStore timestampStore = store.timestampStore;
+            for (int i = 0; i < value.timestamps.length; i++) {
+                if (value.values == null) {
+                    element.addTimestamp(timestampStore, value.timestamps[i]);
+                } else if (column != null) {
+                    element.setAttribute(timestampStore, column, value.values[i], value.timestamps[i]);
+                }
+            }
+        }
+
+        private ElementImpl readElement(DataInputOutput in) throws IOException, ClassNotFoundException {
+            byte kind = (Byte) read(in);
+            Object id = read(in);
+            return kind == KIND_NODE ? getNode(id) : getEdge(id);
+        }
+
+        private NodeImpl getNode(Object id) throws IOException {
+            NodeImpl node = store.getNode(id);
+            if (node == null) {
+                throw new IOException("The journal refers to a missing node: " + id);
+            }
+            return node;
+        }
+
+        private EdgeImpl getEdge(Object id) throws IOException {
+            EdgeImpl edge = store.getEdge(id);
+            if (edge == null) {
+                throw new IOException("The journal refers to a missing edge: " + id);
+            }
+            return edge;
+        }
+
+        private ColumnStore getColumnStore(byte kind) {
+            return kind == KIND_NODE ? store.nodeColumnStore : store.edgeColumnStore;
+        }
+
+        private ColumnImpl getColumn(ColumnStore columnStore, Object id) throws IOException {
+            if (!columnStore.hasColumn((String) id)) {
+                throw new IOException("The journal refers to a missing column: " + id);
+            }
+            return (ColumnImpl) columnStore.getColumn((String) id);
+        }
+
+        private GraphViewImpl getView(int id) throws IOException {
+            GraphViewImpl view = viewMap.get(id);
+            if (view == null) {
+                throw new IOException("The journal refers to a missing view: " + id);
+            }
+            return view;
+        }
+    }
+
+    private static class TimestampedValue {
+
+        private final double[] timestamps;
+        private final Object[] values;
+
+        public TimestampedValue(double[] timestamps, Object[] values) {
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+    }
+
+    //Files
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        File tempFile = new File(directory, FILE_PREFIX + snapshotGeneration + SNAPSHOT_EXTENSION + TEMP_EXTENSION);
+        RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+        try {
+            raf.setLength(0);
+            new ColumnarSerialization(store).write(raf.getChannel());
+            raf.getChannel().force(true);
+        } finally {
+            raf.close();
+        }
+        File snapshotFile = getSnapshotFile(snapshotGeneration);
+        if (snapshotFile.exists() && !snapshotFile.delete()) {
+            throw new IOException("The snapshot can't be replaced: " + snapshotFile);
+        }
+        if (!tempFile.renameTo(snapshotFile)) {
+            throw new IOException("The snapshot can't be renamed: " + snapshotFile);
+        }
+    }
+
+    private void createJournal(long journalGeneration) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(getJournalFile(journalGeneration), "rw");
+        raf.setLength(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putLong(journalGeneration);
+        header.flip();
+        FileChannel fileChannel = raf.getChannel();
+        while (header.hasRemaining()) {
+            fileChannel.write(header);
+        }
+        fileChannel.force(true);
+        file = raf;
+        channel = fileChannel;
+        size = HEADER_SIZE;
+    }
+
+    private long findLastGeneration() {
+        long last = -1;
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                long fileGeneration = parseGeneration(name, SNAPSHOT_EXTENSION);
+                if (fileGeneration > last) {
+                    last = fileGeneration;
+                }
+            }
+        }
+        return last;
+    }
+
+    private void deleteStaleFiles() {
+        String[] names = directory.list();
+        if (names != null) {
+            long current = generation;
+            for (String name : names) {
+                if (name.startsWith(FILE_PREFIX) && name.endsWith(TEMP_EXTENSION)) {
+                    new File(directory, name).delete();
+                    continue;
+                }
+                long fileGeneration = parseGeneration(name, SNAPSHOT_EXTENSION);
+                if (fileGeneration < 0) {
+                    fileGeneration = parseGeneration(name, JOURNAL_EXTENSION);
+                }
+                if (fileGeneration >= 0 && fileGeneration < current) {
+                    new File(directory, name).delete();
+                }
+            }
+        }
+    }
+
+    private static long parseGeneration(String name, String extension) {
+        if (name.startsWith(FILE_PREFIX) && name.endsWith(extension)) {
+            try {
+                return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - extension.length()));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private File getSnapshotFile(long fileGeneration) {
+        return new File(directory, FILE_PREFIX + fileGeneration + SNAPSHOT_EXTENSION);
+    }
+
+    private File getJournalFile(long fileGeneration) {
+        return new File(directory, FILE_PREFIX + fileGeneration + JOURNAL_EXTENSION);
+    }
+
+    private byte getKind(ColumnStore columnStore) {
+        return columnStore == store.nodeColumnStore ? KIND_NODE : KIND_EDGE;
+    }
+
+    private void checkOpen() {
+        if (channel == null) {
+            throw new RuntimeException("The journal is not open");
+        }
+    }
+}
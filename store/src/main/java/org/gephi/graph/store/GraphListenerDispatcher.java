@@ -0,0 +1,243 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphDiff;
+import org.gephi.graph.api.GraphListener;
+
+/**
+ * Pushes coalesced graph diffs to listeners from a dedicated thread.
+ * <p>
+ * Each observed graph gets its own diff observer. Releasing the write lock
+ * schedules a dispatch after the interval, which batches the writes made in
+ * the meantime. Only one dispatch is pending at a time and a slow listener
+ * delays the next batch instead of queuing them. Nothing runs while the graph
+ * isn't written to. Listener failures are logged and don't stop the dispatch.
+ *
+ * @author mbastian
+ */
+public class GraphListenerDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(GraphListenerDispatcher.class.getName());
+    protected final GraphModelImpl graphModel;
+    protected final List<Registration> registrations;
+    protected final AtomicBoolean pending;
+    protected final Runnable writeReleased;
+    protected volatile long interval;
+    protected volatile ScheduledExecutorService executor;
+
+    public GraphListenerDispatcher(GraphModelImpl graphModel) {
+        this.graphModel = graphModel;
+        this.registrations = new CopyOnWriteArrayList<Registration>();
+        this.pending = new AtomicBoolean();
+        this.interval = GraphStoreConfiguration.LISTENER_DEFAULT_INTERVAL;
+        this.writeReleased = new Runnable() {
+            @Override
+            public void run() {
+                signal();
+            }
+        };
+    }
+
+    public synchronized void addListener(Graph graph, GraphListener listener) {
+        if (graph == null || listener == null) {
+            throw new NullPointerException();
+        }
+        Registration registration = getRegistration(graph);
+        if (registration == null) {
+            GraphObserverImpl observer = (GraphObserverImpl) graphModel.getGraphObserver(graph, true);
+            if (observer == null) {
+                throw new RuntimeException("Observers are not enabled in this store");
+            }
+            registration = new Registration(graph, observer);
+            registrations.add(registration);
+        }
+        registration.listeners.addIfAbsent(listener);
+        start();
+        //Delivers what the new observer already reports
+        signal();
+    }
+
+    public synchronized boolean removeListener(GraphListener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        boolean removed = false;
+        for (Registration registration : registrations) {
+            if (registration.listeners.remove(listener)) {
+                removed = true;
+                if (registration.listeners.isEmpty()) {
+                    registrations.remove(registration);
+                    destroyObserver(registration.observer);
+                }
+            }
+        }
+        if (registrations.isEmpty()) {
+            stop();
+        }
+        return removed;
+    }
+
+    public synchronized void dispose() {
+        stop();
+        for (Registration registration : registrations) {
+            if (!registration.observer.isDestroyed()) {
+                graphModel.destroyGraphObserver(registration.observer);
+            }
+        }
+        registrations.clear();
+    }
+
+    public synchronized void setInterval(long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval should be strictly positive");
+        }
+        this.interval = interval;
+    }
+
+    public synchronized long getInterval() {
+        return interval;
+    }
+
+    public int getListenerCount() {
+        int count = 0;
+        for (Registration registration : registrations) {
+            count += registration.listeners.size();
+        }
+        return count;
+    }
+
+    /**
+     * Schedules a dispatch after the interval, unless one is already pending.
+     * Called by writers after they release the write lock, so it doesn't take
+     * this monitor, the writer may still hold a read lock.
+     */
+    protected void signal() {
+        if (pending.compareAndSet(false, true)) {
+            ScheduledExecutorService current = executor;
+            try {
+                if (current != null) {
+                    current.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            //Writes released from here on schedule the next batch
+                            pending.set(false);
+                            dispatch();
+                        }
+                    }, interval, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            } catch (RejectedExecutionException e) {
+                //Stopped meanwhile
+            }
+            pending.set(false);
+        }
+    }
+
+    protected void dispatch() {
+        for (Registration registration : registrations) {
+            GraphObserverImpl observer = registration.observer;
+            GraphDiff diff;
+            try {
+                if (observer.isDestroyed() || !observer.hasGraphChanged()) {
+                    continue;
+                }
+                diff = observer.getDiff();
+            } catch (RuntimeException e) {
+                if (!observer.isDestroyed()) {
+                    LOGGER.log(Level.WARNING, "Failed to read the changes of " + registration.graph, e);
+                }
+                //Destroyed while dispatching
+                continue;
+            }
+            for (GraphListener listener : registration.listeners) {
+                try {
+                    listener.graphChanged(diff);
+                } catch (RuntimeException e) {
+                    //Other listeners still get the diff
+                    LOGGER.log(Level.WARNING, "Graph listener " + listener + " failed", e);
+                }
+            }
+        }
+    }
+
+    private Registration getRegistration(Graph graph) {
+        for (Registration registration : registrations) {
+            if (registration.graph == graph) {
+                return registration;
+            }
+        }
+        return null;
+    }
+
+    private void destroyObserver(final GraphObserverImpl observer) {
+        //Destroyed on the dispatch thread so it's never refreshed concurrently
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!observer.isDestroyed()) {
+                    graphModel.destroyGraphObserver(observer);
+                }
+            }
+        });
+    }
+
+    private void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "GraphListenerDispatcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            graphModel.store.lock.setWriteReleaseListener(writeReleased);
+        }
+    }
+
+    private void stop() {
+        if (executor != null) {
+            graphModel.store.lock.setWriteReleaseListener(null);
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    protected static class Registration {
+
+        protected final Graph graph;
+        protected final GraphObserverImpl observer;
+        protected final CopyOnWriteArrayList<GraphListener> listeners;
+
+        public Registration(Graph graph, GraphObserverImpl observer) {
+            this.graph = graph;
+            this.observer = observer;
+            this.listeners = new CopyOnWriteArrayList<GraphListener>();
+        }
+    }
+}
@@ -15,6 +15,14 @@
  */
 package org.gephi.graph.store;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -25,26 +33,94 @@ import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
  */
 public class GraphLock {
 
+    //Optimistic read retries
+    protected static final int BACKOFF_YIELDS = 16;
+    protected static final long BACKOFF_MIN_PARK_NANOS = 1000l;
+    protected static final long BACKOFF_MAX_PARK_NANOS = 1000000l;
     protected final ReentrantReadWriteLock readWriteLock;
     protected final ReadLock readLock;
     protected final WriteLock writeLock;
+    //Even when unlocked, odd while a writer holds the lock
+    protected volatile long writeStamp;
+    //Single writer mode, readers never block and the writer only publishes stamps
+    protected final boolean singleWriter;
+    protected final AtomicReference<Thread> writer;
+    protected final Set<Thread> internalWriters;
+    protected int writeHoldCount;
+    //Single writer mode, the writer's appends are published here instead of volatile store fields
+    protected volatile int publication;
+    //Concurrent write mode, edges can be added from several threads
+    protected volatile Thread concurrentWriter;
+    protected final ReentrantReadWriteLock concurrentWriteLock;
+    protected final Set<Thread> concurrentLoaders;
+    //Notified once the outermost write lock is released
+    protected volatile Runnable writeReleaseListener;
+    //Iterators holding a read lock, per thread
+    protected final ThreadLocal<List<IteratorHold>> iteratorHolds;
+    protected final Set<IteratorHold> openIterators;
+    protected volatile boolean leakDetection;
 
     public GraphLock() {
+        this(false);
+    }
+
+    public GraphLock(boolean singleWriter) {
+        this.singleWriter = singleWriter;
         readWriteLock = new ReentrantReadWriteLock();
         readLock = readWriteLock.readLock();
         writeLock = readWriteLock.writeLock();
+        writer = new AtomicReference<Thread>();
+        internalWriters = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        concurrentWriteLock = new ReentrantReadWriteLock();
+        concurrentLoaders = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        iteratorHolds = new ThreadLocal<List<IteratorHold>>() {
+            @Override
+            protected List<IteratorHold> initialValue() {
+                return new ArrayList<IteratorHold>();
+            }
+        };
+        openIterators = Collections.newSetFromMap(new ConcurrentHashMap<IteratorHold, Boolean>());
+        leakDetection = GraphStoreConfiguration.ENABLE_ITERATOR_LEAK_DETECTION;
     }
 
     //Locking
     public void readLock() {
+        if (singleWriter) {
+            //Sees everything the writer published so far
+            int published = publication;
+            return;
+        }
+        if (concurrentReadLock()) {
+            return;
+        }
         readLock.lock();
     }
 
     public void readUnlock() {
+        if (singleWriter) {
+            return;
+        }
+        if (concurrentWriteLock.getReadHoldCount() > 0) {
+            concurrentWriteLock.readLock().unlock();
+            return;
+        }
         readLock.unlock();
     }
 
     public void readUnlockAll() {
+        List<IteratorHold> holds = iteratorHolds.get();
+        for (IteratorHold hold : holds) {
+            hold.open = false;
+            openIterators.remove(hold);
+        }
+        holds.clear();
+        if (singleWriter) {
+            return;
+        }
+        final int nConcurrentLocks = concurrentWriteLock.getReadHoldCount();
+        for (int n = 0; n < nConcurrentLocks; n++) {
+            concurrentWriteLock.readLock().unlock();
+        }
         final int nReadLocks = readWriteLock.getReadHoldCount();
         for (int n = 0; n < nReadLocks; n++) {
             readLock.unlock();
@@ -52,19 +128,376 @@ public class GraphLock {
     }
 
     public void writeLock() {
+        if (concurrentWriter != null) {
+            throw new IllegalMonitorStateException("Only edge additions are allowed in concurrent write mode, call endConcurrentWrite() first");
+        }
+        if (singleWriter) {
+            Thread current = Thread.currentThread();
+            for (int retries = 0; writer.get() != current && !writer.compareAndSet(null, current); retries++) {
+                //Readers only hold it for short internal writes, wait for them
+                Thread owner = writer.get();
+                if (owner != null && !internalWriters.contains(owner)) {
+                    throw new IllegalMonitorStateException("Another thread is already writing, only one writer is allowed in single writer mode");
+                }
+                backoff(retries);
+            }
+            if (writeHoldCount++ == 0) {
+                writeStamp++;
+            }
+            return;
+        }
         if (readWriteLock.getReadHoldCount() > 0 && !readWriteLock.isWriteLockedByCurrentThread()) {
-            throw new IllegalMonitorStateException("Impossible to acquire a write lock when currently holding a read lock. Use toArray() methods on NodeIterable and EdgeIterable to avoid holding a readLock or wrap your loop with a write lock.");
+            IllegalMonitorStateException e = new IllegalMonitorStateException("Impossible to acquire a write lock when currently holding a read lock. Use toArray() methods on NodeIterable and EdgeIterable to avoid holding a readLock or wrap your loop with a write lock." + getOpenIteratorsMessage());
+            List<IteratorHold> holds = iteratorHolds.get();
+            if (!holds.isEmpty() && holds.get(holds.size() - 1).creation != null) {
+                e.initCause(holds.get(holds.size() - 1).creation);
+            }
+            throw e;
         }
         writeLock.lock();
+        if (readWriteLock.getWriteHoldCount() == 1) {
+            writeStamp++;
+        }
     }
 
     public void writeUnlock() {
+        if (singleWriter) {
+            if (writer.get() != Thread.currentThread()) {
+                throw new IllegalMonitorStateException("The current thread isn't the writer");
+            }
+            if (--writeHoldCount == 0) {
+                writeStamp++;
+                writer.set(null);
+                writeReleased();
+            }
+            return;
+        }
+        boolean last = readWriteLock.getWriteHoldCount() == 1;
+        if (last) {
+            writeStamp++;
+        }
         writeLock.unlock();
+        if (last) {
+            writeReleased();
+        }
+    }
+
+    /**
+     * Sets the callback run by a writer right after it releases the write
+     * lock, which graph listeners use to be notified of changes. Only one
+     * listener is supported, <code>null</code> removes it.
+     *
+     * @param listener callback, or null
+     */
+    public void setWriteReleaseListener(Runnable listener) {
+        writeReleaseListener = listener;
+    }
+
+    private void writeReleased() {
+        Runnable listener = writeReleaseListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Write lock for the short writes read operations make, such as creating
+     * an observer or a view index. In single writer mode, a reader waits for
+     * the writer to be done instead of failing and the writer waits for the
+     * reader in turn. Otherwise it's the same as <code>writeLock()</code>.
+     */
+    public void internalWriteLock() {
+        Thread current = Thread.currentThread();
+        if (!singleWriter || writer.get() == current) {
+            writeLock();
+            return;
+        }
+        internalWriters.add(current);
+        for (int retries = 0;; retries++) {
+            if (writer.get() == null) {
+                try {
+                    writeLock();
+                    return;
+                } catch (IllegalMonitorStateException e) {
+                    //Another thread took it first
+                }
+            }
+            backoff(retries);
+        }
+    }
+
+    public void internalWriteUnlock() {
+        writeUnlock();
+        Thread current = Thread.currentThread();
+        if (singleWriter && writer.get() != current) {
+            internalWriters.remove(current);
+        }
+    }
+
+    //Iterators
+    public IteratorHold lockIterator(Object owner) {
+        readLock();
+        IteratorHold hold = new IteratorHold(owner, leakDetection);
+        iteratorHolds.get().add(hold);
+        if (hold.creation != null) {
+            openIterators.add(hold);
+        }
+        return hold;
+    }
+
+    public void unlockIterator(IteratorHold hold) {
+        if (hold.open) {
+            if (hold.thread != Thread.currentThread()) {
+                throw new IllegalMonitorStateException("The iterator has been created by another thread");
+            }
+            hold.open = false;
+            iteratorHolds.get().remove(hold);
+            openIterators.remove(hold);
+            readUnlock();
+        }
+    }
+
+    public void unlockLastIterator(Object owner) {
+        List<IteratorHold> holds = iteratorHolds.get();
+        for (int i = holds.size() - 1; i >= 0; i--) {
+            IteratorHold hold = holds.get(i);
+            if (hold.owner == owner) {
+                unlockIterator(hold);
+                return;
+            }
+        }
+    }
+
+    public int getIteratorHoldCount() {
+        return iteratorHolds.get().size();
+    }
+
+    public List<IteratorHold> getOpenIterators() {
+        return new ArrayList<IteratorHold>(openIterators);
+    }
+
+    public void setIteratorLeakDetection(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+    }
+
+    private String getOpenIteratorsMessage() {
+        int count = iteratorHolds.get().size();
+        if (count == 0) {
+            return "";
+        }
+        return " " + count + " iterator(s) haven't been fully consumed or closed" + (leakDetection ? ", see the cause for where the last one was created." : ", enable the iterator leak detection to find where they were created.");
+    }
+
+    //Concurrent write mode
+    public void beginConcurrentWrite() {
+        if (singleWriter) {
+            throw new UnsupportedOperationException("The concurrent write mode isn't supported in single writer mode");
+        }
+        writeLock();
+        concurrentWriter = Thread.currentThread();
+    }
+
+    public void endConcurrentWrite() {
+        if (concurrentWriter != Thread.currentThread()) {
+            throw new IllegalMonitorStateException("The current thread didn't begin the concurrent write mode");
+        }
+        //Wait for in-flight additions and reads
+        concurrentWriteLock.writeLock().lock();
+        try {
+            concurrentWriter = null;
+            concurrentLoaders.clear();
+        } finally {
+            concurrentWriteLock.writeLock().unlock();
+        }
+        writeUnlock();
+    }
+
+    public void joinConcurrentWrite() {
+        if (concurrentWriter == null) {
+            throw new IllegalMonitorStateException("The concurrent write mode hasn't begun");
+        }
+        if (concurrentWriter != Thread.currentThread()) {
+            concurrentLoaders.add(Thread.currentThread());
+        }
+    }
+
+    public void leaveConcurrentWrite() {
+        concurrentLoaders.remove(Thread.currentThread());
+    }
+
+    public boolean isConcurrentWrite() {
+        return concurrentWriter != null;
+    }
+
+    public boolean isConcurrentWriting() {
+        Thread current = Thread.currentThread();
+        return concurrentWriter != null && (concurrentWriter == current || concurrentLoaders.contains(current));
+    }
+
+    //Loaders read without the global lock, so only lookups guarded by the edge store monitors are allowed
+    public void checkNotConcurrentWriting() {
+        if (isConcurrentWriting()) {
+            throw new IllegalMonitorStateException("Edges can only be looked up by id or endpoints in the concurrent write mode");
+        }
+    }
+
+    public boolean concurrentWriteLock() {
+        Thread current = Thread.currentThread();
+        if (concurrentWriter != current && !concurrentLoaders.contains(current)) {
+            return false;
+        }
+        return concurrentLock();
+    }
+
+    public void concurrentWriteUnlock() {
+        concurrentWriteLock.readLock().unlock();
+    }
+
+    //Only loaders read without the global lock, the owner already holds it
+    private boolean concurrentReadLock() {
+        if (concurrentWriter == null || !concurrentLoaders.contains(Thread.currentThread())) {
+            return false;
+        }
+        return concurrentLock();
+    }
+
+    private boolean concurrentLock() {
+        concurrentWriteLock.readLock().lock();
+        if (concurrentWriter == null) {
+            concurrentWriteLock.readLock().unlock();
+            return false;
+        }
+        return true;
+    }
+
+    //Optimistic reads
+    public long tryOptimisticRead() {
+        if (concurrentWriter != null) {
+            return -1;
+        }
+        long stamp = writeStamp;
+        return (stamp & 1) == 0 || isWriteLockedByCurrentThread() ? stamp : -1;
+    }
+
+    public boolean validate(long stamp) {
+        if (stamp == -1) {
+            return false;
+        }
+        //Java 6 has no load fence, the volatile store keeps the optimistic reads before the stamp is read again
+        FENCES.get().value = 0;
+        return stamp == writeStamp;
+    }
+
+    /**
+     * Waits before retrying a failed optimistic read, so readers don't spin
+     * on a writer. The first retries yield, later ones park the thread for an
+     * exponentially growing delay, capped at one millisecond.
+     *
+     * @param retries number of failed reads so far
+     */
+    public static void backoff(int retries) {
+        long nanos = backoffNanos(retries);
+        if (nanos == 0) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    //Park delay after the given number of retries, zero when only yielding
+    static long backoffNanos(int retries) {
+        if (retries < BACKOFF_YIELDS) {
+            return 0;
+        }
+        int shift = Math.min(retries - BACKOFF_YIELDS, 10);
+        return Math.min(BACKOFF_MIN_PARK_NANOS << shift, BACKOFF_MAX_PARK_NANOS);
+    }
+
+    /**
+     * Publishes the writer's stores made so far to lock-free readers. Only
+     * single writer mode needs it, the stores call it after filling a slot and
+     * before raising the sizes readers bound their reads with.
+     */
+    public void publish() {
+        if (singleWriter) {
+            publication++;
+        }
+    }
+
+    public boolean isWriteLockedByCurrentThread() {
+        if (singleWriter) {
+            return writer.get() == Thread.currentThread();
+        }
+        return readWriteLock.isWriteLockedByCurrentThread();
+    }
+
+    //Statistics, only available on instrumented locks
+    public LockStatisticsImpl getStatistics() {
+        return null;
     }
 
     public void checkHoldWriteLock() {
-        if (!readWriteLock.isWriteLockedByCurrentThread()) {
+        if (!isWriteLockedByCurrentThread()) {
             throw new IllegalArgumentException("Impossible to perform a write operation while holding only a read lock. Wrap your code with a write loop to solve this.");
         }
     }
+
+    public static IteratorHold getIteratorHold(Iterator<?> iterator) {
+        return iterator instanceof HoldingIterator ? ((HoldingIterator) iterator).getIteratorHold() : null;
+    }
+
+    /**
+     * Iterator holding a read lock until it's consumed, which it hands to the
+     * iterable wrapping it.
+     */
+    public interface HoldingIterator {
+
+        public IteratorHold getIteratorHold();
+    }
+
+    //Per thread so readers don't contend on the fence's cache line
+    private static final ThreadLocal<Fence> FENCES = new ThreadLocal<Fence>() {
+        @Override
+        protected Fence initialValue() {
+            return new Fence();
+        }
+    };
+
+    private static final class Fence {
+
+        private volatile int value;
+    }
+
+    public static final class IteratorHold {
+
+        protected final Thread thread;
+        protected final long creationTime;
+        protected final Throwable creation;
+        protected Object owner;
+        protected boolean open;
+
+        public IteratorHold(Object owner, boolean trackCreation) {
+            this.owner = owner;
+            this.thread = Thread.currentThread();
+            this.creationTime = System.currentTimeMillis();
+            this.creation = trackCreation ? new Throwable("Iterator created by " + thread.getName()) : null;
+            this.open = true;
+        }
+
+        public String getThreadName() {
+            return thread.getName();
+        }
+
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        public StackTraceElement[] getCreationStackTrace() {
+            return creation != null ? creation.getStackTrace() : null;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+    }
 }
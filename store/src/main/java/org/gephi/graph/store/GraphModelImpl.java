@@ -15,6 +15,8 @@
  */
 package org.gephi.graph.store;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.ObjectName;
 import org.gephi.attribute.api.Index;
 import org.gephi.attribute.api.Table;
 import org.gephi.attribute.api.TimestampIndex;
@@ -24,8 +26,10 @@ import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphFactory;
 import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphListener;
 import org.gephi.graph.api.GraphObserver;
 import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.LockStatistics;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.Subgraph;
 import org.gephi.graph.api.UndirectedGraph;
@@ -40,11 +44,39 @@ public class GraphModelImpl implements GraphModel {
     protected final GraphStore store;
     protected final TableImpl<Node> nodeTable;
     protected final TableImpl<Edge> edgeTable;
+    protected final GraphListenerDispatcher listenerDispatcher;
+    //Last snapshot, reused while the graph is unchanged
+    protected volatile Snapshot lastSnapshot;
+    //Lock statistics MBean, unregistered on dispose
+    protected static final AtomicInteger MODEL_IDS = new AtomicInteger();
+    protected ObjectName lockStatisticsName;
 
     public GraphModelImpl() {
-        store = new GraphStore();
+        this(GraphStoreConfiguration.ENABLE_SINGLE_WRITER);
+    }
+
+    public GraphModelImpl(boolean singleWriter) {
+        this(GraphStoreConfiguration.ENABLE_LOCK_STATISTICS ? new InstrumentedGraphLock(singleWriter) : new GraphLock(singleWriter));
+    }
+
+    protected GraphModelImpl(GraphLock lock) {
+        store = new GraphStore(this, lock, null);
         nodeTable = new TableImpl<Node>(store.nodeColumnStore);
         edgeTable = new TableImpl<Edge>(store.edgeColumnStore);
+        listenerDispatcher = new GraphListenerDispatcher(this);
+        LockStatisticsImpl lockStatistics = store.lock.getStatistics();
+        if (lockStatistics != null) {
+            lockStatisticsName = lockStatistics.registerMBean("GraphModel-" + MODEL_IDS.incrementAndGet());
+        }
+    }
+
+    @Override
+    public synchronized void dispose() {
+        listenerDispatcher.dispose();
+        if (lockStatisticsName != null) {
+            store.lock.getStatistics().unregisterMBean(lockStatisticsName);
+            lockStatisticsName = null;
+        }
     }
 
     @Override
@@ -82,6 +114,29 @@ public class GraphModelImpl implements GraphModel {
         return store.viewStore.getUndirectedGraph(view);
     }
 
+    @Override
+    public LockStatistics getLockStatistics() {
+        return store.lock.getStatistics();
+    }
+
+    @Override
+    public Graph snapshot() {
+        //The stamp is read within the validated copy, so it matches it
+        Snapshot snapshot = store.longRead(new GraphStore.Read<Snapshot>() {
+            @Override
+            public Snapshot read() {
+                GraphVersion version = store.version;
+                Snapshot last = lastSnapshot;
+                if (last != null && version != null && last.stamp == version.getStamp()) {
+                    return last;
+                }
+                return new Snapshot(version != null ? version.getStamp() : -1, store.snapshot());
+            }
+        });
+        lastSnapshot = snapshot;
+        return snapshot.graph;
+    }
+
     @Override
     public GraphView getVisibleView() {
         return store.viewStore.getVisibleView();
@@ -238,7 +293,7 @@ public class GraphModelImpl implements GraphModel {
 
     @Override
     public GraphObserver getGraphObserver(Graph graph, boolean withGraphDiff) {
-        store.autoWriteLock();
+        store.autoInternalWriteLock();
         try {
             if (graph.getView().isMainView()) {
                 return store.createGraphObserver(graph, withGraphDiff);
@@ -246,14 +301,14 @@ public class GraphModelImpl implements GraphModel {
                 return store.viewStore.createGraphObserver(graph, withGraphDiff);
             }
         } finally {
-            store.autoWriteUnlock();
+            store.autoInternalWriteUnlock();
         }
     }
 
     public void destroyGraphObserver(GraphObserver observer) {
         checkGraphObserver(observer);
 
-        store.autoWriteLock();
+        store.autoInternalWriteLock();
         try {
             if (observer.getGraph().getView().isMainView()) {
                 store.destroyGraphObserver((GraphObserverImpl) observer);
@@ -261,10 +316,25 @@ public class GraphModelImpl implements GraphModel {
                 store.viewStore.destroyGraphObserver((GraphObserverImpl) observer);
             }
         } finally {
-            store.autoWriteUnlock();
+            store.autoInternalWriteUnlock();
         }
     }
 
+    @Override
+    public void addGraphListener(Graph graph, GraphListener listener) {
+        listenerDispatcher.addListener(graph, listener);
+    }
+
+    @Override
+    public void removeGraphListener(GraphListener listener) {
+        listenerDispatcher.removeListener(listener);
+    }
+
+    @Override
+    public void setGraphListenerInterval(long interval) {
+        listenerDispatcher.setInterval(interval);
+    }
+
     private void checkGraphObserver(GraphObserver observer) {
         if (observer == null) {
             throw new NullPointerException();
@@ -276,4 +346,15 @@ public class GraphModelImpl implements GraphModel {
             throw new RuntimeException("The observer doesn't belong to this store");
         }
     }
+
+    protected static class Snapshot {
+
+        protected final long stamp;
+        protected final GraphStore graph;
+
+        public Snapshot(long stamp, GraphStore graph) {
+            this.stamp = stamp;
+            this.graph = graph;
+        }
+    }
 }
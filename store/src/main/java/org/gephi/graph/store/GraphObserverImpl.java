@@ -15,9 +15,16 @@
  */
 package org.gephi.graph.store;
 
+import cern.colt.bitvector.BitVector;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectList;
+import java.util.Arrays;
 import java.util.Collections;
+import org.gephi.attribute.api.Column;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.EdgeIterable;
 import org.gephi.graph.api.Graph;
@@ -39,9 +46,16 @@ public class GraphObserverImpl implements GraphObserver {
     //Config
     protected final boolean withDiff;
     //Version
-    protected int nodeVersion = Integer.MIN_VALUE;
-    protected int edgeVersion = Integer.MIN_VALUE;
+    protected long nodeVersion = Long.MIN_VALUE;
+    protected long edgeVersion = Long.MIN_VALUE;
+    protected long attributeVersion = Long.MIN_VALUE;
     protected boolean destroyed;
+    //Change log
+    protected long logPosition;
+    //Attribute changes
+    protected final Object changeLock = new Object();
+    protected ElementChanges nodeChanges;
+    protected ElementChanges edgeChanges;
     //Cache
     protected GraphDiffImpl graphDiff;
     protected NodeImpl[] nodeCache;
@@ -52,18 +66,33 @@ public class GraphObserverImpl implements GraphObserver {
         this.graphVersion = graphVersion;
         this.graph = graph;
         this.withDiff = withDiff;
+
+        if (withDiff && graphVersion != null) {
+            graphVersion.getChangeLog();
+        }
+        if (withDiff) {
+            nodeChanges = new ElementChanges();
+            edgeChanges = new ElementChanges();
+            if (store != null) {
+                store.diffObservers.incrementAndGet();
+            }
+        }
     }
 
     @Override
     public synchronized boolean hasGraphChanged() {
         checkNotDestroyed();
 
-        if (nodeVersion < graphVersion.nodeVersion || edgeVersion < graphVersion.edgeVersion) {
+        long currentNodeVersion = graphVersion.nodeVersion;
+        long currentEdgeVersion = graphVersion.edgeVersion;
+        long currentAttributeVersion = graphVersion.getAttributeVersion();
+        if (nodeVersion < currentNodeVersion || edgeVersion < currentEdgeVersion || attributeVersion < currentAttributeVersion) {
             if (withDiff) {
                 refreshDiff();
             }
-            nodeVersion = graphVersion.nodeVersion;
-            edgeVersion = graphVersion.edgeVersion;
+            nodeVersion = currentNodeVersion;
+            edgeVersion = currentEdgeVersion;
+            attributeVersion = currentAttributeVersion;
             return true;
         }
         return false;
@@ -93,82 +122,277 @@ public class GraphObserverImpl implements GraphObserver {
         try {
             graphDiff = new GraphDiffImpl();
 
-            if (nodeVersion < graphVersion.nodeVersion) {
-                int maxStoreId = graphStore.nodeStore.maxStoreId();
-                if (nodeCache == null) {
-                    nodeCache = new NodeImpl[maxStoreId];
-                    for (Node n : graph.getNodes()) {
-                        NodeImpl nImpl = (NodeImpl) n;
-                        nodeCache[nImpl.storeId] = nImpl;
-                        graphDiff.addedNodes.add(nImpl);
-                    }
+            GraphChangeLog changeLog = graphVersion.changeLog;
+            if (changeLog != null && nodeCache != null && edgeCache != null && changeLog.isAvailable(logPosition)) {
+                readChangeLog(changeLog);
+            } else {
+                rescan();
+            }
+            if (changeLog != null) {
+                logPosition = changeLog.sequence;
+            }
+            collectChangedAttributes();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    protected void elementChanged(ElementImpl element, Column column) {
+        if (nodeChanges != null) {
+            synchronized (changeLock) {
+                if (element instanceof NodeImpl) {
+                    nodeChanges.add(((NodeImpl) element).storeId, column);
                 } else {
-                    for (Node n : nodeCache) {
-                        NodeImpl nImpl = (NodeImpl) n;
-                        if (nImpl != null && !graph.contains(nImpl)) {
-                            graphDiff.removedNodes.add(nImpl);
+                    edgeChanges.add(((EdgeImpl) element).storeId, column);
+                }
+            }
+        }
+    }
+
+    private void collectChangedAttributes() {
+        ElementChanges nodes;
+        ElementChanges edges;
+        synchronized (changeLock) {
+            if (nodeChanges.isEmpty() && edgeChanges.isEmpty()) {
+                return;
+            }
+            nodes = nodeChanges;
+            edges = edgeChanges;
+            nodeChanges = new ElementChanges();
+            edgeChanges = new ElementChanges();
+        }
+        if (!nodes.isEmpty()) {
+            BitVector added = new BitVector(nodes.elements.size());
+            for (Node node : graphDiff.addedNodes) {
+                int storeId = ((NodeImpl) node).storeId;
+                if (storeId < added.size()) {
+                    added.set(storeId);
+                }
+            }
+            NodeStore nodeStore = graphStore.nodeStore;
+            for (int i = nodes.next(0); i != -1; i = nodes.next(i + 1)) {
+                if (!added.getQuick(i) && nodeStore.isValidIndex(i)) {
+                    NodeImpl node = nodeStore.get(i);
+                    if (node != null && graph.contains(node)) {
+                        graphDiff.changedNodes.add(node);
+                        for (Int2ObjectMap.Entry<BitVector> entry : nodes.columns.int2ObjectEntrySet()) {
+                            BitVector vector = entry.getValue();
+                            if (i < vector.size() && vector.getQuick(i)) {
+                                graphDiff.getChangedNodeList(entry.getIntKey()).add(node);
+                            }
                         }
                     }
-                    if (maxStoreId > nodeCache.length || maxStoreId < nodeCache.length) {
-                        NodeImpl[] newCache = new NodeImpl[maxStoreId];
-                        System.arraycopy(nodeCache, 0, newCache, 0, maxStoreId > nodeCache.length ? nodeCache.length : maxStoreId);
-                        nodeCache = newCache;
-                    }
-                    for (Node n : graph.getNodes()) {
-                        NodeImpl nImpl = (NodeImpl) n;
-                        int storeId = nImpl.storeId;
-                        NodeImpl cachedNode = nodeCache[storeId];
-                        if (cachedNode == null || cachedNode != nImpl) {
-                            graphDiff.addedNodes.add(nImpl);
-                            nodeCache[storeId] = nImpl;
+                }
+            }
+        }
+        if (!edges.isEmpty()) {
+            BitVector added = new BitVector(edges.elements.size());
+            for (Edge edge : graphDiff.addedEdges) {
+                int storeId = ((EdgeImpl) edge).storeId;
+                if (storeId < added.size()) {
+                    added.set(storeId);
+                }
+            }
+            EdgeStore edgeStore = graphStore.edgeStore;
+            for (int i = edges.next(0); i != -1; i = edges.next(i + 1)) {
+                if (!added.getQuick(i) && edgeStore.isValidIndex(i)) {
+                    EdgeImpl edge = edgeStore.get(i);
+                    if (edge != null && graph.contains(edge)) {
+                        graphDiff.changedEdges.add(edge);
+                        for (Int2ObjectMap.Entry<BitVector> entry : edges.columns.int2ObjectEntrySet()) {
+                            BitVector vector = entry.getValue();
+                            if (i < vector.size() && vector.getQuick(i)) {
+                                graphDiff.getChangedEdgeList(entry.getIntKey()).add(edge);
+                            }
                         }
                     }
                 }
             }
+        }
+    }
 
-            if (edgeVersion < graphVersion.edgeVersion) {
-                int maxStoreId = graphStore.edgeStore.maxStoreId();
-                if (edgeCache == null) {
-                    edgeCache = new EdgeImpl[maxStoreId];
-                    for (Edge e : graph.getEdges()) {
-                        EdgeImpl eImpl = (EdgeImpl) e;
-                        edgeCache[eImpl.storeId] = eImpl;
-                        graphDiff.addedEdges.add(eImpl);
-                    }
-                } else {
-                    for (Edge e : edgeCache) {
-                        EdgeImpl eImpl = (EdgeImpl) e;
-                        if (eImpl != null && !graph.contains(eImpl)) {
-                            graphDiff.removedEdges.add(eImpl);
-                        }
-                    }
-                    if (maxStoreId > edgeCache.length || maxStoreId < edgeCache.length) {
-                        EdgeImpl[] newCache = new EdgeImpl[maxStoreId];
-                        System.arraycopy(edgeCache, 0, newCache, 0, maxStoreId > edgeCache.length ? edgeCache.length : maxStoreId);
-                        edgeCache = newCache;
+    private void readChangeLog(GraphChangeLog changeLog) {
+        Object2IntLinkedOpenHashMap<NodeImpl> nodeChanges = new Object2IntLinkedOpenHashMap<NodeImpl>();
+        Object2IntLinkedOpenHashMap<EdgeImpl> edgeChanges = new Object2IntLinkedOpenHashMap<EdgeImpl>();
+        for (long position = logPosition; position < changeLog.sequence; position++) {
+            int index = changeLog.index(position);
+            int storeId = changeLog.storeIds[index];
+            switch (changeLog.types[index]) {
+                case GraphChangeLog.NODE_ADDED: {
+                    NodeImpl node = (NodeImpl) changeLog.elements[index];
+                    ensureNodeCacheSize(storeId);
+                    nodeCache[storeId] = node;
+                    nodeChanges.put(node, nodeChanges.getInt(node) + 1);
+                    break;
+                }
+                case GraphChangeLog.NODE_REMOVED: {
+                    NodeImpl node = (NodeImpl) changeLog.elements[index];
+                    if (storeId < nodeCache.length && nodeCache[storeId] == node) {
+                        nodeCache[storeId] = null;
                     }
-                    for (Edge e : graph.getEdges()) {
-                        EdgeImpl eImpl = (EdgeImpl) e;
-                        int storeId = eImpl.storeId;
-                        EdgeImpl cachedEdge = edgeCache[storeId];
-                        if (cachedEdge == null || cachedEdge != eImpl) {
-                            graphDiff.addedEdges.add(eImpl);
-                            edgeCache[storeId] = eImpl;
-                        }
+                    nodeChanges.put(node, nodeChanges.getInt(node) - 1);
+                    break;
+                }
+                case GraphChangeLog.EDGE_ADDED: {
+                    EdgeImpl edge = (EdgeImpl) changeLog.elements[index];
+                    ensureEdgeCacheSize(storeId);
+                    edgeCache[storeId] = edge;
+                    edgeChanges.put(edge, edgeChanges.getInt(edge) + 1);
+                    break;
+                }
+                case GraphChangeLog.EDGE_REMOVED: {
+                    EdgeImpl edge = (EdgeImpl) changeLog.elements[index];
+                    if (storeId < edgeCache.length && edgeCache[storeId] == edge) {
+                        edgeCache[storeId] = null;
                     }
+                    edgeChanges.put(edge, edgeChanges.getInt(edge) - 1);
+                    break;
+                }
+            }
+        }
+        for (Object2IntMap.Entry<NodeImpl> entry : nodeChanges.object2IntEntrySet()) {
+            if (entry.getIntValue() > 0) {
+                graphDiff.addedNodes.add(entry.getKey());
+            } else if (entry.getIntValue() < 0) {
+                graphDiff.removedNodes.add(entry.getKey());
+            }
+        }
+        for (Object2IntMap.Entry<EdgeImpl> entry : edgeChanges.object2IntEntrySet()) {
+            if (entry.getIntValue() > 0) {
+                graphDiff.addedEdges.add(entry.getKey());
+            } else if (entry.getIntValue() < 0) {
+                graphDiff.removedEdges.add(entry.getKey());
+            }
+        }
+    }
+
+    protected synchronized void storeIdsCompacted(int[] nodeIdMap, int[] edgeIdMap) {
+        //The change log is reset, the next refresh rescans with remapped caches
+        if (nodeIdMap != null) {
+            if (nodeCache != null) {
+                nodeCache = remapCache(nodeCache, new NodeImpl[graphStore.nodeStore.maxStoreId()]);
+            }
+            if (nodeChanges != null) {
+                synchronized (changeLock) {
+                    nodeChanges = nodeChanges.remap(nodeIdMap);
+                }
+            }
+        }
+        if (edgeIdMap != null) {
+            if (edgeCache != null) {
+                edgeCache = remapCache(edgeCache, new EdgeImpl[graphStore.edgeStore.maxStoreId()]);
+            }
+            if (edgeChanges != null) {
+                synchronized (changeLock) {
+                    edgeChanges = edgeChanges.remap(edgeIdMap);
                 }
             }
-        } finally {
-            readUnlock();
         }
     }
 
-    protected void resetNodeVersion() {
-        nodeVersion = Integer.MIN_VALUE;
+    private static <T extends ElementImpl> T[] remapCache(T[] cache, T[] remapped) {
+        //Elements removed since the last refresh are kept after the store ids
+        int removed = 0;
+        for (T element : cache) {
+            if (element != null && !element.isValid()) {
+                removed++;
+            }
+        }
+        int length = remapped.length;
+        if (removed > 0) {
+            remapped = Arrays.copyOf(remapped, length + removed);
+        }
+        for (T element : cache) {
+            if (element != null) {
+                int storeId = element.getStoreId();
+                remapped[storeId == NodeStore.NULL_ID ? length++ : storeId] = element;
+            }
+        }
+        return remapped;
     }
 
-    protected void resetEdgeVersion() {
-        edgeVersion = Integer.MIN_VALUE;
+    private void ensureNodeCacheSize(int storeId) {
+        if (storeId >= nodeCache.length) {
+            NodeImpl[] newCache = new NodeImpl[Math.max(storeId + 1, graphStore.nodeStore.maxStoreId())];
+            System.arraycopy(nodeCache, 0, newCache, 0, nodeCache.length);
+            nodeCache = newCache;
+        }
+    }
+
+    private void ensureEdgeCacheSize(int storeId) {
+        if (storeId >= edgeCache.length) {
+            EdgeImpl[] newCache = new EdgeImpl[Math.max(storeId + 1, graphStore.edgeStore.maxStoreId())];
+            System.arraycopy(edgeCache, 0, newCache, 0, edgeCache.length);
+            edgeCache = newCache;
+        }
+    }
+
+    private void rescan() {
+        if (nodeVersion < graphVersion.nodeVersion) {
+            int maxStoreId = graphStore.nodeStore.maxStoreId();
+            if (nodeCache == null) {
+                nodeCache = new NodeImpl[maxStoreId];
+                for (Node n : graph.getNodes()) {
+                    NodeImpl nImpl = (NodeImpl) n;
+                    nodeCache[nImpl.storeId] = nImpl;
+                    graphDiff.addedNodes.add(nImpl);
+                }
+            } else {
+                for (Node n : nodeCache) {
+                    NodeImpl nImpl = (NodeImpl) n;
+                    if (nImpl != null && !graph.contains(nImpl)) {
+                        graphDiff.removedNodes.add(nImpl);
+                    }
+                }
+                if (maxStoreId > nodeCache.length || maxStoreId < nodeCache.length) {
+                    NodeImpl[] newCache = new NodeImpl[maxStoreId];
+                    System.arraycopy(nodeCache, 0, newCache, 0, maxStoreId > nodeCache.length ? nodeCache.length : maxStoreId);
+                    nodeCache = newCache;
+                }
+                for (Node n : graph.getNodes()) {
+                    NodeImpl nImpl = (NodeImpl) n;
+                    int storeId = nImpl.storeId;
+                    NodeImpl cachedNode = nodeCache[storeId];
+                    if (cachedNode == null || cachedNode != nImpl) {
+                        graphDiff.addedNodes.add(nImpl);
+                        nodeCache[storeId] = nImpl;
+                    }
+                }
+            }
+        }
+
+        if (edgeVersion < graphVersion.edgeVersion) {
+            int maxStoreId = graphStore.edgeStore.maxStoreId();
+            if (edgeCache == null) {
+                edgeCache = new EdgeImpl[maxStoreId];
+                for (Edge e : graph.getEdges()) {
+                    EdgeImpl eImpl = (EdgeImpl) e;
+                    edgeCache[eImpl.storeId] = eImpl;
+                    graphDiff.addedEdges.add(eImpl);
+                }
+            } else {
+                for (Edge e : edgeCache) {
+                    EdgeImpl eImpl = (EdgeImpl) e;
+                    if (eImpl != null && !graph.contains(eImpl)) {
+                        graphDiff.removedEdges.add(eImpl);
+                    }
+                }
+                if (maxStoreId > edgeCache.length || maxStoreId < edgeCache.length) {
+                    EdgeImpl[] newCache = new EdgeImpl[maxStoreId];
+                    System.arraycopy(edgeCache, 0, newCache, 0, maxStoreId > edgeCache.length ? edgeCache.length : maxStoreId);
+                    edgeCache = newCache;
+                }
+                for (Edge e : graph.getEdges()) {
+                    EdgeImpl eImpl = (EdgeImpl) e;
+                    int storeId = eImpl.storeId;
+                    EdgeImpl cachedEdge = edgeCache[storeId];
+                    if (cachedEdge == null || cachedEdge != eImpl) {
+                        graphDiff.addedEdges.add(eImpl);
+                        edgeCache[storeId] = eImpl;
+                    }
+                }
+            }
+        }
     }
 
     protected final class GraphDiffImpl implements GraphDiff {
@@ -177,12 +401,38 @@ public class GraphObserverImpl implements GraphObserver {
         protected final ObjectList<Node> removedNodes;
         protected final ObjectList<Edge> addedEdges;
         protected final ObjectList<Edge> removedEdges;
+        protected final ObjectList<Node> changedNodes;
+        protected final ObjectList<Edge> changedEdges;
+        protected final Int2ObjectMap<ObjectList<Node>> changedNodesByColumn;
+        protected final Int2ObjectMap<ObjectList<Edge>> changedEdgesByColumn;
 
         public GraphDiffImpl() {
             addedNodes = new ObjectArrayList<Node>();
             removedNodes = new ObjectArrayList<Node>();
             addedEdges = new ObjectArrayList<Edge>();
             removedEdges = new ObjectArrayList<Edge>();
+            changedNodes = new ObjectArrayList<Node>();
+            changedEdges = new ObjectArrayList<Edge>();
+            changedNodesByColumn = new Int2ObjectOpenHashMap<ObjectList<Node>>();
+            changedEdgesByColumn = new Int2ObjectOpenHashMap<ObjectList<Edge>>();
+        }
+
+        protected ObjectList<Node> getChangedNodeList(int columnIndex) {
+            ObjectList<Node> list = changedNodesByColumn.get(columnIndex);
+            if (list == null) {
+                list = new ObjectArrayList<Node>();
+                changedNodesByColumn.put(columnIndex, list);
+            }
+            return list;
+        }
+
+        protected ObjectList<Edge> getChangedEdgeList(int columnIndex) {
+            ObjectList<Edge> list = changedEdgesByColumn.get(columnIndex);
+            if (list == null) {
+                list = new ObjectArrayList<Edge>();
+                changedEdgesByColumn.put(columnIndex, list);
+            }
+            return list;
         }
 
         @Override
@@ -216,6 +466,40 @@ public class GraphObserverImpl implements GraphObserver {
             }
             return EdgeIterable.EMPTY;
         }
+
+        @Override
+        public NodeIterable getChangedNodes() {
+            if (!changedNodes.isEmpty()) {
+                return graphStore.getNodeIterableWrapper(Collections.unmodifiableList(changedNodes).iterator(), false);
+            }
+            return NodeIterable.EMPTY;
+        }
+
+        @Override
+        public EdgeIterable getChangedEdges() {
+            if (!changedEdges.isEmpty()) {
+                return graphStore.getEdgeIterableWrapper(Collections.unmodifiableList(changedEdges).iterator(), false);
+            }
+            return EdgeIterable.EMPTY;
+        }
+
+        @Override
+        public NodeIterable getChangedNodes(Column column) {
+            ObjectList<Node> list = changedNodesByColumn.get(column.getIndex());
+            if (list != null) {
+                return graphStore.getNodeIterableWrapper(Collections.unmodifiableList(list).iterator(), false);
+            }
+            return NodeIterable.EMPTY;
+        }
+
+        @Override
+        public EdgeIterable getChangedEdges(Column column) {
+            ObjectList<Edge> list = changedEdgesByColumn.get(column.getIndex());
+            if (list != null) {
+                return graphStore.getEdgeIterableWrapper(Collections.unmodifiableList(list).iterator(), false);
+            }
+            return EdgeIterable.EMPTY;
+        }
     }
 
     @Override
@@ -236,6 +520,9 @@ public class GraphObserverImpl implements GraphObserver {
         nodeCache = null;
         edgeCache = null;
         destroyed = true;
+        if (withDiff && graphStore != null) {
+            graphStore.diffObservers.decrementAndGet();
+        }
     }
 
     private void checkNotDestroyed() {
@@ -251,4 +538,72 @@ public class GraphObserverImpl implements GraphObserver {
     private void readUnlock() {
         graphStore.autoReadUnlock();
     }
+
+    protected static class ElementChanges {
+
+        //Store ids of changed elements, overall and per column index
+        protected final BitVector elements;
+        protected final Int2ObjectMap<BitVector> columns;
+
+        public ElementChanges() {
+            elements = new BitVector(0);
+            columns = new Int2ObjectOpenHashMap<BitVector>();
+        }
+
+        public void add(int storeId, Column column) {
+            ensureSize(elements, storeId);
+            elements.set(storeId);
+            if (column != null) {
+                BitVector vector = columns.get(column.getIndex());
+                if (vector == null) {
+                    vector = new BitVector(storeId + 1);
+                    columns.put(column.getIndex(), vector);
+                }
+                ensureSize(vector, storeId);
+                vector.set(storeId);
+            }
+        }
+
+        public boolean isEmpty() {
+            return elements.size() == 0;
+        }
+
+        public ElementChanges remap(int[] storeIdMap) {
+            ElementChanges remapped = new ElementChanges();
+            for (int i = next(0); i != -1 && i < storeIdMap.length; i = next(i + 1)) {
+                int storeId = storeIdMap[i];
+                if (storeId == NodeStore.NULL_ID) {
+                    continue;
+                }
+                ensureSize(remapped.elements, storeId);
+                remapped.elements.set(storeId);
+                for (Int2ObjectMap.Entry<BitVector> entry : columns.int2ObjectEntrySet()) {
+                    BitVector vector = entry.getValue();
+                    if (i < vector.size() && vector.getQuick(i)) {
+                        BitVector remappedVector = remapped.columns.get(entry.getIntKey());
+                        if (remappedVector == null) {
+                            remappedVector = new BitVector(storeId + 1);
+                            remapped.columns.put(entry.getIntKey(), remappedVector);
+                        }
+                        ensureSize(remappedVector, storeId);
+                        remappedVector.set(storeId);
+                    }
+                }
+            }
+            return remapped;
+        }
+
+        public int next(int from) {
+            if (from >= elements.size()) {
+                return -1;
+            }
+            return elements.indexOfFromTo(from, elements.size() - 1, true);
+        }
+
+        private void ensureSize(BitVector vector, int storeId) {
+            if (storeId >= vector.size()) {
+                vector.setSize(Math.max(storeId + 1, (int) (vector.size() * 1.5)));
+            }
+        }
+    }
 }
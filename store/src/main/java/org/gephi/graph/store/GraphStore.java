@@ -19,6 +19,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Origin;
 import org.gephi.attribute.time.TimestampSet;
 import org.gephi.graph.api.DirectedGraph;
@@ -52,27 +55,48 @@ public class GraphStore implements DirectedGraph {
     //Version
     protected final GraphVersion version;
     protected final List<GraphObserverImpl> observers;
+    //Observers computing diffs, in any view, property changes are only tracked for them
+    protected final AtomicInteger diffObservers;
     //Undirected
     protected final UndirectedDecorator undirectedDecorator;
     //Main Graph view
     protected final GraphView mainGraphView;
+    //Snapshot
+    protected boolean readOnly;
+    //Journal (optional)
+    protected volatile GraphJournal journal;
 
     public GraphStore() {
         this(null);
     }
 
     public GraphStore(GraphModelImpl model) {
+        this(model, GraphStoreConfiguration.ENABLE_SINGLE_WRITER);
+    }
+
+    public GraphStore(GraphModelImpl model, boolean singleWriter) {
+        this(model, GraphStoreConfiguration.ENABLE_LOCK_STATISTICS ? new InstrumentedGraphLock(singleWriter) : new GraphLock(singleWriter), null);
+    }
+
+    protected GraphStore(GraphModelImpl model, GraphLock graphLock, GraphStore source) {
         graphModel = model;
-        lock = new GraphLock();
+        lock = graphLock;
         edgeTypeStore = new EdgeTypeStore();
         viewStore = new GraphViewStore(this);
         version = GraphStoreConfiguration.ENABLE_OBSERVERS ? new GraphVersion(this) : null;
-        observers = GraphStoreConfiguration.ENABLE_OBSERVERS ? new ArrayList<GraphObserverImpl>() : null;
+        observers = GraphStoreConfiguration.ENABLE_OBSERVERS ? new CopyOnWriteArrayList<GraphObserverImpl>() : null;
+        diffObservers = new AtomicInteger();
         edgeStore = new EdgeStore(edgeTypeStore, GraphStoreConfiguration.ENABLE_AUTO_LOCKING ? lock : null, viewStore, GraphStoreConfiguration.ENABLE_OBSERVERS ? version : null);
         nodeStore = new NodeStore(edgeStore, GraphStoreConfiguration.ENABLE_AUTO_LOCKING ? lock : null, viewStore, GraphStoreConfiguration.ENABLE_OBSERVERS ? version : null);
-        nodeColumnStore = new ColumnStore<Node>(Node.class, GraphStoreConfiguration.ENABLE_INDEX_NODES, GraphStoreConfiguration.ENABLE_AUTO_LOCKING ? lock : null);
-        edgeColumnStore = new ColumnStore<Edge>(Edge.class, GraphStoreConfiguration.ENABLE_INDEX_EDGES, GraphStoreConfiguration.ENABLE_AUTO_LOCKING ? lock : null);
-        timestampStore = new TimestampStore(GraphStoreConfiguration.ENABLE_AUTO_LOCKING ? lock : null);
+        if (source != null) {
+            //Snapshots share the Column objects but index their own copies
+            nodeColumnStore = new ColumnStore<Node>(source.nodeColumnStore, GraphStoreConfiguration.ENABLE_AUTO_LOCKING ? lock : null);
+            edgeColumnStore = new ColumnStore<Edge>(source.edgeColumnStore, GraphStoreConfiguration.ENABLE_AUTO_LOCKING ? lock : null);
+        } else {
+            nodeColumnStore = new ColumnStore<Node>(Node.class, GraphStoreConfiguration.ENABLE_INDEX_NODES, GraphStoreConfiguration.ENABLE_AUTO_LOCKING ? lock : null);
+            edgeColumnStore = new ColumnStore<Edge>(Edge.class, GraphStoreConfiguration.ENABLE_INDEX_EDGES, GraphStoreConfiguration.ENABLE_AUTO_LOCKING ? lock : null);
+        }
+        timestampStore = new TimestampStore(this, GraphStoreConfiguration.ENABLE_AUTO_LOCKING ? lock : null);
         factory = new GraphFactoryImpl(this);
 
         mainGraphView = new MainGraphView();
@@ -80,6 +104,11 @@ public class GraphStore implements DirectedGraph {
         undirectedDecorator = new UndirectedDecorator(this);
 
         //Default cols
+        if (source != null) {
+            edgeTypeStore.copy(source.edgeTypeStore);
+            timestampStore.copyTimestamps(source.timestampStore);
+            return;
+        }
         if (GraphStoreConfiguration.ENABLE_ELEMENT_TIMESTAMP_SET) {
             nodeColumnStore.addColumn(new ColumnImpl("timestamp", TimestampSet.class, null, null, Origin.PROPERTY, false));
             edgeColumnStore.addColumn(new ColumnImpl("timestamp", TimestampSet.class, null, null, Origin.PROPERTY, false));
@@ -112,24 +141,45 @@ public class GraphStore implements DirectedGraph {
 
     @Override
     public boolean addEdge(final Edge edge) {
-        autoWriteLock();
-        try {
-            int type = edge.getType();
-            if (edgeTypeStore != null && !edgeTypeStore.contains(type)) {
-                if (GraphStoreConfiguration.ENABLE_AUTO_TYPE_REGISTRATION) {
-                    edgeTypeStore.addType(type);
-                } else {
-                    throw new RuntimeException("The type doesn't exist");
+        if (lock.concurrentWriteLock()) {
+            try {
+                checkWritable();
+                synchronized (edgeTypeStore) {
+                    checkEdgeType(edge.getType());
                 }
+                return edgeStore.addConcurrently(edge);
+            } finally {
+                lock.concurrentWriteUnlock();
             }
+        }
+        autoWriteLock();
+        try {
+            checkEdgeType(edge.getType());
             return edgeStore.add(edge);
         } finally {
             autoWriteUnlock();
         }
     }
 
+    private void checkEdgeType(int type) {
+        if (edgeTypeStore != null && !edgeTypeStore.contains(type)) {
+            if (GraphStoreConfiguration.ENABLE_AUTO_TYPE_REGISTRATION) {
+                edgeTypeStore.addType(type);
+            } else {
+                throw new RuntimeException("The type doesn't exist");
+            }
+        }
+    }
+
     @Override
     public boolean addAllEdges(Collection<? extends Edge> edges) {
+        if (lock.isConcurrentWrite()) {
+            boolean changed = false;
+            for (Edge edge : edges) {
+                changed |= addEdge(edge);
+            }
+            return changed;
+        }
         autoWriteLock();
         try {
             return edgeStore.addAll(edges);
@@ -140,22 +190,22 @@ public class GraphStore implements DirectedGraph {
 
     @Override
     public NodeImpl getNode(final Object id) {
-        autoReadLock();
-        try {
-            return nodeStore.get(id);
-        } finally {
-            autoReadUnlock();
-        }
+        return lockedRead(new Read<NodeImpl>() {
+            @Override
+            public NodeImpl read() {
+                return nodeStore.get(id);
+            }
+        });
     }
 
     @Override
     public EdgeImpl getEdge(final Object id) {
-        autoReadLock();
-        try {
-            return edgeStore.get(id);
-        } finally {
-            autoReadUnlock();
-        }
+        return lockedRead(new Read<EdgeImpl>() {
+            @Override
+            public EdgeImpl read() {
+                return edgeStore.getConcurrently(id);
+            }
+        });
     }
 
     @Override
@@ -168,6 +218,16 @@ public class GraphStore implements DirectedGraph {
         return edgeStore;
     }
 
+    @Override
+    public NodeIterable getNodesSnapshot() {
+        return new NodeIterableWrapper(nodeStore.snapshotIterator(nodeStore.iterator()), false);
+    }
+
+    @Override
+    public EdgeIterable getEdgesSnapshot() {
+        return new EdgeIterableWrapper(edgeStore.snapshotIterator(edgeStore.iterator()), false);
+    }
+
     @Override
     public EdgeIterable getSelfLoops() {
         return new EdgeIterableWrapper(edgeStore.iteratorSelfLoop());
@@ -236,32 +296,32 @@ public class GraphStore implements DirectedGraph {
 
     @Override
     public boolean contains(final Node node) {
-        autoReadLock();
-        try {
-            return nodeStore.contains(node);
-        } finally {
-            autoReadUnlock();
-        }
+        return optimisticRead(new Read<Boolean>() {
+            @Override
+            public Boolean read() {
+                return nodeStore.contains(node);
+            }
+        });
     }
 
     @Override
     public boolean contains(final Edge edge) {
-        autoReadLock();
-        try {
-            return edgeStore.contains(edge);
-        } finally {
-            autoReadUnlock();
-        }
+        return optimisticRead(new Read<Boolean>() {
+            @Override
+            public Boolean read() {
+                return edgeStore.containsConcurrently(edge);
+            }
+        });
     }
 
     @Override
     public Edge getEdge(final Node node1, final Node node2, final int type) {
-        autoReadLock();
-        try {
-            return edgeStore.get(node1, node2, type);
-        } finally {
-            autoReadUnlock();
-        }
+        return lockedRead(new Read<Edge>() {
+            @Override
+            public Edge read() {
+                return edgeStore.getConcurrently(node1, node2, type);
+            }
+        });
     }
 
     @Override
@@ -336,15 +396,12 @@ public class GraphStore implements DirectedGraph {
 
     @Override
     public int getEdgeCount(final int type) {
-        autoReadLock();
-        try {
-            if (edgeTypeStore.contains(type)) {
-                return edgeStore.size(type);
+        return lockedRead(new Read<Integer>() {
+            @Override
+            public Integer read() {
+                return edgeTypeStore.contains(type) ? edgeStore.size(type) : 0;
             }
-            return 0;
-        } finally {
-            autoReadUnlock();
-        }
+        });
     }
 
     @Override
@@ -389,22 +446,22 @@ public class GraphStore implements DirectedGraph {
 
     @Override
     public boolean isAdjacent(final Node node1, final Node node2) {
-        autoReadLock();
-        try {
-            return edgeStore.isAdjacent(node1, node2);
-        } finally {
-            autoReadUnlock();
-        }
+        return lockedRead(new Read<Boolean>() {
+            @Override
+            public Boolean read() {
+                return edgeStore.isAdjacentConcurrently(node1, node2);
+            }
+        });
     }
 
     @Override
     public boolean isAdjacent(final Node node1, final Node node2, final int type) {
-        autoReadLock();
-        try {
-            return edgeStore.isAdjacent(node1, node2, type);
-        } finally {
-            autoReadUnlock();
-        }
+        return lockedRead(new Read<Boolean>() {
+            @Override
+            public Boolean read() {
+                return edgeStore.isAdjacentConcurrently(node1, node2, type);
+            }
+        });
     }
 
     @Override
@@ -467,11 +524,16 @@ public class GraphStore implements DirectedGraph {
         try {
             edgeStore.clear();
             nodeStore.clear();
+            clearLazyAttributes(nodeColumnStore);
+            clearLazyAttributes(edgeColumnStore);
             edgeColumnStore.indexStore.clear();
             nodeColumnStore.indexStore.clear();
             if (timestampStore != null) {
                 timestampStore.clear();
             }
+            if (journal != null) {
+                journal.cleared();
+            }
         } finally {
             autoWriteUnlock();
         }
@@ -482,10 +544,52 @@ public class GraphStore implements DirectedGraph {
         autoWriteLock();
         try {
             edgeStore.clear();
+            clearLazyAttributes(edgeColumnStore);
             edgeColumnStore.indexStore.clear();
             if (timestampStore != null) {
                 timestampStore.clearEdges();
             }
+            if (journal != null) {
+                journal.edgesCleared();
+            }
+        } finally {
+            autoWriteUnlock();
+        }
+    }
+
+    /**
+     * Renumbers the node and edge store ids densely and releases the store
+     * blocks, view bit vectors and observer caches sized after the removed
+     * elements. The graph itself doesn't change.
+     * <p>
+     * Store ids are read without locking in single writer mode, so the
+     * compaction isn't available there.
+     *
+     * @throws IllegalStateException if the store is in single writer mode
+     */
+    public void compact() {
+        if (lock.singleWriter) {
+            throw new IllegalStateException("The store can't be compacted in single writer mode, readers don't block");
+        }
+        autoWriteLock();
+        try {
+            int[] nodeIdMap = nodeStore.compact();
+            int[] edgeIdMap = edgeStore.compact(nodeIdMap != null);
+            if (nodeIdMap == null && edgeIdMap == null) {
+                return;
+            }
+            viewStore.storeIdsCompacted(nodeIdMap, edgeIdMap);
+            if (timestampStore != null) {
+                timestampStore.storeIdsCompacted();
+            }
+            if (version != null) {
+                version.resetChangeLog();
+            }
+            if (observers != null) {
+                for (GraphObserverImpl observer : observers) {
+                    observer.storeIdsCompacted(nodeIdMap, edgeIdMap);
+                }
+            }
         } finally {
             autoWriteUnlock();
         }
@@ -521,6 +625,116 @@ public class GraphStore implements DirectedGraph {
         lock.writeUnlock();
     }
 
+    /**
+     * Runs <code>read</code> optimistically and validates it against
+     * concurrent writes, falling back to the read lock if that fails. In
+     * single-writer mode, readers never take the lock and retry with a
+     * backoff instead.
+     * <p>
+     * Only bounded reads, such as array lookups, are safe here. A hash lookup
+     * racing a rehash may probe forever before it gets validated, use
+     * <code>lockedRead()</code> for these.
+     *
+     * @param read read operation, without side effects
+     * @return the result of <code>read</code>
+     */
+    protected <T> T optimisticRead(Read<T> read) {
+        if (GraphStoreConfiguration.ENABLE_OPTIMISTIC_READS || lock.singleWriter) {
+            for (int retries = 0;; retries++) {
+                long stamp = lock.tryOptimisticRead();
+                //Don't race a writer already in progress
+                if (stamp != -1) {
+                    try {
+                        T result = read.read();
+                        if (lock.validate(stamp)) {
+                            return result;
+                        }
+                    } catch (RuntimeException e) {
+                        if (lock.validate(stamp)) {
+                            throw e;
+                        }
+                    }
+                }
+                if (!lock.singleWriter) {
+                    break;
+                }
+                GraphLock.backoff(retries);
+            }
+        }
+        return lockedRead(read);
+    }
+
+    /**
+     * Runs <code>read</code> under the read lock. Single-writer mode has no
+     * read lock, so reads are optimistic there and only start when no write
+     * is in progress.
+     *
+     * @param read read operation, without side effects
+     * @return the result of <code>read</code>
+     */
+    protected <T> T lockedRead(Read<T> read) {
+        if (lock.singleWriter) {
+            return optimisticRead(read);
+        }
+        autoReadLock();
+        try {
+            return read.read();
+        } finally {
+            autoReadUnlock();
+        }
+    }
+
+    /**
+     * Runs a long read, such as a copy of the graph, optimistically so it
+     * doesn't block writers. It's retried a few times if writes invalidate
+     * it, then runs with writers excluded: under the read lock, or under the
+     * internal write lock in single-writer mode, where readers would
+     * otherwise retry forever.
+     * <p>
+     * The read may run on a graph being modified. It has to be bounded and
+     * only touch data it creates itself, as in <code>optimisticRead()</code>.
+     *
+     * @param read read operation, without side effects
+     * @return the result of <code>read</code>
+     */
+    protected <T> T longRead(Read<T> read) {
+        for (int retries = 0; retries < GraphStoreConfiguration.SNAPSHOT_OPTIMISTIC_RETRIES; retries++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != -1) {
+                try {
+                    T result = read.read();
+                    if (lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (RuntimeException e) {
+                    if (lock.validate(stamp)) {
+                        throw e;
+                    }
+                }
+            }
+            GraphLock.backoff(retries);
+        }
+        if (lock.singleWriter) {
+            lock.internalWriteLock();
+            try {
+                return read.read();
+            } finally {
+                lock.internalWriteUnlock();
+            }
+        }
+        autoReadLock();
+        try {
+            return read.read();
+        } finally {
+            autoReadUnlock();
+        }
+    }
+
+    protected interface Read<T> {
+
+        public T read();
+    }
+
     protected void autoReadLock() {
         if (GraphStoreConfiguration.ENABLE_AUTO_LOCKING) {
             readLock();
@@ -534,11 +748,121 @@ public class GraphStore implements DirectedGraph {
     }
 
     protected void autoWriteLock() {
+        checkWritable();
         if (GraphStoreConfiguration.ENABLE_AUTO_LOCKING) {
             writeLock();
         }
     }
 
+    protected void autoInternalWriteLock() {
+        checkWritable();
+        if (GraphStoreConfiguration.ENABLE_AUTO_LOCKING) {
+            lock.internalWriteLock();
+        }
+    }
+
+    protected void autoInternalWriteUnlock() {
+        if (GraphStoreConfiguration.ENABLE_AUTO_LOCKING) {
+            lock.internalWriteUnlock();
+        }
+    }
+
+    protected void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("This graph is a read-only snapshot");
+        }
+    }
+
+    /**
+     * Enters the concurrent write mode, where edges can be added from several
+     * threads at once. Only the calling thread and the loading threads that
+     * called <code>joinConcurrentWrite()</code> can add edges, look up nodes
+     * and look up edges in the main graph by id or endpoints. Iterating
+     * edges or reading views from these threads throws an
+     * <code>IllegalMonitorStateException</code>, as the adjacency lists are
+     * being modified. Other readers block and every other modification is
+     * rejected until <code>endConcurrentWrite()</code> is called from the same
+     * thread.
+     */
+    public void beginConcurrentWrite() {
+        checkWritable();
+        lock.beginConcurrentWrite();
+    }
+
+    public void endConcurrentWrite() {
+        lock.endConcurrentWrite();
+    }
+
+    /**
+     * Registers the current thread as a loading thread of the concurrent
+     * write mode. Registrations end with the mode.
+     */
+    public void joinConcurrentWrite() {
+        lock.joinConcurrentWrite();
+    }
+
+    public void leaveConcurrentWrite() {
+        lock.leaveConcurrentWrite();
+    }
+
+    /**
+     * Loads the attribute columns left in a lazily read snapshot, if any, so
+     * attribute arrays can be read directly.
+     */
+    protected void loadAttributes() {
+        LazyAttributeLoader attributeLoader = nodeColumnStore.attributeLoader;
+        if (attributeLoader == null) {
+            attributeLoader = edgeColumnStore.attributeLoader;
+        }
+        if (attributeLoader != null) {
+            attributeLoader.pinAll();
+        }
+    }
+
+    private void clearLazyAttributes(ColumnStore columnStore) {
+        LazyAttributeLoader attributeLoader = columnStore.attributeLoader;
+        if (attributeLoader != null) {
+            attributeLoader.clear(columnStore);
+        }
+    }
+
+    /**
+     * Returns a read-only copy of the graph, in O(N). Run it within
+     * <code>longRead()</code> so writers aren't blocked for the duration of
+     * the copy.
+     *
+     * @return a read-only copy
+     */
+    protected GraphStore snapshot() {
+        //The copy is private until returned, a racing write only makes it
+        //invalid and it's thrown away
+        GraphStore snapshot = new GraphStore(graphModel, new GraphLock(), this);
+        NodeImpl[] copies = new NodeImpl[nodeStore.maxStoreId()];
+        for (NodeStore.NodeStoreIterator itr = nodeStore.iterator(); itr.hasNext();) {
+            NodeImpl node = (NodeImpl) itr.next();
+            NodeImpl copy = new NodeImpl(node.getId(), snapshot);
+            copy.copyAttributes(node);
+            if (node.properties != null) {
+                copy.setNodeProperties(node.properties);
+            }
+            snapshot.nodeStore.add(copy);
+            copies[node.storeId] = copy;
+        }
+        for (EdgeStore.EdgeStoreIterator itr = edgeStore.iterator(); itr.hasNext();) {
+            EdgeImpl edge = (EdgeImpl) itr.next();
+            NodeImpl source = copies[edge.source.storeId];
+            NodeImpl target = copies[edge.target.storeId];
+            EdgeImpl copy = new EdgeImpl(edge.getId(), snapshot, source, target, edge.type, edge.weight, edge.isDirected());
+            copy.copyAttributes(edge);
+            if (edge.properties != null) {
+                copy.setEdgeProperties(edge.properties);
+            }
+            snapshot.edgeStore.add(copy);
+        }
+        snapshot.readOnly = true;
+        return snapshot;
+    }
+
     protected void autoWriteUnlock() {
         if (GraphStoreConfiguration.ENABLE_AUTO_LOCKING) {
             writeUnlock();
@@ -571,6 +895,34 @@ public class GraphStore implements DirectedGraph {
         return null;
     }
 
+    protected void attributeChanged(ElementImpl element, Column column) {
+        if (version != null) {
+            for (GraphObserverImpl observer : observers) {
+                observer.elementChanged(element, column);
+            }
+            version.incrementAndGetAttributeVersion();
+            viewStore.attributeChanged(element, column);
+        }
+    }
+
+    /**
+     * Records a property change, such as a position or a color, in the diffs
+     * of the observers. Unlike attribute changes, it doesn't bump the
+     * attribute version, so <code>hasGraphChanged()</code> keeps reporting
+     * topology and attribute changes only and the property changes come with
+     * the next diff.
+     *
+     * @param element changed element
+     */
+    protected void propertyChanged(ElementImpl element) {
+        if (version != null) {
+            for (GraphObserverImpl observer : observers) {
+                observer.elementChanged(element, null);
+            }
+            viewStore.propertyChanged(element);
+        }
+    }
+
     protected void destroyGraphObserver(GraphObserverImpl observer) {
         if (observers != null) {
             if (observer.graph.getView() != mainGraphView) {
@@ -627,6 +979,7 @@ public class GraphStore implements DirectedGraph {
 
         protected final Iterator<Node> iterator;
         protected final boolean blocking;
+        protected final GraphLock.IteratorHold hold;
 
         public NodeIterableWrapper(Iterator<Node> iterator) {
             this(iterator, true);
@@ -635,6 +988,11 @@ public class GraphStore implements DirectedGraph {
         public NodeIterableWrapper(Iterator<Node> iterator, boolean blocking) {
             this.iterator = iterator;
             this.blocking = blocking;
+            //The wrapped iterator hands over the read lock it holds, if any
+            this.hold = blocking ? GraphLock.getIteratorHold(iterator) : null;
+            if (hold != null) {
+                hold.owner = this;
+            }
         }
 
         @Override
@@ -662,16 +1020,22 @@ public class GraphStore implements DirectedGraph {
 
         @Override
         public void doBreak() {
-            if (blocking) {
-                autoReadUnlock();
+            if (hold != null) {
+                lock.unlockIterator(hold);
             }
         }
+
+        @Override
+        public void close() {
+            doBreak();
+        }
     }
 
     protected class EdgeIterableWrapper implements EdgeIterable {
 
         protected final Iterator<Edge> iterator;
         protected final boolean blocking;
+        protected final GraphLock.IteratorHold hold;
 
         public EdgeIterableWrapper(Iterator<Edge> iterator) {
             this(iterator, true);
@@ -680,6 +1044,11 @@ public class GraphStore implements DirectedGraph {
         public EdgeIterableWrapper(Iterator<Edge> iterator, boolean blocking) {
             this.iterator = iterator;
             this.blocking = blocking;
+            //The wrapped iterator hands over the read lock it holds, if any
+            this.hold = blocking ? GraphLock.getIteratorHold(iterator) : null;
+            if (hold != null) {
+                hold.owner = this;
+            }
         }
 
         @Override
@@ -707,10 +1076,15 @@ public class GraphStore implements DirectedGraph {
 
         @Override
         public void doBreak() {
-            if (blocking) {
-                autoReadUnlock();
+            if (hold != null) {
+                lock.unlockIterator(hold);
             }
         }
+
+        @Override
+        public void close() {
+            doBreak();
+        }
     }
 
     private final class MainGraphView implements GraphView {
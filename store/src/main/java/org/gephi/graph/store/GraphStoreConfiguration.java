@@ -23,6 +23,10 @@ public final class GraphStoreConfiguration {
 
     //Features
     public static final boolean ENABLE_AUTO_LOCKING = true;
+    public static final boolean ENABLE_OPTIMISTIC_READS = true;
+    public static final boolean ENABLE_SINGLE_WRITER = false;
+    public static final boolean ENABLE_LOCK_STATISTICS = false;
+    public static final boolean ENABLE_ITERATOR_LEAK_DETECTION = false;
     public static final boolean ENABLE_AUTO_TYPE_REGISTRATION = true;
     public static final boolean ENABLE_INDEX_NODES = true;
     public static final boolean ENABLE_INDEX_EDGES = true;
@@ -30,6 +34,7 @@ public final class GraphStoreConfiguration {
     public static final boolean ENABLE_OBSERVERS = true;
     public static final boolean ENABLE_NODE_PROPERTIES = true;
     public static final boolean ENABLE_EDGE_PROPERTIES = true;
+    public static final boolean ENABLE_STRING_POOL = false;
     //NodeStore
     public final static int NODESTORE_BLOCK_SIZE = 5000;
     public final static int NODESTORE_DEFAULT_BLOCKS = 10;
@@ -41,9 +46,33 @@ public final class GraphStoreConfiguration {
     public static final int EDGESTORE_DEFAULT_TYPE_COUNT = 1;
     public static final int EDGESTORE_DEFAULT_DICTIONARY_SIZE = 1000;
     public static final float EDGESTORE_DICTIONARY_LOAD_FACTOR = .7f;
+    public static final int EDGESTORE_LOCK_STRIPES = 64;
     //GraphView
     public static final int VIEW_DEFAULT_TYPE_COUNT = 1;
     public static final double VIEW_GROWING_FACTOR = 1.1;
+    //Iterators
+    public static final int ITERATOR_SNAPSHOT_POOL_SIZE = 4;
+    //Snapshots
+    public static final int SNAPSHOT_OPTIMISTIC_RETRIES = 3;
+    //GraphObserver
+    public static final int OBSERVER_CHANGELOG_SIZE = 4096;
+    //GraphListener
+    public static final long LISTENER_DEFAULT_INTERVAL = 100;
+    //Lock statistics
+    public static final long LOCK_LONG_HOLD_THRESHOLD = 100;
+    public static final int LOCK_LONG_HOLD_HISTORY_SIZE = 64;
+    public static final String LOCK_STATISTICS_JMX_DOMAIN = "org.gephi.graph";
+    //Serialization
+    public static final int SERIALIZATION_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final int SERIALIZATION_BUFFER_SIZE = 1 << 16;
+    public static final int SERIALIZATION_BUFFER_POOL_SIZE = 4;
+    //Journal
+    public static final long JOURNAL_COMPACTION_SIZE = 64L * 1024 * 1024;
+    //TimestampStore
+    public static final double TIMESTAMP_DENSE_VIEW_RATIO = 0.5;
+    public static final int TIMESTAMP_SNAPSHOT_CACHE_SIZE = 8;
+    public static final int TIMESTAMP_EVENT_BATCH_SIZE = 4096;
+    public static final int TIMESTAMP_EVICTION_BATCH_SIZE = 64;
     //Properties
     public static final boolean ENABLE_ELEMENT_LABEL = true;
     public static final boolean ENABLE_ELEMENT_TIMESTAMP_SET = true;
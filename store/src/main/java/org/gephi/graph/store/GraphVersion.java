@@ -15,6 +15,7 @@
  */
 package org.gephi.graph.store;
 
+import java.util.concurrent.atomic.AtomicLong;
 import org.gephi.graph.api.Graph;
 
 /**
@@ -24,76 +25,107 @@ import org.gephi.graph.api.Graph;
 public class GraphVersion {
 
     protected final Graph graph;
-    protected int nodeVersion = Integer.MIN_VALUE + 1;
-    protected int edgeVersion = Integer.MIN_VALUE + 1;
+    //Incremented under the graph write lock, volatile so they can be read without it
+    protected volatile long nodeVersion;
+    protected volatile long edgeVersion;
+    //Attributes change without the write lock
+    protected final AtomicLong attributeVersion;
+    //Incremented on every change of any kind
+    protected final AtomicLong stamp;
+    protected GraphChangeLog changeLog;
+    protected GraphJournal journal;
 
     public GraphVersion(Graph graph) {
         this.graph = graph;
+        this.attributeVersion = new AtomicLong();
+        this.stamp = new AtomicLong();
     }
 
-    public int incrementAndGetNodeVersion() {
-        nodeVersion++;
-        if (nodeVersion == Integer.MAX_VALUE) {
-            nodeVersion = Integer.MIN_VALUE + 1;
-            handleNodeReset();
-        }
+    public long incrementAndGetNodeVersion() {
+        stamp.incrementAndGet();
+        return ++nodeVersion;
+    }
+
+    public long incrementAndGetEdgeVersion() {
+        stamp.incrementAndGet();
+        return ++edgeVersion;
+    }
+
+    public long incrementAndGetAttributeVersion() {
+        stamp.incrementAndGet();
+        return attributeVersion.incrementAndGet();
+    }
+
+    public long getNodeVersion() {
         return nodeVersion;
     }
 
-    public int incrementAndGetEdgeVersion() {
-        edgeVersion++;
-        if (edgeVersion == Integer.MAX_VALUE) {
-            edgeVersion = Integer.MIN_VALUE + 1;
-            handleEdgeReset();
-        }
+    public long getEdgeVersion() {
         return edgeVersion;
     }
 
-    private void handleNodeReset() {
-        if (graph != null) {
-            if (graph.getView().isMainView()) {
-                GraphStore graphStore = (GraphStore) graph;
-                if (graphStore.observers != null) {
-                    for (GraphObserverImpl observer : graphStore.observers) {
-                        observer.resetNodeVersion();
-                    }
-                }
-            } else {
-                GraphViewImpl view = (GraphViewImpl) graph.getView();
-                if (view.observers != null) {
-                    for (GraphObserverImpl observer : view.observers) {
-                        observer.resetNodeVersion();
-                    }
-                }
-            }
+    public long getAttributeVersion() {
+        return attributeVersion.get();
+    }
+
+    public long getStamp() {
+        return stamp.get();
+    }
+
+    protected GraphChangeLog getChangeLog() {
+        if (changeLog == null) {
+            changeLog = new GraphChangeLog(GraphStoreConfiguration.OBSERVER_CHANGELOG_SIZE);
+        }
+        return changeLog;
+    }
+
+    protected void nodeAdded(NodeImpl node) {
+        if (changeLog != null) {
+            changeLog.add(GraphChangeLog.NODE_ADDED, node, node.storeId);
+        }
+        if (journal != null) {
+            journal.nodeAdded(node);
+        }
+    }
+
+    protected void nodeRemoved(NodeImpl node) {
+        if (changeLog != null) {
+            changeLog.add(GraphChangeLog.NODE_REMOVED, node, node.storeId);
+        }
+        if (journal != null) {
+            journal.nodeRemoved(node);
+        }
+    }
+
+    protected void edgeAdded(EdgeImpl edge) {
+        if (changeLog != null) {
+            changeLog.add(GraphChangeLog.EDGE_ADDED, edge, edge.storeId);
+        }
+        if (journal != null) {
+            journal.edgeAdded(edge);
+        }
+    }
+
+    protected void edgeRemoved(EdgeImpl edge) {
+        if (changeLog != null) {
+            changeLog.add(GraphChangeLog.EDGE_REMOVED, edge, edge.storeId);
+        }
+        if (journal != null) {
+            journal.edgeRemoved(edge);
         }
     }
 
-    private void handleEdgeReset() {
-        if (graph != null) {
-            if (graph.getView().isMainView()) {
-                GraphStore graphStore = (GraphStore) graph;
-                if (graphStore.observers != null) {
-                    for (GraphObserverImpl observer : graphStore.observers) {
-                        observer.resetEdgeVersion();
-                    }
-                }
-            } else {
-                GraphViewImpl view = (GraphViewImpl) graph.getView();
-                if (view.observers != null) {
-                    for (GraphObserverImpl observer : view.observers) {
-                        observer.resetEdgeVersion();
-                    }
-                }
-            }
+    protected void resetChangeLog() {
+        if (changeLog != null) {
+            changeLog.reset();
         }
     }
 
     @Override
     public int hashCode() {
         int hash = 3;
-        hash = 17 * hash + this.nodeVersion;
-        hash = 17 * hash + this.edgeVersion;
+        hash = 17 * hash + (int) (this.nodeVersion ^ (this.nodeVersion >>> 32));
+        hash = 17 * hash + (int) (this.edgeVersion ^ (this.edgeVersion >>> 32));
         return hash;
     }
 
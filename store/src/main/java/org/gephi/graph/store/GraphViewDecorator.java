@@ -43,17 +43,22 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
     }
 
     @Override
-    public Edge getEdge(Node node1, Node node2, int type) {
-        graphStore.autoReadLock();
-        try {
-            EdgeImpl edge = graphStore.edgeStore.get(node1, node1, type);
-            if (view.containsEdge(edge)) {
-                return edge;
+    public Edge getEdge(final Node node1, final Node node2, final int type) {
+        return graphStore.lockedRead(new GraphStore.Read<Edge>() {
+            @Override
+            public Edge read() {
+                return getEdgeInView(node1, node2, type);
             }
-            return null;
-        } finally {
-            graphStore.autoReadUnlock();
+        });
+    }
+
+    private Edge getEdgeInView(Node node1, Node node2, int type) {
+        graphStore.edgeStore.checkNotConcurrentWriting();
+        EdgeImpl edge = graphStore.edgeStore.get(node1, node2, type);
+        if (edge != null && view.containsEdge(edge)) {
+            return edge;
         }
+        return null;
     }
 
     @Override
@@ -105,27 +110,27 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
     }
 
     @Override
-    public boolean isAdjacent(Node source, Node target) {
+    public boolean isAdjacent(final Node source, final Node target) {
         checkValidInViewNodeObject(source);
         checkValidInViewNodeObject(target);
-        graphStore.autoReadLock();
-        try {
-            return graphStore.edgeStore.isAdjacent(source, target);
-        } finally {
-            graphStore.autoReadUnlock();
-        }
+        return graphStore.lockedRead(new GraphStore.Read<Boolean>() {
+            @Override
+            public Boolean read() {
+                return graphStore.edgeStore.isAdjacentConcurrently(source, target);
+            }
+        });
     }
 
     @Override
-    public boolean isAdjacent(Node source, Node target, int type) {
+    public boolean isAdjacent(final Node source, final Node target, final int type) {
         checkValidInViewNodeObject(source);
         checkValidInViewNodeObject(target);
-        graphStore.autoReadLock();
-        try {
-            return graphStore.edgeStore.isAdjacent(source, target, type);
-        } finally {
-            graphStore.autoReadUnlock();
-        }
+        return graphStore.lockedRead(new GraphStore.Read<Boolean>() {
+            @Override
+            public Boolean read() {
+                return graphStore.edgeStore.isAdjacentConcurrently(source, target, type);
+            }
+        });
     }
 
     @Override
@@ -214,53 +219,62 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
     }
 
     @Override
-    public boolean contains(Node node) {
+    public boolean contains(final Node node) {
         checkValidNodeObject(node);
-        graphStore.autoReadLock();
-        try {
-            return view.containsNode((NodeImpl) node);
-        } finally {
-            graphStore.autoReadUnlock();
-        }
+        return graphStore.optimisticRead(new GraphStore.Read<Boolean>() {
+            @Override
+            public Boolean read() {
+                return view.containsNode((NodeImpl) node);
+            }
+        });
     }
 
     @Override
-    public boolean contains(Edge edge) {
+    public boolean contains(final Edge edge) {
         checkValidEdgeObject(edge);
-        graphStore.autoReadLock();
-        try {
-            return view.containsEdge((EdgeImpl) edge);
-        } finally {
-            graphStore.autoReadUnlock();
-        }
+        return graphStore.optimisticRead(new GraphStore.Read<Boolean>() {
+            @Override
+            public Boolean read() {
+                return view.containsEdge((EdgeImpl) edge);
+            }
+        });
     }
 
     @Override
-    public Node getNode(Object id) {
-        graphStore.autoReadLock();
-        try {
-            NodeImpl node = graphStore.getNode(id);
-            if (view.containsNode(node)) {
-                return node;
+    public Node getNode(final Object id) {
+        return graphStore.lockedRead(new GraphStore.Read<Node>() {
+            @Override
+            public Node read() {
+                return getNodeInView(id);
             }
-            return null;
-        } finally {
-            graphStore.autoReadUnlock();
+        });
+    }
+
+    private Node getNodeInView(Object id) {
+        NodeImpl node = graphStore.nodeStore.get(id);
+        if (node != null && view.containsNode(node)) {
+            return node;
         }
+        return null;
     }
 
     @Override
-    public Edge getEdge(Object id) {
-        graphStore.autoReadLock();
-        try {
-            EdgeImpl edge = graphStore.getEdge(id);
-            if (view.containsEdge(edge)) {
-                return edge;
+    public Edge getEdge(final Object id) {
+        return graphStore.lockedRead(new GraphStore.Read<Edge>() {
+            @Override
+            public Edge read() {
+                return getEdgeInView(id);
             }
-            return null;
-        } finally {
-            graphStore.autoReadUnlock();
+        });
+    }
+
+    private Edge getEdgeInView(Object id) {
+        graphStore.edgeStore.checkNotConcurrentWriting();
+        EdgeImpl edge = graphStore.edgeStore.get(id);
+        if (edge != null && view.containsEdge(edge)) {
+            return edge;
         }
+        return null;
     }
 
     @Override
@@ -277,6 +291,20 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
         }
     }
 
+    @Override
+    public NodeIterable getNodesSnapshot() {
+        return graphStore.getNodeIterableWrapper(graphStore.nodeStore.snapshotIterator(new NodeViewIterator(graphStore.nodeStore.iterator())), false);
+    }
+
+    @Override
+    public EdgeIterable getEdgesSnapshot() {
+        if (undirected) {
+            return graphStore.getEdgeIterableWrapper(graphStore.edgeStore.snapshotIterator(new UndirectedEdgeViewIterator(graphStore.edgeStore.iterator())), false);
+        } else {
+            return graphStore.getEdgeIterableWrapper(graphStore.edgeStore.snapshotIterator(new EdgeViewIterator(graphStore.edgeStore.iterator())), false);
+        }
+    }
+
     @Override
     public EdgeIterable getSelfLoops() {
         return graphStore.getEdgeIterableWrapper(new EdgeViewIterator(graphStore.edgeStore.iteratorSelfLoop()));
@@ -603,7 +631,7 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
         return false;
     }
 
-    protected final class NodeViewIterator implements Iterator<Node> {
+    protected final class NodeViewIterator implements Iterator<Node>, GraphLock.HoldingIterator {
 
         private final Iterator<Node> nodeIterator;
         private NodeImpl pointer;
@@ -612,6 +640,11 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
             this.nodeIterator = nodeIterator;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return GraphLock.getIteratorHold(nodeIterator);
+        }
+
         @Override
         public boolean hasNext() {
             pointer = null;
@@ -639,7 +672,7 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
         }
     }
 
-    protected final class EdgeViewIterator implements Iterator<Edge> {
+    protected final class EdgeViewIterator implements Iterator<Edge>, GraphLock.HoldingIterator {
 
         private final Iterator<Edge> edgeIterator;
         private EdgeImpl pointer;
@@ -648,6 +681,11 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
             this.edgeIterator = edgeIterator;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return GraphLock.getIteratorHold(edgeIterator);
+        }
+
         @Override
         public boolean hasNext() {
             pointer = null;
@@ -675,7 +713,7 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
         }
     }
 
-    protected final class UndirectedEdgeViewIterator implements Iterator<Edge> {
+    protected final class UndirectedEdgeViewIterator implements Iterator<Edge>, GraphLock.HoldingIterator {
 
         protected final Iterator<Edge> itr;
         protected EdgeImpl pointer;
@@ -684,6 +722,11 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
             this.itr = itr;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return GraphLock.getIteratorHold(itr);
+        }
+
         @Override
         public boolean hasNext() {
             pointer = null;
@@ -707,7 +750,7 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
         }
     }
 
-    protected class NeighborsIterator implements Iterator<Node> {
+    protected class NeighborsIterator implements Iterator<Node>, GraphLock.HoldingIterator {
 
         protected final NodeImpl node;
         protected final Iterator<Edge> itr;
@@ -717,6 +760,11 @@ public class GraphViewDecorator implements DirectedSubgraph, UndirectedSubgraph
             this.itr = itr;
         }
 
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return GraphLock.getIteratorHold(itr);
+        }
+
         @Override
         public boolean hasNext() {
             return itr.hasNext();
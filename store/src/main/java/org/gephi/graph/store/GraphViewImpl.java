@@ -22,13 +22,17 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.gephi.attribute.api.Column;
 import org.gephi.graph.api.DirectedSubgraph;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphView;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.UndirectedSubgraph;
+import org.gephi.graph.store.EdgeStore.EdgeInIterator;
 import org.gephi.graph.store.EdgeStore.EdgeInOutIterator;
+import org.gephi.graph.store.EdgeStore.EdgeOutIterator;
 
 /**
  *
@@ -67,7 +71,7 @@ public final class GraphViewImpl implements GraphView {
         this.directedDecorator = new GraphViewDecorator(graphStore, this, false);
         this.undirectedDecorator = new GraphViewDecorator(graphStore, this, true);
         this.version = graphStore.version != null ? new GraphVersion(directedDecorator) : null;
-        this.observers = graphStore.version != null ? new ArrayList<GraphObserverImpl>() : null;
+        this.observers = graphStore.version != null ? new CopyOnWriteArrayList<GraphObserverImpl>() : null;
     }
 
     public GraphViewImpl(final GraphViewImpl view) {
@@ -84,7 +88,7 @@ public final class GraphViewImpl implements GraphView {
         this.directedDecorator = new GraphViewDecorator(graphStore, this, false);
         this.undirectedDecorator = new GraphViewDecorator(graphStore, this, true);
         this.version = graphStore.version != null ? new GraphVersion(directedDecorator) : null;
-        this.observers = graphStore.version != null ? new ArrayList<GraphObserverImpl>() : null;
+        this.observers = graphStore.version != null ? new CopyOnWriteArrayList<GraphObserverImpl>() : null;
     }
 
     protected DirectedSubgraph getDirectedGraph() {
@@ -105,6 +109,14 @@ public final class GraphViewImpl implements GraphView {
             nodeBitVector.set(id);
             nodeCount++;
             incrementNodeVersion();
+            if (version != null) {
+                version.nodeAdded(nodeImpl);
+            }
+            graphStore.timestampStore.indexInView(this, nodeImpl);
+            GraphJournal journal = graphStore.journal;
+            if (journal != null) {
+                journal.viewNodeAdded(this, nodeImpl);
+            }
 
             if (nodeViewOnly) {
                 //Add edges
@@ -151,6 +163,14 @@ public final class GraphViewImpl implements GraphView {
 
             edgeBitVector.set(id);
             edgeCount++;
+            if (version != null) {
+                version.edgeAdded(edgeImpl);
+            }
+            graphStore.timestampStore.indexInView(this, edgeImpl);
+            GraphJournal journal = graphStore.journal;
+            if (journal != null) {
+                journal.viewEdgeAdded(this, edgeImpl);
+            }
 
             int type = edgeImpl.type;
             ensureTypeCountArrayCapacity(type);
@@ -189,9 +209,17 @@ public final class GraphViewImpl implements GraphView {
         int id = nodeImpl.storeId;
         boolean isSet = nodeBitVector.get(id);
         if (isSet) {
+            graphStore.timestampStore.clearInView(this, nodeImpl);
+            if (version != null) {
+                version.nodeRemoved(nodeImpl);
+            }
             nodeBitVector.clear(id);
             nodeCount--;
             incrementNodeVersion();
+            GraphJournal journal = graphStore.journal;
+            if (journal != null) {
+                journal.viewNodeRemoved(this, nodeImpl);
+            }
 
             //Remove edges
             EdgeInOutIterator itr = graphStore.edgeStore.edgeIterator(node);
@@ -203,6 +231,10 @@ public final class GraphViewImpl implements GraphView {
                 if (edgeSet) {
                     incrementEdgeVersion();
 
+                    graphStore.timestampStore.clearInView(this, edgeImpl);
+                    if (version != null) {
+                        version.edgeRemoved(edgeImpl);
+                    }
                     edgeBitVector.clear(edgeId);
                     edgeCount--;
                     typeCounts[edgeImpl.type]--;
@@ -243,9 +275,17 @@ public final class GraphViewImpl implements GraphView {
         if (isSet) {
             incrementEdgeVersion();
 
+            graphStore.timestampStore.clearInView(this, edgeImpl);
+            if (version != null) {
+                version.edgeRemoved(edgeImpl);
+            }
             edgeBitVector.clear(id);
             edgeCount--;
             typeCounts[edgeImpl.type]--;
+            GraphJournal journal = graphStore.journal;
+            if (journal != null) {
+                journal.viewEdgeRemoved(this, edgeImpl);
+            }
 
             if (edgeImpl.isMutual() && edgeImpl.source.storeId < edgeImpl.target.storeId) {
                 mutualEdgeTypeCounts[edgeImpl.type]--;
@@ -281,11 +321,19 @@ public final class GraphViewImpl implements GraphView {
         }
         nodeBitVector.clear();
         edgeBitVector.clear();
+        graphStore.timestampStore.clearView(this);
+        if (version != null) {
+            version.resetChangeLog();
+        }
         nodeCount = 0;
         edgeCount = 0;
         typeCounts = new int[GraphStoreConfiguration.VIEW_DEFAULT_TYPE_COUNT];
         mutualEdgeTypeCounts = new int[GraphStoreConfiguration.VIEW_DEFAULT_TYPE_COUNT];
         mutualEdgesCount = 0;
+        GraphJournal journal = graphStore.journal;
+        if (journal != null) {
+            journal.viewCleared(this);
+        }
     }
 
     public void clearEdges() {
@@ -293,10 +341,18 @@ public final class GraphViewImpl implements GraphView {
             incrementEdgeVersion();
         }
         edgeBitVector.clear();
+        graphStore.timestampStore.clearViewEdges(this);
+        if (version != null) {
+            version.resetChangeLog();
+        }
         edgeCount = 0;
         typeCounts = new int[GraphStoreConfiguration.VIEW_DEFAULT_TYPE_COUNT];
         mutualEdgeTypeCounts = new int[GraphStoreConfiguration.VIEW_DEFAULT_TYPE_COUNT];
         mutualEdgesCount = 0;
+        GraphJournal journal = graphStore.journal;
+        if (journal != null) {
+            journal.viewEdgesCleared(this);
+        }
     }
 
     public void fill() {
@@ -315,6 +371,10 @@ public final class GraphViewImpl implements GraphView {
         this.mutualEdgeTypeCounts = new int[graphStore.edgeStore.mutualEdgesTypeSize.length];
         System.arraycopy(graphStore.edgeStore.mutualEdgesTypeSize, 0, this.mutualEdgeTypeCounts, 0, this.mutualEdgeTypeCounts.length);
         this.mutualEdgesCount = graphStore.edgeStore.mutualEdgesSize;
+        graphStore.timestampStore.fillView(this);
+        if (version != null) {
+            version.resetChangeLog();
+        }
 
         if (edgeCount > 0) {
             incrementEdgeVersion();
@@ -322,6 +382,47 @@ public final class GraphViewImpl implements GraphView {
         if (nodeCount > 0) {
             incrementNodeVersion();
         }
+        GraphJournal journal = graphStore.journal;
+        if (journal != null) {
+            journal.viewFilled(this);
+        }
+    }
+
+    protected void addNodesWithEdges(final Iterator<NodeImpl> nodes) {
+        List<NodeImpl> added = new ArrayList<NodeImpl>();
+        while (nodes.hasNext()) {
+            NodeImpl node = nodes.next();
+            int id = node.storeId;
+            if (!nodeBitVector.get(id)) {
+                nodeBitVector.set(id);
+                nodeCount++;
+                added.add(node);
+                if (version != null) {
+                    version.nodeAdded(node);
+                }
+            }
+        }
+        if (!added.isEmpty()) {
+            incrementNodeVersion();
+
+            //Only edges incident to the added nodes can join the view
+            for (NodeImpl node : added) {
+                EdgeOutIterator outItr = graphStore.edgeStore.edgeOutIterator(node);
+                while (outItr.hasNext()) {
+                    EdgeImpl edge = outItr.next();
+                    if (nodeBitVector.get(edge.target.storeId)) {
+                        addEdge(edge);
+                    }
+                }
+                EdgeInIterator inItr = graphStore.edgeStore.edgeInIterator(node);
+                while (inItr.hasNext()) {
+                    EdgeImpl edge = inItr.next();
+                    if (nodeBitVector.get(edge.source.storeId)) {
+                        addEdge(edge);
+                    }
+                }
+            }
+        }
     }
 
     public boolean containsNode(final NodeImpl node) {
@@ -436,6 +537,33 @@ public final class GraphViewImpl implements GraphView {
         }
     }
 
+    protected void attributeChanged(ElementImpl element, Column column) {
+        if (version != null && containsElement(element)) {
+            for (GraphObserverImpl observer : observers) {
+                observer.elementChanged(element, column);
+            }
+            version.incrementAndGetAttributeVersion();
+        }
+    }
+
+    protected void propertyChanged(ElementImpl element) {
+        if (version != null && !observers.isEmpty() && containsElement(element)) {
+            for (GraphObserverImpl observer : observers) {
+                observer.elementChanged(element, null);
+            }
+        }
+    }
+
+    private boolean containsElement(ElementImpl element) {
+        if (element instanceof NodeImpl) {
+            return containsNode((NodeImpl) element);
+        } else if (nodeViewOnly) {
+            EdgeImpl edge = (EdgeImpl) element;
+            return containsNode(edge.source) && containsNode(edge.target);
+        }
+        return containsEdge((EdgeImpl) element);
+    }
+
     protected void destroyAllObservers() {
         if (observers != null) {
             for (GraphObserverImpl graphObserverImpl : observers) {
@@ -473,6 +601,34 @@ public final class GraphViewImpl implements GraphView {
         }
     }
 
+    protected void storeIdsCompacted(int[] nodeIdMap, int[] edgeIdMap) {
+        if (nodeIdMap != null) {
+            nodeBitVector = remapBitVector(nodeBitVector, nodeIdMap, graphStore.nodeStore.maxStoreId());
+        }
+        if (edgeIdMap != null) {
+            edgeBitVector = remapBitVector(edgeBitVector, edgeIdMap, graphStore.edgeStore.maxStoreId());
+        }
+        if (version != null) {
+            version.resetChangeLog();
+        }
+        if (observers != null) {
+            for (GraphObserverImpl observer : observers) {
+                observer.storeIdsCompacted(nodeIdMap, edgeIdMap);
+            }
+        }
+    }
+
+    protected static BitVector remapBitVector(BitVector bitVector, int[] storeIdMap, int size) {
+        BitVector remapped = new BitVector(size);
+        int length = Math.min(bitVector.size(), storeIdMap.length);
+        for (int storeId = 0; storeId < length; storeId++) {
+            if (storeIdMap[storeId] != NodeStore.NULL_ID && bitVector.getQuick(storeId)) {
+                remapped.putQuick(storeIdMap[storeId], true);
+            }
+        }
+        return remapped;
+    }
+
     private BitVector growBitVector(BitVector bitVector, int size) {
         long[] elements = bitVector.elements();
         long[] newElements = QuickBitVector.makeBitVector(size, 1);
@@ -550,14 +706,14 @@ public final class GraphViewImpl implements GraphView {
         return true;
     }
 
-    private int incrementNodeVersion() {
+    private long incrementNodeVersion() {
         if (version != null) {
             return version.incrementAndGetNodeVersion();
         }
         return 0;
     }
 
-    private int incrementEdgeVersion() {
+    private long incrementEdgeVersion() {
         if (version != null) {
             return version.incrementAndGetEdgeVersion();
         }
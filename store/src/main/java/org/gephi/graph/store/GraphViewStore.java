@@ -18,6 +18,7 @@ package org.gephi.graph.store;
 import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
 import it.unimi.dsi.fastutil.ints.IntSortedSet;
 import java.util.Arrays;
+import org.gephi.attribute.api.Column;
 import org.gephi.graph.api.DirectedSubgraph;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
@@ -59,6 +60,10 @@ public class GraphViewStore {
         try {
             GraphViewImpl graphView = new GraphViewImpl(graphStore, false);
             addView(graphView);
+            GraphJournal journal = graphStore.journal;
+            if (journal != null) {
+                journal.viewCreated(graphView, null);
+            }
             return graphView;
         } finally {
             graphStore.autoWriteUnlock();
@@ -70,6 +75,10 @@ public class GraphViewStore {
         try {
             GraphViewImpl graphView = new GraphViewImpl(graphStore, true);
             addView(graphView);
+            GraphJournal journal = graphStore.journal;
+            if (journal != null) {
+                journal.viewCreated(graphView, null);
+            }
             return graphView;
         } finally {
             graphStore.autoWriteUnlock();
@@ -84,6 +93,10 @@ public class GraphViewStore {
         try {
             GraphViewImpl graphView = new GraphViewImpl((GraphViewImpl) view);
             addView(graphView);
+            GraphJournal journal = graphStore.journal;
+            if (journal != null) {
+                journal.viewCreated(graphView, (GraphViewImpl) view);
+            }
             return graphView;
         } finally {
             graphStore.autoWriteUnlock();
@@ -110,6 +123,11 @@ public class GraphViewStore {
                 edgeIndexStore.deleteViewIndex(((GraphViewImpl) view).getDirectedGraph());
             }
 
+            GraphJournal journal = graphStore.journal;
+            if (journal != null) {
+                journal.viewDestroyed((GraphViewImpl) view);
+            }
+
             removeView((GraphViewImpl) view);
         } finally {
             graphStore.autoWriteUnlock();
@@ -202,6 +220,26 @@ public class GraphViewStore {
         }
     }
 
+    protected void attributeChanged(ElementImpl element, Column column) {
+        if (views.length > 0) {
+            for (GraphViewImpl view : views) {
+                if (view != null) {
+                    view.attributeChanged(element, column);
+                }
+            }
+        }
+    }
+
+    protected void propertyChanged(ElementImpl element) {
+        if (views.length > 0) {
+            for (GraphViewImpl view : views) {
+                if (view != null) {
+                    view.propertyChanged(element);
+                }
+            }
+        }
+    }
+
     protected void addEdge(EdgeImpl edge) {
         if (views.length > 0) {
             for (GraphViewImpl view : views) {
@@ -218,6 +256,14 @@ public class GraphViewStore {
         }
     }
 
+    protected void storeIdsCompacted(int[] nodeIdMap, int[] edgeIdMap) {
+        for (GraphViewImpl view : views) {
+            if (view != null) {
+                view.storeIdsCompacted(nodeIdMap, edgeIdMap);
+            }
+        }
+    }
+
     protected int addView(final GraphViewImpl view) {
         checkNonNullViewObject(view);
 
@@ -67,7 +67,7 @@ public class IndexImpl<T extends Element> implements Index<T> {
 
         readLock();
         try {
-            AbstractIndex index = getIndex((ColumnImpl) column);
+            AbstractIndex index = getLoadedIndex((ColumnImpl) column);
             return index.getCount(value);
         } finally {
             readUnlock();
@@ -77,14 +77,14 @@ public class IndexImpl<T extends Element> implements Index<T> {
     public int count(String key, Object value) {
         checkNonNullObject(key);
 
-        AbstractIndex index = getIndex(key);
+        AbstractIndex index = getLoadedIndex(key);
         return index.getCount(value);
     }
 
     public Iterable<T> get(String key, Object value) {
         checkNonNullObject(key);
 
-        AbstractIndex index = getIndex(key);
+        AbstractIndex index = getLoadedIndex(key);
         return index.getValueSet(value);
     }
 
@@ -94,10 +94,10 @@ public class IndexImpl<T extends Element> implements Index<T> {
 
         if (lock != null) {
             lock.readLock();
-            AbstractIndex index = getIndex((ColumnImpl) column);
+            AbstractIndex index = getLoadedIndex((ColumnImpl) column);
             return new LockableIterable<T>(index.getValueSet(value));
         }
-        AbstractIndex index = getIndex((ColumnImpl) column);
+        AbstractIndex index = getLoadedIndex((ColumnImpl) column);
         return index.getValueSet(value);
     }
 
@@ -107,7 +107,7 @@ public class IndexImpl<T extends Element> implements Index<T> {
 
         readLock();
         try {
-            AbstractIndex index = getIndex((ColumnImpl) column);
+            AbstractIndex index = getLoadedIndex((ColumnImpl) column);
             return index.getMinValue();
         } finally {
             readUnlock();
@@ -119,7 +119,7 @@ public class IndexImpl<T extends Element> implements Index<T> {
         checkNonNullColumnObject(column);
         readLock();
         try {
-            AbstractIndex index = getIndex((ColumnImpl) column);
+            AbstractIndex index = getLoadedIndex((ColumnImpl) column);
             return index.getMaxValue();
         } finally {
             readUnlock();
@@ -129,7 +129,7 @@ public class IndexImpl<T extends Element> implements Index<T> {
     public Iterable<Map.Entry<Object, Set<T>>> get(Column column) {
         checkNonNullColumnObject(column);
 
-        AbstractIndex index = getIndex((ColumnImpl) column);
+        AbstractIndex index = getLoadedIndex((ColumnImpl) column);
         return index;
     }
 
@@ -139,7 +139,7 @@ public class IndexImpl<T extends Element> implements Index<T> {
 
         readLock();
         try {
-            AbstractIndex index = getIndex((ColumnImpl) column);
+            AbstractIndex index = getLoadedIndex((ColumnImpl) column);
             return new ArrayList(index.values());
         } finally {
             readUnlock();
@@ -151,7 +151,7 @@ public class IndexImpl<T extends Element> implements Index<T> {
         checkNonNullColumnObject(column);
         readLock();
         try {
-            AbstractIndex index = getIndex((ColumnImpl) column);
+            AbstractIndex index = getLoadedIndex((ColumnImpl) column);
             return index.countValues();
         } finally {
             readUnlock();
@@ -163,7 +163,7 @@ public class IndexImpl<T extends Element> implements Index<T> {
         checkNonNullColumnObject(column);
         readLock();
         try {
-            AbstractIndex index = getIndex((ColumnImpl) column);
+            AbstractIndex index = getLoadedIndex((ColumnImpl) column);
             return index.elements;
         } finally {
             readUnlock();
@@ -266,6 +266,23 @@ public class IndexImpl<T extends Element> implements Index<T> {
         return columns[columnStore.getColumnIndex(key)];
     }
 
+    //Queries need the values of lazily loaded columns
+    private AbstractIndex getLoadedIndex(ColumnImpl column) {
+        LazyAttributeLoader attributeLoader = columnStore.attributeLoader;
+        if (attributeLoader != null) {
+            attributeLoader.pin(columnStore, column.getIndex());
+        }
+        return getIndex(column);
+    }
+
+    private AbstractIndex getLoadedIndex(String key) {
+        LazyAttributeLoader attributeLoader = columnStore.attributeLoader;
+        if (attributeLoader != null) {
+            attributeLoader.pin(columnStore, columnStore.getColumnIndex(key));
+        }
+        return getIndex(key);
+    }
+
     protected void destroy() {
         for (AbstractIndex ai : columns) {
             ai.destroy();
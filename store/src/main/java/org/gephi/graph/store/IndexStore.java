@@ -85,6 +85,10 @@ public class IndexStore<T extends Element> {
         if (graph.getView().isMainView()) {
             throw new IllegalArgumentException("Can't create a view index for the main view");
         }
+        LazyAttributeLoader attributeLoader = columnStore.attributeLoader;
+        if (attributeLoader != null) {
+            attributeLoader.pinIndexed(columnStore);
+        }
         IndexImpl viewIndex = new IndexImpl<T>(columnStore);
         viewIndex.addAllColumns(columnStore.columns);
         viewIndexes.put(graph.getView(), viewIndex);
@@ -184,6 +188,23 @@ public class IndexStore<T extends Element> {
         }
     }
 
+    //Single column of a lazily loaded element, views are created once indexed columns are loaded
+    protected void index(Column column, T element) {
+        ElementImpl elementImpl = (ElementImpl) element;
+        int index = column.getIndex();
+        Object value = index < elementImpl.attributes.length ? elementImpl.attributes[index] : null;
+        value = mainIndex.put(column, value, element);
+        if (index < elementImpl.attributes.length) {
+            elementImpl.attributes[index] = value;
+        }
+    }
+
+    protected void unindex(Column column, T element) {
+        ElementImpl elementImpl = (ElementImpl) element;
+        int index = column.getIndex();
+        mainIndex.remove(column, index < elementImpl.attributes.length ? elementImpl.attributes[index] : null, element);
+    }
+
     public void clear() {
         mainIndex.clear();
         for (IndexImpl index : viewIndexes.values()) {
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+/**
+ * Graph lock recording acquisition counts, wait and hold times per call site.
+ * <p>
+ * Only the outermost acquisition of each thread is measured, reentrant calls
+ * are attributed to it. The call site is the first caller outside the locking
+ * helpers and is resolved from a stack trace, which makes this lock noticeably
+ * slower than {@link GraphLock}.
+ *
+ * @author mbastian
+ */
+public class InstrumentedGraphLock extends GraphLock {
+
+    protected final LockStatisticsImpl statistics;
+    protected final ThreadLocal<HoldState> holdStates;
+
+    public InstrumentedGraphLock() {
+        this(false);
+    }
+
+    public InstrumentedGraphLock(boolean singleWriter) {
+        this(singleWriter, new LockStatisticsImpl());
+    }
+
+    public InstrumentedGraphLock(boolean singleWriter, LockStatisticsImpl statistics) {
+        super(singleWriter);
+        this.statistics = statistics;
+        this.holdStates = new ThreadLocal<HoldState>() {
+            @Override
+            protected HoldState initialValue() {
+                return new HoldState();
+            }
+        };
+    }
+
+    @Override
+    public void readLock() {
+        HoldState state = holdStates.get();
+        if (state.readDepth > 0) {
+            super.readLock();
+            state.readDepth++;
+            return;
+        }
+        StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+        long start = System.nanoTime();
+        super.readLock();
+        long acquired = System.nanoTime();
+        state.readDepth = 1;
+        state.readStart = acquired;
+        state.readStackTrace = stackTrace;
+        state.readSite = getSite(stackTrace);
+        statistics.recordAcquire(state.readSite, false, acquired - start);
+    }
+
+    @Override
+    public void readUnlock() {
+        super.readUnlock();
+        HoldState state = holdStates.get();
+        if (state.readDepth > 0 && --state.readDepth == 0) {
+            releaseRead(state);
+        }
+    }
+
+    @Override
+    public void readUnlockAll() {
+        super.readUnlockAll();
+        HoldState state = holdStates.get();
+        if (state.readDepth > 0) {
+            state.readDepth = 0;
+            releaseRead(state);
+        }
+    }
+
+    @Override
+    public void writeLock() {
+        HoldState state = holdStates.get();
+        if (state.writeDepth > 0) {
+            super.writeLock();
+            state.writeDepth++;
+            return;
+        }
+        StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+        long start = System.nanoTime();
+        super.writeLock();
+        long acquired = System.nanoTime();
+        state.writeDepth = 1;
+        state.writeStart = acquired;
+        state.writeStackTrace = stackTrace;
+        state.writeSite = getSite(stackTrace);
+        statistics.recordAcquire(state.writeSite, true, acquired - start);
+    }
+
+    @Override
+    public void writeUnlock() {
+        super.writeUnlock();
+        HoldState state = holdStates.get();
+        if (state.writeDepth > 0 && --state.writeDepth == 0) {
+            statistics.recordRelease(state.writeSite, true, System.nanoTime() - state.writeStart, state.writeStackTrace);
+            state.writeSite = null;
+            state.writeStackTrace = null;
+        }
+    }
+
+    @Override
+    public LockStatisticsImpl getStatistics() {
+        return statistics;
+    }
+
+    private void releaseRead(HoldState state) {
+        statistics.recordRelease(state.readSite, false, System.nanoTime() - state.readStart, state.readStackTrace);
+        state.readSite = null;
+        state.readStackTrace = null;
+    }
+
+    protected static String getSite(StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            String className = element.getClassName();
+            if (className.equals(GraphLock.class.getName()) || className.equals(InstrumentedGraphLock.class.getName())) {
+                continue;
+            }
+            String methodName = element.getMethodName();
+            if (methodName.equals("readLock") || methodName.equals("writeLock")
+                    || methodName.equals("autoReadLock") || methodName.equals("autoWriteLock")) {
+                continue;
+            }
+            int dot = className.lastIndexOf('.');
+            return className.substring(dot + 1) + "." + methodName;
+        }
+        return "unknown";
+    }
+
+    protected static class HoldState {
+
+        protected int readDepth;
+        protected long readStart;
+        protected String readSite;
+        protected StackTraceElement[] readStackTrace;
+        protected int writeDepth;
+        protected long writeStart;
+        protected String writeSite;
+        protected StackTraceElement[] writeStackTrace;
+    }
+}
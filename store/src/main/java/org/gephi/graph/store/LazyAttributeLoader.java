@@ -0,0 +1,369 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.gephi.attribute.time.TimestampSet;
+import org.gephi.attribute.time.TimestampValueSet;
+import org.gephi.graph.utils.DataInputOutput;
+
+/**
+ * Attribute columns of a columnar snapshot left in the mapped file until
+ * they're accessed.
+ * <p>
+ * A column is decoded into the elements, and indexed, the first time one of
+ * its values is read. When the encoded size of the loaded columns exceeds the
+ * memory budget, the least recently used ones are dropped again. Columns
+ * which are modified, read as whole attribute arrays or queried through the
+ * index are pinned and stay loaded. Columns of dynamic types are always
+ * loaded with the topology as the timestamp store rewrites them in place.
+ * <p>
+ * Values of loaded and pinned columns are read without locking, only the
+ * first access to an unloaded column synchronizes on the loader. Loading and
+ * unloading a column update its own index under the graph's read lock, which
+ * is safe as index queries pin the column first, and thus wait for a pending
+ * load, and never see an unpinned column's index change afterwards.
+ * <p>
+ * The loader is attached to the column stores and detaches itself once every
+ * column is pinned.
+ *
+ * @author mbastian
+ */
+public class LazyAttributeLoader {
+
+    //Column states
+    static final int PINNED = 0;
+    static final int UNLOADED = 1;
+    static final int LOADED = 2;
+    //Store
+    protected final GraphStore store;
+    protected final long memoryBudget;
+    protected final LazyColumns nodeColumns;
+    protected final LazyColumns edgeColumns;
+    //Loaded columns, evicted by last access
+    protected final LinkedHashSet<Integer> loadedColumns;
+    protected final AtomicLong accessClock;
+    protected long loadedBytes;
+    protected int lazyCount;
+
+    public LazyAttributeLoader(GraphStore store, long memoryBudget, ElementImpl[] nodes, ColumnarSerialization.AttributeColumns nodeAttributes, ElementImpl[] edges, ColumnarSerialization.AttributeColumns edgeAttributes) {
+        this.store = store;
+        this.memoryBudget = memoryBudget;
+        this.nodeColumns = new LazyColumns(0, store.nodeColumnStore, nodes, nodeAttributes);
+        this.edgeColumns = new LazyColumns(1, store.edgeColumnStore, edges, edgeAttributes);
+        this.loadedColumns = new LinkedHashSet<Integer>();
+        this.accessClock = new AtomicLong();
+        this.lazyCount = nodeColumns.lazyCount() + edgeColumns.lazyCount();
+    }
+
+    /**
+     * Returns true if the column can be left in the snapshot.
+     *
+     * @param columnStore column store
+     * @param index column index
+     * @return true if the column can be loaded lazily
+     */
+    public static boolean isLazy(ColumnStore columnStore, int index) {
+        ColumnImpl column = index < columnStore.columns.length ? columnStore.columns[index] : null;
+        if (column == null) {
+            return false;
+        }
+        Class typeClass = column.getTypeClass();
+        return !TimestampSet.class.equals(typeClass) && !TimestampValueSet.class.isAssignableFrom(typeClass);
+    }
+
+    //Indexes the eagerly loaded columns and timestamps, as if attributes were fully indexed
+    protected void indexAttributes() {
+        nodeColumns.indexAttributes();
+        edgeColumns.indexAttributes();
+    }
+
+    protected synchronized void attach() {
+        if (lazyCount > 0) {
+            store.nodeColumnStore.attributeLoader = this;
+            store.edgeColumnStore.attributeLoader = this;
+        }
+    }
+
+    public Object getAttribute(ElementImpl element, int index) {
+        LazyColumns columns = getColumns(element.getColumnStore());
+        if (columns != null && index < columns.states.length()) {
+            int state = columns.states.get(index);
+            if (state == LOADED) {
+                columns.accessed.set(index, accessClock.incrementAndGet());
+                Object value = getValue(element, index);
+                //The column is unloaded before its values are cleared
+                if (value != null || columns.states.get(index) == LOADED) {
+                    return value;
+                }
+            } else if (state == PINNED) {
+                return getValue(element, index);
+            }
+            synchronized (this) {
+                if (columns.states.get(index) == UNLOADED) {
+                    load(columns, index);
+                }
+                return getValue(element, index);
+            }
+        }
+        return getValue(element, index);
+    }
+
+    public synchronized void pin(ColumnStore columnStore, int index) {
+        LazyColumns columns = getColumns(columnStore);
+        if (columns != null && index >= 0 && index < columns.states.length()) {
+            if (columns.states.get(index) == UNLOADED) {
+                load(columns, index);
+            }
+            if (columns.states.get(index) == LOADED) {
+                release(columns, index);
+            }
+        }
+    }
+
+    public synchronized void pinAll(ColumnStore columnStore) {
+        LazyColumns columns = getColumns(columnStore);
+        if (columns != null) {
+            for (int i = 0; i < columns.states.length(); i++) {
+                pin(columnStore, i);
+            }
+        }
+    }
+
+    public synchronized void pinAll() {
+        pinAll(store.nodeColumnStore);
+        pinAll(store.edgeColumnStore);
+    }
+
+    public synchronized void pinIndexed(ColumnStore columnStore) {
+        LazyColumns columns = getColumns(columnStore);
+        if (columns != null) {
+            for (int i = 0; i < columns.states.length(); i++) {
+                ColumnImpl column = columnStore.columns[i];
+                if (column != null && column.isIndexed()) {
+                    pin(columnStore, i);
+                }
+            }
+        }
+    }
+
+    //The column doesn't exist anymore, its block is discarded
+    public synchronized void columnRemoved(ColumnStore columnStore, int index) {
+        LazyColumns columns = getColumns(columnStore);
+        if (columns != null && index < columns.states.length() && columns.states.get(index) != PINNED) {
+            if (columns.states.get(index) == LOADED) {
+                loadedColumns.remove(columns.key(index));
+                loadedBytes -= columns.attributes.blocks[index].limit();
+            }
+            discard(columns, index);
+        }
+    }
+
+    //The elements have been cleared, all blocks are discarded
+    public synchronized void clear(ColumnStore columnStore) {
+        LazyColumns columns = getColumns(columnStore);
+        if (columns != null) {
+            for (int i = 0; i < columns.states.length(); i++) {
+                if (columns.states.get(i) == LOADED) {
+                    loadedColumns.remove(columns.key(i));
+                    loadedBytes -= columns.attributes.blocks[i].limit();
+                }
+                if (columns.states.get(i) != PINNED) {
+                    discard(columns, i);
+                }
+            }
+        }
+    }
+
+    public synchronized boolean isLoaded(ColumnStore columnStore, int index) {
+        LazyColumns columns = getColumns(columnStore);
+        return columns == null || index >= columns.states.length() || columns.states.get(index) != UNLOADED;
+    }
+
+    public synchronized long getLoadedBytes() {
+        return loadedBytes;
+    }
+
+    private void load(LazyColumns columns, int index) {
+        ByteBuffer block = columns.attributes.blocks[index].duplicate();
+        byte[] bytes = new byte[block.remaining()];
+        block.get(bytes);
+        Serialization serialization = new Serialization(store);
+        serialization.setStringTable(columns.attributes.strings);
+        Object[] values;
+        try {
+            values = columns.attributes.decodeColumn(index, new DataInputOutput(bytes), serialization);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        ColumnImpl column = columns.columnStore.columns[index];
+        boolean indexed = column != null && column.isIndexed() && columns.columnStore.indexStore != null;
+        ElementImpl[] elements = columns.elements;
+        for (int i = 0; i < elements.length; i++) {
+            ElementImpl element = elements[i];
+            if (index < element.attributes.length) {
+                element.attributes[index] = values[i];
+            }
+            if (indexed && element.isValid()) {
+                columns.columnStore.indexStore.index(column, element);
+            }
+        }
+        columns.accessed.set(index, accessClock.incrementAndGet());
+        columns.states.set(index, LOADED);
+        Integer loadedKey = columns.key(index);
+        loadedColumns.add(loadedKey);
+        loadedBytes += bytes.length;
+
+        //Drops least recently used columns, the one just loaded stays
+        while (loadedBytes > memoryBudget && loadedColumns.size() > 1) {
+            Integer lruKey = null;
+            long lruAccess = Long.MAX_VALUE;
+            for (Integer key : loadedColumns) {
+                long access = getColumns(key).accessed.get(key >> 1);
+                if (!key.equals(loadedKey) && access < lruAccess) {
+                    lruKey = key;
+                    lruAccess = access;
+                }
+            }
+            loadedColumns.remove(lruKey);
+            unload(getColumns(lruKey), lruKey >> 1);
+        }
+    }
+
+    private void unload(LazyColumns columns, int index) {
+        //Unloaded first, so lock-free readers of a cleared value retry
+        columns.states.set(index, UNLOADED);
+        ColumnImpl column = columns.columnStore.columns[index];
+        boolean indexed = column != null && column.isIndexed() && columns.columnStore.indexStore != null;
+        ElementImpl[] elements = columns.elements;
+        for (int i = 0; i < elements.length; i++) {
+            ElementImpl element = elements[i];
+            if (indexed && element.isValid()) {
+                columns.columnStore.indexStore.unindex(column, element);
+            }
+            if (index < element.attributes.length) {
+                element.attributes[index] = null;
+            }
+        }
+        loadedBytes -= columns.attributes.blocks[index].limit();
+    }
+
+    private void release(LazyColumns columns, int index) {
+        loadedColumns.remove(columns.key(index));
+        loadedBytes -= columns.attributes.blocks[index].limit();
+        discard(columns, index);
+    }
+
+    private void discard(LazyColumns columns, int index) {
+        columns.states.set(index, PINNED);
+        columns.attributes.blocks[index] = null;
+        if (--lazyCount == 0) {
+            //Everything is loaded, attributes don't need to be checked anymore
+            store.nodeColumnStore.attributeLoader = null;
+            store.edgeColumnStore.attributeLoader = null;
+        }
+    }
+
+    private LazyColumns getColumns(Integer key) {
+        return (key & 1) == 0 ? nodeColumns : edgeColumns;
+    }
+
+    private static Object getValue(ElementImpl element, int index) {
+        Object[] attributes = element.attributes;
+        return index < attributes.length ? attributes[index] : null;
+    }
+
+    private LazyColumns getColumns(ColumnStore columnStore) {
+        if (columnStore == nodeColumns.columnStore) {
+            return nodeColumns;
+        } else if (columnStore == edgeColumns.columnStore) {
+            return edgeColumns;
+        }
+        return null;
+    }
+
+    /**
+     * Lazily loaded columns of one element type.
+     */
+    protected static class LazyColumns {
+
+        protected final int kind;
+        protected final ColumnStore columnStore;
+        protected final ElementImpl[] elements;
+        protected final ColumnarSerialization.AttributeColumns attributes;
+        protected final AtomicIntegerArray states;
+        protected final AtomicLongArray accessed;
+
+        public LazyColumns(int kind, ColumnStore columnStore, ElementImpl[] elements, ColumnarSerialization.AttributeColumns attributes) {
+            this.kind = kind;
+            this.columnStore = columnStore;
+            this.elements = elements;
+            this.attributes = attributes;
+            this.states = new AtomicIntegerArray(attributes.blocks.length);
+            this.accessed = new AtomicLongArray(attributes.blocks.length);
+            for (int i = 0; i < states.length(); i++) {
+                states.set(i, attributes.blocks[i] != null ? UNLOADED : PINNED);
+            }
+        }
+
+        public Integer key(int index) {
+            return (index << 1) | kind;
+        }
+
+        public int lazyCount() {
+            int count = 0;
+            for (int i = 0; i < states.length(); i++) {
+                if (states.get(i) != PINNED) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public void indexAttributes() {
+            int length = columnStore.length;
+            ColumnImpl[] columns = columnStore.columns;
+            IndexStore indexStore = columnStore.indexStore;
+            TimestampStore timestampStore = elements.length > 0 ? elements[0].getTimestampStore() : null;
+            for (int i = 0; i < elements.length; i++) {
+                ElementImpl element = elements[i];
+                if (element.attributes.length < length) {
+                    Object[] newArray = new Object[length];
+                    System.arraycopy(element.attributes, 0, newArray, 0, element.attributes.length);
+                    element.attributes = newArray;
+                }
+                if (indexStore != null) {
+                    for (int j = 0; j < length; j++) {
+                        ColumnImpl column = columns[j];
+                        if (column != null && column.isIndexed() && (j >= states.length() || states.get(j) == PINNED)) {
+                            indexStore.index(column, element);
+                        }
+                    }
+                }
+                if (timestampStore != null) {
+                    timestampStore.index(element);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import org.gephi.graph.api.LockHistogram;
+import org.gephi.graph.api.LockSiteStatistics;
+import org.gephi.graph.api.LockStatistics;
+import org.gephi.graph.api.LongHeldLock;
+
+/**
+ *
+ * @author mbastian
+ */
+public class LockStatisticsImpl implements LockStatistics {
+
+    protected final ConcurrentMap<String, SiteStatistics> sites;
+    protected final SiteStatistics total;
+    protected final LinkedList<LongHeldLockImpl> longHeldLocks;
+    protected final int longHeldLocksSize;
+    protected volatile long longHoldThreshold;
+
+    public LockStatisticsImpl() {
+        this(GraphStoreConfiguration.LOCK_LONG_HOLD_THRESHOLD * 1000000l, GraphStoreConfiguration.LOCK_LONG_HOLD_HISTORY_SIZE);
+    }
+
+    public LockStatisticsImpl(long longHoldThreshold, int longHeldLocksSize) {
+        this.sites = new ConcurrentHashMap<String, SiteStatistics>();
+        this.total = new SiteStatistics("total");
+        this.longHeldLocks = new LinkedList<LongHeldLockImpl>();
+        this.longHeldLocksSize = longHeldLocksSize;
+        this.longHoldThreshold = longHoldThreshold;
+    }
+
+    public void recordAcquire(String site, boolean write, long waitTime) {
+        getOrCreateSite(site).recordAcquire(write, waitTime);
+        total.recordAcquire(write, waitTime);
+    }
+
+    public void recordRelease(String site, boolean write, long holdTime, StackTraceElement[] stackTrace) {
+        getOrCreateSite(site).recordRelease(write, holdTime);
+        total.recordRelease(write, holdTime);
+        if (holdTime >= longHoldThreshold) {
+            LongHeldLockImpl longHeldLock = new LongHeldLockImpl(site, Thread.currentThread().getName(), write, holdTime, stackTrace);
+            synchronized (longHeldLocks) {
+                longHeldLocks.addLast(longHeldLock);
+                if (longHeldLocks.size() > longHeldLocksSize) {
+                    longHeldLocks.removeFirst();
+                }
+            }
+        }
+    }
+
+    @Override
+    public Collection<LockSiteStatistics> getSites() {
+        return Collections.<LockSiteStatistics>unmodifiableCollection(new ArrayList<SiteStatistics>(sites.values()));
+    }
+
+    @Override
+    public LockSiteStatistics getSite(String site) {
+        return sites.get(site);
+    }
+
+    @Override
+    public LockSiteStatistics getTotal() {
+        return total;
+    }
+
+    @Override
+    public List<LongHeldLock> getLongHeldLocks() {
+        synchronized (longHeldLocks) {
+            return Collections.<LongHeldLock>unmodifiableList(new ArrayList<LongHeldLockImpl>(longHeldLocks));
+        }
+    }
+
+    @Override
+    public long getLongHoldThreshold() {
+        return longHoldThreshold;
+    }
+
+    @Override
+    public void setLongHoldThreshold(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("The threshold can't be negative");
+        }
+        longHoldThreshold = nanos;
+    }
+
+    @Override
+    public void reset() {
+        sites.clear();
+        total.reset();
+        synchronized (longHeldLocks) {
+            longHeldLocks.clear();
+        }
+    }
+
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName(GraphStoreConfiguration.LOCK_STATISTICS_JMX_DOMAIN + ":type=GraphLock,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new StandardMBean(new MBean(), LockStatisticsMBean.class), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void unregisterMBean(ObjectName objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private SiteStatistics getOrCreateSite(String site) {
+        SiteStatistics siteStatistics = sites.get(site);
+        if (siteStatistics == null) {
+            siteStatistics = new SiteStatistics(site);
+            SiteStatistics existing = sites.putIfAbsent(site, siteStatistics);
+            if (existing != null) {
+                siteStatistics = existing;
+            }
+        }
+        return siteStatistics;
+    }
+
+    protected class MBean implements LockStatisticsMBean {
+
+        @Override
+        public long getReadCount() {
+            return total.getReadCount();
+        }
+
+        @Override
+        public long getWriteCount() {
+            return total.getWriteCount();
+        }
+
+        @Override
+        public double getReadWaitTimeMean() {
+            return total.readWaitTime.getMean();
+        }
+
+        @Override
+        public long getReadWaitTime99() {
+            return total.readWaitTime.getValueAtPercentile(99.0);
+        }
+
+        @Override
+        public long getReadWaitTimeMax() {
+            return total.readWaitTime.getMax();
+        }
+
+        @Override
+        public double getWriteWaitTimeMean() {
+            return total.writeWaitTime.getMean();
+        }
+
+        @Override
+        public long getWriteWaitTime99() {
+            return total.writeWaitTime.getValueAtPercentile(99.0);
+        }
+
+        @Override
+        public long getWriteWaitTimeMax() {
+            return total.writeWaitTime.getMax();
+        }
+
+        @Override
+        public long getReadHoldTimeMax() {
+            return total.readHoldTime.getMax();
+        }
+
+        @Override
+        public long getWriteHoldTimeMax() {
+            return total.writeHoldTime.getMax();
+        }
+
+        @Override
+        public long getLongHoldThreshold() {
+            return longHoldThreshold;
+        }
+
+        @Override
+        public void setLongHoldThreshold(long nanos) {
+            LockStatisticsImpl.this.setLongHoldThreshold(nanos);
+        }
+
+        @Override
+        public String[] getSites() {
+            List<String> res = new ArrayList<String>();
+            for (SiteStatistics site : sites.values()) {
+                res.add(site.toString());
+            }
+            return res.toArray(new String[0]);
+        }
+
+        @Override
+        public String[] getLongHeldLocks() {
+            List<String> res = new ArrayList<String>();
+            for (LongHeldLock longHeldLock : LockStatisticsImpl.this.getLongHeldLocks()) {
+                res.add(longHeldLock.toString());
+            }
+            return res.toArray(new String[0]);
+        }
+
+        @Override
+        public void reset() {
+            LockStatisticsImpl.this.reset();
+        }
+    }
+
+    protected static class SiteStatistics implements LockSiteStatistics {
+
+        protected final String site;
+        protected final AtomicLong readCount;
+        protected final AtomicLong writeCount;
+        protected final LockHistogramImpl readWaitTime;
+        protected final LockHistogramImpl writeWaitTime;
+        protected final LockHistogramImpl readHoldTime;
+        protected final LockHistogramImpl writeHoldTime;
+
+        public SiteStatistics(String site) {
+            this.site = site;
+            this.readCount = new AtomicLong();
+            this.writeCount = new AtomicLong();
+            this.readWaitTime = new LockHistogramImpl();
+            this.writeWaitTime = new LockHistogramImpl();
+            this.readHoldTime = new LockHistogramImpl();
+            this.writeHoldTime = new LockHistogramImpl();
+        }
+
+        protected void recordAcquire(boolean write, long waitTime) {
+            if (write) {
+                writeCount.incrementAndGet();
+                writeWaitTime.record(waitTime);
+            } else {
+                readCount.incrementAndGet();
+                readWaitTime.record(waitTime);
+            }
+        }
+
+        protected void recordRelease(boolean write, long holdTime) {
+            if (write) {
+                writeHoldTime.record(holdTime);
+            } else {
+                readHoldTime.record(holdTime);
+            }
+        }
+
+        protected void reset() {
+            readCount.set(0);
+            writeCount.set(0);
+            readWaitTime.reset();
+            writeWaitTime.reset();
+            readHoldTime.reset();
+            writeHoldTime.reset();
+        }
+
+        @Override
+        public String getSite() {
+            return site;
+        }
+
+        @Override
+        public long getReadCount() {
+            return readCount.get();
+        }
+
+        @Override
+        public long getWriteCount() {
+            return writeCount.get();
+        }
+
+        @Override
+        public LockHistogram getReadWaitTime() {
+            return readWaitTime;
+        }
+
+        @Override
+        public LockHistogram getWriteWaitTime() {
+            return writeWaitTime;
+        }
+
+        @Override
+        public LockHistogram getReadHoldTime() {
+            return readHoldTime;
+        }
+
+        @Override
+        public LockHistogram getWriteHoldTime() {
+            return writeHoldTime;
+        }
+
+        @Override
+        public String toString() {
+            return site + " reads=" + readCount.get() + " writes=" + writeCount.get()
+                    + " readWait99=" + readWaitTime.getValueAtPercentile(99.0)
+                    + " writeWait99=" + writeWaitTime.getValueAtPercentile(99.0)
+                    + " readHoldMax=" + readHoldTime.getMax()
+                    + " writeHoldMax=" + writeHoldTime.getMax();
+        }
+    }
+
+    protected static class LongHeldLockImpl implements LongHeldLock {
+
+        protected final String site;
+        protected final String threadName;
+        protected final boolean write;
+        protected final long holdTime;
+        protected final long releaseTime;
+        protected final StackTraceElement[] stackTrace;
+
+        public LongHeldLockImpl(String site, String threadName, boolean write, long holdTime, StackTraceElement[] stackTrace) {
+            this.site = site;
+            this.threadName = threadName;
+            this.write = write;
+            this.holdTime = holdTime;
+            this.releaseTime = System.currentTimeMillis();
+            this.stackTrace = stackTrace;
+        }
+
+        @Override
+        public String getSite() {
+            return site;
+        }
+
+        @Override
+        public String getThreadName() {
+            return threadName;
+        }
+
+        @Override
+        public boolean isWrite() {
+            return write;
+        }
+
+        @Override
+        public long getHoldTime() {
+            return holdTime;
+        }
+
+        @Override
+        public long getReleaseTime() {
+            return releaseTime;
+        }
+
+        @Override
+        public StackTraceElement[] getStackTrace() {
+            return stackTrace;
+        }
+
+        @Override
+        public String toString() {
+            return (write ? "write" : "read") + " lock held " + holdTime / 1000000l + "ms by " + threadName + " at " + site;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+/**
+ * JMX view of the lock statistics, times are in nanoseconds.
+ *
+ * @author mbastian
+ */
+public interface LockStatisticsMBean {
+
+    public long getReadCount();
+
+    public long getWriteCount();
+
+    public double getReadWaitTimeMean();
+
+    public long getReadWaitTime99();
+
+    public long getReadWaitTimeMax();
+
+    public double getWriteWaitTimeMean();
+
+    public long getWriteWaitTime99();
+
+    public long getWriteWaitTimeMax();
+
+    public long getReadHoldTimeMax();
+
+    public long getWriteHoldTimeMax();
+
+    public long getLongHoldThreshold();
+
+    public void setLongHoldThreshold(long nanos);
+
+    public String[] getSites();
+
+    public String[] getLongHeldLocks();
+
+    public void reset();
+}
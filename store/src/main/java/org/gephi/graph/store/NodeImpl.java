@@ -168,56 +168,67 @@ public class NodeImpl extends ElementImpl implements Node {
     @Override
     public void setX(float x) {
         properties.setX(x);
+        propertyChanged();
     }
 
     @Override
     public void setY(float y) {
         properties.setY(y);
+        propertyChanged();
     }
 
     @Override
     public void setZ(float z) {
         properties.setZ(z);
+        propertyChanged();
     }
 
     @Override
     public void setPosition(float x, float y) {
         properties.setPosition(x, y);
+        propertyChanged();
     }
 
     @Override
     public void setPosition(float x, float y, float z) {
         properties.setPosition(x, y, z);
+        propertyChanged();
     }
 
     @Override
     public void setR(float r) {
         properties.setR(r);
+        propertyChanged();
     }
 
     @Override
     public void setG(float g) {
         properties.setG(g);
+        propertyChanged();
     }
 
     @Override
     public void setB(float b) {
         properties.setB(b);
+        propertyChanged();
     }
 
     @Override
     public void setAlpha(float a) {
         properties.setAlpha(a);
+        propertyChanged();
     }
 
     @Override
     public void setColor(Color color) {
         properties.setColor(color);
+        propertyChanged();
     }
 
     @Override
     public void setSize(float size) {
         properties.setSize(size);
+        propertyChanged();
     }
 
     @Override
@@ -19,6 +19,7 @@ import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -37,6 +38,8 @@ public class NodeStore implements Collection<Node>, NodeIterable {
     protected final EdgeStore edgeStore;
     //Locking (optional)
     protected final GraphLock lock;
+    //Snapshot iterators
+    protected final ElementArrayPool elementArrayPool;
     //Version
     protected final GraphVersion version;
     //Data
@@ -53,6 +56,7 @@ public class NodeStore implements Collection<Node>, NodeIterable {
     public NodeStore() {
         initStore();
         this.lock = null;
+        this.elementArrayPool = new ElementArrayPool(GraphStoreConfiguration.ITERATOR_SNAPSHOT_POOL_SIZE);
         this.edgeStore = null;
         this.viewStore = null;
         this.version = null;
@@ -61,6 +65,7 @@ public class NodeStore implements Collection<Node>, NodeIterable {
     public NodeStore(final EdgeStore edgeStore, final GraphLock lock, final GraphViewStore viewStore, final GraphVersion graphVersion) {
         initStore();
         this.lock = lock;
+        this.elementArrayPool = new ElementArrayPool(GraphStoreConfiguration.ITERATOR_SNAPSHOT_POOL_SIZE);
         this.edgeStore = edgeStore;
         this.viewStore = viewStore;
         this.version = graphVersion;
@@ -89,6 +94,7 @@ public class NodeStore implements Collection<Node>, NodeIterable {
                     if (blocksCount == blocks.length) {
                         NodeBlock[] newBlocks = new NodeBlock[blocksCount + 1];
                         System.arraycopy(blocks, 0, newBlocks, 0, blocks.length);
+                        publish();
                         blocks = newBlocks;
                     }
                     NodeBlock block = blocks[blocksCount];
@@ -100,6 +106,7 @@ public class NodeStore implements Collection<Node>, NodeIterable {
                         currentBlockIndex = blocksCount;
                         currentBlock = block;
                     }
+                    publish();
                     blocksCount++;
                 }
                 break;
@@ -133,6 +140,9 @@ public class NodeStore implements Collection<Node>, NodeIterable {
     public void clear() {
         if (!isEmpty()) {
             incrementVersion();
+            if (version != null) {
+                version.resetChangeLog();
+            }
         }
 
         for (NodeStoreIterator itr = new NodeStoreIterator(); itr.hasNext();) {
@@ -250,11 +260,15 @@ public class NodeStore implements Collection<Node>, NodeIterable {
                 currentBlock.add(node);
                 dictionary.put(node.getId(), node.storeId);
             }
+            if (version != null) {
+                version.nodeAdded(node);
+            }
             if (viewStore != null) {
                 viewStore.addNode(node);
             }
             node.indexAttributes();
 
+            publish();
             size++;
 
             return true;
@@ -277,6 +291,9 @@ public class NodeStore implements Collection<Node>, NodeIterable {
             node.clearAttributes();
 
             incrementVersion();
+            if (version != null) {
+                version.nodeRemoved(node);
+            }
             if (viewStore != null) {
                 viewStore.removeNode(node);
             }
@@ -451,7 +468,38 @@ public class NodeStore implements Collection<Node>, NodeIterable {
 
     @Override
     public void doBreak() {
-        readUnlock();
+        if (lock != null) {
+            lock.unlockLastIterator(this);
+        }
+    }
+
+    @Override
+    public void close() {
+        doBreak();
+    }
+
+    public NodeSnapshotIterator snapshotIterator(Iterator<Node> iterator) {
+        return new NodeSnapshotIterator(iterator);
+    }
+
+    GraphLock.IteratorHold lockIterator() {
+        if (lock != null) {
+            return lock.lockIterator(this);
+        }
+        return null;
+    }
+
+    void unlockIterator(GraphLock.IteratorHold hold) {
+        if (hold != null) {
+            lock.unlockIterator(hold);
+        }
+    }
+
+    //Single writer mode, makes the appends so far visible to lock-free readers
+    void publish() {
+        if (lock != null) {
+            lock.publish();
+        }
     }
 
     void readLock() {
@@ -478,14 +526,14 @@ public class NodeStore implements Collection<Node>, NodeIterable {
         }
     }
 
-    private int incrementVersion() {
+    private long incrementVersion() {
         if (version != null) {
             return version.incrementAndGetNodeVersion();
         }
         return 0;
     }
 
-    private boolean isValidIndex(int id) {
+    boolean isValidIndex(int id) {
         if (id < 0 || id >= currentBlock.offset + currentBlock.nodeLength) {
             return false;
         }
@@ -529,6 +577,77 @@ public class NodeStore implements Collection<Node>, NodeIterable {
         return currentBlock.offset + currentBlock.nodeLength;
     }
 
+    /**
+     * Bulk loads nodes into this empty store. Nodes get consecutive store ids
+     * in array order, attributes aren't indexed and the version isn't
+     * incremented.
+     *
+     * @param nodes nodes to load
+     */
+    void load(final NodeImpl[] nodes) {
+        if (size > 0 || garbageSize > 0) {
+            throw new IllegalArgumentException("The store is not empty");
+        }
+        int length = nodes.length;
+        if (length == 0) {
+            return;
+        }
+        ensureCapacity(length);
+        dictionary = new Object2IntOpenHashMap(Math.max(GraphStoreConfiguration.NODESTORE_DEFAULT_DICTIONARY_SIZE, length), GraphStoreConfiguration.NODESTORE_DICTIONARY_LOAD_FACTOR);
+        dictionary.defaultReturnValue(NULL_ID);
+
+        int loaded = 0;
+        while (true) {
+            int count = Math.min(currentBlock.getCapacity(), length - loaded);
+            currentBlock.addAll(nodes, loaded, count);
+            loaded += count;
+            if (loaded == length) {
+                break;
+            }
+            currentBlockIndex++;
+            currentBlock = blocks[currentBlockIndex];
+        }
+        for (int i = 0; i < length; i++) {
+            NodeImpl node = nodes[i];
+            dictionary.put(node.getId(), node.storeId);
+        }
+        if (viewStore != null) {
+            viewStore.addNode(nodes[length - 1]);
+        }
+        publish();
+        size = length;
+    }
+
+    /**
+     * Renumbers the store ids densely, in iteration order, and releases the
+     * blocks which aren't needed anymore. The returned array maps the previous
+     * store ids to the new ones, it is null if the store had no garbage.
+     *
+     * @return previous to new store ids, or null
+     */
+    int[] compact() {
+        if (garbageSize == 0) {
+            return null;
+        }
+        int[] storeIdMap = new int[maxStoreId()];
+        Arrays.fill(storeIdMap, NULL_ID);
+        NodeImpl[] nodes = new NodeImpl[size];
+        int index = 0;
+        for (int i = 0; i < blocksCount; i++) {
+            NodeBlock block = blocks[i];
+            for (int j = 0; j < block.nodeLength; j++) {
+                NodeImpl node = block.backingArray[j];
+                if (node != null) {
+                    storeIdMap[node.storeId] = index;
+                    nodes[index++] = node;
+                }
+            }
+        }
+        initStore();
+        load(nodes);
+        return storeIdMap;
+    }
+
     protected static class NodeBlock {
 
         protected final int offset;
@@ -555,15 +674,26 @@ public class NodeStore implements Collection<Node>, NodeIterable {
         }
 
         public void add(NodeImpl k) {
-            int i = nodeLength++;
-            backingArray[i] = k;
+            int i = nodeLength;
             k.setStoreId(i + offset);
+            backingArray[i] = k;
+            //Fill the slot before the length, lock-free readers skip empty slots
+            nodeLength = i + 1;
+        }
+
+        public void addAll(NodeImpl[] k, int from, int length) {
+            int i = nodeLength;
+            System.arraycopy(k, from, backingArray, i, length);
+            for (int j = 0; j < length; j++) {
+                k[from + j].setStoreId(i + j + offset);
+            }
+            nodeLength = i + length;
         }
 
         public void set(NodeImpl k) {
             int i = garbageArray[--garbageLength] - Short.MIN_VALUE;
-            backingArray[i] = k;
             k.setStoreId(i + offset);
+            backingArray[i] = k;
         }
 
         public NodeImpl get(int id) {
@@ -583,7 +713,7 @@ public class NodeStore implements Collection<Node>, NodeIterable {
         }
     }
 
-    protected final class NodeStoreIterator implements Iterator<Node> {
+    protected final class NodeStoreIterator implements Iterator<Node>, GraphLock.HoldingIterator {
 
         protected int blockIndex;
         protected NodeImpl[] backingArray;
@@ -591,10 +721,17 @@ public class NodeStore implements Collection<Node>, NodeIterable {
         protected int cursor;
         protected NodeImpl pointer;
 
+        protected final GraphLock.IteratorHold hold;
+
         public NodeStoreIterator() {
+            this.hold = lockIterator();
             this.backingArray = blocks[blockIndex].backingArray;
             this.blockLength = blocks[blockIndex].nodeLength;
-            readLock();
+        }
+
+        @Override
+        public GraphLock.IteratorHold getIteratorHold() {
+            return hold;
         }
 
         @Override
@@ -612,7 +749,7 @@ public class NodeStore implements Collection<Node>, NodeIterable {
                 }
             }
             if (pointer == null) {
-                readUnlock();
+                unlockIterator(hold);
                 return false;
             }
             return true;
@@ -635,4 +772,82 @@ public class NodeStore implements Collection<Node>, NodeIterable {
             NodeStore.this.remove(pointer);
         }
     }
+
+    protected final class NodeSnapshotIterator implements Iterator<Node> {
+
+        protected ElementImpl[] elements;
+        protected final int length;
+        protected int cursor;
+        protected NodeImpl pointer;
+
+        public NodeSnapshotIterator(Iterator<Node> iterator) {
+            //Copy the elements while the iterator holds the lock, it's released once consumed
+            ElementImpl[] array = elementArrayPool.borrow(size);
+            int count = 0;
+            try {
+                while (iterator.hasNext()) {
+                    if (count == array.length) {
+                        array = Arrays.copyOf(array, count * 2);
+                    }
+                    array[count++] = (NodeImpl) iterator.next();
+                }
+            } catch (RuntimeException e) {
+                elementArrayPool.release(array, count);
+                doBreak();
+                throw e;
+            }
+            this.elements = array;
+            this.length = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            pointer = null;
+            while (pointer == null && cursor < length) {
+                pointer = resolve((NodeImpl) elements[cursor++]);
+            }
+            if (pointer == null && elements != null) {
+                elementArrayPool.release(elements, length);
+                elements = null;
+            }
+            return pointer != null;
+        }
+
+        @Override
+        public NodeImpl next() {
+            return pointer;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Not supported.");
+        }
+
+        private NodeImpl resolve(NodeImpl node) {
+            if (lock != null) {
+                long stamp = lock.tryOptimisticRead();
+                try {
+                    boolean contained = contains(node);
+                    if (lock.validate(stamp)) {
+                        return contained ? node : null;
+                    }
+                } catch (RuntimeException e) {
+                    //Retried under the read lock
+                }
+                lock.readLock();
+                try {
+                    return contains(node) ? node : null;
+                } finally {
+                    lock.readUnlock();
+                }
+            }
+            return contains(node) ? node : null;
+        }
+
+        //Skips removed elements, even if their slot has been reused
+        private boolean contains(NodeImpl node) {
+            int id = node.storeId;
+            return isValidIndex(id) && blocks[id / GraphStoreConfiguration.NODESTORE_BLOCK_SIZE].get(id) == node;
+        }
+    }
 }
@@ -18,6 +18,9 @@ package org.gephi.graph.store;
 import cern.colt.bitvector.BitVector;
 import it.unimi.dsi.fastutil.ints.Int2IntMap;
 import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.EOFException;
@@ -25,14 +28,24 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import org.gephi.attribute.api.Origin;
 import org.gephi.attribute.time.TimestampSet;
+import org.gephi.attribute.time.TimestampValueSet;
 import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Element;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.store.EdgeImpl.EdgePropertiesImpl;
 import org.gephi.graph.store.NodeImpl.NodePropertiesImpl;
+import org.gephi.graph.utils.ChannelDataInput;
+import org.gephi.graph.utils.ChannelDataOutput;
 import org.gephi.graph.utils.DataInputOutput;
 import org.gephi.graph.utils.LongPacker;
 
@@ -121,6 +134,7 @@ public class Serialization {
     final static int STRING_EMPTY = 101;
     final static int NOTUSED_STRING_255 = 102;
     final static int STRING = 103;
+    final static int STRING_REF = 104;
     final static int LOCALE = 124;
     final static int PROPERTIES = 125;
     final static int CLASS = 126;
@@ -145,19 +159,298 @@ public class Serialization {
     final static int NODE_PROPERTIES = 215;
     final static int EDGE_PROPERTIES = 216;
     final static int TEXT_PROPERTIES = 217;
+    final static int STRING_TABLE = 218;
+    final static int FORMAT_VERSION = 219;
+    //Format versions, streams without a version are baseline streams
+    final static int VERSION_BASELINE = 0;
+    final static int VERSION_STORE_IDS = 1;
+    final static int VERSION_COLUMN_ENCODINGS = 2;
+    final static int VERSION = VERSION_COLUMN_ENCODINGS;
+    //Column encodings
+    final static int ENCODING_OBJECT = 0;
+    final static int ENCODING_NULL = 1;
+    final static int ENCODING_STRING_DICTIONARY = 2;
+    final static int ENCODING_INT_PACKED = 3;
+    final static int ENCODING_LONG_PACKED = 4;
+    final static int ENCODING_DOUBLE_BLOCK = 5;
+    final static int ENCODING_FLOAT_BLOCK = 6;
+    final static int ENCODING_BOOLEAN_BITS = 7;
+    final static int ENCODING_TIMESTAMP_SET = 8;
+    final static int ENCODING_TIMESTAMP_VALUE_SET = 9;
+    //View bitmaps
+    final static int BITMAP_WORDS = 0;
+    final static int BITMAP_RUNS = 1;
     //Store
     protected final GraphStore store;
     protected final Int2IntMap idMap;
+    protected final Int2IntMap edgeIdMap;
+    //Shared strings, referenced by their position in the table
+    protected Object2IntOpenHashMap<String> stringIds;
+    protected String[] strings;
     //Deserialized configuration
     protected GraphStoreConfigurationVersion graphStoreConfigurationVersion;
+    protected int formatVersion = VERSION;
+    //Attributes written or read ahead of the elements, by column
+    protected boolean attributeColumns;
+    protected ElementAttributes nodeAttributes;
+    protected ElementAttributes edgeAttributes;
 
     public Serialization(GraphStore graphStore) {
         store = graphStore;
         idMap = new Int2IntOpenHashMap();
         idMap.defaultReturnValue(NULL_ID);
+        edgeIdMap = new Int2IntOpenHashMap();
+        edgeIdMap.defaultReturnValue(NULL_ID);
     }
 
     public void serializeGraphStore(DataOutput out) throws IOException {
+        store.loadAttributes();
+
+        //Configuration, version, edge types, columns, timestamps and factory
+        serializeMetadata(out);
+
+        //Strings shared by ids and attributes
+        Object2IntOpenHashMap<String> counts = new Object2IntOpenHashMap<String>();
+        for (Node node : store.nodeStore) {
+            countStrings((ElementImpl) node, counts);
+        }
+        for (Edge edge : store.edgeStore) {
+            countStrings((ElementImpl) edge, counts);
+        }
+
+        try {
+            serializeStringTable(out, getSharedStrings(counts));
+
+            //Attributes, by column in element order
+            serializeAttributeColumns(out, store.nodeStore.size(), store.nodeStore);
+            serializeAttributeColumns(out, store.edgeStore.size(), store.edgeStore);
+            attributeColumns = true;
+
+            //Nodes + Edges
+            int nodesAndEdges = store.nodeStore.size() + store.edgeStore.size();
+            serialize(out, nodesAndEdges);
+
+            for (Node node : store.nodeStore) {
+                serialize(out, node);
+            }
+            for (Edge edge : store.edgeStore) {
+                serialize(out, edge);
+            }
+
+            //Views
+            serialize(out, store.viewStore);
+        } finally {
+            setStringTable(null);
+            attributeColumns = false;
+        }
+    }
+
+    /**
+     * Streams the store to the channel through a fixed size buffer, the memory
+     * used doesn't depend on the size of the graph.
+     *
+     * @param channel channel to write to
+     * @throws IOException if the channel can't be written
+     */
+    public void serializeGraphStore(WritableByteChannel channel) throws IOException {
+        ChannelDataOutput out = new ChannelDataOutput(channel);
+        try {
+            serializeGraphStore(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public GraphStore deserializeGraphStore(ReadableByteChannel channel) throws IOException, ClassNotFoundException {
+        ChannelDataInput is = new ChannelDataInput(channel);
+        try {
+            return deserializeGraphStore(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    public GraphStore deserializeGraphStore(DataInput is) throws IOException, ClassNotFoundException {
+        if (!store.nodeStore.isEmpty()) {   //TODO test other stores
+            throw new IOException("The store is not empty");
+        }
+
+        //Configuration, version, edge types, columns, timestamps and factory
+        deserializeMetadata(is);
+
+        try {
+            //Strings table, absent from older streams
+            Object next = deserialize(is);
+            if (next instanceof String[]) {
+                next = deserialize(is);
+            }
+
+            //Attributes, before the elements so they're indexed when added
+            if (formatVersion >= VERSION_COLUMN_ENCODINGS) {
+                nodeAttributes = deserializeAttributeColumns(is, (Integer) next);
+                edgeAttributes = deserializeAttributeColumns(is, (Integer) deserialize(is));
+                next = deserialize(is);
+            }
+
+            //Nodes and edges
+            int nodesAndEdges = (Integer) next;
+            for (int i = 0; i < nodesAndEdges; i++) {
+                deserialize(is);
+            }
+
+            //ViewStore
+            deserialize(is);
+        } finally {
+            setStringTable(null);
+            nodeAttributes = null;
+            edgeAttributes = null;
+        }
+
+        return store;
+    }
+
+    /**
+     * Writes the attributes of <code>elements</code> column by column with
+     * the column encodings, preceded by the length of each attribute array.
+     *
+     * @param out output
+     * @param count number of elements
+     * @param elements elements, in the order they're serialized
+     * @throws IOException if an I/O error occurs
+     */
+    private void serializeAttributeColumns(DataOutput out, int count, Iterable<? extends Element> elements) throws IOException {
+        serialize(out, count);
+        ElementImpl[] array = new ElementImpl[count];
+        Object[] lengths = new Object[count];
+        int columns = 0;
+        int i = 0;
+        for (Element element : elements) {
+            ElementImpl elementImpl = (ElementImpl) element;
+            array[i] = elementImpl;
+            lengths[i++] = elementImpl.attributes.length;
+            columns = Math.max(columns, elementImpl.attributes.length);
+        }
+        serializeColumnValues(out, lengths);
+        Object[] values = new Object[count];
+        for (int column = 0; column < columns; column++) {
+            for (i = 0; i < count; i++) {
+                Object[] attributes = array[i].attributes;
+                values[i] = column < attributes.length ? attributes[column] : null;
+            }
+            serializeColumnValues(out, values);
+        }
+    }
+
+    private ElementAttributes deserializeAttributeColumns(DataInput is, int count) throws IOException, ClassNotFoundException {
+        Object[] lengths = deserializeColumnValues(is, count);
+        int columns = 0;
+        for (int i = 0; i < count; i++) {
+            columns = Math.max(columns, (Integer) lengths[i]);
+        }
+        Object[][] values = new Object[columns][];
+        for (int column = 0; column < columns; column++) {
+            values[column] = deserializeColumnValues(is, count);
+        }
+        return new ElementAttributes(lengths, values);
+    }
+
+    /**
+     * Counts the non-empty strings of the element id and attributes.
+     *
+     * @param element element
+     * @param counts occurrences per string
+     */
+    protected static void countStrings(ElementImpl element, Object2IntOpenHashMap<String> counts) {
+        countString(element.getId(), counts);
+        Object[] attributes = element.attributes;
+        for (int i = 0; i < attributes.length; i++) {
+            countString(attributes[i], counts);
+        }
+    }
+
+    private static void countString(Object obj, Object2IntOpenHashMap<String> counts) {
+        if (obj instanceof String && ((String) obj).length() > 0) {
+            counts.add((String) obj, 1);
+        }
+    }
+
+    //Strings seen more than once, most frequent first to get the smallest ids
+    protected static String[] getSharedStrings(final Object2IntOpenHashMap<String> counts) {
+        List<String> shared = new ArrayList<String>();
+        for (Object2IntMap.Entry<String> entry : counts.object2IntEntrySet()) {
+            if (entry.getIntValue() > 1) {
+                shared.add(entry.getKey());
+            }
+        }
+        Collections.sort(shared, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                int c1 = counts.getInt(o1);
+                int c2 = counts.getInt(o2);
+                return c1 > c2 ? -1 : (c1 == c2 ? o1.compareTo(o2) : 1);
+            }
+        });
+        return shared.toArray(new String[shared.size()]);
+    }
+
+    /**
+     * Writes the string table and uses it for the strings serialized next,
+     * which are written as references when found in the table.
+     *
+     * @param out output
+     * @param table shared strings
+     * @throws IOException if an I/O error occurs
+     */
+    protected void serializeStringTable(DataOutput out, String[] table) throws IOException {
+        out.write(STRING_TABLE);
+        LongPacker.packInt(out, table.length);
+        for (int i = 0; i < table.length; i++) {
+            serializeString(out, table[i]);
+        }
+        setStringTable(table);
+        stringIds = new Object2IntOpenHashMap<String>(table.length);
+        stringIds.defaultReturnValue(NULL_ID);
+        for (int i = 0; i < table.length; i++) {
+            stringIds.put(table[i], i);
+        }
+    }
+
+    private String[] deserializeStringTable(DataInput is) throws IOException {
+        int length = LongPacker.unpackInt(is);
+        String[] table = new String[length];
+        for (int i = 0; i < length; i++) {
+            table[i] = intern(deserializeString(is));
+        }
+        setStringTable(table);
+        return table;
+    }
+
+    /**
+     * Sets the table string references are resolved with, or null.
+     *
+     * @param table shared strings
+     */
+    protected void setStringTable(String[] table) {
+        strings = table;
+        stringIds = null;
+    }
+
+    private String getTableString(int ref) throws IOException {
+        if (strings == null || ref < 0 || ref >= strings.length) {
+            throw new IOException("The string reference " + ref + " can't be resolved");
+        }
+        return strings[ref];
+    }
+
+    private String intern(String str) {
+        return store != null ? store.factory.intern(str) : str;
+    }
+
+    void serializeMetadata(DataOutput out) throws IOException {
+        //Format version
+        out.write(FORMAT_VERSION);
+        LongPacker.packInt(out, VERSION);
+
         //Configuration
         serializeGraphStoreConfiguration(out);
 
@@ -177,30 +470,17 @@ public class Serialization {
 
         //Factory
         serialize(out, store.factory);
-
-        //Nodes + Edges
-        int nodesAndEdges = store.nodeStore.size() + store.edgeStore.size();
-        serialize(out, nodesAndEdges);
-
-        for (Node node : store.nodeStore) {
-            serialize(out, node);
-        }
-        for (Edge edge : store.edgeStore) {
-            serialize(out, edge);
-        }
-
-        //Views
-        serialize(out, store.viewStore);
     }
 
-    public GraphStore deserializeGraphStore(DataInput is) throws IOException, ClassNotFoundException {
-        if (!store.nodeStore.isEmpty()) {   //TODO test other stores
-            throw new IOException("The store is not empty");
+    void deserializeMetadata(DataInput is) throws IOException, ClassNotFoundException {
+        //Format version, baseline streams start with the configuration
+        if (deserialize(is) instanceof GraphStoreConfigurationVersion) {
+            formatVersion = VERSION_BASELINE;
+        } else {
+            //Store Configuration
+            deserialize(is);
         }
 
-        //Store Configuration
-        deserialize(is);
-
         //Graph Version
         deserialize(is);
 
@@ -216,41 +496,31 @@ public class Serialization {
 
         //Factory
         deserialize(is);
-
-        //Nodes and edges
-        int nodesAndEdges = (Integer) deserialize(is);
-        for (int i = 0; i < nodesAndEdges; i++) {
-            deserialize(is);
-        }
-
-        //ViewStore
-        deserialize(is);
-
-        return store;
     }
 
     private void serializeNode(DataOutput out, NodeImpl node) throws IOException {
         serialize(out, node.id);
         serialize(out, node.storeId);
-        serialize(out, node.attributes);
+        serializeAttributes(out, node);
         serialize(out, node.properties);
     }
 
     private void serializeEdge(DataOutput out, EdgeImpl edge) throws IOException {
         serialize(out, edge.id);
+        serialize(out, edge.storeId);
         serialize(out, edge.source.storeId);
         serialize(out, edge.target.storeId);
         serialize(out, edge.type);
         serialize(out, edge.weight);
         serialize(out, edge.isDirected());
-        serialize(out, edge.attributes);
+        serializeAttributes(out, edge);
         serialize(out, edge.properties);
     }
 
     private NodeImpl deserializeNode(DataInput is) throws IOException, ClassNotFoundException {
         Object id = deserialize(is);
         int storeId = (Integer) deserialize(is);
-        Object[] attributes = (Object[]) deserialize(is);
+        Object[] attributes = deserializeAttributes(is, nodeAttributes);
         NodePropertiesImpl properties = (NodePropertiesImpl) deserialize(is);
 
         NodeImpl node = (NodeImpl) store.factory.newNode(id);
@@ -267,12 +537,13 @@ public class Serialization {
 
     private EdgeImpl deserializeEdge(DataInput is) throws IOException, ClassNotFoundException {
         Object id = deserialize(is);
+        int storeId = formatVersion >= VERSION_STORE_IDS ? (Integer) deserialize(is) : NULL_ID;
         int sourceId = (Integer) deserialize(is);
         int targetId = (Integer) deserialize(is);
         int type = (Integer) deserialize(is);
         double weight = (Double) deserialize(is);
         boolean directed = (Boolean) deserialize(is);
-        Object[] attributes = (Object[]) deserialize(is);
+        Object[] attributes = deserializeAttributes(is, edgeAttributes);
         EdgePropertiesImpl properties = (EdgePropertiesImpl) deserialize(is);
 
         int sourceNewId = idMap.get(sourceId);
@@ -293,9 +564,29 @@ public class Serialization {
 
         store.edgeStore.add(edge);
 
+        if (storeId != NULL_ID) {
+            edgeIdMap.put(storeId, edge.storeId);
+        }
+
         return edge;
     }
 
+    //Within a graph store, attributes were written by column before the elements
+    private void serializeAttributes(DataOutput out, ElementImpl element) throws IOException {
+        serialize(out, attributeColumns ? null : element.attributes);
+    }
+
+    private Object[] deserializeAttributes(DataInput is, ElementAttributes columns) throws IOException, ClassNotFoundException {
+        Object[] attributes = (Object[]) deserialize(is);
+        if (columns != null) {
+            if (!columns.hasNext()) {
+                throw new IOException("There are more elements than attribute rows");
+            }
+            return columns.next();
+        }
+        return attributes;
+    }
+
     private void serializeEdgeTypeStore(final DataOutput out) throws IOException {
         EdgeTypeStore edgeTypeStore = store.edgeTypeStore;
         int length = edgeTypeStore.length;
@@ -486,8 +777,8 @@ public class Serialization {
         serialize(out, view.nodeCount);
         serialize(out, view.edgeCount);
 
-        serialize(out, view.nodeBitVector);
-        serialize(out, view.edgeBitVector);
+        serializeViewBitVector(out, view.nodeBitVector);
+        serializeViewBitVector(out, view.edgeBitVector);
 
         serialize(out, view.typeCounts);
         serialize(out, view.mutualEdgeTypeCounts);
@@ -501,8 +792,16 @@ public class Serialization {
         int storeId = (Integer) deserialize(is);
         int nodeCount = (Integer) deserialize(is);
         int edgeCount = (Integer) deserialize(is);
-        BitVector nodeCountVector = (BitVector) deserialize(is);
-        BitVector edgeCountVector = (BitVector) deserialize(is);
+        BitVector nodeCountVector;
+        BitVector edgeCountVector;
+        if (formatVersion >= VERSION_STORE_IDS) {
+            nodeCountVector = deserializeViewBitVector(is, idMap, view.nodeBitVector);
+            edgeCountVector = deserializeViewBitVector(is, edgeIdMap, view.edgeBitVector);
+        } else {
+            //Baseline streams don't have edge store ids, edge bits are kept as is
+            nodeCountVector = remapBitVector((BitVector) deserialize(is), idMap, view.nodeBitVector);
+            edgeCountVector = (BitVector) deserialize(is);
+        }
         int[] typeCounts = (int[]) deserialize(is);
         int[] mutualEdgeTypeCounts = (int[]) deserialize(is);
         int mutualEdgesCount = (Integer) deserialize(is);
@@ -531,6 +830,125 @@ public class Serialization {
         return new BitVector(elements, size);
     }
 
+    //Sparse views are written as alternating runs of clear and set bits
+    private void serializeViewBitVector(final DataOutput out, final BitVector bitVector) throws IOException {
+        int size = bitVector.size();
+        long[] words = bitVector.elements();
+        IntArrayList runs = new IntArrayList();
+        long runsLength = 0;
+        int position = 0;
+        boolean state = false;
+        while (position < size) {
+            int next = nextBit(words, position, !state, size);
+            runs.add(next - position);
+            runsLength += packedLength(next - position);
+            position = next;
+            state = !state;
+        }
+
+        LongPacker.packInt(out, size);
+        if (runsLength < ((size + 63) >>> 6) * 8l) {
+            out.write(BITMAP_RUNS);
+            LongPacker.packInt(out, runs.size());
+            for (int i = 0; i < runs.size(); i++) {
+                LongPacker.packInt(out, runs.getInt(i));
+            }
+        } else {
+            out.write(BITMAP_WORDS);
+            serialize(out, words);
+        }
+    }
+
+    //Bits are stored with the serialized store ids, remapped to the new ones
+    //when the elements have been deserialized as well
+    private BitVector deserializeViewBitVector(final DataInput is, Int2IntMap storeIdMap, BitVector bitVector) throws IOException, ClassNotFoundException {
+        int size = LongPacker.unpackInt(is);
+        int encoding = is.readUnsignedByte();
+        if (storeIdMap.isEmpty()) {
+            storeIdMap = null;
+            bitVector = new BitVector(size);
+        }
+        if (encoding == BITMAP_RUNS) {
+            int runCount = LongPacker.unpackInt(is);
+            int position = 0;
+            for (int i = 0; i < runCount; i++) {
+                int run = LongPacker.unpackInt(is);
+                if (i % 2 == 1) {
+                    for (int j = position; j < position + run; j++) {
+                        bitVector = setRemapped(bitVector, storeIdMap, j);
+                    }
+                }
+                position += run;
+            }
+        } else if (encoding == BITMAP_WORDS) {
+            bitVector = setRemapped(bitVector, storeIdMap, (long[]) deserialize(is), size);
+        } else {
+            throw new IOException("Unknown bitmap encoding " + encoding);
+        }
+        return bitVector;
+    }
+
+    private BitVector remapBitVector(final BitVector source, final Int2IntMap storeIdMap, final BitVector bitVector) throws IOException {
+        if (storeIdMap.isEmpty()) {
+            return source;
+        }
+        return setRemapped(bitVector, storeIdMap, source.elements(), source.size());
+    }
+
+    private BitVector setRemapped(BitVector bitVector, final Int2IntMap storeIdMap, final long[] words, final int size) throws IOException {
+        for (int i = nextBit(words, 0, true, size); i < size; i = nextBit(words, i + 1, true, size)) {
+            bitVector = setRemapped(bitVector, storeIdMap, i);
+        }
+        return bitVector;
+    }
+
+    private BitVector setRemapped(BitVector bitVector, final Int2IntMap storeIdMap, final int storeId) throws IOException {
+        int newId = storeIdMap != null ? storeIdMap.get(storeId) : storeId;
+        if (newId == NULL_ID) {
+            throw new IOException("The view refers to the unknown store id " + storeId);
+        }
+        if (newId >= bitVector.size()) {
+            BitVector newVector = new BitVector(newId + 1);
+            newVector.replaceFromToWith(0, bitVector.size() - 1, bitVector, 0);
+            bitVector = newVector;
+        }
+        bitVector.set(newId);
+        return bitVector;
+    }
+
+    private static int nextBit(final long[] words, final int from, final boolean state, final int size) {
+        int wordIndex = from >>> 6;
+        if (from >= size || wordIndex >= words.length) {
+            return size;
+        }
+        long word = (state ? words[wordIndex] : ~words[wordIndex]) & (-1l << (from & 63));
+        while (word == 0) {
+            if (++wordIndex >= words.length) {
+                return size;
+            }
+            word = state ? words[wordIndex] : ~words[wordIndex];
+        }
+        return Math.min(size, (wordIndex << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    private static int packedLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private Integer deserializeFormatVersion(final DataInput is) throws IOException {
+        int version = LongPacker.unpackInt(is);
+        if (version > VERSION) {
+            throw new IOException("The format version " + version + " isn't supported, the latest is " + VERSION);
+        }
+        formatVersion = version;
+        return version;
+    }
+
     private void serializeGraphStoreConfiguration(final DataOutput out) throws IOException {
         out.write(GRAPH_STORE_CONFIGURATION);
         serialize(out, GraphStoreConfiguration.ENABLE_ELEMENT_LABEL);
@@ -557,8 +975,8 @@ public class Serialization {
     private GraphVersion deserializeGraphVersion(final DataInput is) throws IOException, ClassNotFoundException {
         GraphVersion graphVersion = store.version;
 
-        int nodeVersion = (Integer) deserialize(is);
-        int edgeVersion = (Integer) deserialize(is);
+        long nodeVersion = ((Number) deserialize(is)).longValue();
+        long edgeVersion = ((Number) deserialize(is)).longValue();
 
         graphVersion.nodeVersion = nodeVersion;
         graphVersion.edgeVersion = edgeVersion;
@@ -635,6 +1053,372 @@ public class Serialization {
         return props;
     }
 
+    //Column encodings
+    protected void serializeColumnValues(final DataOutput out, final Object[] values) throws IOException {
+        int encoding = getColumnEncoding(values);
+        out.write(encoding);
+        switch (encoding) {
+            case ENCODING_NULL:
+                break;
+            case ENCODING_STRING_DICTIONARY:
+                serializeStringDictionary(out, values);
+                break;
+            case ENCODING_INT_PACKED:
+                serializeNulls(out, values);
+                for (Object value : values) {
+                    if (value != null) {
+                        packUnsigned(out, zigZag((Integer) value) & 0xFFFFFFFFL);
+                    }
+                }
+                break;
+            case ENCODING_LONG_PACKED:
+                serializeNulls(out, values);
+                for (Object value : values) {
+                    if (value != null) {
+                        long l = (Long) value;
+                        packUnsigned(out, (l << 1) ^ (l >> 63));
+                    }
+                }
+                break;
+            case ENCODING_DOUBLE_BLOCK:
+                serializeNulls(out, values);
+                for (Object value : values) {
+                    if (value != null) {
+                        out.writeDouble((Double) value);
+                    }
+                }
+                break;
+            case ENCODING_FLOAT_BLOCK:
+                serializeNulls(out, values);
+                for (Object value : values) {
+                    if (value != null) {
+                        out.writeFloat((Float) value);
+                    }
+                }
+                break;
+            case ENCODING_BOOLEAN_BITS:
+                serializeNulls(out, values);
+                BitVector bits = new BitVector(values.length);
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null && (Boolean) values[i]) {
+                        bits.set(i);
+                    }
+                }
+                writeLongArray(out, bits.elements());
+                break;
+            case ENCODING_TIMESTAMP_SET:
+                serializeNulls(out, values);
+                for (Object value : values) {
+                    if (value != null) {
+                        serializeTimestamps(out, ((TimestampSet) value).getTimestamps());
+                    }
+                }
+                break;
+            case ENCODING_TIMESTAMP_VALUE_SET:
+                serializeTimestampValueSets(out, values);
+                break;
+            default:
+                for (Object value : values) {
+                    serialize(out, value);
+                }
+        }
+    }
+
+    protected Object[] deserializeColumnValues(final DataInput is, final int length) throws IOException, ClassNotFoundException {
+        Object[] values = new Object[length];
+        int encoding = is.readUnsignedByte();
+        switch (encoding) {
+            case ENCODING_NULL:
+                break;
+            case ENCODING_STRING_DICTIONARY:
+                deserializeStringDictionary(is, values);
+                break;
+            case ENCODING_INT_PACKED: {
+                boolean[] nulls = deserializeNulls(is, length);
+                for (int i = 0; i < length; i++) {
+                    if (nulls == null || !nulls[i]) {
+                        int n = LongPacker.unpackInt(is);
+                        values[i] = (n >>> 1) ^ -(n & 1);
+                    }
+                }
+                break;
+            }
+            case ENCODING_LONG_PACKED: {
+                boolean[] nulls = deserializeNulls(is, length);
+                for (int i = 0; i < length; i++) {
+                    if (nulls == null || !nulls[i]) {
+                        long n = LongPacker.unpackLong(is);
+                        values[i] = (n >>> 1) ^ -(n & 1);
+                    }
+                }
+                break;
+            }
+            case ENCODING_DOUBLE_BLOCK: {
+                boolean[] nulls = deserializeNulls(is, length);
+                for (int i = 0; i < length; i++) {
+                    if (nulls == null || !nulls[i]) {
+                        values[i] = is.readDouble();
+                    }
+                }
+                break;
+            }
+            case ENCODING_FLOAT_BLOCK: {
+                boolean[] nulls = deserializeNulls(is, length);
+                for (int i = 0; i < length; i++) {
+                    if (nulls == null || !nulls[i]) {
+                        values[i] = is.readFloat();
+                    }
+                }
+                break;
+            }
+            case ENCODING_BOOLEAN_BITS: {
+                boolean[] nulls = deserializeNulls(is, length);
+                BitVector bits = new BitVector((long[]) deserialize(is), length);
+                for (int i = 0; i < length; i++) {
+                    if (nulls == null || !nulls[i]) {
+                        values[i] = bits.get(i);
+                    }
+                }
+                break;
+            }
+            case ENCODING_TIMESTAMP_SET: {
+                boolean[] nulls = deserializeNulls(is, length);
+                for (int i = 0; i < length; i++) {
+                    if (nulls == null || !nulls[i]) {
+                        values[i] = new TimestampSet(deserializeTimestamps(is));
+                    }
+                }
+                break;
+            }
+            case ENCODING_TIMESTAMP_VALUE_SET:
+                deserializeTimestampValueSets(is, values);
+                break;
+            case ENCODING_OBJECT:
+                for (int i = 0; i < length; i++) {
+                    values[i] = deserialize(is);
+                }
+                break;
+            default:
+                throw new IOException("Unknown column encoding " + encoding);
+        }
+        return values;
+    }
+
+    private int getColumnEncoding(final Object[] values) {
+        Class type = null;
+        for (Object value : values) {
+            if (value != null) {
+                Class valueType = value instanceof TimestampValueSet ? TimestampValueSet.class : value.getClass();
+                if (type == null) {
+                    type = valueType;
+                } else if (type != valueType) {
+                    return ENCODING_OBJECT;
+                }
+            }
+        }
+        if (type == null) {
+            return ENCODING_NULL;
+        } else if (type == String.class) {
+            return ENCODING_STRING_DICTIONARY;
+        } else if (type == Integer.class) {
+            return ENCODING_INT_PACKED;
+        } else if (type == Long.class) {
+            return ENCODING_LONG_PACKED;
+        } else if (type == Double.class) {
+            return ENCODING_DOUBLE_BLOCK;
+        } else if (type == Float.class) {
+            return ENCODING_FLOAT_BLOCK;
+        } else if (type == Boolean.class) {
+            return ENCODING_BOOLEAN_BITS;
+        } else if (type == TimestampSet.class) {
+            return ENCODING_TIMESTAMP_SET;
+        } else if (type == TimestampValueSet.class && isSameClass(values)) {
+            return ENCODING_TIMESTAMP_VALUE_SET;
+        }
+        return ENCODING_OBJECT;
+    }
+
+    private boolean isSameClass(final Object[] values) {
+        Class type = null;
+        for (Object value : values) {
+            if (value != null) {
+                if (type == null) {
+                    type = value.getClass();
+                } else if (type != value.getClass()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void serializeNulls(final DataOutput out, final Object[] values) throws IOException {
+        BitVector nulls = null;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                if (nulls == null) {
+                    nulls = new BitVector(values.length);
+                }
+                nulls.set(i);
+            }
+        }
+        out.writeBoolean(nulls != null);
+        if (nulls != null) {
+            writeLongArray(out, nulls.elements());
+        }
+    }
+
+    private boolean[] deserializeNulls(final DataInput is, final int length) throws IOException, ClassNotFoundException {
+        if (!is.readBoolean()) {
+            return null;
+        }
+        BitVector bits = new BitVector((long[]) deserialize(is), length);
+        boolean[] nulls = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            nulls[i] = bits.get(i);
+        }
+        return nulls;
+    }
+
+    private void serializeStringDictionary(final DataOutput out, final Object[] values) throws IOException {
+        //Code 0 is null, codes are assigned in order of appearance
+        Object2IntOpenHashMap<String> dictionary = new Object2IntOpenHashMap<String>();
+        String[] strings = new String[values.length];
+        int[] codes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            String value = (String) values[i];
+            if (value != null) {
+                int code = dictionary.getInt(value);
+                if (code == 0) {
+                    code = dictionary.size() + 1;
+                    dictionary.put(value, code);
+                    strings[code - 1] = value;
+                }
+                codes[i] = code;
+            }
+        }
+        int size = dictionary.size();
+        LongPacker.packInt(out, size);
+        for (int i = 0; i < size; i++) {
+            if (stringIds != null) {
+                //Position in the string table plus one, zero when written inline
+                int ref = stringIds.getInt(strings[i]);
+                LongPacker.packInt(out, ref + 1);
+                if (ref != NULL_ID) {
+                    continue;
+                }
+            }
+            serializeString(out, strings[i]);
+        }
+        for (int i = 0; i < values.length; i++) {
+            LongPacker.packInt(out, codes[i]);
+        }
+    }
+
+    private void deserializeStringDictionary(final DataInput is, final Object[] values) throws IOException {
+        int size = LongPacker.unpackInt(is);
+        String[] strings = new String[size + 1];
+        for (int i = 1; i <= size; i++) {
+            int ref = this.strings != null ? LongPacker.unpackInt(is) : 0;
+            strings[i] = ref > 0 ? getTableString(ref - 1) : intern(deserializeString(is));
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = strings[LongPacker.unpackInt(is)];
+        }
+    }
+
+    private void serializeTimestamps(final DataOutput out, final int[] timestamps) throws IOException {
+        //Timestamp indices are sorted, deltas stay small
+        LongPacker.packInt(out, timestamps.length);
+        int previous = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            packUnsigned(out, zigZag(timestamps[i] - previous) & 0xFFFFFFFFL);
+            previous = timestamps[i];
+        }
+    }
+
+    private int[] deserializeTimestamps(final DataInput is) throws IOException {
+        int[] timestamps = new int[LongPacker.unpackInt(is)];
+        int previous = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            int n = LongPacker.unpackInt(is);
+            previous += (n >>> 1) ^ -(n & 1);
+            timestamps[i] = previous;
+        }
+        return timestamps;
+    }
+
+    private void serializeTimestampValueSets(final DataOutput out, final Object[] values) throws IOException {
+        serializeNulls(out, values);
+        Class type = null;
+        int count = 0;
+        for (Object value : values) {
+            if (value != null) {
+                type = value.getClass();
+                count += ((TimestampValueSet) value).size();
+            }
+        }
+        serialize(out, type);
+
+        //Timestamps per set, then all values as a single column
+        Object[] flatValues = new Object[count];
+        int index = 0;
+        for (Object value : values) {
+            if (value != null) {
+                TimestampValueSet set = (TimestampValueSet) value;
+                serializeTimestamps(out, set.getTimestamps());
+                Object[] setValues = set.toArray();
+                System.arraycopy(setValues, 0, flatValues, index, setValues.length);
+                index += setValues.length;
+            }
+        }
+        LongPacker.packInt(out, count);
+        serializeColumnValues(out, flatValues);
+    }
+
+    private void deserializeTimestampValueSets(final DataInput is, final Object[] values) throws IOException, ClassNotFoundException {
+        boolean[] nulls = deserializeNulls(is, values.length);
+        Class type = (Class) deserialize(is);
+        int[][] timestamps = new int[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            if (nulls == null || !nulls[i]) {
+                timestamps[i] = deserializeTimestamps(is);
+            }
+        }
+        Object[] flatValues = deserializeColumnValues(is, LongPacker.unpackInt(is));
+        int index = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (timestamps[i] != null) {
+                TimestampValueSet set = newTimestampValueSet(type, timestamps[i].length);
+                for (int j = 0; j < timestamps[i].length; j++) {
+                    set.put(timestamps[i][j], flatValues[index++]);
+                }
+                values[i] = set;
+            }
+        }
+    }
+
+    private TimestampValueSet newTimestampValueSet(final Class type, final int capacity) throws IOException {
+        try {
+            return (TimestampValueSet) type.getConstructor(int.class).newInstance(capacity);
+        } catch (Exception e) {
+            throw new IOException("Impossible to instantiate " + type.getName(), e);
+        }
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static void packUnsigned(final DataOutput out, long value) throws IOException {
+        //Same layout as LongPacker but zig-zag values may use the sign bit
+        while ((value & ~0x7FL) != 0) {
+            out.write((((int) value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((byte) value);
+    }
+
     //SERIALIZE PRIMITIVES
     protected byte[] serialize(Object obj) throws IOException {
         DataInputOutput ba = new DataInputOutput();
@@ -739,8 +1523,12 @@ public class Serialization {
             out.writeChar((Character) obj);
         } else if (clazz == String.class) {
             String s = (String) obj;
+            int ref = stringIds != null ? stringIds.getInt(s) : NULL_ID;
             if (s.length() == 0) {
                 out.write(STRING_EMPTY);
+            } else if (ref != NULL_ID) {
+                out.write(STRING_REF);
+                LongPacker.packInt(out, ref);
             } else {
                 out.write(STRING);
                 serializeString(out, s);
@@ -1273,6 +2061,15 @@ public class Serialization {
             case STRING_EMPTY:
                 ret = EMPTY_STRING;
                 break;
+            case STRING_REF:
+                ret = getTableString(LongPacker.unpackInt(is));
+                break;
+            case STRING_TABLE:
+                ret = deserializeStringTable(is);
+                break;
+            case FORMAT_VERSION:
+                ret = deserializeFormatVersion(is);
+                break;
             case CLASS:
                 ret = deserializeClass(is);
                 break;
@@ -1529,6 +2326,32 @@ public class Serialization {
         return new TimestampSet(r);
     }
 
+    //Attribute columns, handed out as rows in element order
+    protected static class ElementAttributes {
+
+        private final Object[] lengths;
+        private final Object[][] columns;
+        private int position;
+
+        public ElementAttributes(Object[] lengths, Object[][] columns) {
+            this.lengths = lengths;
+            this.columns = columns;
+        }
+
+        public boolean hasNext() {
+            return position < lengths.length;
+        }
+
+        public Object[] next() {
+            Object[] attributes = new Object[(Integer) lengths[position]];
+            for (int i = 0; i < attributes.length; i++) {
+                attributes[i] = columns[i][position];
+            }
+            position++;
+            return attributes;
+        }
+    }
+
     protected static class GraphStoreConfigurationVersion {
 
         protected final boolean enableElementLabel;
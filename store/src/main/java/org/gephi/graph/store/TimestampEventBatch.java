@@ -0,0 +1,230 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import org.gephi.attribute.api.Column;
+
+/**
+ * Buffers timestamped node and edge events and applies them to the store in
+ * batches, taking the write lock once per batch.
+ *
+ * @author mbastian
+ */
+public class TimestampEventBatch {
+
+    protected final GraphStore graphStore;
+    protected final int batchSize;
+    protected Event[] events;
+    protected int size;
+
+    public TimestampEventBatch(GraphStore graphStore) {
+        this(graphStore, GraphStoreConfiguration.TIMESTAMP_EVENT_BATCH_SIZE);
+    }
+
+    public TimestampEventBatch(GraphStore graphStore, int batchSize) {
+        if (graphStore == null) {
+            throw new NullPointerException();
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        this.graphStore = graphStore;
+        this.batchSize = batchSize;
+        this.events = new Event[batchSize];
+    }
+
+    public void addNodeEvent(double timestamp, Object id) {
+        addNodeEvent(timestamp, id, null, null);
+    }
+
+    public void addNodeEvent(double timestamp, Object id, Column[] columns, Object[] values) {
+        checkNonNullObject(id);
+        add(new Event(timestamp, id, null, 0, columns, values));
+    }
+
+    public void addEdgeEvent(double timestamp, Object source, Object target) {
+        addEdgeEvent(timestamp, source, target, 0, null, null);
+    }
+
+    public void addEdgeEvent(double timestamp, Object source, Object target, int type, Column[] columns, Object[] values) {
+        checkNonNullObject(source);
+        checkNonNullObject(target);
+        add(new Event(timestamp, source, target, type, columns, values));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Applies the buffered events in timestamp order. If an event fails, it
+     * and the events after it stay in the batch and the exception is thrown.
+     *
+     * @return the number of events
+     */
+    public int flush() {
+        if (size == 0) {
+            return 0;
+        }
+        final int count = size;
+        final Event[] batch = events;
+        Arrays.sort(batch, 0, count, EVENT_COMPARATOR);
+
+        int applied = 0;
+        graphStore.autoWriteLock();
+        try {
+            NodeImpl[] sources = new NodeImpl[count];
+            NodeImpl[] targets = new NodeImpl[count];
+            resolveNodes(batch, count, sources, targets);
+
+            TimestampStore timestampStore = graphStore.timestampStore;
+            for (int i = 0; i < count; i++) {
+                Event event = batch[i];
+                ElementImpl element;
+                if (event.target == null) {
+                    element = sources[i];
+                } else {
+                    element = getEdge(sources[i], targets[i], event.type);
+                }
+                element.addTimestamp(timestampStore, event.timestamp);
+                if (event.columns != null) {
+                    for (int j = 0; j < event.columns.length; j++) {
+                        element.setAttribute(timestampStore, event.columns[j], event.values[j], event.timestamp);
+                    }
+                }
+                applied++;
+            }
+        } finally {
+            graphStore.autoWriteUnlock();
+            //Events that weren't applied stay in the batch
+            System.arraycopy(batch, applied, batch, 0, count - applied);
+            Arrays.fill(batch, count - applied, count, null);
+            size = count - applied;
+        }
+        if (graphStore.timestampStore.hasRetention()) {
+            graphStore.timestampStore.evict();
+        }
+        return count;
+    }
+
+    public void clear() {
+        Arrays.fill(events, 0, size, null);
+        size = 0;
+    }
+
+    private void resolveNodes(Event[] batch, int count, NodeImpl[] sources, NodeImpl[] targets) {
+        Object2ObjectOpenHashMap<Object, NodeImpl> resolved = new Object2ObjectOpenHashMap<Object, NodeImpl>();
+        for (int i = 0; i < count; i++) {
+            Event event = batch[i];
+            sources[i] = getNode(resolved, event.source);
+            if (event.target != null) {
+                targets[i] = getNode(resolved, event.target);
+            }
+        }
+    }
+
+    private NodeImpl getNode(Object2ObjectOpenHashMap<Object, NodeImpl> resolved, Object id) {
+        NodeImpl node = resolved.get(id);
+        if (node == null) {
+            node = graphStore.nodeStore.get(id);
+            if (node == null) {
+                node = (NodeImpl) graphStore.factory.newNode(id);
+                graphStore.nodeStore.add(node);
+            }
+            resolved.put(id, node);
+        }
+        return node;
+    }
+
+    private EdgeImpl getEdge(NodeImpl source, NodeImpl target, int type) {
+        EdgeImpl edge = graphStore.edgeStore.get(source, target, type);
+        if (edge == null) {
+            EdgeTypeStore edgeTypeStore = graphStore.edgeTypeStore;
+            if (edgeTypeStore != null && !edgeTypeStore.contains(type)) {
+                if (GraphStoreConfiguration.ENABLE_AUTO_TYPE_REGISTRATION) {
+                    edgeTypeStore.addType(type);
+                } else {
+                    throw new RuntimeException("The type doesn't exist");
+                }
+            }
+            edge = (EdgeImpl) graphStore.factory.newEdge(source, target, type);
+            graphStore.edgeStore.add(edge);
+        }
+        return edge;
+    }
+
+    private void add(Event event) {
+        if (Double.isInfinite(event.timestamp) || Double.isNaN(event.timestamp)) {
+            throw new IllegalArgumentException("Timestamp can' be NaN or infinity");
+        }
+        if (event.columns != null) {
+            if (event.values == null || event.values.length != event.columns.length) {
+                throw new IllegalArgumentException("Columns and values must have the same length");
+            }
+            ColumnStore columnStore = event.target == null ? graphStore.nodeColumnStore : graphStore.edgeColumnStore;
+            for (int i = 0; i < event.columns.length; i++) {
+                Column column = event.columns[i];
+                if (column.getIndex() == ColumnStore.NULL_ID || columnStore.getColumnByIndex(column.getIndex()) != column) {
+                    throw new IllegalArgumentException("The column does not exist");
+                }
+                ElementImpl.checkTimestampAttribute(column, event.values[i]);
+            }
+        }
+        if (size == batchSize) {
+            //A previous flush failed
+            flush();
+        }
+        events[size++] = event;
+        if (size == batchSize) {
+            flush();
+        }
+    }
+
+    private void checkNonNullObject(final Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    private static final Comparator<Event> EVENT_COMPARATOR = new Comparator<Event>() {
+        @Override
+        public int compare(Event o1, Event o2) {
+            return Double.compare(o1.timestamp, o2.timestamp);
+        }
+    };
+
+    protected static class Event {
+
+        protected final double timestamp;
+        protected final Object source;
+        protected final Object target;
+        protected final int type;
+        protected final Column[] columns;
+        protected final Object[] values;
+
+        public Event(double timestamp, Object source, Object target, int type, Column[] columns, Object[] values) {
+            this.timestamp = timestamp;
+            this.source = source;
+            this.target = target;
+            this.type = type;
+            this.columns = columns;
+            this.values = values;
+        }
+    }
+}
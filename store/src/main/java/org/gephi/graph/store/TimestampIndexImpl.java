@@ -28,6 +28,7 @@ import java.util.List;
 import org.gephi.attribute.api.TimestampIndex;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.EdgeIterable;
+import org.gephi.graph.api.GraphView;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.NodeIterable;
 
@@ -43,14 +44,18 @@ public class TimestampIndexImpl implements TimestampIndex {
     protected final GraphLock lock;
     protected final TimestampStore timestampStore;
     protected final boolean mainIndex;
+    protected final GraphViewImpl view;
     protected TimestampIndexEntry[] timestamps;
     protected int nodeCount;
     protected int edgeCount;
+    //Version
+    protected int version;
 
-    public TimestampIndexImpl(TimestampStore store, boolean main) {
+    public TimestampIndexImpl(TimestampStore store, GraphViewImpl view) {
         timestampStore = store;
-        mainIndex = main;
+        mainIndex = view == null;
         lock = store.lock;
+        this.view = view;
 
         timestamps = new TimestampIndexEntry[0];
     }
@@ -62,6 +67,12 @@ public class TimestampIndexImpl implements TimestampIndex {
             if (!sortedMap.isEmpty()) {
                 return sortedMap.firstDoubleKey();
             }
+        } else if (timestampStore.sorted) {
+            for (int i = 0; i < timestamps.length; i++) {
+                if (timestamps[i] != null) {
+                    return timestampStore.indexMap[i];
+                }
+            }
         } else {
             Double2IntSortedMap sortedMap = timestampStore.timestampSortedMap;
             if (!sortedMap.isEmpty()) {
@@ -89,6 +100,12 @@ public class TimestampIndexImpl implements TimestampIndex {
             if (!sortedMap.isEmpty()) {
                 return sortedMap.lastDoubleKey();
             }
+        } else if (timestampStore.sorted) {
+            for (int i = timestamps.length - 1; i >= 0; i--) {
+                if (timestamps[i] != null) {
+                    return timestampStore.indexMap[i];
+                }
+            }
         } else {
             Double2IntSortedMap sortedMap = timestampStore.timestampSortedMap;
             if (!sortedMap.isEmpty()) {
@@ -113,15 +130,15 @@ public class TimestampIndexImpl implements TimestampIndex {
     public NodeIterable getNodes(double timestamp) {
         checkDouble(timestamp);
 
-        readLock();
+        GraphLock.IteratorHold hold = lockIterator();
         int index = timestampStore.timestampMap.get(timestamp);
         if (index != NULL_INDEX) {
             TimestampIndexEntry ts = timestamps[index];
             if (ts != null) {
-                return new NodeIterableImpl(new NodeIteratorImpl(ts.nodeSet.iterator()));
+                return new NodeIterableImpl(new NodeIteratorImpl(ts.nodeSet.iterator(), hold));
             }
         }
-        readUnlock();
+        unlockIterator(hold);
         return NodeIterable.EMPTY;
     }
 
@@ -133,7 +150,18 @@ public class TimestampIndexImpl implements TimestampIndex {
         readLock();
         ObjectSet<NodeImpl> nodes = new ObjectOpenHashSet<NodeImpl>();
         Double2IntSortedMap sortedMap = timestampStore.timestampSortedMap;
-        if (!sortedMap.isEmpty()) {
+        if (timestampStore.sorted) {
+            int fromIndex = timestampStore.getFirstIndex(from);
+            int toIndex = Math.min(timestampStore.getLastIndex(to), timestamps.length - 1);
+            if (fromIndex != NULL_INDEX) {
+                for (int i = fromIndex; i <= toIndex; i++) {
+                    TimestampIndexEntry ts = timestamps[i];
+                    if (ts != null) {
+                        nodes.addAll(ts.nodeSet);
+                    }
+                }
+            }
+        } else if (!sortedMap.isEmpty()) {
             for (Double2IntMap.Entry entry : sortedMap.tailMap(from).double2IntEntrySet()) {
                 double timestamp = entry.getDoubleKey();
                 int index = entry.getIntValue();
@@ -147,8 +175,9 @@ public class TimestampIndexImpl implements TimestampIndex {
                 }
             }
         }
+        readUnlock();
         if (!nodes.isEmpty()) {
-            return new NodeIterableImpl(new NodeIteratorImpl(nodes.iterator()));
+            return new NodeIterableImpl(new NodeIteratorImpl(nodes.iterator(), null));
         }
         return NodeIterable.EMPTY;
     }
@@ -157,15 +186,15 @@ public class TimestampIndexImpl implements TimestampIndex {
     public EdgeIterable getEdges(double timestamp) {
         checkDouble(timestamp);
 
-        readLock();
+        GraphLock.IteratorHold hold = lockIterator();
         int index = timestampStore.timestampMap.get(timestamp);
         if (index != NULL_INDEX) {
             TimestampIndexEntry ts = timestamps[index];
             if (ts != null) {
-                return new EdgeIterableImpl(new EdgeIteratorImpl(ts.edgeSet.iterator()));
+                return new EdgeIterableImpl(new EdgeIteratorImpl(ts.edgeSet.iterator(), hold));
             }
         }
-        readUnlock();
+        unlockIterator(hold);
         return EdgeIterable.EMPTY;
     }
 
@@ -177,7 +206,18 @@ public class TimestampIndexImpl implements TimestampIndex {
         readLock();
         ObjectSet<EdgeImpl> edges = new ObjectOpenHashSet<EdgeImpl>();
         Double2IntSortedMap sortedMap = timestampStore.timestampSortedMap;
-        if (!sortedMap.isEmpty()) {
+        if (timestampStore.sorted) {
+            int fromIndex = timestampStore.getFirstIndex(from);
+            int toIndex = Math.min(timestampStore.getLastIndex(to), timestamps.length - 1);
+            if (fromIndex != NULL_INDEX) {
+                for (int i = fromIndex; i <= toIndex; i++) {
+                    TimestampIndexEntry ts = timestamps[i];
+                    if (ts != null) {
+                        edges.addAll(ts.edgeSet);
+                    }
+                }
+            }
+        } else if (!sortedMap.isEmpty()) {
             for (Double2IntMap.Entry entry : sortedMap.tailMap(from).double2IntEntrySet()) {
                 double timestamp = entry.getDoubleKey();
                 int index = entry.getIntValue();
@@ -191,13 +231,27 @@ public class TimestampIndexImpl implements TimestampIndex {
                 }
             }
         }
+        readUnlock();
         if (!edges.isEmpty()) {
-            return new EdgeIterableImpl(new EdgeIteratorImpl(edges.iterator()));
+            return new EdgeIterableImpl(new EdgeIteratorImpl(edges.iterator(), null));
         } else {
             return EdgeIterable.EMPTY;
         }
     }
 
+    @Override
+    public GraphView getSnapshotView(double timestamp) {
+        return getSnapshotView(timestamp, timestamp);
+    }
+
+    @Override
+    public GraphView getSnapshotView(double from, double to) {
+        checkDouble(from);
+        checkDouble(to);
+
+        return timestampStore.getSnapshotView(view, from, to);
+    }
+
     public boolean hasNodes() {
         return nodeCount > 0;
     }
@@ -207,12 +261,14 @@ public class TimestampIndexImpl implements TimestampIndex {
     }
 
     public void clear() {
+        version++;
         timestamps = new TimestampIndexEntry[0];
         nodeCount = 0;
         edgeCount = 0;
     }
 
     public void clearEdges() {
+        version++;
         if (nodeCount == 0) {
             clear();
         } else {
@@ -229,6 +285,36 @@ public class TimestampIndexImpl implements TimestampIndex {
         }
     }
 
+    protected void copy(TimestampIndexImpl index) {
+        TimestampIndexEntry[] newTimestamps = new TimestampIndexEntry[index.timestamps.length];
+        for (int i = 0; i < newTimestamps.length; i++) {
+            TimestampIndexEntry entry = index.timestamps[i];
+            if (entry != null) {
+                TimestampIndexEntry newEntry = new TimestampIndexEntry();
+                newEntry.nodeSet.addAll(entry.nodeSet);
+                newEntry.edgeSet.addAll(entry.edgeSet);
+                newTimestamps[i] = newEntry;
+            }
+        }
+        timestamps = newTimestamps;
+        version++;
+        nodeCount = index.nodeCount;
+        edgeCount = index.edgeCount;
+    }
+
+    protected void remap(int[] mapping, int size) {
+        TimestampIndexEntry[] newTimestamps = new TimestampIndexEntry[size];
+        int length = Math.min(timestamps.length, mapping.length);
+        for (int i = 0; i < length; i++) {
+            TimestampIndexEntry entry = timestamps[i];
+            if (entry != null && mapping[i] != NULL_INDEX) {
+                newTimestamps[mapping[i]] = entry;
+            }
+        }
+        timestamps = newTimestamps;
+        version++;
+    }
+
     protected void addNode(int timestampIndex, NodeImpl node) {
         ensureArraySize(timestampIndex);
         TimestampIndexEntry entry = timestamps[timestampIndex];
@@ -237,6 +323,7 @@ public class TimestampIndexImpl implements TimestampIndex {
         }
         if (entry.addNode(node)) {
             nodeCount++;
+            version++;
         }
     }
 
@@ -248,6 +335,7 @@ public class TimestampIndexImpl implements TimestampIndex {
         }
         if (entry.addEdge(edge)) {
             edgeCount++;
+            version++;
         }
     }
 
@@ -255,6 +343,7 @@ public class TimestampIndexImpl implements TimestampIndex {
         TimestampIndexEntry entry = timestamps[timestampIndex];
         if (entry.removeNode(node)) {
             nodeCount--;
+            version++;
             if (entry.isEmpty()) {
                 clearEntry(timestampIndex);
             }
@@ -265,6 +354,7 @@ public class TimestampIndexImpl implements TimestampIndex {
         TimestampIndexEntry entry = timestamps[timestampIndex];
         if (entry.removeEdge(edge)) {
             edgeCount--;
+            version++;
             if (entry.isEmpty()) {
                 clearEntry(timestampIndex);
             }
@@ -300,6 +390,19 @@ public class TimestampIndexImpl implements TimestampIndex {
         }
     }
 
+    private GraphLock.IteratorHold lockIterator() {
+        if (lock != null) {
+            return lock.lockIterator(this);
+        }
+        return null;
+    }
+
+    private void unlockIterator(GraphLock.IteratorHold hold) {
+        if (hold != null) {
+            lock.unlockIterator(hold);
+        }
+    }
+
     private void readLock() {
         if (lock != null) {
             lock.readLock();
@@ -358,14 +461,20 @@ public class TimestampIndexImpl implements TimestampIndex {
     protected class NodeIteratorImpl implements Iterator<Node> {
 
         private final ObjectIterator<NodeImpl> itr;
+        private final GraphLock.IteratorHold hold;
 
-        public NodeIteratorImpl(ObjectIterator<NodeImpl> itr) {
+        public NodeIteratorImpl(ObjectIterator<NodeImpl> itr, GraphLock.IteratorHold hold) {
             this.itr = itr;
+            this.hold = hold;
         }
 
         @Override
         public boolean hasNext() {
-            return itr.hasNext();
+            if (!itr.hasNext()) {
+                unlockIterator(hold);
+                return false;
+            }
+            return true;
         }
 
         @Override
@@ -382,14 +491,20 @@ public class TimestampIndexImpl implements TimestampIndex {
     protected class EdgeIteratorImpl implements Iterator<Edge> {
 
         private final ObjectIterator<EdgeImpl> itr;
+        private final GraphLock.IteratorHold hold;
 
-        public EdgeIteratorImpl(ObjectIterator<EdgeImpl> itr) {
+        public EdgeIteratorImpl(ObjectIterator<EdgeImpl> itr, GraphLock.IteratorHold hold) {
             this.itr = itr;
+            this.hold = hold;
         }
 
         @Override
         public boolean hasNext() {
-            return itr.hasNext();
+            if (!itr.hasNext()) {
+                unlockIterator(hold);
+                return false;
+            }
+            return true;
         }
 
         @Override
@@ -405,9 +520,9 @@ public class TimestampIndexImpl implements TimestampIndex {
 
     protected class NodeIterableImpl implements NodeIterable {
 
-        protected final Iterator<Node> iterator;
+        protected final NodeIteratorImpl iterator;
 
-        public NodeIterableImpl(Iterator<Node> iterator) {
+        public NodeIterableImpl(NodeIteratorImpl iterator) {
             this.iterator = iterator;
         }
 
@@ -436,15 +551,20 @@ public class TimestampIndexImpl implements TimestampIndex {
 
         @Override
         public void doBreak() {
-            readUnlock();
+            unlockIterator(iterator.hold);
+        }
+
+        @Override
+        public void close() {
+            doBreak();
         }
     }
 
     protected class EdgeIterableImpl implements EdgeIterable {
 
-        protected final Iterator<Edge> iterator;
+        protected final EdgeIteratorImpl iterator;
 
-        public EdgeIterableImpl(Iterator<Edge> iterator) {
+        public EdgeIterableImpl(EdgeIteratorImpl iterator) {
             this.iterator = iterator;
         }
 
@@ -473,7 +593,12 @@ public class TimestampIndexImpl implements TimestampIndex {
 
         @Override
         public void doBreak() {
-            readUnlock();
+            unlockIterator(iterator.hold);
+        }
+
+        @Override
+        public void close() {
+            doBreak();
         }
     }
 }
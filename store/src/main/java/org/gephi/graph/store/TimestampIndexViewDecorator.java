@@ -0,0 +1,214 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import it.unimi.dsi.fastutil.doubles.Double2IntMap;
+import it.unimi.dsi.fastutil.doubles.Double2IntSortedMap;
+import it.unimi.dsi.fastutil.objects.ObjectBidirectionalIterator;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectSet;
+import org.gephi.attribute.api.TimestampIndex;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.EdgeIterable;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.NodeIterable;
+import org.gephi.graph.store.TimestampIndexImpl.TimestampIndexEntry;
+
+/**
+ * Timestamp index for views covering most of the graph. Instead of maintaining
+ * a dedicated index, it reads the main index and filters by view membership.
+ *
+ * @author mbastian
+ */
+public class TimestampIndexViewDecorator implements TimestampIndex {
+
+    protected final TimestampIndexImpl mainIndex;
+    protected final TimestampStore timestampStore;
+    protected final GraphViewImpl view;
+    protected final GraphLock lock;
+
+    public TimestampIndexViewDecorator(TimestampIndexImpl mainIndex, GraphViewImpl view) {
+        this.mainIndex = mainIndex;
+        this.timestampStore = mainIndex.timestampStore;
+        this.view = view;
+        this.lock = mainIndex.lock;
+    }
+
+    @Override
+    public double getMinTimestamp() {
+        readLock();
+        try {
+            Double2IntSortedMap sortedMap = timestampStore.timestampSortedMap;
+            if (!sortedMap.isEmpty()) {
+                for (Double2IntMap.Entry entry : sortedMap.double2IntEntrySet()) {
+                    if (containsAny(entry.getIntValue())) {
+                        return entry.getDoubleKey();
+                    }
+                }
+            }
+            return Double.NEGATIVE_INFINITY;
+        } finally {
+            readUnlock();
+        }
+    }
+
+    @Override
+    public double getMaxTimestamp() {
+        readLock();
+        try {
+            Double2IntSortedMap sortedMap = timestampStore.timestampSortedMap;
+            if (!sortedMap.isEmpty()) {
+                ObjectBidirectionalIterator<Double2IntMap.Entry> bi = sortedMap.double2IntEntrySet().iterator(sortedMap.double2IntEntrySet().last());
+                while (bi.hasPrevious()) {
+                    Double2IntMap.Entry entry = bi.previous();
+                    if (containsAny(entry.getIntValue())) {
+                        return entry.getDoubleKey();
+                    }
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        } finally {
+            readUnlock();
+        }
+    }
+
+    @Override
+    public NodeIterable getNodes(double timestamp) {
+        return getNodes(timestamp, timestamp);
+    }
+
+    @Override
+    public NodeIterable getNodes(double from, double to) {
+        checkDouble(from);
+        checkDouble(to);
+
+        ObjectSet<Node> nodes = new ObjectOpenHashSet<Node>();
+        readLock();
+        try {
+            for (Double2IntMap.Entry entry : timestampStore.timestampSortedMap.tailMap(from).double2IntEntrySet()) {
+                if (entry.getDoubleKey() > to) {
+                    break;
+                }
+                TimestampIndexEntry ts = getEntry(entry.getIntValue());
+                if (ts != null) {
+                    for (NodeImpl node : ts.nodeSet) {
+                        if (view.containsNode(node)) {
+                            nodes.add(node);
+                        }
+                    }
+                }
+            }
+        } finally {
+            readUnlock();
+        }
+        if (nodes.isEmpty()) {
+            return NodeIterable.EMPTY;
+        }
+        return view.graphStore.getNodeIterableWrapper(nodes.iterator(), false);
+    }
+
+    @Override
+    public EdgeIterable getEdges(double timestamp) {
+        return getEdges(timestamp, timestamp);
+    }
+
+    @Override
+    public EdgeIterable getEdges(double from, double to) {
+        checkDouble(from);
+        checkDouble(to);
+
+        ObjectSet<Edge> edges = new ObjectOpenHashSet<Edge>();
+        readLock();
+        try {
+            for (Double2IntMap.Entry entry : timestampStore.timestampSortedMap.tailMap(from).double2IntEntrySet()) {
+                if (entry.getDoubleKey() > to) {
+                    break;
+                }
+                TimestampIndexEntry ts = getEntry(entry.getIntValue());
+                if (ts != null) {
+                    for (EdgeImpl edge : ts.edgeSet) {
+                        if (view.containsEdge(edge)) {
+                            edges.add(edge);
+                        }
+                    }
+                }
+            }
+        } finally {
+            readUnlock();
+        }
+        if (edges.isEmpty()) {
+            return EdgeIterable.EMPTY;
+        }
+        return view.graphStore.getEdgeIterableWrapper(edges.iterator(), false);
+    }
+
+    @Override
+    public GraphView getSnapshotView(double timestamp) {
+        return getSnapshotView(timestamp, timestamp);
+    }
+
+    @Override
+    public GraphView getSnapshotView(double from, double to) {
+        checkDouble(from);
+        checkDouble(to);
+
+        return timestampStore.getSnapshotView(view, from, to);
+    }
+
+    private TimestampIndexEntry getEntry(int index) {
+        TimestampIndexEntry[] timestamps = mainIndex.timestamps;
+        if (index >= 0 && index < timestamps.length) {
+            return timestamps[index];
+        }
+        return null;
+    }
+
+    private boolean containsAny(int index) {
+        TimestampIndexEntry ts = getEntry(index);
+        if (ts != null) {
+            for (NodeImpl node : ts.nodeSet) {
+                if (view.containsNode(node)) {
+                    return true;
+                }
+            }
+            for (EdgeImpl edge : ts.edgeSet) {
+                if (view.containsEdge(edge)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void checkDouble(double timestamp) {
+        if (Double.isInfinite(timestamp) || Double.isNaN(timestamp)) {
+            throw new IllegalArgumentException("Timestamp can' be NaN or infinity");
+        }
+    }
+
+    private void readLock() {
+        if (lock != null) {
+            lock.readLock();
+        }
+    }
+
+    private void readUnlock() {
+        if (lock != null) {
+            lock.readUnlock();
+        }
+    }
+}
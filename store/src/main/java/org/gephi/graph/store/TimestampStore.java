@@ -19,13 +19,20 @@ import it.unimi.dsi.fastutil.doubles.Double2IntMap;
 import it.unimi.dsi.fastutil.doubles.Double2IntOpenHashMap;
 import it.unimi.dsi.fastutil.doubles.Double2IntRBTreeMap;
 import it.unimi.dsi.fastutil.doubles.Double2IntSortedMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
 import it.unimi.dsi.fastutil.ints.IntSortedSet;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectSet;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.gephi.attribute.api.TimestampIndex;
 import org.gephi.attribute.time.TimestampSet;
-import org.gephi.graph.api.DirectedSubgraph;
+import org.gephi.attribute.time.TimestampValueSet;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphView;
@@ -40,6 +47,8 @@ public class TimestampStore {
 
     //Const
     public static final int NULL_INDEX = -1;
+    //Store (optional)
+    protected final GraphStore graphStore;
     //Lock (optional
     protected final GraphLock lock;
     //Timestamp index managament
@@ -48,36 +57,59 @@ public class TimestampStore {
     protected final IntSortedSet garbageQueue;
     protected double[] indexMap;
     protected int length;
+    //True if indices are ordered like timestamps
+    protected boolean sorted;
     //Index
     protected final TimestampIndexImpl mainIndex;
     protected final Map<GraphView, TimestampIndexImpl> viewIndexes;
+    //Snapshots
+    protected final Map<SnapshotKey, SnapshotEntry> snapshots;
+    //Retention
+    protected double retentionWindow = Double.POSITIVE_INFINITY;
+    protected int retentionCount = Integer.MAX_VALUE;
 
     public TimestampStore(GraphLock graphLock) {
+        this(null, graphLock);
+    }
+
+    public TimestampStore(GraphStore store, GraphLock graphLock) {
+        graphStore = store;
         lock = graphLock;
+        sorted = true;
         timestampMap = new Double2IntOpenHashMap();
         timestampMap.defaultReturnValue(NULL_INDEX);
         garbageQueue = new IntRBTreeSet();
-        mainIndex = new TimestampIndexImpl(this, true);
-        viewIndexes = new Object2ObjectOpenHashMap<GraphView, TimestampIndexImpl>();
+        mainIndex = new TimestampIndexImpl(this, null);
+        snapshots = new LinkedHashMap<SnapshotKey, SnapshotEntry>(16, .75f, true);
+        viewIndexes = new Reference2ObjectOpenHashMap<GraphView, TimestampIndexImpl>();
         timestampSortedMap = new Double2IntRBTreeMap();
         indexMap = new double[0];
     }
 
-    public TimestampIndexImpl getIndex(Graph graph) {
+    public TimestampIndex getIndex(Graph graph) {
         if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
             GraphView view = graph.getView();
             if (view.isMainView()) {
                 return mainIndex;
             }
-            writeLock();
+            //A read operation, it mustn't fail in single writer mode
+            internalWriteLock();
             try {
-                TimestampIndexImpl viewIndex = viewIndexes.get(graph.getView());
+                GraphViewImpl graphView = (GraphViewImpl) view;
+                TimestampIndexImpl viewIndex = viewIndexes.get(graphView);
+                if (isDenseView(graphView)) {
+                    if (viewIndex != null) {
+                        viewIndexes.remove(graphView);
+                        viewIndex.clear();
+                    }
+                    return new TimestampIndexViewDecorator(mainIndex, graphView);
+                }
                 if (viewIndex == null) {
                     viewIndex = createViewIndex(graph);
                 }
                 return viewIndex;
             } finally {
-                writeUnlock();
+                internalWriteUnlock();
             }
         }
         return null;
@@ -87,19 +119,26 @@ public class TimestampStore {
         if (graph.getView().isMainView()) {
             throw new IllegalArgumentException("Can't create a view index for the main view");
         }
-        TimestampIndexImpl viewIndex = new TimestampIndexImpl(this, false);
+        TimestampIndexImpl viewIndex = new TimestampIndexImpl(this, (GraphViewImpl) graph.getView());
         viewIndexes.put(graph.getView(), viewIndex);
 
         for (Node node : graph.getNodes()) {
-            indexNode((NodeImpl) node);
+            indexNode(viewIndex, (NodeImpl) node);
         }
         for (Edge edge : graph.getEdges()) {
-            indexEdge((EdgeImpl) edge);
+            indexEdge(viewIndex, (EdgeImpl) edge);
         }
 
         return viewIndex;
     }
 
+    protected boolean isDenseView(GraphViewImpl view) {
+        GraphStore store = view.graphStore;
+        int total = store.nodeStore.size() + store.edgeStore.size();
+        int count = view.getNodeCount() + view.getEdgeCount();
+        return total > 0 && count >= total * GraphStoreConfiguration.TIMESTAMP_DENSE_VIEW_RATIO;
+    }
+
     protected void deleteViewIndex(Graph graph) {
         if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
             if (graph.getView().isMainView()) {
@@ -112,6 +151,150 @@ public class TimestampStore {
         }
     }
 
+    /**
+     * Returns a new node view of the elements present between
+     * <code>from</code> and <code>to</code>. The view is registered in the
+     * view store like any other view, so it's kept up to date and belongs to
+     * the caller, who destroys it with <code>destroyView()</code> when done.
+     * Recently built snapshots are kept as unregistered templates, so
+     * scrubbing back and forth only copies them.
+     * <p>
+     * Registering the view takes the write lock, it can't be called while
+     * holding a read lock.
+     *
+     * @param sourceView view to restrict the snapshot to, or null
+     * @param from lower bound, inclusive
+     * @param to upper bound, inclusive
+     * @return a new view
+     */
+    protected GraphView getSnapshotView(GraphViewImpl sourceView, double from, double to) {
+        if (graphStore == null) {
+            throw new UnsupportedOperationException("Snapshots require a graph store");
+        }
+        internalWriteLock();
+        try {
+            GraphViewImpl template = getSnapshotTemplate(sourceView, from, to);
+
+            //Snapshot views are derived data, they aren't journaled
+            GraphViewImpl view = new GraphViewImpl(template);
+            graphStore.viewStore.addView(view);
+            return view;
+        } finally {
+            internalWriteUnlock();
+        }
+    }
+
+    private GraphViewImpl getSnapshotTemplate(GraphViewImpl sourceView, double from, double to) {
+        boolean cached = graphStore.version != null && GraphStoreConfiguration.TIMESTAMP_SNAPSHOT_CACHE_SIZE > 0;
+        SnapshotKey key = new SnapshotKey(sourceView, from, to);
+        if (cached) {
+            synchronized (snapshots) {
+                SnapshotEntry entry = snapshots.get(key);
+                if (entry != null) {
+                    if (entry.isValid()) {
+                        return entry.view;
+                    }
+                    snapshots.remove(key);
+                }
+            }
+        }
+
+        ObjectSet<NodeImpl> nodes = new ObjectOpenHashSet<NodeImpl>();
+        for (Double2IntMap.Entry timestampEntry : timestampSortedMap.tailMap(from).double2IntEntrySet()) {
+            if (timestampEntry.getDoubleKey() > to) {
+                break;
+            }
+            int index = timestampEntry.getIntValue();
+            if (index < mainIndex.timestamps.length && mainIndex.timestamps[index] != null) {
+                for (NodeImpl node : mainIndex.timestamps[index].nodeSet) {
+                    if (sourceView == null || sourceView.containsNode(node)) {
+                        nodes.add(node);
+                    }
+                }
+            }
+        }
+        GraphViewImpl template = new GraphViewImpl(graphStore, true);
+        template.addNodesWithEdges(nodes.iterator());
+
+        if (cached) {
+            synchronized (snapshots) {
+                snapshots.put(key, new SnapshotEntry(template, sourceView));
+                if (snapshots.size() > GraphStoreConfiguration.TIMESTAMP_SNAPSHOT_CACHE_SIZE) {
+                    Iterator<SnapshotEntry> itr = snapshots.values().iterator();
+                    itr.next();
+                    itr.remove();
+                }
+            }
+        }
+        return template;
+    }
+
+    private GraphJournal getJournal() {
+        return graphStore != null ? graphStore.journal : null;
+    }
+
+    protected void indexInView(GraphViewImpl view, ElementImpl element) {
+        if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP && !viewIndexes.isEmpty()) {
+            TimestampIndexImpl viewIndex = viewIndexes.get(view);
+            if (viewIndex != null) {
+                if (element instanceof NodeImpl) {
+                    indexNode(viewIndex, (NodeImpl) element);
+                } else {
+                    indexEdge(viewIndex, (EdgeImpl) element);
+                }
+            }
+        }
+    }
+
+    protected void clearInView(GraphViewImpl view, ElementImpl element) {
+        if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP && !viewIndexes.isEmpty()) {
+            TimestampIndexImpl viewIndex = viewIndexes.get(view);
+            if (viewIndex != null) {
+                TimestampSet set = element.getTimestampSet();
+                if (set != null) {
+                    int[] ts = set.getTimestamps();
+                    int tsLength = ts.length;
+                    if (element instanceof NodeImpl) {
+                        for (int i = 0; i < tsLength; i++) {
+                            viewIndex.removeNode(ts[i], (NodeImpl) element);
+                        }
+                    } else {
+                        for (int i = 0; i < tsLength; i++) {
+                            viewIndex.removeEdge(ts[i], (EdgeImpl) element);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    protected void clearView(GraphViewImpl view) {
+        if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP && !viewIndexes.isEmpty()) {
+            TimestampIndexImpl viewIndex = viewIndexes.get(view);
+            if (viewIndex != null) {
+                viewIndex.clear();
+            }
+        }
+    }
+
+    protected void clearViewEdges(GraphViewImpl view) {
+        if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP && !viewIndexes.isEmpty()) {
+            TimestampIndexImpl viewIndex = viewIndexes.get(view);
+            if (viewIndex != null) {
+                viewIndex.clearEdges();
+            }
+        }
+    }
+
+    protected void fillView(GraphViewImpl view) {
+        if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP && !viewIndexes.isEmpty()) {
+            TimestampIndexImpl viewIndex = viewIndexes.get(view);
+            if (viewIndex != null) {
+                viewIndex.copy(mainIndex);
+            }
+        }
+    }
+
     //Protected
     public int getTimestampIndex(double timestamp) {
         int index = timestampMap.get(timestamp);
@@ -133,20 +316,296 @@ public class TimestampStore {
         for (int i = 0; i < indicesLength; i++) {
             int index = indices[i];
             checkIndex(index);
-            res[i] = indexMap[i];
+            res[i] = indexMap[index];
         }
         return res;
     }
 
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    protected int getFirstIndex(double from) {
+        Double2IntSortedMap tailMap = timestampSortedMap.tailMap(from);
+        if (!tailMap.isEmpty()) {
+            return tailMap.get(tailMap.firstDoubleKey());
+        }
+        return NULL_INDEX;
+    }
+
+    protected int getLastIndex(double to) {
+        if (timestampSortedMap.containsKey(to)) {
+            return timestampSortedMap.get(to);
+        }
+        Double2IntSortedMap headMap = timestampSortedMap.headMap(to);
+        if (!headMap.isEmpty()) {
+            return headMap.get(headMap.lastDoubleKey());
+        }
+        return NULL_INDEX;
+    }
+
+    public double getRetentionWindow() {
+        return retentionWindow;
+    }
+
+    public void setRetentionWindow(double window) {
+        if (Double.isNaN(window) || window < 0) {
+            throw new IllegalArgumentException("The retention window must be positive");
+        }
+        retentionWindow = window;
+        GraphJournal journal = getJournal();
+        if (journal != null) {
+            journal.retentionChanged(retentionWindow, retentionCount);
+        }
+    }
+
+    public int getRetentionCount() {
+        return retentionCount;
+    }
+
+    public void setRetentionCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The retention count must be positive");
+        }
+        retentionCount = count;
+        GraphJournal journal = getJournal();
+        if (journal != null) {
+            journal.retentionChanged(retentionWindow, retentionCount);
+        }
+    }
+
+    public boolean hasRetention() {
+        return retentionWindow != Double.POSITIVE_INFINITY || retentionCount != Integer.MAX_VALUE;
+    }
+
+    public boolean hasExpired() {
+        readLock();
+        try {
+            return isExpired();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    public int evict() {
+        return evict(GraphStoreConfiguration.TIMESTAMP_EVICTION_BATCH_SIZE);
+    }
+
+    public int evict(int maxTimestamps) {
+        writeLock();
+        try {
+            int evicted = 0;
+            while (evicted < maxTimestamps && isExpired()) {
+                evictTimestamp(timestampSortedMap.firstDoubleKey());
+                evicted++;
+            }
+            return evicted;
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    private boolean isExpired() {
+        if (timestampSortedMap.isEmpty()) {
+            return false;
+        }
+        if (timestampSortedMap.size() > retentionCount) {
+            return true;
+        }
+        return timestampSortedMap.firstDoubleKey() < timestampSortedMap.lastDoubleKey() - retentionWindow;
+    }
+
+    protected void evictTimestamp(double timestamp) {
+        int index = timestampMap.get(timestamp);
+        if (graphStore != null) {
+            NodeImpl[] nodes;
+            EdgeImpl[] edges;
+            if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
+                TimestampIndexImpl.TimestampIndexEntry entry = index < mainIndex.timestamps.length ? mainIndex.timestamps[index] : null;
+                nodes = entry != null ? entry.nodeSet.toArray(new NodeImpl[0]) : new NodeImpl[0];
+                edges = entry != null ? entry.edgeSet.toArray(new EdgeImpl[0]) : new EdgeImpl[0];
+            } else {
+                nodes = graphStore.nodeStore.toArray(new NodeImpl[0]);
+                edges = graphStore.edgeStore.toArray(new EdgeImpl[0]);
+            }
+            if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
+                //Values set at this timestamp don't appear in the index
+                IntArrayList edgeColumns = getDynamicColumns(graphStore.edgeColumnStore);
+                if (!edgeColumns.isEmpty()) {
+                    evictValues(graphStore.edgeStore.toArray(new EdgeImpl[0]), edgeColumns, index);
+                }
+                IntArrayList nodeColumns = getDynamicColumns(graphStore.nodeColumnStore);
+                if (!nodeColumns.isEmpty()) {
+                    evictValues(graphStore.nodeStore.toArray(new NodeImpl[0]), nodeColumns, index);
+                }
+            }
+            for (EdgeImpl edge : edges) {
+                if (edge.storeId != EdgeStore.NULL_ID && evictElement(edge, index)) {
+                    graphStore.removeEdge(edge);
+                }
+            }
+            for (NodeImpl node : nodes) {
+                if (node.storeId != NodeStore.NULL_ID && evictElement(node, index)) {
+                    graphStore.removeNode(node);
+                }
+            }
+        }
+        if (timestampMap.containsKey(timestamp)) {
+            if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
+                if (index < mainIndex.timestamps.length) {
+                    mainIndex.removeTimestamp(index);
+                }
+                for (TimestampIndexImpl viewIndex : viewIndexes.values()) {
+                    if (index < viewIndex.timestamps.length) {
+                        viewIndex.removeTimestamp(index);
+                    }
+                }
+            }
+            removeTimestamp(timestamp);
+        }
+        GraphJournal journal = getJournal();
+        if (journal != null) {
+            journal.timestampEvicted(timestamp);
+        }
+    }
+
+    private IntArrayList getDynamicColumns(ColumnStore<?> columnStore) {
+        IntArrayList dynamicColumns = new IntArrayList();
+        for (ColumnImpl column : columnStore) {
+            if (TimestampValueSet.class.isAssignableFrom(column.getTypeClass())) {
+                dynamicColumns.add(column.getIndex());
+            }
+        }
+        return dynamicColumns;
+    }
+
+    private void evictValues(ElementImpl[] elements, IntArrayList dynamicColumns, int index) {
+        for (ElementImpl element : elements) {
+            Object[] attributes = element.attributes;
+            for (int i = 0; i < dynamicColumns.size(); i++) {
+                int column = dynamicColumns.getInt(i);
+                if (column < attributes.length) {
+                    evictValue(attributes[column], index);
+                }
+            }
+        }
+    }
+
+    private void evictValue(Object value, int index) {
+        if (value instanceof TimestampValueSet) {
+            TimestampValueSet valueSet = (TimestampValueSet) value;
+            if (valueSet.contains(index)) {
+                valueSet.remove(index);
+                valueSet.trimToSize();
+            }
+        }
+    }
+
+    private boolean evictElement(ElementImpl element, int index) {
+        TimestampSet set = element.getTimestampSet();
+        Object[] attributes = element.attributes;
+        for (int i = 0; i < attributes.length; i++) {
+            evictValue(attributes[i], index);
+        }
+        if (set != null && set.contains(index)) {
+            if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
+                if (element instanceof NodeImpl) {
+                    NodeImpl node = (NodeImpl) element;
+                    mainIndex.removeNode(index, node);
+                    for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
+                        if (((GraphViewImpl) entry.getKey()).containsNode(node)) {
+                            entry.getValue().removeNode(index, node);
+                        }
+                    }
+                } else {
+                    EdgeImpl edge = (EdgeImpl) element;
+                    mainIndex.removeEdge(index, edge);
+                    for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
+                        if (((GraphViewImpl) entry.getKey()).containsEdge(edge)) {
+                            entry.getValue().removeEdge(index, edge);
+                        }
+                    }
+                }
+            }
+            set.remove(index);
+            set.trimToSize();
+            return set.isEmpty();
+        }
+        return false;
+    }
+
+    public void compact() {
+        writeLock();
+        try {
+            if (sorted && garbageQueue.isEmpty()) {
+                return;
+            }
+            int size = timestampSortedMap.size();
+            int[] mapping = new int[length];
+            Arrays.fill(mapping, NULL_INDEX);
+            double[] newIndexMap = new double[size];
+
+            int rank = 0;
+            for (Double2IntMap.Entry entry : timestampSortedMap.double2IntEntrySet()) {
+                mapping[entry.getIntValue()] = rank;
+                newIndexMap[rank++] = entry.getDoubleKey();
+            }
+
+            timestampMap.clear();
+            timestampSortedMap.clear();
+            for (int i = 0; i < size; i++) {
+                timestampMap.put(newIndexMap[i], i);
+                timestampSortedMap.put(newIndexMap[i], i);
+            }
+            indexMap = newIndexMap;
+            garbageQueue.clear();
+            length = size;
+            sorted = true;
+
+            if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
+                mainIndex.remap(mapping, size);
+                for (TimestampIndexImpl index : viewIndexes.values()) {
+                    index.remap(mapping, size);
+                }
+            }
+
+            if (graphStore != null) {
+                for (Iterator<Node> itr = graphStore.nodeStore.iterator(); itr.hasNext();) {
+                    remapElement((ElementImpl) itr.next(), mapping);
+                }
+                for (Iterator<Edge> itr = graphStore.edgeStore.iterator(); itr.hasNext();) {
+                    remapElement((ElementImpl) itr.next(), mapping);
+                }
+            }
+            GraphJournal journal = getJournal();
+            if (journal != null) {
+                journal.timestampsCompacted();
+            }
+        } finally {
+            writeUnlock();
+        }
+    }
+
     public int size() {
         return timestampMap.size();
     }
 
+    protected void copyTimestamps(TimestampStore source) {
+        timestampMap.putAll(source.timestampMap);
+        timestampSortedMap.putAll(source.timestampSortedMap);
+        garbageQueue.addAll(source.garbageQueue);
+        indexMap = Arrays.copyOf(source.indexMap, source.indexMap.length);
+        length = source.length;
+        sorted = source.sorted;
+    }
+
     public void clear() {
         timestampMap.clear();
         timestampSortedMap.clear();
         garbageQueue.clear();
         indexMap = new double[0];
+        length = 0;
+        sorted = true;
 
         if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
             mainIndex.clear();
@@ -159,6 +618,13 @@ public class TimestampStore {
         }
     }
 
+    //Cached snapshot templates are bit vectors of the previous store ids
+    protected void storeIdsCompacted() {
+        synchronized (snapshots) {
+            snapshots.clear();
+        }
+    }
+
     public void clearEdges() {
         if (!mainIndex.hasNodes()) {
             clear();
@@ -208,25 +674,13 @@ public class TimestampStore {
     //private
     protected void indexNode(NodeImpl node) {
         if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
-            TimestampSet set = node.getTimestampSet();
-            if (set != null) {
-                int[] ts = set.getTimestamps();
-                int tsLength = ts.length;
-                for (int i = 0; i < tsLength; i++) {
-                    int timestamp = ts[i];
-                    mainIndex.addNode(timestamp, node);
-                }
+            indexNode(mainIndex, node);
 
-                if (!viewIndexes.isEmpty()) {
-                    for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
-                        GraphViewImpl graphView = (GraphViewImpl) entry.getKey();
-                        DirectedSubgraph graph = graphView.getDirectedGraph();
-                        if (graph.contains(node)) {
-                            for (int i = 0; i < tsLength; i++) {
-                                int timestamp = ts[i];
-                                entry.getValue().addNode(timestamp, node);
-                            }
-                        }
+            if (!viewIndexes.isEmpty() && node.storeId != NodeStore.NULL_ID) {
+                for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
+                    GraphViewImpl graphView = (GraphViewImpl) entry.getKey();
+                    if (graphView.containsNode(node)) {
+                        indexNode(entry.getValue(), node);
                     }
                 }
             }
@@ -235,58 +689,67 @@ public class TimestampStore {
 
     protected void indexEdge(EdgeImpl edge) {
         if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
-            TimestampSet set = edge.getTimestampSet();
-            if (set != null) {
-                int[] ts = set.getTimestamps();
-                int tsLength = ts.length;
-                for (int i = 0; i < tsLength; i++) {
-                    int timestamp = ts[i];
-                    mainIndex.addEdge(timestamp, edge);
-                }
+            indexEdge(mainIndex, edge);
 
-                if (!viewIndexes.isEmpty()) {
-                    for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
-                        GraphViewImpl graphView = (GraphViewImpl) entry.getKey();
-                        DirectedSubgraph graph = graphView.getDirectedGraph();
-                        if (graph.contains(edge)) {
-                            for (int i = 0; i < tsLength; i++) {
-                                int timestamp = ts[i];
-                                entry.getValue().addEdge(timestamp, edge);
-                            }
-                        }
+            if (!viewIndexes.isEmpty() && edge.storeId != EdgeStore.NULL_ID) {
+                for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
+                    GraphViewImpl graphView = (GraphViewImpl) entry.getKey();
+                    if (graphView.containsEdge(edge)) {
+                        indexEdge(entry.getValue(), edge);
                     }
                 }
             }
         }
     }
 
+    private void indexNode(TimestampIndexImpl index, NodeImpl node) {
+        TimestampSet set = node.getTimestampSet();
+        if (set != null) {
+            int[] ts = set.getTimestamps();
+            int tsLength = ts.length;
+            for (int i = 0; i < tsLength; i++) {
+                index.addNode(ts[i], node);
+            }
+        }
+    }
+
+    private void indexEdge(TimestampIndexImpl index, EdgeImpl edge) {
+        TimestampSet set = edge.getTimestampSet();
+        if (set != null) {
+            int[] ts = set.getTimestamps();
+            int tsLength = ts.length;
+            for (int i = 0; i < tsLength; i++) {
+                index.addEdge(ts[i], edge);
+            }
+        }
+    }
+
     protected void clearNode(NodeImpl node) {
         if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
             TimestampSet set = node.getTimestampSet();
             if (set != null) {
                 int[] ts = set.getTimestamps();
                 int tsLength = ts.length;
-                for (int i = 0; i < tsLength; i++) {
-                    int timestamp = ts[i];
-                    mainIndex.removeNode(timestamp, node);
 
-                    if (mainIndex.timestamps[i] == null) {
-                        removeTimestamp(indexMap[i]);
-                    }
-                }
-
-                if (!viewIndexes.isEmpty()) {
+                if (!viewIndexes.isEmpty() && node.storeId != NodeStore.NULL_ID) {
                     for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
                         GraphViewImpl graphView = (GraphViewImpl) entry.getKey();
-                        DirectedSubgraph graph = graphView.getDirectedGraph();
-                        if (graph.contains(node)) {
+                        if (graphView.containsNode(node)) {
                             for (int i = 0; i < tsLength; i++) {
-                                int timestamp = ts[i];
-                                entry.getValue().removeNode(timestamp, node);
+                                entry.getValue().removeNode(ts[i], node);
                             }
                         }
                     }
                 }
+
+                for (int i = 0; i < tsLength; i++) {
+                    int timestamp = ts[i];
+                    mainIndex.removeNode(timestamp, node);
+
+                    if (mainIndex.timestamps[timestamp] == null) {
+                        removeTimestamp(indexMap[timestamp]);
+                    }
+                }
             }
         }
     }
@@ -297,27 +760,26 @@ public class TimestampStore {
             if (set != null) {
                 int[] ts = set.getTimestamps();
                 int tsLength = ts.length;
-                for (int i = 0; i < tsLength; i++) {
-                    int timestamp = ts[i];
-                    mainIndex.removeEdge(timestamp, edge);
-
-                    if (mainIndex.timestamps[i] == null) {
-                        removeTimestamp(indexMap[i]);
-                    }
-                }
 
-                if (!viewIndexes.isEmpty()) {
+                if (!viewIndexes.isEmpty() && edge.storeId != EdgeStore.NULL_ID) {
                     for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
                         GraphViewImpl graphView = (GraphViewImpl) entry.getKey();
-                        DirectedSubgraph graph = graphView.getDirectedGraph();
-                        if (graph.contains(edge)) {
+                        if (graphView.containsEdge(edge)) {
                             for (int i = 0; i < tsLength; i++) {
-                                int timestamp = ts[i];
-                                entry.getValue().removeEdge(timestamp, edge);
+                                entry.getValue().removeEdge(ts[i], edge);
                             }
                         }
                     }
                 }
+
+                for (int i = 0; i < tsLength; i++) {
+                    int timestamp = ts[i];
+                    mainIndex.removeEdge(timestamp, edge);
+
+                    if (mainIndex.timestamps[timestamp] == null) {
+                        removeTimestamp(indexMap[timestamp]);
+                    }
+                }
             }
         }
     }
@@ -327,11 +789,10 @@ public class TimestampStore {
         if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
             mainIndex.addNode(timestampIndex, node);
 
-            if (!viewIndexes.isEmpty()) {
+            if (!viewIndexes.isEmpty() && node.storeId != NodeStore.NULL_ID) {
                 for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
                     GraphViewImpl graphView = (GraphViewImpl) entry.getKey();
-                    DirectedSubgraph graph = graphView.getDirectedGraph();
-                    if (graph.contains(node)) {
+                    if (graphView.containsNode(node)) {
                         entry.getValue().addNode(timestampIndex, node);
                     }
                 }
@@ -346,11 +807,10 @@ public class TimestampStore {
         if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
             mainIndex.addEdge(timestampIndex, edge);
 
-            if (!viewIndexes.isEmpty()) {
+            if (!viewIndexes.isEmpty() && edge.storeId != EdgeStore.NULL_ID) {
                 for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
                     GraphViewImpl graphView = (GraphViewImpl) entry.getKey();
-                    DirectedSubgraph graph = graphView.getDirectedGraph();
-                    if (graph.contains(edge)) {
+                    if (graphView.containsEdge(edge)) {
                         entry.getValue().addEdge(timestampIndex, edge);
                     }
                 }
@@ -364,11 +824,10 @@ public class TimestampStore {
         if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
             mainIndex.removeNode(timestampIndex, node);
 
-            if (!viewIndexes.isEmpty()) {
+            if (!viewIndexes.isEmpty() && node.storeId != NodeStore.NULL_ID) {
                 for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
                     GraphViewImpl graphView = (GraphViewImpl) entry.getKey();
-                    DirectedSubgraph graph = graphView.getDirectedGraph();
-                    if (graph.contains(node)) {
+                    if (graphView.containsNode(node)) {
                         entry.getValue().removeNode(timestampIndex, node);
                     }
                 }
@@ -387,11 +846,10 @@ public class TimestampStore {
         if (GraphStoreConfiguration.ENABLE_INDEX_TIMESTAMP) {
             mainIndex.removeEdge(timestampIndex, edge);
 
-            if (!viewIndexes.isEmpty()) {
+            if (!viewIndexes.isEmpty() && edge.storeId != EdgeStore.NULL_ID) {
                 for (Entry<GraphView, TimestampIndexImpl> entry : viewIndexes.entrySet()) {
                     GraphViewImpl graphView = (GraphViewImpl) entry.getKey();
-                    DirectedSubgraph graph = graphView.getDirectedGraph();
-                    if (graph.contains(edge)) {
+                    if (graphView.containsEdge(edge)) {
                         entry.getValue().removeEdge(timestampIndex, edge);
                     }
                 }
@@ -412,8 +870,16 @@ public class TimestampStore {
         if (!garbageQueue.isEmpty()) {
             id = garbageQueue.firstInt();
             garbageQueue.remove(id);
+            if (sorted) {
+                int previous = getLastIndex(timestamp);
+                int next = getFirstIndex(timestamp);
+                sorted = (previous == NULL_INDEX || previous < id) && (next == NULL_INDEX || next > id);
+            }
         } else {
             id = length++;
+            if (sorted && !timestampSortedMap.isEmpty()) {
+                sorted = timestamp > timestampSortedMap.lastDoubleKey();
+            }
         }
         timestampMap.put(timestamp, id);
         timestampSortedMap.put(timestamp, id);
@@ -441,6 +907,41 @@ public class TimestampStore {
         }
     }
 
+    private void remapElement(ElementImpl element, int[] mapping) {
+        Object[] attributes = element.attributes;
+        for (int i = 0; i < attributes.length; i++) {
+            Object value = attributes[i];
+            if (value instanceof TimestampSet) {
+                int[] ts = ((TimestampSet) value).getTimestamps();
+                int[] newTs = new int[ts.length];
+                for (int j = 0; j < ts.length; j++) {
+                    newTs[j] = mapping[ts[j]];
+                }
+                Arrays.sort(newTs);
+                attributes[i] = new TimestampSet(newTs);
+            } else if (value instanceof TimestampValueSet) {
+                remapValueSet((TimestampValueSet) value, mapping);
+            }
+        }
+    }
+
+    private void remapValueSet(TimestampValueSet valueSet, int[] mapping) {
+        int[] ts = valueSet.getTimestamps();
+        Object[] values = valueSet.toArray();
+        int count = ts.length;
+        long[] pairs = new long[count];
+        for (int j = 0; j < count; j++) {
+            pairs[j] = ((long) mapping[ts[j]] << 32) | j;
+        }
+        Arrays.sort(pairs);
+        valueSet.clear();
+        for (int j = 0; j < count; j++) {
+            int newIndex = (int) (pairs[j] >>> 32);
+            int position = (int) pairs[j];
+            valueSet.put(newIndex, values[position]);
+        }
+    }
+
     void checkDouble(double timestamp) {
         if (Double.isInfinite(timestamp) || Double.isNaN(timestamp)) {
             throw new IllegalArgumentException("Timestamp can' be NaN or infinity");
@@ -490,6 +991,18 @@ public class TimestampStore {
         }
     }
 
+    private void internalWriteLock() {
+        if (lock != null) {
+            lock.internalWriteLock();
+        }
+    }
+
+    private void internalWriteUnlock() {
+        if (lock != null) {
+            lock.internalWriteUnlock();
+        }
+    }
+
     private void writeLock() {
         if (lock != null) {
             lock.writeLock();
@@ -501,4 +1014,68 @@ public class TimestampStore {
             lock.writeUnlock();
         }
     }
+
+    protected static class SnapshotKey {
+
+        private final GraphView view;
+        private final double from;
+        private final double to;
+
+        public SnapshotKey(GraphView view, double from, double to) {
+            this.view = view;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 37 * hash + System.identityHashCode(view);
+            hash = 37 * hash + (int) (Double.doubleToLongBits(this.from) ^ (Double.doubleToLongBits(this.from) >>> 32));
+            hash = 37 * hash + (int) (Double.doubleToLongBits(this.to) ^ (Double.doubleToLongBits(this.to) >>> 32));
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final SnapshotKey other = (SnapshotKey) obj;
+            return view == other.view
+                    && Double.doubleToLongBits(from) == Double.doubleToLongBits(other.from)
+                    && Double.doubleToLongBits(to) == Double.doubleToLongBits(other.to);
+        }
+    }
+
+    protected class SnapshotEntry {
+
+        private final GraphViewImpl view;
+        private final GraphViewImpl sourceView;
+        private final int indexVersion;
+        private final long[] versions;
+
+        public SnapshotEntry(GraphViewImpl view, GraphViewImpl sourceView) {
+            this.view = view;
+            this.sourceView = sourceView;
+            this.indexVersion = mainIndex.version;
+            this.versions = currentVersions();
+        }
+
+        public boolean isValid() {
+            return indexVersion == mainIndex.version && Arrays.equals(versions, currentVersions());
+        }
+
+        private long[] currentVersions() {
+            GraphVersion storeVersion = graphStore.version;
+            if (sourceView != null) {
+                GraphVersion sourceVersion = sourceView.version;
+                return new long[]{storeVersion.nodeVersion, storeVersion.edgeVersion, sourceVersion.nodeVersion, sourceVersion.edgeVersion};
+            }
+            return new long[]{storeVersion.nodeVersion, storeVersion.edgeVersion};
+        }
+    }
 }
@@ -0,0 +1,567 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import org.gephi.graph.api.DirectedGraph;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+/**
+ * Exports the topology of a graph or graph view into primitive buffers.
+ * <p>
+ * Nodes are identified by their index in the <code>getNodes()</code>
+ * iteration order, which is the store id for the main graph once the store
+ * has been compacted. The buffers are filled from their current position,
+ * which is advanced by the number of values written. Buffers can be heap,
+ * direct or mapped, elements are iterated without intermediate arrays.
+ * <p>
+ * The graph shouldn't be modified or compacted between calls, wrap them
+ * with a read lock if indices need to be consistent across calls.
+ *
+ * @author mbastian
+ */
+public class TopologyExporter {
+
+    //Arrow
+    static final byte[] ARROW_MAGIC = "ARROW1".getBytes(Charset.forName("US-ASCII"));
+    static final int CONTINUATION = 0xFFFFFFFF;
+    static final short ARROW_METADATA_VERSION = 4;
+    static final short ARROW_LITTLE_ENDIAN = 0;
+    static final byte ARROW_HEADER_SCHEMA = 1;
+    static final byte ARROW_HEADER_RECORD_BATCH = 3;
+    static final byte ARROW_TYPE_INT = 2;
+    static final byte ARROW_TYPE_FLOATING_POINT = 3;
+    static final short ARROW_PRECISION_DOUBLE = 2;
+    static final String[] EDGE_COLUMNS = new String[]{"source", "target", "weight"};
+    //Graph
+    protected final Graph graph;
+    protected final boolean undirected;
+
+    public TopologyExporter(Graph graph) {
+        if (graph == null) {
+            throw new NullPointerException();
+        }
+        this.graph = graph;
+        this.undirected = !(graph instanceof DirectedGraph) || (graph instanceof GraphViewDecorator && ((GraphViewDecorator) graph).undirected);
+    }
+
+    public int getNodeCount() {
+        return graph.getNodeCount();
+    }
+
+    public int getEdgeCount() {
+        return graph.getEdgeCount();
+    }
+
+    /**
+     * Writes the edges as parallel source and target index columns, and
+     * weights if <code>weights</code> isn't null.
+     *
+     * @param sources source node indices
+     * @param targets target node indices
+     * @param weights edge weights, or null
+     * @return number of edges written
+     */
+    public int writeEdgeList(IntBuffer sources, IntBuffer targets, DoubleBuffer weights) {
+        graph.readLock();
+        try {
+            int edgeCount = graph.getEdgeCount();
+            checkRemaining(sources, edgeCount);
+            checkRemaining(targets, edgeCount);
+            if (weights != null) {
+                checkRemaining(weights, edgeCount);
+            }
+            int[] nodeIndex = getNodeIndex();
+            int sourcePosition = sources.position();
+            int targetPosition = targets.position();
+            int weightPosition = weights != null ? weights.position() : 0;
+            int i = 0;
+            for (Edge edge : graph.getEdges()) {
+                sources.put(sourcePosition + i, nodeIndex[((NodeImpl) edge.getSource()).storeId]);
+                targets.put(targetPosition + i, nodeIndex[((NodeImpl) edge.getTarget()).storeId]);
+                if (weights != null) {
+                    weights.put(weightPosition + i, edge.getWeight());
+                }
+                i++;
+            }
+            sources.position(sourcePosition + i);
+            targets.position(targetPosition + i);
+            if (weights != null) {
+                weights.position(weightPosition + i);
+            }
+            return i;
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    /**
+     * Writes the outgoing adjacency in compressed sparse row format. Row
+     * <code>n</code> spans <code>indices[offsets[n]]</code> to
+     * <code>indices[offsets[n + 1]]</code>, so <code>offsets</code> receives
+     * the node count plus one values. Undirected edges are written in both
+     * rows, as are all edges of undirected graphs.
+     *
+     * @param offsets row offsets
+     * @param indices neighbor node indices
+     * @param weights edge weights, aligned with indices, or null
+     * @return number of indices written
+     */
+    public int writeCsr(IntBuffer offsets, IntBuffer indices, DoubleBuffer weights) {
+        graph.readLock();
+        try {
+            int[] nodeIndex = getNodeIndex();
+            int nodeCount = graph.getNodeCount();
+
+            //Row lengths, shifted by one
+            int[] rows = new int[nodeCount + 1];
+            for (Edge edge : graph.getEdges()) {
+                int source = nodeIndex[((NodeImpl) edge.getSource()).storeId];
+                int target = nodeIndex[((NodeImpl) edge.getTarget()).storeId];
+                rows[source + 1]++;
+                if (isSymmetric(edge) && source != target) {
+                    rows[target + 1]++;
+                }
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                rows[i + 1] += rows[i];
+            }
+            int length = rows[nodeCount];
+            checkRemaining(offsets, nodeCount + 1);
+            checkRemaining(indices, length);
+            if (weights != null) {
+                checkRemaining(weights, length);
+            }
+
+            int offsetPosition = offsets.position();
+            for (int i = 0; i <= nodeCount; i++) {
+                offsets.put(offsetPosition + i, rows[i]);
+            }
+            offsets.position(offsetPosition + nodeCount + 1);
+
+            //Rows now serve as cursors
+            int indexPosition = indices.position();
+            int weightPosition = weights != null ? weights.position() : 0;
+            for (Edge edge : graph.getEdges()) {
+                int source = nodeIndex[((NodeImpl) edge.getSource()).storeId];
+                int target = nodeIndex[((NodeImpl) edge.getTarget()).storeId];
+                int slot = rows[source]++;
+                indices.put(indexPosition + slot, target);
+                if (weights != null) {
+                    weights.put(weightPosition + slot, edge.getWeight());
+                }
+                if (isSymmetric(edge) && source != target) {
+                    slot = rows[target]++;
+                    indices.put(indexPosition + slot, source);
+                    if (weights != null) {
+                        weights.put(weightPosition + slot, edge.getWeight());
+                    }
+                }
+            }
+            indices.position(indexPosition + length);
+            if (weights != null) {
+                weights.position(weightPosition + length);
+            }
+            return length;
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    /**
+     * Writes the edge list as an Arrow IPC file with a single record batch
+     * made of the non-nullable <code>source</code> (int32),
+     * <code>target</code> (int32) and <code>weight</code> (float64) columns.
+     * The column buffers are filled in place through a mapping of the file.
+     *
+     * @param file destination file
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeArrow(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            writeArrow(raf.getChannel());
+        } finally {
+            raf.close();
+        }
+    }
+
+    public void writeArrow(FileChannel channel) throws IOException {
+        graph.readLock();
+        try {
+            int edgeCount = graph.getEdgeCount();
+            long intLength = 4l * edgeCount;
+            long intBlock = align(intLength);
+            long doubleLength = 8l * edgeCount;
+            long bodyLength = 2 * intBlock + doubleLength;
+
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.put(ARROW_MAGIC);
+            header.rewind();
+            ByteBuffer schemaMessage = encapsulate(schemaMessage());
+            ByteBuffer batchMessage = encapsulate(recordBatchMessage(edgeCount, intBlock, intLength, doubleLength));
+            int batchMetadataLength = batchMessage.remaining();
+
+            long start = channel.position();
+            long batchOffset = header.remaining() + schemaMessage.remaining();
+            long bodyOffset = batchOffset + batchMetadataLength;
+            writeFully(channel, header, start);
+            writeFully(channel, schemaMessage, start + header.limit());
+            writeFully(channel, batchMessage, start + batchOffset);
+
+            //Columns are written in place
+            if (edgeCount > 0) {
+                MappedByteBuffer body = channel.map(FileChannel.MapMode.READ_WRITE, start + bodyOffset, bodyLength);
+                IntBuffer sources = slice(body, 0).asIntBuffer();
+                IntBuffer targets = slice(body, intBlock).asIntBuffer();
+                DoubleBuffer weights = slice(body, 2 * intBlock).asDoubleBuffer();
+                writeEdgeList(sources, targets, weights);
+                body.force();
+            }
+
+            ByteBuffer footer = footer(batchOffset, batchMetadataLength, bodyLength);
+            ByteBuffer trailer = ByteBuffer.allocate(8 + footer.remaining() + 4 + ARROW_MAGIC.length).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt(CONTINUATION);
+            trailer.putInt(0);
+            int footerLength = footer.remaining();
+            trailer.put(footer);
+            trailer.putInt(footerLength);
+            trailer.put(ARROW_MAGIC);
+            trailer.flip();
+            long end = start + bodyOffset + bodyLength;
+            writeFully(channel, trailer, end);
+            channel.position(end + trailer.limit());
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    private int[] getNodeIndex() {
+        int maxStoreId = 0;
+        for (Node node : graph.getNodes()) {
+            maxStoreId = Math.max(maxStoreId, ((NodeImpl) node).storeId + 1);
+        }
+        int[] nodeIndex = new int[maxStoreId];
+        int index = 0;
+        for (Node node : graph.getNodes()) {
+            nodeIndex[((NodeImpl) node).storeId] = index++;
+        }
+        return nodeIndex;
+    }
+
+    private boolean isSymmetric(Edge edge) {
+        return undirected || !edge.isDirected();
+    }
+
+    private static void checkRemaining(java.nio.Buffer buffer, int length) {
+        if (buffer.remaining() < length) {
+            throw new IllegalArgumentException("The buffer is too small, " + length + " values are needed but only " + buffer.remaining() + " remain");
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long offset) {
+        buffer.position((int) offset);
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long align(long length) {
+        return (length + 7) & ~7l;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    //Arrow metadata
+    private ByteBuffer schemaMessage() {
+        FlatBuffer fb = new FlatBuffer();
+        FlatBuffer.Table message = messageTable(ARROW_HEADER_SCHEMA, 0);
+        fb.root(message.write(fb));
+        message.patch(fb, 2, writeSchema(fb));
+        return fb.toByteBuffer();
+    }
+
+    private ByteBuffer recordBatchMessage(int edgeCount, long intBlock, long intLength, long doubleLength) {
+        FlatBuffer fb = new FlatBuffer();
+        FlatBuffer.Table message = messageTable(ARROW_HEADER_RECORD_BATCH, 2 * intBlock + doubleLength);
+        fb.root(message.write(fb));
+        FlatBuffer.Table recordBatch = new FlatBuffer.Table(3);
+        recordBatch.putLong(0, edgeCount);
+        recordBatch.putOffset(1);
+        recordBatch.putOffset(2);
+        message.patch(fb, 2, recordBatch.write(fb));
+        //Field nodes (length, null count)
+        recordBatch.patch(fb, 1, fb.structVector(EDGE_COLUMNS.length, new long[]{
+            edgeCount, 0,
+            edgeCount, 0,
+            edgeCount, 0}));
+        //Buffers (offset, length), empty validity buffers for non-nullable columns
+        recordBatch.patch(fb, 2, fb.structVector(EDGE_COLUMNS.length * 2, new long[]{
+            0, 0, 0, intLength,
+            intBlock, 0, intBlock, intLength,
+            2 * intBlock, 0, 2 * intBlock, doubleLength}));
+        return fb.toByteBuffer();
+    }
+
+    private FlatBuffer.Table messageTable(byte headerType, long bodyLength) {
+        FlatBuffer.Table message = new FlatBuffer.Table(4);
+        message.putShort(0, ARROW_METADATA_VERSION);
+        message.putByte(1, headerType);
+        message.putOffset(2);
+        message.putLong(3, bodyLength);
+        return message;
+    }
+
+    private ByteBuffer footer(long batchOffset, int batchMetadataLength, long bodyLength) {
+        FlatBuffer fb = new FlatBuffer();
+        FlatBuffer.Table footer = new FlatBuffer.Table(4);
+        footer.putShort(0, ARROW_METADATA_VERSION);
+        footer.putOffset(1);
+        footer.putOffset(2);
+        footer.putOffset(3);
+        fb.root(footer.write(fb));
+        footer.patch(fb, 1, writeSchema(fb));
+        footer.patch(fb, 2, fb.structVector(0, new long[0]));
+        //Block (offset, metadata length padded to 8 bytes, body length)
+        footer.patch(fb, 3, fb.structVector(1, new long[]{batchOffset, batchMetadataLength, bodyLength}));
+        return fb.toByteBuffer();
+    }
+
+    private int writeSchema(FlatBuffer fb) {
+        FlatBuffer.Table schema = new FlatBuffer.Table(2);
+        schema.putShort(0, ARROW_LITTLE_ENDIAN);
+        schema.putOffset(1);
+        int position = schema.write(fb);
+        int fields = fb.offsetVector(EDGE_COLUMNS.length);
+        schema.patch(fb, 1, fields);
+        for (int i = 0; i < EDGE_COLUMNS.length; i++) {
+            boolean floating = i == EDGE_COLUMNS.length - 1;
+            FlatBuffer.Table field = new FlatBuffer.Table(6);
+            field.putOffset(0);
+            field.putBool(1, false);
+            field.putByte(2, floating ? ARROW_TYPE_FLOATING_POINT : ARROW_TYPE_INT);
+            field.putOffset(3);
+            field.putOffset(5);
+            fb.patchVector(fields, i, field.write(fb));
+            field.patch(fb, 0, fb.string(EDGE_COLUMNS[i]));
+            FlatBuffer.Table type = new FlatBuffer.Table(2);
+            if (floating) {
+                type.putShort(0, ARROW_PRECISION_DOUBLE);
+            } else {
+                type.putInt(0, 32);
+                type.putBool(1, true);
+            }
+            field.patch(fb, 3, type.write(fb));
+            field.patch(fb, 5, fb.offsetVector(0));
+        }
+        return position;
+    }
+
+    //Continuation marker, metadata length and metadata padded to 8 bytes
+    private static ByteBuffer encapsulate(ByteBuffer metadata) {
+        int length = (int) align(metadata.remaining());
+        ByteBuffer message = ByteBuffer.allocate(8 + length).order(ByteOrder.LITTLE_ENDIAN);
+        message.putInt(CONTINUATION);
+        message.putInt(length);
+        message.put(metadata);
+        message.position(0);
+        return message;
+    }
+
+    /**
+     * Minimal little-endian flatbuffer builder, written front to back. Tables
+     * are preceded by their vtable and children are written after their
+     * parent, which patches the offsets once known.
+     */
+    static final class FlatBuffer {
+
+        private ByteBuffer buffer;
+
+        FlatBuffer() {
+            buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0);
+        }
+
+        void root(int table) {
+            buffer.putInt(0, table);
+        }
+
+        int string(String str) {
+            byte[] bytes = str.getBytes(Charset.forName("UTF-8"));
+            align(4, 0);
+            int position = buffer.position();
+            ensure(bytes.length + 5);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+            buffer.put((byte) 0);
+            return position;
+        }
+
+        int offsetVector(int length) {
+            align(4, 0);
+            int position = buffer.position();
+            ensure(4 + length * 4);
+            buffer.putInt(length);
+            buffer.position(position + 4 + length * 4);
+            return position;
+        }
+
+        void patchVector(int vector, int index, int target) {
+            int position = vector + 4 + index * 4;
+            buffer.putInt(position, target - position);
+        }
+
+        int structVector(int length, long[] values) {
+            //Elements are aligned to 8 bytes
+            align(8, 4);
+            int position = buffer.position();
+            ensure(4 + values.length * 8);
+            buffer.putInt(length);
+            for (long value : values) {
+                buffer.putLong(value);
+            }
+            return position;
+        }
+
+        ByteBuffer toByteBuffer() {
+            buffer.flip();
+            return buffer;
+        }
+
+        private void align(int alignment, int shift) {
+            int padding = (alignment - (buffer.position() + shift) % alignment) % alignment;
+            ensure(padding);
+            for (int i = 0; i < padding; i++) {
+                buffer.put((byte) 0);
+            }
+        }
+
+        private void ensure(int length) {
+            if (buffer.remaining() < length) {
+                ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length)).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                newBuffer.put(buffer);
+                buffer = newBuffer;
+            }
+        }
+
+        static final class Table {
+
+            private final int[] sizes;
+            private final long[] values;
+            private final int[] offsets;
+            private int position;
+
+            Table(int slots) {
+                sizes = new int[slots];
+                values = new long[slots];
+                offsets = new int[slots];
+            }
+
+            void putLong(int slot, long value) {
+                sizes[slot] = 8;
+                values[slot] = value;
+            }
+
+            void putInt(int slot, int value) {
+                sizes[slot] = 4;
+                values[slot] = value;
+            }
+
+            void putOffset(int slot) {
+                putInt(slot, 0);
+            }
+
+            void putShort(int slot, short value) {
+                sizes[slot] = 2;
+                values[slot] = value;
+            }
+
+            void putByte(int slot, byte value) {
+                sizes[slot] = 1;
+                values[slot] = value;
+            }
+
+            void putBool(int slot, boolean value) {
+                putByte(slot, (byte) (value ? 1 : 0));
+            }
+
+            int write(FlatBuffer fb) {
+                //Inline layout after the vtable offset, larger fields first
+                int size = 4;
+                for (int fieldSize = 8; fieldSize > 0; fieldSize >>= 1) {
+                    for (int i = 0; i < sizes.length; i++) {
+                        if (sizes[i] == fieldSize) {
+                            size = (size + fieldSize - 1) & -fieldSize;
+                            offsets[i] = size;
+                            size += fieldSize;
+                        }
+                    }
+                }
+                fb.align(2, 0);
+                int vtable = fb.buffer.position();
+                fb.ensure(4 + sizes.length * 2);
+                fb.buffer.putShort((short) (4 + sizes.length * 2));
+                fb.buffer.putShort((short) size);
+                for (int i = 0; i < sizes.length; i++) {
+                    fb.buffer.putShort((short) offsets[i]);
+                }
+                fb.align(8, 0);
+                position = fb.buffer.position();
+                fb.ensure(size);
+                fb.buffer.putInt(position, position - vtable);
+                for (int i = 0; i < sizes.length; i++) {
+                    int fieldPosition = position + offsets[i];
+                    switch (sizes[i]) {
+                        case 8:
+                            fb.buffer.putLong(fieldPosition, values[i]);
+                            break;
+                        case 4:
+                            fb.buffer.putInt(fieldPosition, (int) values[i]);
+                            break;
+                        case 2:
+                            fb.buffer.putShort(fieldPosition, (short) values[i]);
+                            break;
+                        case 1:
+                            fb.buffer.put(fieldPosition, (byte) values[i]);
+                            break;
+                    }
+                }
+                fb.buffer.position(position + size);
+                return position;
+            }
+
+            void patch(FlatBuffer fb, int slot, int target) {
+                int fieldPosition = position + offsets[slot];
+                fb.buffer.putInt(fieldPosition, target - fieldPosition);
+            }
+        }
+    }
+}
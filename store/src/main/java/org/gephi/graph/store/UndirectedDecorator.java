@@ -118,6 +118,16 @@ public class UndirectedDecorator implements UndirectedGraph {
         return store.getEdgeIterableWrapper(store.edgeStore.iteratorUndirected());
     }
 
+    @Override
+    public NodeIterable getNodesSnapshot() {
+        return store.getNodesSnapshot();
+    }
+
+    @Override
+    public EdgeIterable getEdgesSnapshot() {
+        return store.getEdgeIterableWrapper(store.edgeStore.snapshotIterator(store.edgeStore.iteratorUndirected()), false);
+    }
+
     @Override
     public EdgeIterable getSelfLoops() {
         return store.getEdgeIterableWrapper(store.edgeStore.iteratorSelfLoop());
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.utils;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import org.gephi.graph.store.Serialization;
+
+/**
+ * Data input reading from a channel through a fixed size direct buffer, which
+ * is refilled when consumed. Reads the encoding of
+ * <code>DataInputOutput</code> and <code>ChannelDataOutput</code>.
+ * <p>
+ * The input reads ahead, the channel position after reading is undefined.
+ *
+ * @author mbastian
+ */
+public class ChannelDataInput implements DataInput {
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private long read;
+
+    public ChannelDataInput(ReadableByteChannel channel) {
+        if (channel == null) {
+            throw new NullPointerException();
+        }
+        this.channel = channel;
+        this.buffer = DirectBufferPool.acquire();
+        this.buffer.flip();
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            require(1);
+            int length = Math.min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            off += length;
+            len -= length;
+        }
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        int skipped = 0;
+        while (skipped < n) {
+            require(1);
+            int length = Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + length);
+            skipped += length;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        require(1);
+        return buffer.get() == 1;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        require(1);
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        require(2);
+        return buffer.getShort() & 0xffff;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        return (char) readInt();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        return readUTF();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return Serialization.deserializeString(this);
+    }
+
+    /**
+     * Gives the buffer back to the pool. The channel isn't closed.
+     */
+    public void close() {
+        if (buffer != null) {
+            DirectBufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    public long getBytesRead() {
+        return buffer != null ? read - buffer.remaining() : read;
+    }
+
+    /**
+     * make sure there are at least N bytes to read in the buffer
+     */
+    private void require(int n) throws IOException {
+        if (buffer == null) {
+            throw new IOException("The input is closed");
+        }
+        if (buffer.remaining() < n) {
+            buffer.compact();
+            while (buffer.position() < n) {
+                int count = channel.read(buffer);
+                if (count < 0) {
+                    buffer.flip();
+                    throw new EOFException();
+                }
+                read += count;
+            }
+            buffer.flip();
+        }
+    }
+}
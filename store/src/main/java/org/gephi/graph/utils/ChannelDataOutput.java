@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.utils;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import org.gephi.graph.store.Serialization;
+
+/**
+ * Data output writing to a channel through a fixed size direct buffer, which
+ * is flushed each time it's full. The encoding is the same as
+ * <code>DataInputOutput</code>.
+ *
+ * @author mbastian
+ */
+public class ChannelDataOutput implements DataOutput {
+
+    private final WritableByteChannel channel;
+    private ByteBuffer buffer;
+    private long written;
+
+    public ChannelDataOutput(WritableByteChannel channel) {
+        if (channel == null) {
+            throw new NullPointerException();
+        }
+        this.channel = channel;
+        this.buffer = DirectBufferPool.acquire();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureAvail(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ensureAvail(1);
+            int length = Math.min(len, buffer.remaining());
+            buffer.put(b, off, length);
+            off += length;
+            len -= length;
+        }
+    }
+
+    @Override
+    public void writeBoolean(boolean v) throws IOException {
+        ensureAvail(1);
+        buffer.put((byte) (v ? 1 : 0));
+    }
+
+    @Override
+    public void writeByte(int v) throws IOException {
+        ensureAvail(1);
+        buffer.put((byte) v);
+    }
+
+    @Override
+    public void writeShort(int v) throws IOException {
+        ensureAvail(2);
+        buffer.putShort((short) v);
+    }
+
+    @Override
+    public void writeChar(int v) throws IOException {
+        writeInt(v);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException {
+        ensureAvail(4);
+        buffer.putInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException {
+        ensureAvail(8);
+        buffer.putLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) throws IOException {
+        writeInt(Float.floatToIntBits(v));
+    }
+
+    @Override
+    public void writeDouble(double v) throws IOException {
+        writeLong(Double.doubleToLongBits(v));
+    }
+
+    @Override
+    public void writeBytes(String s) throws IOException {
+        writeUTF(s);
+    }
+
+    @Override
+    public void writeChars(String s) throws IOException {
+        writeUTF(s);
+    }
+
+    @Override
+    public void writeUTF(String s) throws IOException {
+        Serialization.serializeString(this, s);
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     *
+     * @throws IOException if the channel can't be written
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes and gives the buffer back to the pool. The channel isn't
+     * closed.
+     *
+     * @throws IOException if the channel can't be written
+     */
+    public void close() throws IOException {
+        if (buffer != null) {
+            try {
+                flush();
+            } finally {
+                DirectBufferPool.release(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    public long getBytesWritten() {
+        return buffer != null ? written + buffer.position() : written;
+    }
+
+    private void ensureAvail(int n) throws IOException {
+        checkOpen();
+        if (buffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("The output is closed");
+        }
+    }
+}
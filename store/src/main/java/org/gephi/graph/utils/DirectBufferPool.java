@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.gephi.graph.store.GraphStoreConfiguration;
+
+/**
+ * Pool of direct byte buffers used by the channel readers and writers, so
+ * streaming a graph doesn't allocate a new direct buffer each time.
+ *
+ * @author mbastian
+ */
+public class DirectBufferPool {
+
+    private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private DirectBufferPool() {
+    }
+
+    public static ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(GraphStoreConfiguration.SERIALIZATION_BUFFER_SIZE);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public static void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && buffer.capacity() == GraphStoreConfiguration.SERIALIZATION_BUFFER_SIZE
+                && POOL.size() < GraphStoreConfiguration.SERIALIZATION_BUFFER_POOL_SIZE) {
+            POOL.offer(buffer);
+        }
+    }
+}
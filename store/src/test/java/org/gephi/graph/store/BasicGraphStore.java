@@ -194,6 +194,16 @@ public class BasicGraphStore implements DirectedGraph {
         return new EdgeIterableWrapper(edgeStore.iterator());
     }
 
+    @Override
+    public NodeIterable getNodesSnapshot() {
+        return getNodes();
+    }
+
+    @Override
+    public EdgeIterable getEdgesSnapshot() {
+        return getEdges();
+    }
+
     @Override
     public NodeIterable getNeighbors(Node node) {
         return new NodeIterableWrapper(new NeighborsUndirectedIterator((BasicNode) node, edgeStore.inOutIterator((BasicNode) node)));
@@ -875,6 +885,10 @@ public class BasicGraphStore implements DirectedGraph {
         public void doBreak() {
         }
 
+        @Override
+        public void close() {
+        }
+
         private static class BasicNodeIterator implements Iterator<Node> {
 
             private final Iterator<BasicNode> itr;
@@ -1286,6 +1300,10 @@ public class BasicGraphStore implements DirectedGraph {
         public void doBreak() {
             //Not used because no locking
         }
+
+        @Override
+        public void close() {
+        }
     }
 
     protected class EdgeIterableWrapper implements EdgeIterable {
@@ -1323,5 +1341,9 @@ public class BasicGraphStore implements DirectedGraph {
         public void doBreak() {
             //Not used because no locking
         }
+
+        @Override
+        public void close() {
+        }
     }
 }
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.gephi.attribute.api.Column;
+import org.gephi.attribute.api.Origin;
+import org.gephi.attribute.time.TimestampDoubleSet;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Node;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author mbastian
+ */
+public class ColumnarSerializationTest {
+
+    @Test
+    public void testEmpty() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = new GraphStore();
+
+        GraphStore l = writeAndRead(graphStore);
+        Assert.assertEquals(l.getNodeCount(), 0);
+        Assert.assertEquals(l.getEdgeCount(), 0);
+    }
+
+    @Test
+    public void testEdgeStoreMixed() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = new GraphStore();
+        NodeImpl[] nodes = GraphGenerator.generateNodeList(5100);
+        graphStore.addAllNodes(Arrays.asList(nodes));
+        EdgeImpl[] edges = GraphGenerator.generateMixedEdgeList(graphStore.nodeStore, 9000, 0, true);
+        graphStore.addAllEdges(Arrays.asList(edges));
+
+        GraphStore l = writeAndRead(graphStore);
+        Assert.assertTrue(graphStore.equals(l));
+        assertSameGraph(graphStore, l);
+    }
+
+    @Test
+    public void testMultipleTypes() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallMultiTypeGraphStore();
+
+        GraphStore l = writeAndRead(graphStore);
+        Assert.assertTrue(graphStore.equals(l));
+        Assert.assertEquals(l.edgeTypeStore, graphStore.edgeTypeStore);
+        assertSameGraph(graphStore, l);
+    }
+
+    @Test
+    public void testCompactStoreIds() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        graphStore.removeNode(graphStore.getNode("0"));
+        graphStore.removeNode(graphStore.getNode("5"));
+
+        GraphStore l = writeAndRead(graphStore);
+        assertSameGraph(graphStore, l);
+        Assert.assertEquals(l.nodeStore.maxStoreId(), l.getNodeCount());
+        Assert.assertEquals(l.edgeStore.maxStoreId(), l.getEdgeCount());
+
+        //The loaded store stays editable
+        NodeImpl node = new NodeImpl("new", l);
+        l.addNode(node);
+        EdgeImpl edge = new EdgeImpl("newEdge", l, node, l.getNode("1"), 0, 1.0, true);
+        l.addEdge(edge);
+        Assert.assertEquals(l.getOutDegree(node), 1);
+        Assert.assertSame(l.getEdge(node, l.getNode("1"), 0), edge);
+    }
+
+    @Test
+    public void testAttributesAndProperties() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        Column age = new ColumnImpl("age", Integer.class, null, null, Origin.DATA, true);
+        Column name = new ColumnImpl("name", String.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(age);
+        graphStore.nodeColumnStore.addColumn(name);
+        Column strength = new ColumnImpl("strength", Double.class, null, null, Origin.DATA, false);
+        graphStore.edgeColumnStore.addColumn(strength);
+
+        NodeImpl node = graphStore.getNode("1");
+        node.setAttribute(age, 42);
+        node.setAttribute(name, "foo");
+        node.setX(1f);
+        node.setY(2f);
+        node.setSize(3f);
+        node.setColor(java.awt.Color.RED);
+        node.getTextProperties().setText("bar");
+        EdgeImpl edge = graphStore.getEdge("0");
+        edge.setAttribute(strength, 0.5);
+        edge.setWeight(2.5);
+        edge.setAlpha(0.5f);
+
+        GraphStore l = writeAndRead(graphStore);
+        Column lAge = l.nodeColumnStore.getColumn("age");
+        Column lName = l.nodeColumnStore.getColumn("name");
+        Column lStrength = l.edgeColumnStore.getColumn("strength");
+        NodeImpl lNode = l.getNode("1");
+        Assert.assertEquals(lNode.getAttribute(lAge), 42);
+        Assert.assertEquals(lNode.getAttribute(lName), "foo");
+        Assert.assertEquals(lNode.x(), 1f, 0f);
+        Assert.assertEquals(lNode.y(), 2f, 0f);
+        Assert.assertEquals(lNode.size(), 3f, 0f);
+        Assert.assertEquals(lNode.getRGBA(), node.getRGBA());
+        Assert.assertEquals(lNode.getTextProperties().getText(), "bar");
+        Assert.assertNull(l.getNode("2").getAttribute(lAge));
+
+        EdgeImpl lEdge = l.getEdge("0");
+        Assert.assertEquals(lEdge.getAttribute(lStrength), 0.5);
+        Assert.assertEquals(lEdge.getWeight(), 2.5, 0.0);
+        Assert.assertEquals(lEdge.getRGBA(), edge.getRGBA());
+
+        //Attributes are indexed
+        IndexImpl index = l.nodeColumnStore.indexStore.getIndex(l);
+        Assert.assertEquals(index.count(lAge, 42), 1);
+    }
+
+    @Test
+    public void testDynamicAttributes() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = new GraphStore();
+        Column weight = new ColumnImpl("weight", TimestampDoubleSet.class, null, null, Origin.DATA, false);
+        Column kind = new ColumnImpl("kind", String.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(weight);
+        graphStore.nodeColumnStore.addColumn(kind);
+        for (int i = 0; i < 100; i++) {
+            NodeImpl node = new NodeImpl(String.valueOf(i), graphStore);
+            graphStore.addNode(node);
+            node.setAttribute(kind, i % 2 == 0 ? "even" : "odd");
+            if (i % 3 != 0) {
+                node.setAttribute(weight, (double) i, 1.0);
+                node.setAttribute(weight, i * 2.0, 2.0);
+            }
+        }
+
+        GraphStore l = writeAndRead(graphStore);
+        Column lWeight = l.nodeColumnStore.getColumn("weight");
+        Column lKind = l.nodeColumnStore.getColumn("kind");
+        for (int i = 0; i < 100; i++) {
+            NodeImpl node = l.getNode(String.valueOf(i));
+            Assert.assertEquals(node.getAttribute(lKind), i % 2 == 0 ? "even" : "odd");
+            TimestampDoubleSet set = (TimestampDoubleSet) node.getAttribute(lWeight);
+            if (i % 3 == 0) {
+                Assert.assertNull(set);
+            } else {
+                Assert.assertEquals(set.getDouble(l.timestampStore.getTimestampIndex(1.0)), (double) i, 0.0);
+                Assert.assertEquals(set.getDouble(l.timestampStore.getTimestampIndex(2.0)), i * 2.0, 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testObjectIds() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = new GraphStore();
+        NodeImpl n1 = new NodeImpl(1L, graphStore);
+        NodeImpl n2 = new NodeImpl(2L, graphStore);
+        NodeImpl n3 = new NodeImpl(3, graphStore);
+        graphStore.addAllNodes(Arrays.asList(new Node[]{n1, n2, n3}));
+        graphStore.addEdge(new EdgeImpl(10L, graphStore, n1, n2, 0, 1.0, true));
+        graphStore.addEdge(new EdgeImpl(11L, graphStore, n2, n1, 0, 1.0, true));
+
+        GraphStore l = writeAndRead(graphStore);
+        Assert.assertNotNull(l.getNode(1L));
+        Assert.assertNotNull(l.getNode(3));
+        Assert.assertNotNull(l.getEdge(10L));
+        Assert.assertTrue(l.getEdge(11L).isMutual());
+        Assert.assertEquals(l.edgeStore.undirectedSize(), 1);
+        assertSameGraph(graphStore, l);
+    }
+
+    @Test
+    public void testViews() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallMultiTypeGraphStore();
+        GraphViewStore viewStore = graphStore.viewStore;
+        GraphViewImpl view = viewStore.createView();
+        GraphViewImpl view2 = viewStore.createView();
+
+        Edge edge = graphStore.getEdge("0");
+        view2.addNode(edge.getSource());
+        view2.addNode(edge.getTarget());
+        view2.addEdge(edge);
+
+        //Leave holes in the store ids
+        for (Node node : graphStore.getNodes().toArray()) {
+            if (node != edge.getSource() && node != edge.getTarget()) {
+                graphStore.removeNode(node);
+                break;
+            }
+        }
+        int removedViewId = view.storeId;
+        viewStore.removeView(view);
+
+        GraphStore l = writeAndRead(graphStore);
+        Assert.assertEquals(l.viewStore.length, viewStore.length);
+        Assert.assertNull(l.viewStore.views[removedViewId]);
+
+        GraphViewImpl lView = l.viewStore.views[view2.storeId];
+        Assert.assertEquals(lView.getNodeCount(), 2);
+        Assert.assertEquals(lView.getEdgeCount(), 1);
+        Edge lEdge = l.getEdge("0");
+        Assert.assertTrue(lView.containsNode((NodeImpl) lEdge.getSource()));
+        Assert.assertTrue(lView.containsNode((NodeImpl) lEdge.getTarget()));
+        Assert.assertTrue(lView.containsEdge((EdgeImpl) lEdge));
+    }
+
+    @Test
+    public void testReadInCurrentThread() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallMultiTypeGraphStore();
+        Column column = new ColumnImpl("foo", String.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(column);
+        graphStore.getNode("1").setAttribute(column, "bar");
+
+        File file = createTempFile();
+        new ColumnarSerialization(graphStore).write(file);
+
+        GraphStore l = new GraphStore();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            new ColumnarSerialization(l).read(raf.getChannel(), null);
+        } finally {
+            raf.close();
+        }
+        Assert.assertTrue(graphStore.equals(l));
+        assertSameGraph(graphStore, l);
+        Assert.assertEquals(l.getNode("1").getAttribute(l.nodeColumnStore.getColumn("foo")), "bar");
+    }
+
+    @Test
+    public void testReadWithExecutor() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = new GraphStore();
+        NodeImpl[] nodes = GraphGenerator.generateNodeList(20000);
+        graphStore.addAllNodes(Arrays.asList(nodes));
+        EdgeImpl[] edges = GraphGenerator.generateMixedEdgeList(graphStore.nodeStore, 50000, 0, true);
+        graphStore.addAllEdges(Arrays.asList(edges));
+        Column column = new ColumnImpl("foo", String.class, null, null, Origin.DATA, false);
+        graphStore.edgeColumnStore.addColumn(column);
+        for (Edge edge : graphStore.getEdges().toArray()) {
+            edge.setAttribute(column, edge.getTarget().getId().toString());
+        }
+
+        File file = createTempFile();
+        new ColumnarSerialization(graphStore).write(file);
+
+        GraphStore l = new GraphStore();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            new ColumnarSerialization(l).read(raf.getChannel(), executor);
+        } finally {
+            raf.close();
+            executor.shutdown();
+        }
+        Assert.assertTrue(graphStore.equals(l));
+        assertSameGraph(graphStore, l);
+        Column lColumn = l.edgeColumnStore.getColumn("foo");
+        for (Edge edge : l.getEdges().toArray()) {
+            Assert.assertEquals(edge.getAttribute(lColumn), edge.getTarget().getId().toString());
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testNotEmpty() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        File file = createTempFile();
+        new ColumnarSerialization(graphStore).write(file);
+        new ColumnarSerialization(graphStore).read(file);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testInvalidFile() throws IOException, ClassNotFoundException {
+        File file = createTempFile();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(new byte[ColumnarSerialization.HEADER_SIZE]);
+        } finally {
+            raf.close();
+        }
+        new ColumnarSerialization(new GraphStore()).read(file);
+    }
+
+    @Test
+    public void testStringTable() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        Column city = new ColumnImpl("city", String.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(city);
+        for (Node node : graphStore.getNodes().toArray()) {
+            node.setLabel((String) node.getId());
+            node.setAttribute(city, "Paris");
+        }
+
+        GraphStore l = writeAndRead(graphStore);
+        assertSameGraph(graphStore, l);
+        Column lCity = l.nodeColumnStore.getColumn("city");
+        Node[] nodes = l.getNodes().toArray();
+        for (Node node : nodes) {
+            Assert.assertSame(node.getLabel(), node.getId());
+            Assert.assertSame(node.getAttribute(lCity), nodes[0].getAttribute(lCity));
+        }
+        Assert.assertEquals(nodes[0].getAttribute(lCity), "Paris");
+    }
+
+    //Utility
+    private GraphStore writeAndRead(GraphStore graphStore) throws IOException, ClassNotFoundException {
+        File file = createTempFile();
+        new ColumnarSerialization(graphStore).write(file);
+
+        GraphStore l = new GraphStore();
+        return new ColumnarSerialization(l).read(file);
+    }
+
+    private File createTempFile() throws IOException {
+        File file = File.createTempFile("graphstore", ".gsc");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private void assertSameGraph(GraphStore expected, GraphStore actual) {
+        Assert.assertEquals(actual.getNodeCount(), expected.getNodeCount());
+        Assert.assertEquals(actual.getEdgeCount(), expected.getEdgeCount());
+        Assert.assertEquals(actual.edgeStore.undirectedSize(), expected.edgeStore.undirectedSize());
+        for (Node node : expected.getNodes().toArray()) {
+            NodeImpl actualNode = actual.getNode(node.getId());
+            Assert.assertNotNull(actualNode);
+            Assert.assertEquals(actual.getInDegree(actualNode), expected.getInDegree(node));
+            Assert.assertEquals(actual.getOutDegree(actualNode), expected.getOutDegree(node));
+            Assert.assertEquals(actual.getUndirectedDegree(actualNode), expected.getUndirectedDegree(node));
+            Assert.assertEquals(getIds(actual.getOutEdges(actualNode).toArray()), getIds(expected.getOutEdges(node).toArray()));
+            Assert.assertEquals(getIds(actual.getInEdges(actualNode).toArray()), getIds(expected.getInEdges(node).toArray()));
+        }
+        for (Edge edge : expected.getEdges().toArray()) {
+            EdgeImpl actualEdge = actual.getEdge(edge.getId());
+            Assert.assertNotNull(actualEdge);
+            Assert.assertEquals(actualEdge.getSource().getId(), edge.getSource().getId());
+            Assert.assertEquals(actualEdge.getTarget().getId(), edge.getTarget().getId());
+            Assert.assertEquals(actualEdge.getType(), edge.getType());
+            Assert.assertEquals(actualEdge.isDirected(), edge.isDirected());
+            Assert.assertEquals(actualEdge.isMutual(), ((EdgeImpl) edge).isMutual());
+            Assert.assertSame(actual.getEdge(actualEdge.getSource(), actualEdge.getTarget(), actualEdge.getType()), actualEdge);
+        }
+    }
+
+    private Set<Object> getIds(Edge[] edges) {
+        Set<Object> ids = new HashSet<Object>();
+        for (Edge edge : edges) {
+            ids.add(edge.getId());
+        }
+        return ids;
+    }
+}
@@ -1708,6 +1708,46 @@ public class EdgeStoreTest {
         Assert.assertEquals(count, selfLoops);
     }
 
+    @Test
+    public void testCompact() {
+        EdgeImpl[] edges = GraphGenerator.generateSmallMultiTypeEdgeList();
+        EdgeStore edgeStore = new EdgeStore();
+        edgeStore.addAll(Arrays.asList(edges));
+        List<EdgeImpl> removed = removeSomeEdges(edgeStore, 0.6f);
+        List<EdgeImpl> remaining = new ArrayList<EdgeImpl>(Arrays.asList(edges));
+        remaining.removeAll(removed);
+
+        int[] storeIdMap = edgeStore.compact(false);
+        Assert.assertNotNull(storeIdMap);
+        Assert.assertEquals(edgeStore.garbageSize, 0);
+        Assert.assertEquals(edgeStore.maxStoreId(), remaining.size());
+        testContainsOnly(edgeStore, remaining);
+        for (EdgeImpl edge : remaining) {
+            Assert.assertTrue(edge.storeId < remaining.size());
+            Assert.assertSame(edgeStore.get(edge.storeId), edge);
+            Assert.assertSame(edgeStore.get(edge.getId()), edge);
+            Assert.assertSame(edgeStore.get(edge.source, edge.target, edge.type), edge);
+        }
+
+        //Adjacency lists are still consistent
+        for (NodeImpl node : getNodes(edges)) {
+            Set<Edge> expected = new HashSet<Edge>();
+            for (EdgeImpl edge : remaining) {
+                if (edge.source == node) {
+                    expected.add(edge);
+                }
+            }
+            Set<Edge> actual = new HashSet<Edge>();
+            for (EdgeStore.EdgeOutIterator itr = edgeStore.edgeOutIterator(node); itr.hasNext();) {
+                actual.add(itr.next());
+            }
+            Assert.assertEquals(actual, expected);
+        }
+        Assert.assertTrue(edgeStore.removeAll(remaining));
+        Assert.assertEquals(edgeStore.size(), 0);
+        Assert.assertNull(edgeStore.compact(false));
+    }
+
     /*
      * UTILITY METHODS
      */
@@ -18,6 +18,7 @@ package org.gephi.graph.store;
 import java.util.Set;
 import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Origin;
+import org.gephi.attribute.time.TimestampDoubleSet;
 import static org.gephi.graph.store.GraphStoreConfiguration.ENABLE_ELEMENT_LABEL;
 import static org.gephi.graph.store.GraphStoreConfiguration.ENABLE_ELEMENT_TIMESTAMP_SET;
 import org.testng.Assert;
@@ -171,6 +172,22 @@ public class ElementImplTest {
         Assert.assertEquals(res, 1);
     }
 
+    @Test
+    public void testSetDynamicAttribute() {
+        GraphStore store = new GraphStore();
+        Column column = new ColumnImpl("weight", TimestampDoubleSet.class, "Weight", null, Origin.DATA, false);
+        store.nodeColumnStore.addColumn(column);
+
+        NodeImpl node = new NodeImpl(0, store);
+        node.setAttribute(column, 1.0, 2.0);
+        node.setAttribute(column, 3.0, 4.0);
+
+        TimestampDoubleSet set = (TimestampDoubleSet) node.getAttribute(column);
+        Assert.assertNotNull(set);
+        Assert.assertEquals(set.getDouble(store.timestampStore.getTimestampIndex(2.0)), 1.0);
+        Assert.assertEquals(set.getDouble(store.timestampStore.getTimestampIndex(4.0)), 3.0);
+    }
+
     @Test
     public void testGetAttributeKeysEmpty() {
         GraphStore store = new GraphStore();
@@ -15,6 +15,8 @@
  */
 package org.gephi.graph.store;
 
+import org.gephi.attribute.api.Column;
+import org.gephi.attribute.api.Origin;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Node;
 import org.testng.Assert;
@@ -128,4 +130,40 @@ public class GraphFactoryTest {
 
         Assert.assertFalse(edge.isMutual());
     }
+
+    @Test
+    public void testStringPool() {
+        GraphStore store = new GraphStore();
+        store.factory.setStringPool(true);
+        Column name = new ColumnImpl("name", String.class, null, null, Origin.DATA, false);
+        store.nodeColumnStore.addColumn(name);
+
+        Node n1 = store.factory.newNode("1");
+        Node n2 = store.factory.newNode("2");
+        n1.setLabel(new String("foo"));
+        n2.setLabel(new String("foo"));
+        n1.setAttribute(name, new String("bar"));
+        n2.setAttribute(name, new String("bar"));
+
+        Assert.assertTrue(store.factory.isStringPool());
+        Assert.assertSame(n1.getLabel(), n2.getLabel());
+        Assert.assertSame(n1.getAttribute(name), n2.getAttribute(name));
+        Assert.assertEquals(store.factory.getStringPoolSize(), 2);
+    }
+
+    @Test
+    public void testStringPoolDisabled() {
+        GraphStore store = new GraphStore();
+        store.factory.setStringPool(false);
+        Node n1 = store.factory.newNode("1");
+        Node n2 = store.factory.newNode("2");
+        n1.setLabel(new String("foo"));
+        n2.setLabel(new String("foo"));
+
+        Assert.assertFalse(store.factory.isStringPool());
+        Assert.assertNotSame(n1.getLabel(), n2.getLabel());
+        String str = new String("foo");
+        Assert.assertSame(store.factory.intern(str), str);
+        Assert.assertEquals(store.factory.getStringPoolSize(), 0);
+    }
 }
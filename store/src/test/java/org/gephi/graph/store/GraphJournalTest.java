@@ -0,0 +1,452 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.gephi.attribute.api.Column;
+import org.gephi.attribute.api.Origin;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Node;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author mbastian
+ */
+public class GraphJournalTest {
+
+    @Test
+    public void testOpenEmpty() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = new GraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+        Assert.assertTrue(journal.isOpen());
+        Assert.assertEquals(journal.getGeneration(), 0l);
+        Assert.assertEquals(journal.getJournalSize(), (long) GraphJournal.HEADER_SIZE);
+        journal.close();
+        Assert.assertFalse(journal.isOpen());
+        Assert.assertNull(graphStore.journal);
+
+        GraphStore l = reopen(directory);
+        Assert.assertEquals(l.getNodeCount(), 0);
+    }
+
+    @Test
+    public void testSnapshotExistingStore() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+        journal.close();
+
+        GraphStore l = reopen(directory);
+        assertSameGraph(graphStore, l);
+    }
+
+    @Test
+    public void testReplayNodesAndEdges() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = new GraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+
+        NodeImpl n1 = new NodeImpl("1", graphStore);
+        NodeImpl n2 = new NodeImpl("2", graphStore);
+        NodeImpl n3 = new NodeImpl("3", graphStore);
+        graphStore.addNode(n1);
+        graphStore.addNode(n2);
+        graphStore.addNode(n3);
+        graphStore.addEdge(new EdgeImpl("a", graphStore, n1, n2, 0, 2.0, true));
+        graphStore.addEdge(new EdgeImpl("b", graphStore, n2, n3, 0, 1.0, false));
+        graphStore.addEdge(new EdgeImpl("c", graphStore, n3, n1, 0, 1.0, true));
+        graphStore.removeEdge(graphStore.getEdge("c"));
+        graphStore.removeNode(n3);
+        journal.close();
+        Assert.assertTrue(journal.getJournalSize() > GraphJournal.HEADER_SIZE);
+
+        GraphStore l = reopen(directory);
+        Assert.assertEquals(l.getNodeCount(), 2);
+        Assert.assertEquals(l.getEdgeCount(), 1);
+        Assert.assertNull(l.getNode("3"));
+        Assert.assertEquals(l.getEdge("a").getWeight(), 2.0, 0.0);
+        assertSameGraph(graphStore, l);
+    }
+
+    @Test
+    public void testReplayAttributes() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = new GraphStore();
+        graphStore.addNode(new NodeImpl("1", graphStore));
+        graphStore.addNode(new NodeImpl("2", graphStore));
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+
+        Column age = new ColumnImpl("age", Integer.class, null, null, Origin.DATA, true);
+        Column name = new ColumnImpl("name", String.class, null, null, Origin.DATA, false);
+        Column removed = new ColumnImpl("removed", String.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(age);
+        graphStore.nodeColumnStore.addColumn(name);
+        graphStore.nodeColumnStore.addColumn(removed);
+        graphStore.nodeColumnStore.removeColumn(removed);
+
+        NodeImpl node = graphStore.getNode("1");
+        node.setAttribute(age, 42);
+        node.setAttribute(name, "foo");
+        node.setLabel("bar");
+        graphStore.getNode("2").setAttribute(age, 7);
+        graphStore.getNode("2").removeAttribute(age);
+
+        NodeImpl added = new NodeImpl("added", graphStore);
+        added.setAttribute(age, 5);
+        graphStore.addNode(added);
+        journal.close();
+
+        GraphStore l = reopen(directory);
+        Column lAge = l.nodeColumnStore.getColumn("age");
+        Assert.assertNotNull(lAge);
+        Assert.assertTrue(lAge.isIndexed());
+        Assert.assertFalse(l.nodeColumnStore.hasColumn("removed"));
+        NodeImpl lNode = l.getNode("1");
+        Assert.assertEquals(lNode.getAttribute(lAge), 42);
+        Assert.assertEquals(lNode.getAttribute("name"), "foo");
+        Assert.assertEquals(lNode.getLabel(), "bar");
+        Assert.assertNull(l.getNode("2").getAttribute(lAge));
+        Assert.assertEquals(l.getNode("added").getAttribute(lAge), 5);
+
+        IndexImpl index = l.nodeColumnStore.indexStore.getIndex(l);
+        Assert.assertEquals(index.count(lAge, 42), 1);
+        Assert.assertEquals(index.count(lAge, 5), 1);
+    }
+
+    @Test
+    public void testReplayEdgeTypes() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+
+        int likes = graphStore.edgeTypeStore.addType("likes");
+        graphStore.edgeTypeStore.addType("removed");
+        graphStore.edgeTypeStore.removeType("removed");
+        graphStore.addEdge(new EdgeImpl("liked", graphStore, graphStore.getNode("1"), graphStore.getNode("2"), likes, 1.0, true));
+        journal.close();
+
+        GraphStore l = reopen(directory);
+        Assert.assertEquals(l.edgeTypeStore.getId("likes"), likes);
+        Assert.assertFalse(l.edgeTypeStore.contains("removed"));
+        Assert.assertEquals(l.getEdge("liked").getType(), likes);
+        assertSameGraph(graphStore, l);
+    }
+
+    @Test
+    public void testReplayTimestamps() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = new GraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+
+        NodeImpl n1 = new NodeImpl("1", graphStore);
+        n1.addTimestamp(1.0);
+        graphStore.addNode(n1);
+        n1.addTimestamp(2.0);
+        NodeImpl n2 = new NodeImpl("2", graphStore);
+        graphStore.addNode(n2);
+        n2.addTimestamp(3.0);
+        n2.removeTimestamp(3.0);
+        journal.close();
+
+        GraphStore l = reopen(directory);
+        NodeImpl lNode = l.getNode("1");
+        Assert.assertEquals(lNode.getTimestamps(), new double[]{1.0, 2.0});
+        Assert.assertEquals(l.getNode("2").getTimestamps(), new double[0]);
+    }
+
+    @Test
+    public void testReplayViews() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        GraphViewImpl existing = graphStore.viewStore.createView();
+        existing.addNode(graphStore.getNode("1"));
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+
+        existing.addNode(graphStore.getNode("2"));
+        GraphViewImpl view = graphStore.viewStore.createView();
+        view.fill();
+        view.removeNode(graphStore.getNode("1"));
+        GraphViewImpl copy = graphStore.viewStore.createView(existing);
+        EdgeImpl edge = graphStore.getEdge("0");
+        copy.addNode(edge.source);
+        copy.addNode(edge.target);
+        copy.addEdge(edge);
+        GraphViewImpl destroyed = graphStore.viewStore.createNodeView();
+        graphStore.viewStore.destroyView(destroyed);
+        journal.close();
+
+        GraphStore l = reopen(directory);
+        Assert.assertEquals(l.viewStore.size(), 3);
+        GraphViewImpl lExisting = l.viewStore.views[existing.storeId];
+        GraphViewImpl lView = l.viewStore.views[view.storeId];
+        GraphViewImpl lCopy = l.viewStore.views[copy.storeId];
+        Assert.assertEquals(lExisting.getNodeCount(), 2);
+        Assert.assertEquals(lView.getNodeCount(), graphStore.getNodeCount() - 1);
+        Assert.assertEquals(lView.getEdgeCount(), view.getEdgeCount());
+        Assert.assertFalse(lView.containsNode(l.getNode("1")));
+        Assert.assertEquals(lCopy.getNodeCount(), copy.getNodeCount());
+        Assert.assertTrue(lCopy.containsEdge(l.getEdge("0")));
+        Assert.assertEquals(lCopy.getEdgeCount(), copy.getEdgeCount());
+    }
+
+    @Test
+    public void testReplayClear() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+
+        graphStore.clearEdges();
+        journal.flush();
+        Assert.assertEquals(reopen(copyDirectory(directory)).getEdgeCount(), 0);
+
+        graphStore.clear();
+        graphStore.addNode(new NodeImpl("after", graphStore));
+        journal.close();
+
+        GraphStore l = reopen(directory);
+        Assert.assertEquals(l.getNodeCount(), 1);
+        Assert.assertNotNull(l.getNode("after"));
+    }
+
+    @Test
+    public void testTornTail() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = new GraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+        graphStore.addNode(new NodeImpl("1", graphStore));
+        journal.flush();
+        long valid = journal.getJournalSize();
+        graphStore.addNode(new NodeImpl("2", graphStore));
+        journal.close();
+
+        //Cut the last record as a crash during the write would
+        File journalFile = new File(directory, "graph-0.journal");
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        GraphStore l = new GraphStore();
+        GraphJournal recovered = new GraphJournal(l, directory);
+        recovered.open();
+        Assert.assertEquals(l.getNodeCount(), 1);
+        Assert.assertNotNull(l.getNode("1"));
+        //The recovered store is compacted in a new generation
+        Assert.assertEquals(recovered.getGeneration(), 1l);
+        Assert.assertFalse(journalFile.exists());
+        recovered.close();
+        Assert.assertTrue(valid > GraphJournal.HEADER_SIZE);
+    }
+
+    @Test
+    public void testCorruptedRecord() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = new GraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+        graphStore.addNode(new NodeImpl("1", graphStore));
+        journal.flush();
+        long valid = journal.getJournalSize();
+        graphStore.addNode(new NodeImpl("2", graphStore));
+        journal.close();
+
+        File journalFile = new File(directory, "graph-0.journal");
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        raf.seek(raf.length() - 1);
+        int last = raf.read();
+        raf.seek(raf.length() - 1);
+        raf.write(last ^ 0xFF);
+        raf.close();
+
+        GraphStore l = reopen(directory);
+        Assert.assertEquals(l.getNodeCount(), 1);
+        Assert.assertTrue(valid > GraphJournal.HEADER_SIZE);
+    }
+
+    @Test
+    public void testCompact() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+        graphStore.addNode(new NodeImpl("before", graphStore));
+        journal.compact();
+        Assert.assertEquals(journal.getGeneration(), 1l);
+        Assert.assertEquals(journal.getJournalSize(), (long) GraphJournal.HEADER_SIZE);
+        Assert.assertFalse(new File(directory, "graph-0.snapshot").exists());
+        Assert.assertFalse(new File(directory, "graph-0.journal").exists());
+        Assert.assertTrue(new File(directory, "graph-1.snapshot").exists());
+
+        graphStore.addNode(new NodeImpl("after", graphStore));
+        journal.close();
+
+        GraphStore l = reopen(directory);
+        Assert.assertNotNull(l.getNode("before"));
+        Assert.assertNotNull(l.getNode("after"));
+        assertSameGraph(graphStore, l);
+    }
+
+    @Test
+    public void testPropertiesNotJournaled() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = new GraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+        NodeImpl n1 = new NodeImpl("1", graphStore);
+        NodeImpl n2 = new NodeImpl("2", graphStore);
+        n1.setPosition(1f, 2f);
+        n1.setSize(3f);
+        graphStore.addNode(n1);
+        graphStore.addNode(n2);
+        EdgeImpl edge = new EdgeImpl("a", graphStore, n1, n2, 0, 1.0, true);
+        edge.setR(0.5f);
+        graphStore.addEdge(edge);
+        long size = journal.getJournalSize();
+
+        n1.setPosition(4f, 5f);
+        n1.setSize(6f);
+        n2.setR(1f);
+        edge.setR(1f);
+        edge.getTextProperties().setText("t");
+        Assert.assertEquals(journal.getJournalSize(), size);
+        journal.flush();
+
+        GraphStore l = reopen(copyDirectory(directory));
+        Assert.assertEquals(l.getNode("1").x(), 1f);
+        Assert.assertEquals(l.getNode("1").y(), 2f);
+        Assert.assertEquals(l.getNode("1").size(), 3f);
+        Assert.assertEquals(l.getNode("2").r(), 0f);
+        Assert.assertEquals(l.getEdge("a").r(), 0.5f, 0.01f);
+        Assert.assertNull(l.getEdge("a").getTextProperties().getText());
+
+        journal.compact();
+        journal.close();
+        l = reopen(directory);
+        Assert.assertEquals(l.getNode("1").x(), 4f);
+        Assert.assertEquals(l.getNode("1").y(), 5f);
+        Assert.assertEquals(l.getNode("1").size(), 6f);
+        Assert.assertEquals(l.getNode("2").r(), 1f);
+        Assert.assertEquals(l.getEdge("a").r(), 1f);
+        Assert.assertEquals(l.getEdge("a").getTextProperties().getText(), "t");
+    }
+
+    @Test
+    public void testReopenTwice() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = new GraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+        graphStore.addNode(new NodeImpl("1", graphStore));
+        journal.close();
+
+        GraphStore second = new GraphStore();
+        GraphJournal secondJournal = new GraphJournal(second, directory);
+        secondJournal.open();
+        second.addNode(new NodeImpl("2", second));
+        secondJournal.close();
+
+        GraphStore l = reopen(directory);
+        Assert.assertEquals(l.getNodeCount(), 2);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testNotEmpty() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphJournal journal = new GraphJournal(new GraphStore(), directory);
+        journal.open();
+        journal.close();
+
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        new GraphJournal(graphStore, directory).open();
+    }
+
+    @Test
+    public void testDetached() throws IOException, ClassNotFoundException {
+        File directory = createTempDirectory();
+        GraphStore graphStore = new GraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+        journal.close();
+        long size = journal.getJournalSize();
+
+        graphStore.addNode(new NodeImpl("1", graphStore));
+        Assert.assertEquals(journal.getJournalSize(), size);
+        Assert.assertEquals(reopen(directory).getNodeCount(), 0);
+    }
+
+    //Utility
+    private GraphStore reopen(File directory) throws IOException, ClassNotFoundException {
+        GraphStore graphStore = new GraphStore();
+        GraphJournal journal = new GraphJournal(graphStore, directory);
+        journal.open();
+        journal.close();
+        return graphStore;
+    }
+
+    private File createTempDirectory() throws IOException {
+        File file = File.createTempFile("graphjournal", "");
+        file.delete();
+        file.mkdirs();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private File copyDirectory(File directory) throws IOException {
+        File copy = createTempDirectory();
+        for (File file : directory.listFiles()) {
+            RandomAccessFile source = new RandomAccessFile(file, "r");
+            RandomAccessFile target = new RandomAccessFile(new File(copy, file.getName()), "rw");
+            try {
+                source.getChannel().transferTo(0, source.length(), target.getChannel());
+            } finally {
+                source.close();
+                target.close();
+            }
+        }
+        return copy;
+    }
+
+    private void assertSameGraph(GraphStore expected, GraphStore actual) {
+        Assert.assertEquals(actual.getNodeCount(), expected.getNodeCount());
+        Assert.assertEquals(actual.getEdgeCount(), expected.getEdgeCount());
+        for (Node node : expected.getNodes()) {
+            Node other = actual.getNode(node.getId());
+            Assert.assertNotNull(other);
+            Assert.assertEquals(actual.getDegree(other), expected.getDegree(node));
+        }
+        for (Edge edge : expected.getEdges()) {
+            Edge other = actual.getEdge(edge.getId());
+            Assert.assertNotNull(other);
+            Assert.assertEquals(other.getSource().getId(), edge.getSource().getId());
+            Assert.assertEquals(other.getTarget().getId(), edge.getTarget().getId());
+            Assert.assertEquals(other.getType(), edge.getType());
+            Assert.assertEquals(other.isDirected(), edge.isDirected());
+        }
+    }
+}
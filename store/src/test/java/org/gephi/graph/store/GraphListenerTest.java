@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.gephi.attribute.api.Column;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphDiff;
+import org.gephi.graph.api.GraphListener;
+import org.gephi.graph.api.Node;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author mbastian
+ */
+public class GraphListenerTest {
+
+    @Test
+    public void testAddRemoveListener() {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        GraphListener listener = new DiffListener();
+        graphModel.addGraphListener(graphModel.getGraph(), listener);
+        graphModel.addGraphListener(graphModel.getGraph(), listener);
+
+        Assert.assertEquals(graphModel.listenerDispatcher.getListenerCount(), 1);
+        Assert.assertNotNull(graphModel.listenerDispatcher.executor);
+
+        graphModel.removeGraphListener(listener);
+        Assert.assertEquals(graphModel.listenerDispatcher.getListenerCount(), 0);
+        Assert.assertNull(graphModel.listenerDispatcher.executor);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidInterval() {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        graphModel.setGraphListenerInterval(0);
+    }
+
+    @Test
+    public void testListenerBatch() throws InterruptedException {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        Graph graph = graphModel.getGraph();
+        DiffListener listener = new DiffListener();
+        graphModel.setGraphListenerInterval(10);
+        graphModel.addGraphListener(graph, listener);
+
+        Node n1 = graphModel.factory().newNode();
+        Node n2 = graphModel.factory().newNode();
+        graph.writeLock();
+        try {
+            graph.addNode(n1);
+            graph.addNode(n2);
+        } finally {
+            graph.writeUnlock();
+        }
+
+        GraphDiff diff = listener.diffs.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(diff);
+        Assert.assertTrue(Arrays.deepEquals(diff.getAddedNodes().toArray(), new Node[]{n1, n2}));
+        graphModel.removeGraphListener(listener);
+    }
+
+    @Test
+    public void testListenerAttributeChange() throws InterruptedException {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        Graph graph = graphModel.getGraph();
+        Column column = graphModel.getNodeTable().addColumn("age", Integer.class);
+        Node n1 = graphModel.factory().newNode();
+        graph.addNode(n1);
+
+        DiffListener listener = new DiffListener();
+        graphModel.setGraphListenerInterval(10);
+        graphModel.addGraphListener(graph, listener);
+        Assert.assertNotNull(listener.diffs.poll(5, TimeUnit.SECONDS));
+        n1.setAttribute(column, 5);
+
+        GraphDiff diff = listener.diffs.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(diff);
+        Assert.assertTrue(Arrays.deepEquals(diff.getChangedNodes().toArray(), new Node[]{n1}));
+        graphModel.removeGraphListener(listener);
+    }
+
+    @Test
+    public void testListenerFailureLogged() throws InterruptedException {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        Graph graph = graphModel.getGraph();
+        final BlockingQueue<LogRecord> records = new LinkedBlockingQueue<LogRecord>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(GraphListenerDispatcher.class.getName());
+        logger.addHandler(handler);
+        logger.setUseParentHandlers(false);
+        try {
+            graphModel.setGraphListenerInterval(10);
+            graphModel.addGraphListener(graph, new GraphListener() {
+                @Override
+                public void graphChanged(GraphDiff diff) {
+                    throw new IllegalStateException("failing listener");
+                }
+            });
+            DiffListener listener = new DiffListener();
+            graphModel.addGraphListener(graph, listener);
+            graph.addNode(graphModel.factory().newNode());
+
+            //The other listener still gets the diffs
+            Assert.assertNotNull(listener.diffs.poll(5, TimeUnit.SECONDS));
+            LogRecord record = records.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(record);
+            Assert.assertEquals(record.getThrown().getMessage(), "failing listener");
+        } finally {
+            logger.removeHandler(handler);
+            logger.setUseParentHandlers(true);
+            graphModel.dispose();
+        }
+    }
+
+    @Test
+    public void testDisposeDestroysObservers() {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        graphModel.addGraphListener(graphModel.getGraph(), new DiffListener());
+        GraphObserverImpl observer = graphModel.listenerDispatcher.registrations.get(0).observer;
+
+        graphModel.dispose();
+        Assert.assertTrue(observer.isDestroyed());
+        Assert.assertEquals(graphModel.listenerDispatcher.getListenerCount(), 0);
+        Assert.assertNull(graphModel.listenerDispatcher.executor);
+        Assert.assertNull(graphModel.store.lock.writeReleaseListener);
+    }
+
+    @Test
+    public void testListenerNotifiedOnWriteUnlock() throws InterruptedException {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        Graph graph = graphModel.getGraph();
+        DiffListener listener = new DiffListener();
+        graphModel.setGraphListenerInterval(10);
+        graphModel.addGraphListener(graph, listener);
+        Assert.assertNotNull(listener.diffs.poll(5, TimeUnit.SECONDS));
+
+        Node n1 = graphModel.factory().newNode();
+        graph.writeLock();
+        try {
+            graph.addNode(n1);
+            //Nothing is dispatched before the writer is done
+            Assert.assertNull(listener.diffs.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            graph.writeUnlock();
+        }
+        GraphDiff diff = listener.diffs.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(diff);
+        Assert.assertTrue(Arrays.deepEquals(diff.getAddedNodes().toArray(), new Node[]{n1}));
+        graphModel.dispose();
+    }
+
+    private static class DiffListener implements GraphListener {
+
+        private final BlockingQueue<GraphDiff> diffs = new LinkedBlockingQueue<GraphDiff>();
+
+        @Override
+        public void graphChanged(GraphDiff diff) {
+            diffs.add(diff);
+        }
+    }
+}
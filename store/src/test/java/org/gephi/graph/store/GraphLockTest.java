@@ -0,0 +1,501 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.gephi.graph.api.GraphObserver;
+import org.gephi.graph.api.LockSiteStatistics;
+import org.gephi.graph.api.LockStatistics;
+import org.gephi.graph.api.LongHeldLock;
+import org.gephi.graph.api.Node;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author mbastian
+ */
+public class GraphLockTest {
+
+    @Test
+    public void testOptimisticRead() {
+        GraphLock lock = new GraphLock();
+        long stamp = lock.tryOptimisticRead();
+
+        Assert.assertTrue(lock.validate(stamp));
+        lock.readLock();
+        Assert.assertTrue(lock.validate(lock.tryOptimisticRead()));
+        lock.readUnlock();
+        Assert.assertTrue(lock.validate(stamp));
+    }
+
+    @Test
+    public void testOptimisticReadWithWriter() {
+        GraphLock lock = new GraphLock();
+        long stamp = lock.tryOptimisticRead();
+
+        lock.writeLock();
+        Assert.assertFalse(lock.validate(stamp));
+        Assert.assertFalse(lock.validate(tryOptimisticReadFromOtherThread(lock)));
+        lock.writeLock();
+        lock.writeUnlock();
+        Assert.assertFalse(lock.validate(tryOptimisticReadFromOtherThread(lock)));
+        //The writer itself can read its own writes
+        Assert.assertTrue(lock.validate(lock.tryOptimisticRead()));
+        lock.writeUnlock();
+
+        Assert.assertFalse(lock.validate(stamp));
+        Assert.assertTrue(lock.validate(lock.tryOptimisticRead()));
+    }
+
+    @Test
+    public void testReadWhileHoldingWriteLock() {
+        GraphStore store = new GraphStore();
+        NodeImpl node = new NodeImpl("0", store);
+        store.writeLock();
+        try {
+            store.addNode(node);
+            Assert.assertSame(store.getNode("0"), node);
+            Assert.assertTrue(store.contains(node));
+        } finally {
+            store.writeUnlock();
+        }
+    }
+
+    @Test
+    public void testConcurrentPointReads() throws InterruptedException {
+        final GraphStore store = new GraphStore();
+        final NodeImpl node = new NodeImpl("fixed", store);
+        store.addNode(node);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        if (store.getNode("fixed") != node || !store.contains(node)) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            });
+            readers[i].start();
+        }
+        for (int i = 0; i < 20000; i++) {
+            Node n = new NodeImpl(String.valueOf(i), store);
+            store.addNode(n);
+            if (i % 2 == 0) {
+                store.removeNode(n);
+            }
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assert.assertFalse(failed.get());
+    }
+
+    @Test
+    public void testSingleWriterReadLockFree() {
+        GraphLock lock = new GraphLock(true);
+        lock.readLock();
+        lock.writeLock();
+        Assert.assertTrue(lock.isWriteLockedByCurrentThread());
+        Assert.assertFalse(lock.validate(tryOptimisticReadFromOtherThread(lock)));
+        lock.writeUnlock();
+        lock.readUnlock();
+        Assert.assertFalse(lock.isWriteLockedByCurrentThread());
+        Assert.assertTrue(lock.validate(lock.tryOptimisticRead()));
+    }
+
+    @Test
+    public void testSingleWriterConcurrentWriters() throws InterruptedException {
+        final GraphLock lock = new GraphLock(true);
+        lock.writeLock();
+        final AtomicBoolean rejected = new AtomicBoolean();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    lock.writeLock();
+                } catch (IllegalMonitorStateException e) {
+                    rejected.set(true);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        lock.writeUnlock();
+        Assert.assertTrue(rejected.get());
+    }
+
+    @Test
+    public void testSingleWriterStress() throws InterruptedException {
+        final GraphStore store = new GraphStore(null, true);
+        final int count = 20000;
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        //Every visible node must be fully published and counts never go backward
+                        int size = store.getNodeCount();
+                        int seen = 0;
+                        for (Node n : store.getNodes()) {
+                            if (n.getId() == null || ((NodeImpl) n).storeId == NodeStore.NULL_ID) {
+                                failed.set(true);
+                            }
+                            seen++;
+                        }
+                        if (seen < size) {
+                            failed.set(true);
+                        }
+                        Node last = store.getNode(String.valueOf(size - 1));
+                        if (size > 0 && last == null) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            });
+            readers[i].start();
+        }
+        for (int i = 0; i < count; i++) {
+            store.addNode(new NodeImpl(String.valueOf(i), store));
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assert.assertFalse(failed.get());
+        Assert.assertEquals(store.getNodeCount(), count);
+    }
+
+    @Test
+    public void testSingleWriterReaderBackoff() throws InterruptedException {
+        final int failures = GraphLock.BACKOFF_YIELDS + 4;
+        final CountDownLatch retried = new CountDownLatch(failures);
+        GraphLock lock = new GraphLock(true) {
+            @Override
+            public long tryOptimisticRead() {
+                long stamp = super.tryOptimisticRead();
+                if (stamp == -1) {
+                    retried.countDown();
+                }
+                return stamp;
+            }
+        };
+        final GraphStore store = new GraphStore(null, lock, null);
+        store.addNode(new NodeImpl("0", store));
+        final Node[] result = new Node[1];
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = store.getNode("1");
+            }
+        });
+        store.writeLock();
+        try {
+            store.addNode(new NodeImpl("1", store));
+            reader.start();
+            //The reader keeps retrying, past the yields and into the parked retries
+            retried.await();
+            Assert.assertTrue(reader.isAlive());
+        } finally {
+            store.writeUnlock();
+        }
+        reader.join();
+        Assert.assertSame(result[0], store.getNode("1"));
+    }
+
+    @Test
+    public void testBackoffBounded() {
+        Assert.assertEquals(GraphLock.backoffNanos(0), 0l);
+        Assert.assertEquals(GraphLock.backoffNanos(GraphLock.BACKOFF_YIELDS - 1), 0l);
+        Assert.assertEquals(GraphLock.backoffNanos(GraphLock.BACKOFF_YIELDS), GraphLock.BACKOFF_MIN_PARK_NANOS);
+        Assert.assertEquals(GraphLock.backoffNanos(GraphLock.BACKOFF_YIELDS + 1), 2 * GraphLock.BACKOFF_MIN_PARK_NANOS);
+        long previous = 0;
+        for (int retries = 0; retries < 100; retries++) {
+            long nanos = GraphLock.backoffNanos(retries);
+            Assert.assertTrue(nanos >= previous);
+            Assert.assertTrue(nanos <= GraphLock.BACKOFF_MAX_PARK_NANOS);
+            previous = nanos;
+        }
+        Assert.assertEquals(GraphLock.backoffNanos(Integer.MAX_VALUE), GraphLock.BACKOFF_MAX_PARK_NANOS);
+    }
+
+    @Test
+    public void testSingleWriterInternalWrite() throws InterruptedException {
+        final GraphModelImpl graphModel = new GraphModelImpl(true);
+        final GraphObserver[] observer = new GraphObserver[1];
+        final Throwable[] error = new Throwable[1];
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    observer[0] = graphModel.getGraphObserver(graphModel.getGraph(), false);
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        });
+        graphModel.getGraph().writeLock();
+        try {
+            reader.start();
+            //Waits for the writer instead of failing
+            while (reader.isAlive() && !graphModel.store.lock.internalWriters.contains(reader)) {
+                Thread.yield();
+            }
+            Assert.assertTrue(reader.isAlive());
+            Assert.assertNull(error[0]);
+        } finally {
+            graphModel.getGraph().writeUnlock();
+        }
+        reader.join();
+        Assert.assertNull(error[0]);
+        Assert.assertNotNull(observer[0]);
+        graphModel.getGraph().addNode(graphModel.factory().newNode("1"));
+        Assert.assertTrue(observer[0].hasGraphChanged());
+    }
+
+    @Test
+    public void testSingleWriterWaitsForInternalWrite() throws InterruptedException {
+        final GraphLock lock = new GraphLock(true);
+        final Thread writer = Thread.currentThread();
+        final CountDownLatch held = new CountDownLatch(1);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                lock.internalWriteLock();
+                held.countDown();
+                try {
+                    //Release once the writer backs off
+                    while (writer.getState() != Thread.State.TIMED_WAITING) {
+                        Thread.yield();
+                    }
+                } finally {
+                    lock.internalWriteUnlock();
+                }
+            }
+        });
+        reader.start();
+        held.await();
+        lock.writeLock();
+        Assert.assertTrue(lock.isWriteLockedByCurrentThread());
+        lock.writeUnlock();
+        reader.join();
+        Assert.assertTrue(lock.internalWriters.isEmpty());
+    }
+
+    @Test
+    public void testWriteReleaseListener() {
+        GraphLock lock = new GraphLock();
+        final int[] released = new int[1];
+        lock.setWriteReleaseListener(new Runnable() {
+            @Override
+            public void run() {
+                released[0]++;
+            }
+        });
+        lock.writeLock();
+        lock.writeLock();
+        lock.writeUnlock();
+        Assert.assertEquals(released[0], 0);
+        lock.writeUnlock();
+        Assert.assertEquals(released[0], 1);
+
+        lock.readLock();
+        lock.readUnlock();
+        Assert.assertEquals(released[0], 1);
+        lock.setWriteReleaseListener(null);
+        lock.writeLock();
+        lock.writeUnlock();
+        Assert.assertEquals(released[0], 1);
+    }
+
+    @Test
+    public void testInstrumentedCounts() {
+        InstrumentedGraphLock lock = new InstrumentedGraphLock();
+        lock.readLock();
+        lock.readLock();
+        lock.readUnlock();
+        lock.readUnlock();
+        lock.writeLock();
+        lock.writeLock();
+        lock.writeUnlock();
+        lock.writeUnlock();
+
+        LockSiteStatistics total = lock.getStatistics().getTotal();
+        Assert.assertEquals(total.getReadCount(), 1);
+        Assert.assertEquals(total.getWriteCount(), 1);
+        Assert.assertEquals(total.getReadHoldTime().getCount(), 1);
+        Assert.assertEquals(total.getWriteHoldTime().getCount(), 1);
+
+        LockSiteStatistics site = lock.getStatistics().getSite("GraphLockTest.testInstrumentedCounts");
+        Assert.assertNotNull(site);
+        Assert.assertEquals(site.getReadCount(), 1);
+        Assert.assertEquals(site.getWriteCount(), 1);
+
+        lock.getStatistics().reset();
+        Assert.assertEquals(total.getReadCount(), 0);
+        Assert.assertTrue(lock.getStatistics().getSites().isEmpty());
+    }
+
+    @Test
+    public void testInstrumentedReadUnlockAll() {
+        InstrumentedGraphLock lock = new InstrumentedGraphLock();
+        lock.readLock();
+        lock.readLock();
+        lock.readUnlockAll();
+        Assert.assertEquals(lock.getStatistics().getTotal().getReadHoldTime().getCount(), 1);
+        lock.writeLock();
+        lock.writeUnlock();
+        Assert.assertEquals(lock.getStatistics().getTotal().getWriteCount(), 1);
+    }
+
+    @Test
+    public void testInstrumentedStoreSites() {
+        GraphStore store = new GraphStore(null, new InstrumentedGraphLock(), null);
+        Assert.assertNotNull(store.lock.getStatistics());
+        store.addNode(store.factory.newNode("0"));
+        store.getNodeCount();
+
+        LockStatistics statistics = store.lock.getStatistics();
+        Assert.assertNotNull(statistics.getSite("GraphStore.addNode"));
+        Assert.assertEquals(statistics.getSite("GraphStore.addNode").getWriteCount(), 1);
+    }
+
+    @Test
+    public void testLongHeldLock() throws InterruptedException {
+        InstrumentedGraphLock lock = new InstrumentedGraphLock();
+        lock.getStatistics().setLongHoldThreshold(1000000l);
+        lock.writeLock();
+        Thread.sleep(5);
+        lock.writeUnlock();
+        lock.readLock();
+        lock.readUnlock();
+
+        List<LongHeldLock> longHeldLocks = lock.getStatistics().getLongHeldLocks();
+        Assert.assertEquals(longHeldLocks.size(), 1);
+        LongHeldLock longHeldLock = longHeldLocks.get(0);
+        Assert.assertTrue(longHeldLock.isWrite());
+        Assert.assertTrue(longHeldLock.getHoldTime() >= 1000000l);
+        Assert.assertEquals(longHeldLock.getSite(), "GraphLockTest.testLongHeldLock");
+        Assert.assertEquals(longHeldLock.getThreadName(), Thread.currentThread().getName());
+        Assert.assertTrue(longHeldLock.getStackTrace().length > 0);
+    }
+
+    @Test
+    public void testLongHeldLockHistorySize() {
+        InstrumentedGraphLock lock = new InstrumentedGraphLock(false, new LockStatisticsImpl(0, 2));
+        for (int i = 0; i < 5; i++) {
+            lock.writeLock();
+            lock.writeUnlock();
+        }
+        Assert.assertEquals(lock.getStatistics().getLongHeldLocks().size(), 2);
+    }
+
+    @Test
+    public void testHistogram() {
+        LockHistogramImpl histogram = new LockHistogramImpl();
+        Assert.assertEquals(histogram.getValueAtPercentile(99.0), 0);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        Assert.assertEquals(histogram.getCount(), 100);
+        Assert.assertEquals(histogram.getMax(), 100000);
+        Assert.assertEquals(histogram.getMean(), 50500.0, 0.0);
+        Assert.assertEquals(histogram.getValueAtPercentile(100.0), 100000);
+        long median = histogram.getValueAtPercentile(50.0);
+        Assert.assertTrue(median >= 50000 && median <= 50000 * 1.125, "median=" + median);
+        long p99 = histogram.getValueAtPercentile(99.0);
+        Assert.assertTrue(p99 >= 99000 && p99 <= 100000, "p99=" + p99);
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE}) {
+            long highest = LockHistogramImpl.getHighestValue(LockHistogramImpl.getIndex(value));
+            Assert.assertTrue(highest >= value);
+            Assert.assertTrue(highest - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        InstrumentedGraphLock lock = new InstrumentedGraphLock();
+        ObjectName name = lock.getStatistics().registerMBean("testMBean");
+        try {
+            lock.writeLock();
+            lock.writeUnlock();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertEquals(server.getAttribute(name, "WriteCount"), 1l);
+            Assert.assertEquals(((String[]) server.getAttribute(name, "Sites")).length, 1);
+        } finally {
+            lock.getStatistics().unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testModelMBeanDispose() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        GraphModelImpl model1 = new GraphModelImpl(new InstrumentedGraphLock());
+        GraphModelImpl model2 = new GraphModelImpl(new InstrumentedGraphLock());
+        ObjectName name1 = model1.lockStatisticsName;
+        ObjectName name2 = model2.lockStatisticsName;
+        try {
+            Assert.assertNotEquals(name1, name2);
+            Assert.assertTrue(server.isRegistered(name1));
+            Assert.assertTrue(server.isRegistered(name2));
+
+            model1.dispose();
+            Assert.assertFalse(server.isRegistered(name1));
+            Assert.assertTrue(server.isRegistered(name2));
+            model1.dispose();
+        } finally {
+            model2.dispose();
+        }
+        Assert.assertFalse(server.isRegistered(name2));
+    }
+
+    private long tryOptimisticReadFromOtherThread(final GraphLock lock) {
+        final long[] stamp = new long[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stamp[0] = lock.tryOptimisticRead();
+            }
+        });
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return stamp[0];
+    }
+}
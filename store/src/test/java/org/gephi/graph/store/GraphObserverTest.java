@@ -15,7 +15,10 @@
  */
 package org.gephi.graph.store;
 
+import java.awt.Color;
 import java.util.Arrays;
+import org.gephi.attribute.api.Column;
+import org.gephi.attribute.api.Origin;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.EdgeIterable;
 import org.gephi.graph.api.GraphDiff;
@@ -380,16 +383,236 @@ public class GraphObserverTest {
     }
 
     @Test
-    public void testResetVersion() {
+    public void testDiffFromChangeLog() {
         GraphStore store = GraphGenerator.generateSmallGraphStore();
-        store.version.nodeVersion = Integer.MAX_VALUE - 1;
         GraphObserverImpl graphObserver = store.createGraphObserver(store, true);
         graphObserver.hasGraphChanged();
-        store.addNode(store.factory.newNode());
+        graphObserver.getDiff();
+        NodeImpl[] cache = graphObserver.nodeCache;
+
+        Node transientNode = store.factory.newNode();
+        Node addedNode = store.factory.newNode();
+        store.addNode(transientNode);
+        store.addNode(addedNode);
+        store.removeNode(transientNode);
+
+        Assert.assertTrue(store.version.changeLog.isAvailable(graphObserver.logPosition));
+        graphObserver.hasGraphChanged();
+        GraphDiff diff = graphObserver.getDiff();
+
+        Assert.assertTrue(Arrays.deepEquals(diff.getAddedNodes().toArray(), new Node[]{addedNode}));
+        Assert.assertSame(diff.getRemovedNodes(), NodeIterable.EMPTY);
+        Assert.assertSame(graphObserver.nodeCache[((NodeImpl) addedNode).storeId], addedNode);
+        Assert.assertEquals(graphObserver.logPosition, store.version.changeLog.sequence);
+    }
+
+    @Test
+    public void testDiffChangedNodes() {
+        GraphStore store = new GraphStore();
+        Column column = new ColumnImpl("age", Integer.class, "Age", null, Origin.DATA, false);
+        store.nodeColumnStore.addColumn(column);
+        Node node = store.factory.newNode();
+        store.addNode(node);
+        GraphObserverImpl graphObserver = store.createGraphObserver(store, true);
+        graphObserver.hasGraphChanged();
+        graphObserver.getDiff();
+
+        node.setAttribute(column, 42);
+        Node addedNode = store.factory.newNode();
+        store.addNode(addedNode);
+        addedNode.setAttribute(column, 1);
+
+        Assert.assertTrue(graphObserver.hasGraphChanged());
+        GraphDiff diff = graphObserver.getDiff();
+        Assert.assertTrue(Arrays.deepEquals(diff.getChangedNodes().toArray(), new Node[]{node}));
+        Assert.assertTrue(Arrays.deepEquals(diff.getAddedNodes().toArray(), new Node[]{addedNode}));
+        Assert.assertSame(diff.getChangedEdges(), EdgeIterable.EMPTY);
+        Assert.assertFalse(graphObserver.hasGraphChanged());
+    }
+
+    @Test
+    public void testDiffChangedNodesByColumn() {
+        GraphStore store = new GraphStore();
+        Column age = new ColumnImpl("age", Integer.class, "Age", null, Origin.DATA, false);
+        Column city = new ColumnImpl("city", String.class, "City", null, Origin.DATA, false);
+        store.nodeColumnStore.addColumn(age);
+        store.nodeColumnStore.addColumn(city);
+        Node n1 = store.factory.newNode();
+        Node n2 = store.factory.newNode();
+        Node n3 = store.factory.newNode();
+        store.addNode(n1);
+        store.addNode(n2);
+        store.addNode(n3);
+        GraphObserverImpl graphObserver = store.createGraphObserver(store, true);
+        graphObserver.hasGraphChanged();
+        graphObserver.getDiff();
+
+        n1.setAttribute(age, 10);
+        n2.setAttribute(city, "Paris");
+        n2.setAttribute(age, 20);
+        n3.setX(1f);
+
+        Assert.assertTrue(graphObserver.hasGraphChanged());
+        GraphDiff diff = graphObserver.getDiff();
+        Assert.assertTrue(Arrays.deepEquals(diff.getChangedNodes().toArray(), new Node[]{n1, n2, n3}));
+        Assert.assertTrue(Arrays.deepEquals(diff.getChangedNodes(age).toArray(), new Node[]{n1, n2}));
+        Assert.assertTrue(Arrays.deepEquals(diff.getChangedNodes(city).toArray(), new Node[]{n2}));
+        Assert.assertEquals(((ColumnImpl) age).getVersion(), 2);
+    }
+
+    @Test
+    public void testDiffChangedEdgeWeight() {
+        GraphStore store = new GraphStore();
+        Node n1 = store.factory.newNode();
+        Node n2 = store.factory.newNode();
+        store.addNode(n1);
+        store.addNode(n2);
+        Edge edge = store.factory.newEdge(n1, n2, 0, 1.0, true);
+        store.addEdge(edge);
+        GraphObserverImpl graphObserver = store.createGraphObserver(store, true);
+        graphObserver.hasGraphChanged();
+        graphObserver.getDiff();
+
+        edge.setWeight(2.0);
+
+        //Property changes come with the next topology or attribute change
+        Assert.assertFalse(graphObserver.hasGraphChanged());
+        Node n3 = store.factory.newNode();
+        store.addNode(n3);
+        Assert.assertTrue(graphObserver.hasGraphChanged());
+        GraphDiff diff = graphObserver.getDiff();
+        Assert.assertTrue(Arrays.deepEquals(diff.getChangedEdges().toArray(), new Edge[]{edge}));
+        Assert.assertSame(diff.getChangedNodes(), NodeIterable.EMPTY);
+    }
+
+    @Test
+    public void testPropertyChangesOnlyTrackedWithDiff() {
+        GraphStore store = new GraphStore();
+        Node n1 = store.factory.newNode();
+        store.addNode(n1);
+        GraphObserverImpl graphObserver = store.createGraphObserver(store, false);
+        graphObserver.hasGraphChanged();
+        Assert.assertEquals(store.diffObservers.get(), 0);
+
+        n1.setX(1f);
+        n1.setColor(Color.RED);
+        Assert.assertFalse(graphObserver.hasGraphChanged());
+
+        GraphObserverImpl diffObserver = store.createGraphObserver(store, true);
+        Assert.assertEquals(store.diffObservers.get(), 1);
+        store.destroyGraphObserver(diffObserver);
+        Assert.assertEquals(store.diffObservers.get(), 0);
+    }
+
+    @Test
+    public void testDiffChangedEdgesView() {
+        GraphStore store = new GraphStore();
+        Column column = new ColumnImpl("weight", Double.class, "Weight", null, Origin.DATA, false);
+        store.edgeColumnStore.addColumn(column);
+        Node n1 = store.factory.newNode();
+        Node n2 = store.factory.newNode();
+        store.addNode(n1);
+        store.addNode(n2);
+        Edge edge = store.factory.newEdge(n1, n2, 0, 1.0, true);
+        store.addEdge(edge);
+        store.addEdge(store.factory.newEdge(n2, n1, 0, 1.0, true));
+        GraphViewImpl view = store.viewStore.createView();
+        view.addNode((NodeImpl) edge.getSource());
+        view.addNode((NodeImpl) edge.getTarget());
+        view.addEdge((EdgeImpl) edge);
+        GraphObserverImpl graphObserver = store.viewStore.createGraphObserver(store.viewStore.getDirectedGraph(view), true);
+        graphObserver.hasGraphChanged();
+        graphObserver.getDiff();
+
+        for (Edge e : store.getEdges()) {
+            e.setAttribute(column, 2.0);
+        }
+
+        Assert.assertTrue(graphObserver.hasGraphChanged());
+        GraphDiff diff = graphObserver.getDiff();
+        Assert.assertTrue(Arrays.deepEquals(diff.getChangedEdges().toArray(), new Edge[]{edge}));
+        Assert.assertSame(diff.getChangedNodes(), NodeIterable.EMPTY);
+    }
+
+    @Test
+    public void testDiffChangeLogOverflow() {
+        GraphStore store = new GraphStore();
+        GraphObserverImpl graphObserver = store.createGraphObserver(store, true);
+        graphObserver.hasGraphChanged();
+        graphObserver.getDiff();
 
-        int nodeVersion = store.version.nodeVersion;
+        int count = GraphStoreConfiguration.OBSERVER_CHANGELOG_SIZE + 1;
+        for (int i = 0; i < count; i++) {
+            store.addNode(store.factory.newNode());
+        }
+        Assert.assertFalse(store.version.changeLog.isAvailable(graphObserver.logPosition));
 
-        Assert.assertEquals(nodeVersion, Integer.MIN_VALUE + 1);
-        Assert.assertEquals(graphObserver.nodeVersion, Integer.MIN_VALUE);
+        graphObserver.hasGraphChanged();
+        GraphDiff diff = graphObserver.getDiff();
+        Assert.assertEquals(diff.getAddedNodes().toArray().length, count);
+
+        Node node = store.getNodes().toArray()[0];
+        store.removeNode(node);
+        graphObserver.hasGraphChanged();
+        diff = graphObserver.getDiff();
+        Assert.assertTrue(Arrays.deepEquals(diff.getRemovedNodes().toArray(), new Node[]{node}));
+    }
+
+    @Test
+    public void testDiffViewChangeLog() {
+        GraphStore store = GraphGenerator.generateSmallGraphStore();
+        GraphViewImpl view = store.viewStore.createView();
+        GraphObserverImpl graphObserver = store.viewStore.createGraphObserver(store.viewStore.getDirectedGraph(view), true);
+        graphObserver.hasGraphChanged();
+        graphObserver.getDiff();
+
+        Node node = store.getNodes().toArray()[0];
+        view.addNode(node);
+        graphObserver.hasGraphChanged();
+        GraphDiff diff = graphObserver.getDiff();
+        Assert.assertTrue(Arrays.deepEquals(diff.getAddedNodes().toArray(), new Node[]{node}));
+
+        view.removeNode(node);
+        graphObserver.hasGraphChanged();
+        diff = graphObserver.getDiff();
+        Assert.assertTrue(Arrays.deepEquals(diff.getRemovedNodes().toArray(), new Node[]{node}));
+    }
+
+    @Test
+    public void testDiffCompact() {
+        GraphStore store = GraphGenerator.generateSmallGraphStore();
+        GraphObserverImpl graphObserver = store.createGraphObserver(store, true);
+        graphObserver.hasGraphChanged();
+        graphObserver.getDiff();
+
+        Node[] nodes = store.getNodes().toArray();
+        store.removeNode(nodes[0]);
+        store.compact();
+        Assert.assertTrue(graphObserver.hasGraphChanged());
+        GraphDiff diff = graphObserver.getDiff();
+        Assert.assertTrue(Arrays.deepEquals(diff.getRemovedNodes().toArray(), new Node[]{nodes[0]}));
+        Assert.assertEquals(diff.getAddedNodes().toArray().length, 0);
+
+        Node node = store.factory.newNode("new");
+        store.addNode(node);
+        store.removeNode(nodes[1]);
+        Assert.assertTrue(graphObserver.hasGraphChanged());
+        diff = graphObserver.getDiff();
+        Assert.assertTrue(Arrays.deepEquals(diff.getAddedNodes().toArray(), new Node[]{node}));
+        Assert.assertTrue(Arrays.deepEquals(diff.getRemovedNodes().toArray(), new Node[]{nodes[1]}));
+    }
+
+    @Test
+    public void testVersionNoWrap() {
+        GraphStore store = GraphGenerator.generateSmallGraphStore();
+        store.version.nodeVersion = Integer.MAX_VALUE;
+        GraphObserverImpl graphObserver = store.createGraphObserver(store, true);
+        graphObserver.hasGraphChanged();
+        graphObserver.getDiff();
+        store.addNode(store.factory.newNode());
+
+        Assert.assertEquals(store.version.nodeVersion, Integer.MAX_VALUE + 1l);
+        Assert.assertTrue(graphObserver.hasGraphChanged());
+        Assert.assertEquals(graphObserver.nodeVersion, Integer.MAX_VALUE + 1l);
     }
 }
@@ -21,11 +21,17 @@ import it.unimi.dsi.fastutil.ints.IntSet;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import java.awt.Color;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.gephi.attribute.api.Column;
+import org.gephi.attribute.api.Index;
+import org.gephi.graph.api.DirectedSubgraph;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.EdgeIterable;
+import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.LayoutData;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.NodeIterable;
@@ -422,6 +428,670 @@ public class GraphStoreTest {
         Assert.assertEquals(graphStore.getEdgeCount(), 0);
     }
 
+    @Test
+    public void testSnapshot() {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        GraphStore store = graphModel.store;
+        Column column = graphModel.getNodeTable().addColumn("age", Integer.class);
+        NodeImpl n1 = (NodeImpl) graphModel.factory().newNode("n1");
+        NodeImpl n2 = (NodeImpl) graphModel.factory().newNode("n2");
+        n1.setAttribute(column, 10);
+        n1.setX(5f);
+        store.addNode(n1);
+        store.addNode(n2);
+        store.addEdge(graphModel.factory().newEdge("e", n1, n2, 0, 2.0, true));
+
+        GraphStore snapshot = (GraphStore) graphModel.snapshot();
+        testNodeSets(snapshot.getNodes(), store.getNodes());
+        testEdgeSets(snapshot.getEdges(), store.getEdges());
+        Node copy = snapshot.getNode("n1");
+        Assert.assertNotSame(copy, n1);
+        Assert.assertEquals(copy.getAttribute(column), 10);
+        Assert.assertEquals(copy.x(), 5f);
+        Assert.assertEquals(snapshot.getEdge("e").getWeight(), 2.0);
+        Assert.assertSame(snapshot.getEdge("e").getSource(), copy);
+
+        store.removeNode(n2);
+        n1.setAttribute(column, 20);
+        Assert.assertEquals(snapshot.getNodeCount(), 2);
+        Assert.assertEquals(snapshot.getEdgeCount(), 1);
+        Assert.assertEquals(copy.getAttribute(column), 10);
+    }
+
+    @Test
+    public void testSnapshotRetriesOnWrite() {
+        final GraphStore store = new GraphStore();
+        store.addNode(store.factory.newNode("n1"));
+        final AtomicInteger runs = new AtomicInteger();
+
+        GraphStore snapshot = store.longRead(new GraphStore.Read<GraphStore>() {
+            @Override
+            public GraphStore read() {
+                GraphStore copy = store.snapshot();
+                if (runs.getAndIncrement() == 0) {
+                    addNodeInThread(store, "n2");
+                }
+                return copy;
+            }
+        });
+        Assert.assertEquals(runs.get(), 2);
+        Assert.assertEquals(snapshot.getNodeCount(), 2);
+        Assert.assertEquals(store.lock.readWriteLock.getReadHoldCount(), 0);
+    }
+
+    @Test
+    public void testSnapshotFallsBackToReadLock() {
+        final GraphStore store = new GraphStore();
+        final AtomicInteger runs = new AtomicInteger();
+
+        boolean locked = store.longRead(new GraphStore.Read<Boolean>() {
+            @Override
+            public Boolean read() {
+                runs.incrementAndGet();
+                if (store.lock.readWriteLock.getReadHoldCount() > 0) {
+                    return true;
+                }
+                addNodeInThread(store, "n" + runs.get());
+                return false;
+            }
+        });
+        Assert.assertTrue(locked);
+        Assert.assertEquals(runs.get(), GraphStoreConfiguration.SNAPSHOT_OPTIMISTIC_RETRIES + 1);
+        Assert.assertEquals(store.getNodeCount(), GraphStoreConfiguration.SNAPSHOT_OPTIMISTIC_RETRIES);
+    }
+
+    @Test
+    public void testSnapshotIndex() {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        Column column = graphModel.getNodeTable().addColumn("age", Integer.class);
+        Node n1 = graphModel.factory().newNode("n1");
+        Node n2 = graphModel.factory().newNode("n2");
+        n1.setAttribute(column, 10);
+        n2.setAttribute(column, 10);
+        graphModel.store.addNode(n1);
+        graphModel.store.addNode(n2);
+        Index<Node> index = graphModel.getNodeIndex();
+        Assert.assertEquals(index.count(column, 10), 2);
+
+        GraphStore snapshot = (GraphStore) graphModel.snapshot();
+        Assert.assertEquals(index.count(column, 10), 2);
+        Assert.assertEquals(index.countElements(column), 2);
+        for (Node node : index.get(column, 10)) {
+            Assert.assertTrue(node == n1 || node == n2);
+        }
+
+        Index<Node> snapshotIndex = snapshot.nodeColumnStore.indexStore.getIndex(snapshot);
+        Assert.assertEquals(snapshotIndex.count(column, 10), 2);
+        Assert.assertNotSame(snapshotIndex.get(column, 10).iterator().next(), n1);
+        Assert.assertNotSame(snapshotIndex.get(column, 10).iterator().next(), n2);
+
+        graphModel.store.removeNode(n1);
+        Assert.assertEquals(index.count(column, 10), 1);
+        Assert.assertEquals(snapshotIndex.count(column, 10), 2);
+    }
+
+    @Test
+    public void testSnapshotReuse() {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        graphModel.store.addNode(graphModel.factory().newNode());
+
+        Graph snapshot = graphModel.snapshot();
+        Assert.assertSame(graphModel.snapshot(), snapshot);
+
+        graphModel.store.addNode(graphModel.factory().newNode());
+        Assert.assertNotSame(graphModel.snapshot(), snapshot);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testSnapshotReadOnly() {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        Graph snapshot = graphModel.snapshot();
+        snapshot.addNode(graphModel.factory().newNode());
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testSnapshotReadOnlyAttributes() {
+        GraphModelImpl graphModel = new GraphModelImpl();
+        Column column = graphModel.getNodeTable().addColumn("age", Integer.class);
+        graphModel.store.addNode(graphModel.factory().newNode("n1"));
+        Graph snapshot = graphModel.snapshot();
+        snapshot.getNode("n1").setAttribute(column, 1);
+    }
+
+    @Test
+    public void testConcurrentWrite() throws InterruptedException {
+        final GraphStore graphStore = new GraphStore();
+        final GraphStore expected = new GraphStore();
+        final int nodeCount = 100;
+        for (int i = 0; i < nodeCount; i++) {
+            graphStore.addNode(graphStore.factory.newNode(String.valueOf(i)));
+            expected.addNode(expected.factory.newNode(String.valueOf(i)));
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            for (int j = 0; j < nodeCount; j++) {
+                if ((i * 31 + j) % 7 == 0) {
+                    expected.addEdge(expected.factory.newEdge("e" + i + "_" + j, expected.getNode(String.valueOf(i)), expected.getNode(String.valueOf(j)), 0, 1.0, true));
+                }
+            }
+        }
+
+        graphStore.beginConcurrentWrite();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicInteger added = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    graphStore.joinConcurrentWrite();
+                    try {
+                        //Every pair is attempted by two threads, only one add succeeds
+                        for (int i = 0; i < nodeCount; i++) {
+                            if (i % 2 != thread % 2) {
+                                continue;
+                            }
+                            for (int j = 0; j < nodeCount; j++) {
+                                if ((i * 31 + j) % 7 == 0) {
+                                    Node source = graphStore.getNode(String.valueOf(i));
+                                    Node target = graphStore.getNode(String.valueOf(j));
+                                    Edge edge = graphStore.factory.newEdge("e" + i + "_" + j + "_" + thread, source, target, 0, 1.0, true);
+                                    if (graphStore.addEdge(edge)) {
+                                        added.incrementAndGet();
+                                    }
+                                }
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        graphStore.endConcurrentWrite();
+
+        Assert.assertFalse(failed.get());
+        Assert.assertEquals(added.get(), expected.getEdgeCount());
+        Assert.assertEquals(graphStore.getEdgeCount(), expected.getEdgeCount());
+        Assert.assertEquals(graphStore.edgeStore.mutualEdgesSize, expected.edgeStore.mutualEdgesSize);
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = graphStore.getNode(String.valueOf(i));
+            Node expectedNode = expected.getNode(String.valueOf(i));
+            Assert.assertEquals(graphStore.getOutDegree(node), expected.getOutDegree(expectedNode));
+            Assert.assertEquals(graphStore.getInDegree(node), expected.getInDegree(expectedNode));
+            Assert.assertEquals(graphStore.getDegree(node), expected.getDegree(expectedNode));
+            Assert.assertEquals(graphStore.getEdges(node).toArray().length, expected.getEdges(expectedNode).toArray().length);
+            for (int j = 0; j < nodeCount; j++) {
+                Node other = graphStore.getNode(String.valueOf(j));
+                Assert.assertEquals(graphStore.isAdjacent(node, other), (i * 31 + j) % 7 == 0);
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentWriteEdgeLookups() throws InterruptedException {
+        final GraphStore graphStore = new GraphStore();
+        final int nodeCount = 150;
+        final Node[] nodes = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodes[i] = graphStore.factory.newNode(String.valueOf(i));
+            graphStore.addNode(nodes[i]);
+        }
+        final int edgeCount = nodeCount * nodeCount;
+
+        graphStore.beginConcurrentWrite();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicInteger[] progress = new AtomicInteger[2];
+        Thread[] writers = new Thread[progress.length];
+        for (int t = 0; t < writers.length; t++) {
+            final int writer = t;
+            progress[t] = new AtomicInteger(-1);
+            writers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    graphStore.joinConcurrentWrite();
+                    try {
+                        for (int k = writer; k < edgeCount; k += progress.length) {
+                            Node source = nodes[k / nodeCount];
+                            Node target = nodes[k % nodeCount];
+                            graphStore.addEdge(graphStore.factory.newEdge("e" + k, source, target, 0, 1.0, true));
+                            progress[writer].set(k);
+                        }
+                    } catch (RuntimeException e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }
+            });
+        }
+        final AtomicInteger lookups = new AtomicInteger();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                graphStore.joinConcurrentWrite();
+                try {
+                    boolean done = false;
+                    while (!done) {
+                        done = true;
+                        for (int w = 0; w < progress.length; w++) {
+                            int last = progress[w].get();
+                            done &= last + progress.length >= edgeCount;
+                            //Every edge up to the last published one of this writer must be found
+                            for (int k = last; k >= 0 && k > last - 200 * progress.length; k -= progress.length) {
+                                Node source = nodes[k / nodeCount];
+                                Node target = nodes[k % nodeCount];
+                                Edge edge = graphStore.getEdge("e" + k);
+                                if (edge == null || graphStore.getEdge(source, target, 0) != edge || !graphStore.isAdjacent(source, target) || !graphStore.isAdjacent(source, target, 0) || !graphStore.contains(edge)) {
+                                    failed.set(true);
+                                    return;
+                                }
+                                lookups.incrementAndGet();
+                            }
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failed.set(true);
+                    throw e;
+                }
+            }
+        });
+        reader.start();
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        reader.join();
+        graphStore.endConcurrentWrite();
+
+        Assert.assertFalse(failed.get());
+        Assert.assertTrue(lookups.get() > 0);
+        Assert.assertEquals(graphStore.getEdgeCount(), edgeCount);
+    }
+
+    @Test
+    public void testConcurrentWriteRejectsEdgeIteration() throws InterruptedException {
+        final GraphStore graphStore = new GraphStore();
+        final Node n1 = graphStore.factory.newNode("1");
+        graphStore.addNode(n1);
+        graphStore.addEdge(graphStore.factory.newEdge(n1, n1, 0));
+        graphStore.beginConcurrentWrite();
+        final AtomicBoolean rejected = new AtomicBoolean();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                graphStore.joinConcurrentWrite();
+                try {
+                    graphStore.getEdges(n1);
+                } catch (IllegalMonitorStateException e) {
+                    rejected.set(true);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        graphStore.endConcurrentWrite();
+        Assert.assertTrue(rejected.get());
+        Assert.assertEquals(graphStore.lock.getIteratorHoldCount(), 0);
+        Assert.assertEquals(graphStore.getEdges(n1).toArray().length, 1);
+    }
+
+    @Test
+    public void testConcurrentWriteRejectsOtherWrites() throws InterruptedException {
+        final GraphStore graphStore = new GraphStore();
+        final Node n1 = graphStore.factory.newNode("1");
+        graphStore.addNode(n1);
+        graphStore.beginConcurrentWrite();
+        try {
+            graphStore.addNode(graphStore.factory.newNode("2"));
+            Assert.fail("Node additions should be rejected");
+        } catch (IllegalMonitorStateException e) {
+        }
+        final AtomicBoolean rejected = new AtomicBoolean();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                graphStore.joinConcurrentWrite();
+                Assert.assertSame(graphStore.getNode("1"), n1);
+                try {
+                    graphStore.clear();
+                } catch (IllegalMonitorStateException e) {
+                    rejected.set(true);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        graphStore.endConcurrentWrite();
+        Assert.assertTrue(rejected.get());
+
+        graphStore.addNode(graphStore.factory.newNode("2"));
+        Assert.assertEquals(graphStore.getNodeCount(), 2);
+    }
+
+    @Test
+    public void testConcurrentWriteBlocksReaders() throws InterruptedException {
+        final GraphStore graphStore = new GraphStore();
+        final Node n1 = graphStore.factory.newNode("1");
+        final Node n2 = graphStore.factory.newNode("2");
+        graphStore.addNode(n1);
+        graphStore.addNode(n2);
+        graphStore.beginConcurrentWrite();
+        final AtomicInteger edgeCount = new AtomicInteger(-1);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                edgeCount.set(graphStore.getEdges(n1).toArray().length);
+            }
+        });
+        reader.start();
+        reader.join(200);
+        Assert.assertTrue(reader.isAlive());
+
+        graphStore.addEdge(graphStore.factory.newEdge(n1, n2, 0));
+        graphStore.endConcurrentWrite();
+        reader.join();
+        Assert.assertEquals(edgeCount.get(), 1);
+    }
+
+    @Test
+    public void testConcurrentWriteUnregisteredWriter() throws InterruptedException {
+        final GraphStore graphStore = new GraphStore();
+        final Node n1 = graphStore.factory.newNode("1");
+        graphStore.addNode(n1);
+        graphStore.beginConcurrentWrite();
+        final AtomicBoolean rejected = new AtomicBoolean();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    graphStore.addEdge(graphStore.factory.newEdge(n1, n1, 0));
+                } catch (IllegalMonitorStateException e) {
+                    rejected.set(true);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        graphStore.endConcurrentWrite();
+        Assert.assertTrue(rejected.get());
+        Assert.assertEquals(graphStore.getEdgeCount(), 0);
+    }
+
+    @Test
+    public void testConcurrentWriteEndWithOpenIterator() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.addAllNodes(Arrays.asList(GraphGenerator.generateSmallNodeList()));
+        graphStore.beginConcurrentWrite();
+        Iterator<Node> itr = graphStore.getNodes().iterator();
+        Assert.assertTrue(itr.hasNext());
+        graphStore.endConcurrentWrite();
+        while (itr.hasNext()) {
+            itr.next();
+        }
+        Assert.assertEquals(graphStore.lock.getIteratorHoldCount(), 0);
+        graphStore.addNode(graphStore.factory.newNode("new"));
+    }
+
+    @Test(expectedExceptions = IllegalMonitorStateException.class)
+    public void testConcurrentWriteEndOtherThread() throws Throwable {
+        final GraphStore graphStore = new GraphStore();
+        graphStore.beginConcurrentWrite();
+        final Throwable[] error = new Throwable[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    graphStore.endConcurrentWrite();
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        graphStore.endConcurrentWrite();
+        throw error[0];
+    }
+
+    @Test
+    public void testIteratorClose() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.addAllNodes(Arrays.asList(GraphGenerator.generateSmallNodeList()));
+
+        NodeIterable nodes = graphStore.getNodes();
+        for (Node n : nodes) {
+            break;
+        }
+        Assert.assertEquals(graphStore.lock.getIteratorHoldCount(), 1);
+        nodes.close();
+        Assert.assertEquals(graphStore.lock.getIteratorHoldCount(), 0);
+        Assert.assertEquals(graphStore.lock.readWriteLock.getReadHoldCount(), 0);
+        graphStore.addNode(graphStore.factory.newNode("new"));
+
+        //Closing a consumed iterable is a no-op
+        nodes = graphStore.getNodes();
+        for (Node n : nodes) {
+        }
+        nodes.close();
+        Assert.assertEquals(graphStore.lock.readWriteLock.getReadHoldCount(), 0);
+    }
+
+    @Test
+    public void testIteratorCloseWrapper() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.addAllNodes(Arrays.asList(GraphGenerator.generateSmallNodeList()));
+        graphStore.addAllEdges(Arrays.asList(GraphGenerator.generateSmallEdgeList()));
+        Node node = graphStore.getEdges().toArray()[0].getSource();
+
+        NodeIterable outer = graphStore.getNodes();
+        Iterator<Node> outerIterator = outer.iterator();
+        Assert.assertTrue(outerIterator.hasNext());
+
+        EdgeIterable edges = graphStore.getEdges(node);
+        Assert.assertTrue(edges.iterator().hasNext());
+        Assert.assertEquals(graphStore.lock.readWriteLock.getReadHoldCount(), 2);
+
+        //Breaking out of the inner loop only releases the inner iterator
+        edges.doBreak();
+        edges.doBreak();
+        Assert.assertEquals(graphStore.lock.readWriteLock.getReadHoldCount(), 1);
+        while (outerIterator.hasNext()) {
+            outerIterator.next();
+        }
+        Assert.assertEquals(graphStore.lock.readWriteLock.getReadHoldCount(), 0);
+    }
+
+    @Test
+    public void testIteratorLeakDetection() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.addAllNodes(Arrays.asList(GraphGenerator.generateSmallNodeList()));
+        graphStore.lock.setIteratorLeakDetection(true);
+
+        graphStore.getNodes().iterator().hasNext();
+        Assert.assertEquals(graphStore.lock.getOpenIterators().size(), 1);
+        GraphLock.IteratorHold hold = graphStore.lock.getOpenIterators().get(0);
+        Assert.assertEquals(hold.getThreadName(), Thread.currentThread().getName());
+        Assert.assertTrue(hold.getCreationStackTrace().length > 0);
+        try {
+            graphStore.addNode(graphStore.factory.newNode("new"));
+            Assert.fail("Write lock shouldn't be acquired while an iterator is open");
+        } catch (IllegalMonitorStateException e) {
+            Assert.assertNotNull(e.getCause());
+        }
+        graphStore.getNodes().doBreak();
+        Assert.assertTrue(graphStore.lock.getOpenIterators().isEmpty());
+        Assert.assertFalse(hold.isOpen());
+    }
+
+    @Test
+    public void testCompact() {
+        GraphStore graphStore = GraphGenerator.generateSmallMultiTypeGraphStore();
+        GraphViewImpl view = graphStore.viewStore.createView();
+        view.fill();
+        Node[] nodes = graphStore.getNodes().toArray();
+        for (int i = 0; i < nodes.length; i += 2) {
+            graphStore.removeNode(nodes[i]);
+        }
+        Edge[] edges = graphStore.getEdges().toArray();
+        for (int i = 0; i < edges.length; i += 3) {
+            graphStore.removeEdge(edges[i]);
+        }
+        Edge viewEdge = graphStore.getEdges().toArray()[0];
+        view.removeEdge(viewEdge);
+
+        Node[] remainingNodes = graphStore.getNodes().toArray();
+        Set<Edge>[] outEdges = new Set[remainingNodes.length];
+        Set<Edge>[] inEdges = new Set[remainingNodes.length];
+        for (int i = 0; i < remainingNodes.length; i++) {
+            outEdges[i] = new ObjectOpenHashSet<Edge>(graphStore.getOutEdges(remainingNodes[i]).toArray());
+            inEdges[i] = new ObjectOpenHashSet<Edge>(graphStore.getInEdges(remainingNodes[i]).toArray());
+        }
+        int edgeCount = graphStore.getEdgeCount();
+
+        graphStore.compact();
+        Assert.assertEquals(graphStore.nodeStore.maxStoreId(), remainingNodes.length);
+        Assert.assertEquals(graphStore.edgeStore.maxStoreId(), edgeCount);
+        for (int i = 0; i < remainingNodes.length; i++) {
+            Node node = remainingNodes[i];
+            Assert.assertSame(graphStore.getNode(node.getId()), node);
+            Assert.assertEquals(new ObjectOpenHashSet<Edge>(graphStore.getOutEdges(node).toArray()), outEdges[i]);
+            Assert.assertEquals(new ObjectOpenHashSet<Edge>(graphStore.getInEdges(node).toArray()), inEdges[i]);
+            Assert.assertTrue(view.containsNode((NodeImpl) node));
+        }
+        for (Edge edge : graphStore.getEdges()) {
+            Assert.assertSame(graphStore.getEdge(edge.getSource(), edge.getTarget(), edge.getType()), edge);
+            Assert.assertEquals(view.containsEdge((EdgeImpl) edge), edge != viewEdge);
+        }
+        Assert.assertEquals(view.getEdgeCount(), edgeCount - 1);
+
+        NodeImpl node = (NodeImpl) graphStore.factory.newNode("new");
+        graphStore.addNode(node);
+        Assert.assertEquals(node.storeId, remainingNodes.length);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testCompactSingleWriter() {
+        GraphStore graphStore = new GraphStore(null, true);
+        graphStore.compact();
+    }
+
+    @Test
+    public void testNodesSnapshot() {
+        GraphStore graphStore = new GraphStore();
+        NodeImpl[] nodes = GraphGenerator.generateSmallNodeList();
+        graphStore.addAllNodes(Arrays.asList(nodes));
+
+        NodeIterable snapshot = graphStore.getNodesSnapshot();
+        Assert.assertEquals(graphStore.lock.readWriteLock.getReadHoldCount(), 0);
+
+        //The store can be modified while iterating
+        graphStore.removeNode(nodes[1]);
+        Set<Node> result = new ObjectOpenHashSet<Node>();
+        for (Node n : snapshot) {
+            result.add(n);
+        }
+        Assert.assertFalse(result.contains(nodes[1]));
+        Assert.assertEquals(result.size(), nodes.length - 1);
+        Assert.assertEquals(graphStore.lock.readWriteLock.getReadHoldCount(), 0);
+    }
+
+    @Test
+    public void testEdgesSnapshot() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.addAllNodes(Arrays.asList(GraphGenerator.generateSmallNodeList()));
+        EdgeImpl[] edges = GraphGenerator.generateSmallEdgeList();
+        graphStore.addAllEdges(Arrays.asList(edges));
+
+        Set<Edge> result = new ObjectOpenHashSet<Edge>();
+        for (Edge e : graphStore.getEdgesSnapshot()) {
+            graphStore.removeEdge(e);
+            result.add(e);
+        }
+        Assert.assertEquals(result.size(), edges.length);
+        Assert.assertEquals(graphStore.getEdgeCount(), 0);
+    }
+
+    @Test
+    public void testNodesSnapshotReusedSlot() {
+        GraphStore graphStore = new GraphStore();
+        NodeImpl[] nodes = GraphGenerator.generateSmallNodeList();
+        graphStore.addAllNodes(Arrays.asList(nodes));
+
+        NodeIterable snapshot = graphStore.getNodesSnapshot();
+        int storeId = nodes[1].storeId;
+        graphStore.removeNode(nodes[1]);
+        NodeImpl newNode = (NodeImpl) graphStore.factory.newNode("new");
+        graphStore.addNode(newNode);
+        Assert.assertEquals(newNode.storeId, storeId);
+
+        Set<Node> result = new ObjectOpenHashSet<Node>(snapshot.toArray());
+        Assert.assertFalse(result.contains(newNode));
+        Assert.assertFalse(result.contains(nodes[1]));
+        Assert.assertEquals(result.size(), nodes.length - 1);
+    }
+
+    @Test
+    public void testEdgesSnapshotReusedSlot() {
+        GraphStore graphStore = new GraphStore();
+        NodeImpl[] nodes = GraphGenerator.generateSmallNodeList();
+        graphStore.addAllNodes(Arrays.asList(nodes));
+        EdgeImpl[] edges = GraphGenerator.generateSmallEdgeList();
+        graphStore.addAllEdges(Arrays.asList(edges));
+
+        EdgeIterable snapshot = graphStore.getEdgesSnapshot();
+        int storeId = edges[0].storeId;
+        graphStore.removeEdge(edges[0]);
+        EdgeImpl newEdge = (EdgeImpl) graphStore.factory.newEdge(edges[0].getSource(), edges[0].getTarget(), 0);
+        graphStore.addEdge(newEdge);
+        Assert.assertEquals(newEdge.storeId, storeId);
+
+        Set<Edge> result = new ObjectOpenHashSet<Edge>(snapshot.toArray());
+        Assert.assertFalse(result.contains(newEdge));
+        Assert.assertEquals(result.size(), edges.length - 1);
+    }
+
+    @Test
+    public void testIterableWrapperOwnHold() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.addAllNodes(Arrays.asList(GraphGenerator.generateSmallNodeList()));
+
+        NodeIterable nodes = graphStore.getNodes();
+        Assert.assertTrue(nodes.iterator().hasNext());
+        NodeIterable other = graphStore.getNodeIterableWrapper(Collections.<Node>emptyList().iterator());
+        other.doBreak();
+        Assert.assertEquals(graphStore.lock.getIteratorHoldCount(), 1);
+        Assert.assertEquals(graphStore.lock.readWriteLock.getReadHoldCount(), 1);
+
+        nodes.doBreak();
+        Assert.assertEquals(graphStore.lock.getIteratorHoldCount(), 0);
+        Assert.assertEquals(graphStore.lock.readWriteLock.getReadHoldCount(), 0);
+    }
+
+    @Test
+    public void testSnapshotView() {
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+
+        Edge edge = graphStore.getEdges().toArray()[0];
+        GraphViewImpl view = graphStore.viewStore.createView();
+        view.addNode(edge.getSource());
+        view.addNode(edge.getTarget());
+        view.addEdge(edge);
+        DirectedSubgraph graph = graphStore.viewStore.getDirectedGraph(view);
+
+        Assert.assertEquals(graph.getNodesSnapshot().toArray().length, 2);
+        Edge[] viewEdges = graph.getEdgesSnapshot().toArray();
+        Assert.assertEquals(viewEdges.length, 1);
+        Assert.assertSame(viewEdges[0], edge);
+        Assert.assertEquals(graphStore.lock.readWriteLock.getReadHoldCount(), 0);
+    }
+
     private void testBasicStoreEquals(GraphStore graphStore, BasicGraphStore basicGraphStore) {
         BasicGraphStore.BasicEdgeStore basicEdgeStore = basicGraphStore.edgeStore;
         BasicGraphStore.BasicNodeStore basicNodeStore = basicGraphStore.nodeStore;
@@ -541,4 +1211,19 @@ public class GraphStoreTest {
         }
         Assert.assertEquals(s2.size(), 0);
     }
+
+    private static void addNodeInThread(final GraphStore store, final String id) {
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                store.addNode(store.factory.newNode(id));
+            }
+        });
+        writer.start();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
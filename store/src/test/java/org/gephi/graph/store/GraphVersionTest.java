@@ -15,6 +15,8 @@
  */
 package org.gephi.graph.store;
 
+import org.gephi.attribute.api.Column;
+import org.gephi.attribute.api.Origin;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Node;
 import org.testng.Assert;
@@ -30,35 +32,88 @@ public class GraphVersionTest {
     public void testDefaultGraphVersion() {
         GraphVersion graphVersion = new GraphVersion(null);
 
-        Assert.assertEquals(graphVersion.nodeVersion, Integer.MIN_VALUE + 1);
-        Assert.assertEquals(graphVersion.edgeVersion, Integer.MIN_VALUE + 1);
+        Assert.assertEquals(graphVersion.nodeVersion, 0l);
+        Assert.assertEquals(graphVersion.edgeVersion, 0l);
+        Assert.assertEquals(graphVersion.getStamp(), 0l);
 
-        int nv = graphVersion.incrementAndGetNodeVersion();
-        int ev = graphVersion.incrementAndGetEdgeVersion();
+        long nv = graphVersion.incrementAndGetNodeVersion();
+        long ev = graphVersion.incrementAndGetEdgeVersion();
 
-        Assert.assertEquals(nv, Integer.MIN_VALUE + 2);
-        Assert.assertEquals(ev, Integer.MIN_VALUE + 2);
+        Assert.assertEquals(nv, 1l);
+        Assert.assertEquals(ev, 1l);
+        Assert.assertEquals(graphVersion.getStamp(), 2l);
     }
 
     @Test
-    public void testInfiniteLoop() {
+    public void testNoOverflow() {
         GraphVersion graphVersion = new GraphVersion(null);
-        graphVersion.nodeVersion = Integer.MAX_VALUE - 1;
-        graphVersion.edgeVersion = Integer.MAX_VALUE - 1;
+        graphVersion.nodeVersion = Integer.MAX_VALUE;
+        graphVersion.edgeVersion = Integer.MAX_VALUE;
 
-        int nv = graphVersion.incrementAndGetNodeVersion();
-        int ev = graphVersion.incrementAndGetEdgeVersion();
+        long nv = graphVersion.incrementAndGetNodeVersion();
+        long ev = graphVersion.incrementAndGetEdgeVersion();
 
-        Assert.assertEquals(nv, Integer.MIN_VALUE + 1);
-        Assert.assertEquals(ev, Integer.MIN_VALUE + 1);
+        Assert.assertEquals(nv, Integer.MAX_VALUE + 1l);
+        Assert.assertEquals(ev, Integer.MAX_VALUE + 1l);
+    }
+
+    @Test
+    public void testAttributeVersion() {
+        GraphStore graphStore = new GraphStore();
+        Column column = new ColumnImpl("age", Integer.class, "Age", null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(column);
+        NodeImpl node = new NodeImpl("0", graphStore);
+        graphStore.addNode(node);
+        long nodeVersion = graphStore.version.nodeVersion;
+        long stamp = graphStore.version.getStamp();
+
+        node.setAttribute(column, 1);
+
+        Assert.assertEquals(graphStore.version.getAttributeVersion(), 1l);
+        Assert.assertEquals(graphStore.version.nodeVersion, nodeVersion);
+        Assert.assertEquals(graphStore.version.getStamp(), stamp + 1);
+    }
+
+    @Test
+    public void testViewAttributeVersion() {
+        GraphStore graphStore = new GraphStore();
+        Column column = new ColumnImpl("age", Integer.class, "Age", null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(column);
+        NodeImpl n1 = new NodeImpl("0", graphStore);
+        NodeImpl n2 = new NodeImpl("1", graphStore);
+        graphStore.addNode(n1);
+        graphStore.addNode(n2);
+        GraphViewImpl view = graphStore.viewStore.createView();
+        view.addNode(n1);
+
+        n2.setAttribute(column, 1);
+        Assert.assertEquals(view.version.getAttributeVersion(), 0l);
+
+        n1.setAttribute(column, 1);
+        Assert.assertEquals(view.version.getAttributeVersion(), 1l);
+        Assert.assertEquals(graphStore.version.getAttributeVersion(), 2l);
+    }
+
+    @Test
+    public void testPropertyChangeKeepsVersion() {
+        GraphStore graphStore = new GraphStore();
+        NodeImpl node = new NodeImpl("0", graphStore);
+        graphStore.addNode(node);
+        long stamp = graphStore.version.getStamp();
+        graphStore.createGraphObserver(graphStore, true);
+
+        node.setX(1f);
+
+        Assert.assertEquals(graphStore.version.getAttributeVersion(), 0l);
+        Assert.assertEquals(graphStore.version.getStamp(), stamp);
     }
 
     @Test
     public void testAddNode() {
         GraphStore graphStore = new GraphStore();
         NodeImpl[] nodes = GraphGenerator.generateNodeList(1);
-        int nodeVersion = graphStore.version.nodeVersion;
-        int edgeVersion = graphStore.version.edgeVersion;
+        long nodeVersion = graphStore.version.nodeVersion;
+        long edgeVersion = graphStore.version.edgeVersion;
         graphStore.addNode(nodes[0]);
 
         Assert.assertEquals(graphStore.version.nodeVersion, nodeVersion + 1);
@@ -69,8 +124,8 @@ public class GraphVersionTest {
     public void testRemoveNode() {
         GraphStore graphStore = new GraphStore();
         NodeImpl[] nodes = GraphGenerator.generateNodeList(1);
-        int nodeVersion = graphStore.version.nodeVersion;
-        int edgeVersion = graphStore.version.edgeVersion;
+        long nodeVersion = graphStore.version.nodeVersion;
+        long edgeVersion = graphStore.version.edgeVersion;
         graphStore.addNode(nodes[0]);
         graphStore.removeNode(nodes[0]);
 
@@ -82,8 +137,8 @@ public class GraphVersionTest {
     public void testClear() {
         GraphStore graphStore = new GraphStore();
         NodeImpl[] nodes = GraphGenerator.generateNodeList(1);
-        int nodeVersion = graphStore.version.nodeVersion;
-        int edgeVersion = graphStore.version.edgeVersion;
+        long nodeVersion = graphStore.version.nodeVersion;
+        long edgeVersion = graphStore.version.edgeVersion;
         graphStore.addNode(nodes[0]);
         graphStore.clear();
 
@@ -94,8 +149,8 @@ public class GraphVersionTest {
     @Test
     public void testClearWithEdges() {
         GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
-        int nodeVersion = graphStore.version.nodeVersion;
-        int edgeVersion = graphStore.version.edgeVersion;
+        long nodeVersion = graphStore.version.nodeVersion;
+        long edgeVersion = graphStore.version.edgeVersion;
         graphStore.clear();
 
         Assert.assertEquals(graphStore.version.nodeVersion, nodeVersion + 1);
@@ -109,8 +164,8 @@ public class GraphVersionTest {
         EdgeImpl edge = new EdgeImpl("0", graphStore, nodes[0], nodes[1], 0, 1.0, true);
         graphStore.addNode(nodes[0]);
         graphStore.addNode(nodes[1]);
-        int edgeVersion = graphStore.version.edgeVersion;
-        int nodeVersion = graphStore.version.nodeVersion;
+        long edgeVersion = graphStore.version.edgeVersion;
+        long nodeVersion = graphStore.version.nodeVersion;
 
         graphStore.addEdge(edge);
 
@@ -121,8 +176,8 @@ public class GraphVersionTest {
     @Test
     public void testRemoveEdge() {
         GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
-        int edgeVersion = graphStore.version.edgeVersion;
-        int nodeVersion = graphStore.version.nodeVersion;
+        long edgeVersion = graphStore.version.edgeVersion;
+        long nodeVersion = graphStore.version.nodeVersion;
         graphStore.removeEdge(graphStore.getEdges().toArray()[0]);
 
         Assert.assertEquals(graphStore.version.edgeVersion, edgeVersion + 1);
@@ -132,8 +187,8 @@ public class GraphVersionTest {
     @Test
     public void testClearEdges() {
         GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
-        int edgeVersion = graphStore.version.edgeVersion;
-        int nodeVersion = graphStore.version.nodeVersion;
+        long edgeVersion = graphStore.version.edgeVersion;
+        long nodeVersion = graphStore.version.nodeVersion;
         graphStore.clearEdges();
 
         Assert.assertEquals(graphStore.version.edgeVersion, edgeVersion + 1);
@@ -147,20 +202,20 @@ public class GraphVersionTest {
 
         Assert.assertNotNull(view.version);
         Assert.assertNotSame(view.version, graphStore.version);
-        Assert.assertEquals(view.version.nodeVersion, Integer.MIN_VALUE + 1);
-        Assert.assertEquals(view.version.edgeVersion, Integer.MIN_VALUE + 1);
+        Assert.assertEquals(view.version.nodeVersion, 0l);
+        Assert.assertEquals(view.version.edgeVersion, 0l);
     }
 
     @Test
     public void testViewAddNode() {
         GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
-        int edgeGraphVersion = graphStore.version.edgeVersion;
-        int nodeGraphVersion = graphStore.version.nodeVersion;
+        long edgeGraphVersion = graphStore.version.edgeVersion;
+        long nodeGraphVersion = graphStore.version.nodeVersion;
         Node[] nodes = graphStore.getNodes().toArray();
 
         GraphViewImpl view = graphStore.viewStore.createView();
-        int edgeVersion = view.version.edgeVersion;
-        int nodeVersion = view.version.nodeVersion;
+        long edgeVersion = view.version.edgeVersion;
+        long nodeVersion = view.version.nodeVersion;
 
         view.addNode(nodes[0]);
 
@@ -174,13 +229,13 @@ public class GraphVersionTest {
     @Test
     public void testViewRemoveNode() {
         GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
-        int edgeGraphVersion = graphStore.version.edgeVersion;
-        int nodeGraphVersion = graphStore.version.nodeVersion;
+        long edgeGraphVersion = graphStore.version.edgeVersion;
+        long nodeGraphVersion = graphStore.version.nodeVersion;
         Node[] nodes = graphStore.getNodes().toArray();
 
         GraphViewImpl view = graphStore.viewStore.createView();
-        int edgeVersion = view.version.edgeVersion;
-        int nodeVersion = view.version.nodeVersion;
+        long edgeVersion = view.version.edgeVersion;
+        long nodeVersion = view.version.nodeVersion;
 
         view.addNode(nodes[0]);
         view.removeNode(nodes[0]);
@@ -195,13 +250,13 @@ public class GraphVersionTest {
     @Test
     public void testViewAddEdge() {
         GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
-        int edgeGraphVersion = graphStore.version.edgeVersion;
-        int nodeGraphVersion = graphStore.version.nodeVersion;
+        long edgeGraphVersion = graphStore.version.edgeVersion;
+        long nodeGraphVersion = graphStore.version.nodeVersion;
         Edge[] edges = graphStore.getEdges().toArray();
 
         GraphViewImpl view = graphStore.viewStore.createView();
-        int edgeVersion = view.version.edgeVersion;
-        int nodeVersion = view.version.nodeVersion;
+        long edgeVersion = view.version.edgeVersion;
+        long nodeVersion = view.version.nodeVersion;
 
         view.addNode(edges[0].getSource());
         view.addNode(edges[0].getTarget());
@@ -217,15 +272,15 @@ public class GraphVersionTest {
     @Test
     public void testViewRemoveEdge() {
         GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
-        int edgeGraphVersion = graphStore.version.edgeVersion;
-        int nodeGraphVersion = graphStore.version.nodeVersion;
+        long edgeGraphVersion = graphStore.version.edgeVersion;
+        long nodeGraphVersion = graphStore.version.nodeVersion;
         Edge[] edges = graphStore.getEdges().toArray();
 
         GraphViewImpl view = graphStore.viewStore.createView();
         view.fill();
 
-        int edgeVersion = view.version.edgeVersion;
-        int nodeVersion = view.version.nodeVersion;
+        long edgeVersion = view.version.edgeVersion;
+        long nodeVersion = view.version.nodeVersion;
 
         view.removeEdge(edges[0]);
 
@@ -241,8 +296,8 @@ public class GraphVersionTest {
         GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
 
         GraphViewImpl view = graphStore.viewStore.createView();
-        int edgeVersion = view.version.edgeVersion;
-        int nodeVersion = view.version.nodeVersion;
+        long edgeVersion = view.version.edgeVersion;
+        long nodeVersion = view.version.nodeVersion;
         view.clear();
 
         Assert.assertEquals(view.version.edgeVersion, edgeVersion);
@@ -268,8 +323,8 @@ public class GraphVersionTest {
         GraphViewImpl view = graphStore.viewStore.createView();
         view.fill();
 
-        int edgeVersion = view.version.edgeVersion;
-        int nodeVersion = view.version.nodeVersion;
+        long edgeVersion = view.version.edgeVersion;
+        long nodeVersion = view.version.nodeVersion;
 
         Node node = graphStore.getNodes().toArray()[0];
         int degree = graphStore.getDegree(node);
@@ -285,8 +340,8 @@ public class GraphVersionTest {
         GraphViewImpl view = graphStore.viewStore.createView();
         view.fill();
 
-        int edgeVersion = view.version.edgeVersion;
-        int nodeVersion = view.version.nodeVersion;
+        long edgeVersion = view.version.edgeVersion;
+        long nodeVersion = view.version.nodeVersion;
 
         Edge edge = graphStore.getEdges().toArray()[0];
         graphStore.removeEdge(edge);
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.io.File;
+import java.io.IOException;
+import org.gephi.attribute.api.Column;
+import org.gephi.attribute.api.Origin;
+import org.gephi.attribute.time.TimestampDoubleSet;
+import org.gephi.graph.api.Node;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author mbastian
+ */
+public class LazyAttributeLoaderTest {
+
+    @Test
+    public void testLoadOnAccess() throws IOException, ClassNotFoundException {
+        GraphStore l = readLazy(generateGraphStore(), Long.MAX_VALUE);
+        Column age = l.nodeColumnStore.getColumn("age");
+        Column city = l.nodeColumnStore.getColumn("city");
+        LazyAttributeLoader loader = l.nodeColumnStore.attributeLoader;
+        Assert.assertNotNull(loader);
+        Assert.assertSame(l.edgeColumnStore.attributeLoader, loader);
+        Assert.assertFalse(loader.isLoaded(l.nodeColumnStore, age.getIndex()));
+        Assert.assertFalse(loader.isLoaded(l.nodeColumnStore, city.getIndex()));
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(l.getNode(String.valueOf(i)).getAttribute(age), i % 10);
+        }
+        Assert.assertTrue(loader.isLoaded(l.nodeColumnStore, age.getIndex()));
+        Assert.assertFalse(loader.isLoaded(l.nodeColumnStore, city.getIndex()));
+        Assert.assertTrue(loader.getLoadedBytes() > 0);
+
+        Assert.assertEquals(l.getNode("3").getAttribute(city), "c3");
+        Assert.assertNull(l.getNode("4").getAttribute(city));
+        Assert.assertEquals(l.getEdge("7").getAttribute(l.edgeColumnStore.getColumn("kind")), "k1");
+    }
+
+    @Test
+    public void testLabel() throws IOException, ClassNotFoundException {
+        GraphStore l = readLazy(generateGraphStore(), Long.MAX_VALUE);
+
+        Assert.assertEquals(l.getNode("5").getLabel(), "n5");
+        Assert.assertTrue(l.nodeColumnStore.attributeLoader.isLoaded(l.nodeColumnStore, GraphStoreConfiguration.ELEMENT_LABEL_INDEX));
+    }
+
+    @Test
+    public void testIndex() throws IOException, ClassNotFoundException {
+        GraphStore l = readLazy(generateGraphStore(), Long.MAX_VALUE);
+        Column age = l.nodeColumnStore.getColumn("age");
+
+        Assert.assertEquals(l.nodeColumnStore.indexStore.mainIndex.count(age, 3), 10);
+        Assert.assertFalse(l.nodeColumnStore.attributeLoader.isLoaded(l.nodeColumnStore, l.nodeColumnStore.getColumnIndex("city")));
+
+        l.getNode("3").setAttribute(age, 4);
+        Assert.assertEquals(l.nodeColumnStore.indexStore.mainIndex.count(age, 3), 9);
+        Assert.assertEquals(l.nodeColumnStore.indexStore.mainIndex.count(age, 4), 11);
+    }
+
+    @Test
+    public void testIndexRemovedNode() throws IOException, ClassNotFoundException {
+        GraphStore l = readLazy(generateGraphStore(), Long.MAX_VALUE);
+        Column age = l.nodeColumnStore.getColumn("age");
+        l.removeNode(l.getNode("3"));
+
+        Assert.assertEquals(l.nodeColumnStore.indexStore.mainIndex.count(age, 3), 9);
+    }
+
+    @Test
+    public void testMemoryBudget() throws IOException, ClassNotFoundException {
+        GraphStore l = readLazy(generateGraphStore(), 0);
+        Column age = l.nodeColumnStore.getColumn("age");
+        Column city = l.nodeColumnStore.getColumn("city");
+        LazyAttributeLoader loader = l.nodeColumnStore.attributeLoader;
+
+        Assert.assertEquals(l.getNode("3").getAttribute(age), 3);
+        Assert.assertTrue(loader.isLoaded(l.nodeColumnStore, age.getIndex()));
+        Assert.assertEquals(l.getNode("3").getAttribute(city), "c3");
+        Assert.assertTrue(loader.isLoaded(l.nodeColumnStore, city.getIndex()));
+        Assert.assertFalse(loader.isLoaded(l.nodeColumnStore, age.getIndex()));
+        Assert.assertNull(l.getNode("3").attributes[age.getIndex()]);
+
+        Assert.assertEquals(l.getNode("13").getAttribute(age), 3);
+        Assert.assertFalse(loader.isLoaded(l.nodeColumnStore, city.getIndex()));
+        Assert.assertEquals(l.nodeColumnStore.indexStore.mainIndex.count(age, 3), 10);
+    }
+
+    @Test
+    public void testSetAttributePins() throws IOException, ClassNotFoundException {
+        GraphStore l = readLazy(generateGraphStore(), 0);
+        Column age = l.nodeColumnStore.getColumn("age");
+        Column city = l.nodeColumnStore.getColumn("city");
+        LazyAttributeLoader loader = l.nodeColumnStore.attributeLoader;
+
+        l.getNode("3").setAttribute(city, "paris");
+        Assert.assertEquals(l.getNode("1").getAttribute(age), 1);
+        Assert.assertTrue(loader.isLoaded(l.nodeColumnStore, city.getIndex()));
+        Assert.assertEquals(l.getNode("3").getAttribute(city), "paris");
+        Assert.assertEquals(l.getNode("5").getAttribute(city), "c5");
+    }
+
+    @Test
+    public void testDynamicColumnsLoaded() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = generateGraphStore();
+        Column weight = new ColumnImpl("weight", TimestampDoubleSet.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(weight);
+        graphStore.getNode("1").setAttribute(weight, 2.0, 1.0);
+
+        GraphStore l = readLazy(graphStore, Long.MAX_VALUE);
+        Column lWeight = l.nodeColumnStore.getColumn("weight");
+        Assert.assertTrue(l.nodeColumnStore.attributeLoader.isLoaded(l.nodeColumnStore, lWeight.getIndex()));
+        Assert.assertNotNull(l.getNode("1").attributes[lWeight.getIndex()]);
+        Assert.assertEquals(l.timestampStore.size(), 1);
+    }
+
+    @Test
+    public void testGetAttributesPinsAll() throws IOException, ClassNotFoundException {
+        GraphStore l = readLazy(generateGraphStore(), Long.MAX_VALUE);
+        LazyAttributeLoader loader = l.nodeColumnStore.attributeLoader;
+
+        Object[] attributes = l.getNode("3").getAttributes();
+        Assert.assertEquals(attributes[l.nodeColumnStore.getColumnIndex("city")], "c3");
+        Assert.assertTrue(loader.isLoaded(l.nodeColumnStore, l.nodeColumnStore.getColumnIndex("age")));
+        Assert.assertSame(l.edgeColumnStore.attributeLoader, loader);
+
+        l.getEdges().toArray()[0].getAttributes();
+        Assert.assertNull(l.nodeColumnStore.attributeLoader);
+        Assert.assertNull(l.edgeColumnStore.attributeLoader);
+        Assert.assertEquals(l.getNode("3").getAttribute("city"), "c3");
+    }
+
+    @Test
+    public void testRemoveColumn() throws IOException, ClassNotFoundException {
+        GraphStore l = readLazy(generateGraphStore(), Long.MAX_VALUE);
+        Column city = l.nodeColumnStore.getColumn("city");
+        int index = city.getIndex();
+        l.nodeColumnStore.removeColumn(city);
+        Column country = new ColumnImpl("country", String.class, null, null, Origin.DATA, false);
+        l.nodeColumnStore.addColumn(country);
+
+        Assert.assertEquals(country.getIndex(), index);
+        Assert.assertNull(l.getNode("3").getAttribute(country));
+    }
+
+    @Test
+    public void testClear() throws IOException, ClassNotFoundException {
+        GraphStore l = readLazy(generateGraphStore(), Long.MAX_VALUE);
+
+        l.clear();
+        Assert.assertNull(l.nodeColumnStore.attributeLoader);
+        Assert.assertNull(l.edgeColumnStore.attributeLoader);
+    }
+
+    @Test
+    public void testWrite() throws IOException, ClassNotFoundException {
+        GraphStore l = readLazy(generateGraphStore(), 0);
+        File file = createTempFile();
+        new ColumnarSerialization(l).write(file);
+        Assert.assertNull(l.nodeColumnStore.attributeLoader);
+
+        GraphStore r = new ColumnarSerialization(new GraphStore()).read(file);
+        Column age = r.nodeColumnStore.getColumn("age");
+        Column city = r.nodeColumnStore.getColumn("city");
+        for (int i = 0; i < 100; i++) {
+            NodeImpl node = r.getNode(String.valueOf(i));
+            Assert.assertEquals(node.getAttribute(age), i % 10);
+            Assert.assertEquals(node.getAttribute(city), i % 2 == 1 ? "c" + i : null);
+        }
+    }
+
+    @Test
+    public void testLoadedNullWithoutMonitor() throws Exception {
+        final GraphStore l = readLazy(generateGraphStore(), Long.MAX_VALUE);
+        final Column city = l.nodeColumnStore.getColumn("city");
+        LazyAttributeLoader loader = l.nodeColumnStore.attributeLoader;
+        Assert.assertEquals(l.getNode("3").getAttribute(city), "c3");
+
+        final Object[] result = new Object[]{"unread"};
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = l.getNode("4").getAttribute(city);
+            }
+        });
+        synchronized (loader) {
+            reader.start();
+            reader.join(10000);
+            Assert.assertFalse(reader.isAlive());
+        }
+        Assert.assertNull(result[0]);
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final GraphStore l = readLazy(generateGraphStore(), 0);
+        final Column age = l.nodeColumnStore.getColumn("age");
+        final Column city = l.nodeColumnStore.getColumn("city");
+        final Throwable[] error = new Throwable[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int r = 0; r < 50; r++) {
+                            for (int i = 0; i < 100; i++) {
+                                Node node = l.getNode(String.valueOf(i));
+                                Assert.assertEquals(node.getAttribute(age), i % 10);
+                                Assert.assertEquals(node.getAttribute(city), i % 2 == 1 ? "c" + i : null);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error[0] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(error[0]);
+        Assert.assertEquals(l.nodeColumnStore.indexStore.mainIndex.count(age, 3), 10);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeBudget() throws IOException, ClassNotFoundException {
+        File file = createTempFile();
+        new ColumnarSerialization(generateGraphStore()).write(file);
+        new ColumnarSerialization(new GraphStore()).readLazy(file, -1);
+    }
+
+    //Utility
+    private GraphStore readLazy(GraphStore graphStore, long memoryBudget) throws IOException, ClassNotFoundException {
+        File file = createTempFile();
+        new ColumnarSerialization(graphStore).write(file);
+
+        GraphStore l = new GraphStore();
+        return new ColumnarSerialization(l).readLazy(file, memoryBudget);
+    }
+
+    private File createTempFile() throws IOException {
+        File file = File.createTempFile("graphstore", ".gsc");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private GraphStore generateGraphStore() {
+        GraphStore graphStore = new GraphStore();
+        Column age = new ColumnImpl("age", Integer.class, null, null, Origin.DATA, true);
+        Column city = new ColumnImpl("city", String.class, null, null, Origin.DATA, false);
+        Column kind = new ColumnImpl("kind", String.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(age);
+        graphStore.nodeColumnStore.addColumn(city);
+        graphStore.edgeColumnStore.addColumn(kind);
+        NodeImpl[] nodes = new NodeImpl[100];
+        for (int i = 0; i < nodes.length; i++) {
+            NodeImpl node = new NodeImpl(String.valueOf(i), graphStore);
+            graphStore.addNode(node);
+            node.setLabel("n" + i);
+            node.setAttribute(age, i % 10);
+            if (i % 2 == 1) {
+                node.setAttribute(city, "c" + i);
+            }
+            nodes[i] = node;
+        }
+        for (int i = 0; i < 50; i++) {
+            EdgeImpl edge = new EdgeImpl(String.valueOf(i), graphStore, nodes[i], nodes[i + 1], 0, 1.0, true);
+            graphStore.addEdge(edge);
+            edge.setAttribute(kind, "k" + (i % 3));
+        }
+        return graphStore;
+    }
+}
@@ -478,6 +478,40 @@ public class NodeStoreTest {
         Assert.assertEquals(nodeStore.garbageSize, 0);
     }
 
+    @Test
+    public void testCompact() {
+        NodeStore nodeStore = new NodeStore();
+        NodeImpl[] nodes = GraphGenerator.generateLargeNodeList();
+        nodeStore.addAll(Arrays.asList(nodes));
+        List<NodeImpl> removed = removeSomeNodes(nodeStore, 0.7f);
+        NodeImpl[] remaining = nodeStore.toArray();
+        int[] previousIds = new int[remaining.length];
+        for (int i = 0; i < remaining.length; i++) {
+            previousIds[i] = remaining[i].storeId;
+        }
+
+        int[] storeIdMap = nodeStore.compact();
+        Assert.assertEquals(nodeStore.garbageSize, 0);
+        Assert.assertEquals(nodeStore.size(), remaining.length);
+        Assert.assertEquals(nodeStore.maxStoreId(), remaining.length);
+        Assert.assertEquals(nodeStore.blocksCount, (int) Math.ceil(remaining.length / (double) GraphStoreConfiguration.NODESTORE_BLOCK_SIZE));
+        for (int i = 0; i < remaining.length; i++) {
+            NodeImpl node = remaining[i];
+            Assert.assertEquals(node.storeId, i);
+            Assert.assertEquals(storeIdMap[previousIds[i]], i);
+            Assert.assertSame(nodeStore.get(i), node);
+            Assert.assertSame(nodeStore.get(node.getId()), node);
+        }
+        for (NodeImpl node : removed) {
+            Assert.assertFalse(nodeStore.contains(node));
+        }
+
+        Assert.assertNull(nodeStore.compact());
+        NodeImpl node = new NodeImpl("new");
+        nodeStore.add(node);
+        Assert.assertEquals(node.storeId, remaining.length);
+    }
+
     @Test
     public void testDictionary() {
         NodeStore nodeStore = new NodeStore();
@@ -16,14 +16,28 @@
 package org.gephi.graph.store;
 
 import cern.colt.bitvector.BitVector;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.channels.Channels;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
+import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Origin;
+import org.gephi.attribute.time.TimestampDoubleSet;
+import org.gephi.attribute.time.TimestampSet;
+import org.gephi.attribute.time.TimestampStringSet;
 import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.utils.ChannelDataInput;
+import org.gephi.graph.utils.ChannelDataOutput;
+import org.gephi.graph.utils.DataInputOutput;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -53,6 +67,76 @@ public class SerializationTest {
         Assert.assertTrue(edgeStore.equals(l.edgeStore));
     }
 
+    @Test
+    public void testChannel() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = new GraphStore();
+        NodeImpl[] nodes = GraphGenerator.generateNodeList(5100);
+        graphStore.addAllNodes(Arrays.asList(nodes));
+        EdgeImpl[] edges = GraphGenerator.generateMixedEdgeList(graphStore.nodeStore, 9000, 0, true);
+        graphStore.addAllEdges(Arrays.asList(edges));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Serialization ser = new Serialization(graphStore);
+        ser.serializeGraphStore(Channels.newChannel(bytes));
+
+        //Same encoding as the in-memory serialization
+        byte[] buf = ser.serialize(graphStore);
+        Assert.assertTrue(bytes.size() > GraphStoreConfiguration.SERIALIZATION_BUFFER_SIZE);
+        Assert.assertEquals(bytes.toByteArray(), Arrays.copyOfRange(buf, 1, buf.length));
+
+        GraphStore l = new GraphStore();
+        new Serialization(l).deserializeGraphStore(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertTrue(graphStore.nodeStore.equals(l.nodeStore));
+        Assert.assertTrue(graphStore.edgeStore.equals(l.edgeStore));
+    }
+
+    @Test
+    public void testChannelPrimitives() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ChannelDataOutput out = new ChannelDataOutput(Channels.newChannel(bytes));
+        int count = GraphStoreConfiguration.SERIALIZATION_BUFFER_SIZE / 7;
+        byte[] block = new byte[GraphStoreConfiguration.SERIALIZATION_BUFFER_SIZE + 3];
+        Arrays.fill(block, (byte) 7);
+        for (int i = 0; i < count; i++) {
+            out.writeByte(i);
+            out.writeShort(i);
+            out.writeInt(-i);
+            out.writeLong(i * 31l);
+            out.writeDouble(i / 3.0);
+            out.writeBoolean(i % 2 == 0);
+            out.writeUTF("s" + i);
+        }
+        out.write(block);
+        out.writeInt(42);
+        //At most one buffer is pending
+        Assert.assertTrue(out.getBytesWritten() - bytes.size() <= GraphStoreConfiguration.SERIALIZATION_BUFFER_SIZE);
+        out.close();
+        Assert.assertEquals(out.getBytesWritten(), (long) bytes.size());
+
+        ChannelDataInput in = new ChannelDataInput(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(in.readByte(), (byte) i);
+            Assert.assertEquals(in.readShort(), (short) i);
+            Assert.assertEquals(in.readInt(), -i);
+            Assert.assertEquals(in.readLong(), i * 31l);
+            Assert.assertEquals(in.readDouble(), i / 3.0, 0.0);
+            Assert.assertEquals(in.readBoolean(), i % 2 == 0);
+            Assert.assertEquals(in.readUTF(), "s" + i);
+        }
+        byte[] readBlock = new byte[block.length];
+        in.readFully(readBlock);
+        Assert.assertEquals(readBlock, block);
+        Assert.assertEquals(in.readInt(), 42);
+        Assert.assertEquals(in.getBytesRead(), (long) bytes.size());
+        in.close();
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testChannelEnd() throws IOException {
+        ChannelDataInput in = new ChannelDataInput(Channels.newChannel(new ByteArrayInputStream(new byte[3])));
+        in.readInt();
+    }
+
     @Test
     public void testEdgeStoreMultipleTypes() throws IOException, ClassNotFoundException {
         GraphStore graphStore = new GraphStore();
@@ -273,6 +357,146 @@ public class SerializationTest {
         Assert.assertEquals(view, l);
     }
 
+    @Test
+    public void testGraphViewSparse() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = new GraphStore();
+        graphStore.addAllNodes(Arrays.asList(GraphGenerator.generateNodeList(100000)));
+        GraphViewImpl view = graphStore.viewStore.createView();
+        view.addNode(graphStore.getNode("5"));
+        view.addNode(graphStore.getNode("99999"));
+
+        Serialization ser = new Serialization(graphStore);
+        byte[] buf = ser.serialize(view);
+        Assert.assertTrue(buf.length < 100);
+
+        ser = new Serialization(new GraphStore());
+        Assert.assertEquals(view, ser.deserialize(buf));
+    }
+
+    @Test
+    public void testGraphViewDense() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallMultiTypeGraphStore();
+        GraphViewImpl view = graphStore.viewStore.createView();
+        view.fill();
+        int i = 0;
+        for (Node node : graphStore.getNodes().toArray()) {
+            if (i++ % 2 == 0) {
+                view.removeNode(node);
+            }
+        }
+
+        Serialization ser = new Serialization(graphStore);
+        byte[] buf = ser.serialize(view);
+
+        ser = new Serialization(new GraphStore());
+        Assert.assertEquals(view, ser.deserialize(buf));
+    }
+
+    @Test
+    public void testViewStoreRemapIds() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallMultiTypeGraphStore();
+        Edge[] edges = graphStore.getEdges().toArray();
+        for (int i = 0; i < edges.length / 2; i++) {
+            graphStore.removeEdge(edges[i]);
+        }
+        Node[] nodes = graphStore.getNodes().toArray();
+        for (int i = 0; i < nodes.length; i += 3) {
+            graphStore.removeNode(nodes[i]);
+        }
+        GraphViewImpl view = graphStore.viewStore.createView();
+        for (Edge edge : graphStore.getEdges().toArray()) {
+            if (((EdgeImpl) edge).getStoreId() % 2 == 0) {
+                view.addNode(edge.getSource());
+                view.addNode(edge.getTarget());
+                view.addEdge(edge);
+            }
+        }
+
+        Serialization ser = new Serialization(graphStore);
+        byte[] buf = ser.serialize(graphStore);
+
+        GraphStore l = new GraphStore();
+        ser = new Serialization(l);
+        ser.deserialize(buf);
+        GraphViewImpl lView = l.viewStore.views[view.storeId];
+        Assert.assertEquals(lView.getNodeCount(), view.getNodeCount());
+        Assert.assertEquals(lView.getEdgeCount(), view.getEdgeCount());
+        for (Node node : graphStore.getNodes().toArray()) {
+            Assert.assertEquals(lView.containsNode(l.getNode(node.getId())), view.containsNode((NodeImpl) node));
+        }
+        for (Edge edge : graphStore.getEdges().toArray()) {
+            Assert.assertEquals(lView.containsEdge(l.getEdge(edge.getId())), view.containsEdge((EdgeImpl) edge));
+        }
+    }
+
+    @Test
+    public void testBaselineFormat() throws IOException, ClassNotFoundException {
+        //Written by the serialization before format versions were introduced
+        DataInputStream is = new DataInputStream(getClass().getResourceAsStream("baseline.graphstore"));
+        GraphStore l = new GraphStore();
+        Serialization ser = new Serialization(l);
+        try {
+            ser.deserializeGraphStore(is);
+        } finally {
+            is.close();
+        }
+        Assert.assertEquals(ser.formatVersion, Serialization.VERSION_BASELINE);
+        Assert.assertEquals(l.getNodeCount(), 6);
+        Assert.assertEquals(l.getEdgeCount(), 5);
+        Assert.assertNull(l.getNode("removed"));
+        Column age = l.nodeColumnStore.getColumn("age");
+        for (int i = 0; i < 6; i++) {
+            Node node = l.getNode(String.valueOf(i));
+            Assert.assertEquals(node.getAttribute(age), i * 10);
+            Assert.assertEquals(node.getLabel(), "n" + i);
+        }
+        for (int i = 0; i < 5; i++) {
+            Edge edge = l.getEdge("e" + i);
+            Assert.assertSame(edge.getSource(), l.getNode(String.valueOf(i)));
+            Assert.assertEquals(edge.getWeight(), i + 1.0);
+        }
+
+        //The view holds nodes 2, 3 and 4 and the edge between 2 and 3
+        GraphViewImpl view = null;
+        for (GraphViewImpl v : l.viewStore.views) {
+            if (v != null) {
+                view = v;
+            }
+        }
+        Assert.assertNotNull(view);
+        Assert.assertEquals(view.getNodeCount(), 3);
+        Assert.assertEquals(view.getEdgeCount(), 1);
+        for (int i = 0; i < 6; i++) {
+            Assert.assertEquals(view.containsNode((NodeImpl) l.getNode(String.valueOf(i))), i >= 2 && i <= 4);
+        }
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(view.containsEdge((EdgeImpl) l.getEdge("e" + i)), i == 2);
+        }
+    }
+
+    @Test
+    public void testFormatVersion() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        DataInputOutput out = new DataInputOutput();
+        new Serialization(graphStore).serializeGraphStore(out);
+        byte[] buf = out.toByteArray();
+        Assert.assertEquals(buf[0] & 0xFF, Serialization.FORMAT_VERSION);
+        Assert.assertEquals(buf[1], Serialization.VERSION);
+
+        Serialization ser = new Serialization(new GraphStore());
+        ser.deserializeGraphStore(new DataInputOutput(buf));
+        Assert.assertEquals(ser.formatVersion, Serialization.VERSION);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testUnsupportedFormatVersion() throws IOException, ClassNotFoundException {
+        DataInputOutput out = new DataInputOutput();
+        new Serialization(GraphGenerator.generateSmallGraphStore()).serializeGraphStore(out);
+        byte[] buf = out.toByteArray();
+        buf[1] = (byte) (Serialization.VERSION + 1);
+        new Serialization(new GraphStore()).deserializeGraphStore(new DataInputOutput(buf));
+    }
+
     @Test
     public void testBitVector() throws IOException, ClassNotFoundException {
         BitVector bitVector = new BitVector(10);
@@ -607,4 +831,266 @@ public class SerializationTest {
         Assert.assertEquals(Locale.SIMPLIFIED_CHINESE, ser.deserialize(ser.serialize(Locale.SIMPLIFIED_CHINESE)));
 
     }
+
+    @Test
+    public void testColumnStringDictionary() throws IOException, ClassNotFoundException {
+        Object[] values = new Object[]{"foo", null, "bar", "foo", "", "foo"};
+        Assert.assertEquals(serializeColumn(values)[0], (byte) Serialization.ENCODING_STRING_DICTIONARY);
+        Assert.assertEquals(deserializeColumn(values), values);
+    }
+
+    @Test
+    public void testColumnInts() throws IOException, ClassNotFoundException {
+        Object[] values = new Object[]{0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, null, 42};
+        Assert.assertEquals(serializeColumn(values)[0], (byte) Serialization.ENCODING_INT_PACKED);
+        Assert.assertEquals(deserializeColumn(values), values);
+    }
+
+    @Test
+    public void testColumnLongs() throws IOException, ClassNotFoundException {
+        Object[] values = new Object[]{0l, -1l, Long.MAX_VALUE, Long.MIN_VALUE, 42l};
+        Assert.assertEquals(serializeColumn(values)[0], (byte) Serialization.ENCODING_LONG_PACKED);
+        Assert.assertEquals(deserializeColumn(values), values);
+    }
+
+    @Test
+    public void testColumnDoubles() throws IOException, ClassNotFoundException {
+        Object[] values = new Object[]{0.5, null, -1.0, Double.NaN, Double.MAX_VALUE};
+        Assert.assertEquals(serializeColumn(values)[0], (byte) Serialization.ENCODING_DOUBLE_BLOCK);
+        Assert.assertEquals(deserializeColumn(values), values);
+
+        Object[] floats = new Object[]{0.5f, -1f, null};
+        Assert.assertEquals(serializeColumn(floats)[0], (byte) Serialization.ENCODING_FLOAT_BLOCK);
+        Assert.assertEquals(deserializeColumn(floats), floats);
+    }
+
+    @Test
+    public void testColumnBooleans() throws IOException, ClassNotFoundException {
+        Object[] values = new Object[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 7 == 0 ? null : i % 3 == 0;
+        }
+        Assert.assertEquals(serializeColumn(values)[0], (byte) Serialization.ENCODING_BOOLEAN_BITS);
+        Assert.assertEquals(deserializeColumn(values), values);
+    }
+
+    @Test
+    public void testColumnNullAndMixed() throws IOException, ClassNotFoundException {
+        Object[] nulls = new Object[3];
+        Assert.assertEquals(serializeColumn(nulls).length, 1);
+        Assert.assertEquals(deserializeColumn(nulls), nulls);
+
+        Object[] mixed = new Object[]{"foo", 1, null, 2.0, (short) 3};
+        Assert.assertEquals(serializeColumn(mixed)[0], (byte) Serialization.ENCODING_OBJECT);
+        Assert.assertEquals(deserializeColumn(mixed), mixed);
+
+        Assert.assertEquals(deserializeColumn(new Object[0]), new Object[0]);
+    }
+
+    @Test
+    public void testColumnTimestampSets() throws IOException, ClassNotFoundException {
+        Object[] values = new Object[]{new TimestampSet(new int[]{1, 5, 9}), null, new TimestampSet(new int[0])};
+        Assert.assertEquals(serializeColumn(values)[0], (byte) Serialization.ENCODING_TIMESTAMP_SET);
+        Object[] res = deserializeColumn(values);
+        Assert.assertEquals(((TimestampSet) res[0]).getTimestamps(), new int[]{1, 5, 9});
+        Assert.assertNull(res[1]);
+        Assert.assertTrue(((TimestampSet) res[2]).isEmpty());
+    }
+
+    @Test
+    public void testColumnTimestampValueSets() throws IOException, ClassNotFoundException {
+        TimestampDoubleSet set1 = new TimestampDoubleSet();
+        set1.putDouble(0, 1.0);
+        set1.putDouble(3, 2.0);
+        TimestampDoubleSet set2 = new TimestampDoubleSet();
+        set2.putDouble(2, -1.0);
+        Object[] values = new Object[]{set1, null, set2};
+        Assert.assertEquals(serializeColumn(values)[0], (byte) Serialization.ENCODING_TIMESTAMP_VALUE_SET);
+        Object[] res = deserializeColumn(values);
+        Assert.assertNull(res[1]);
+        for (int i : new int[]{0, 2}) {
+            TimestampDoubleSet expected = (TimestampDoubleSet) values[i];
+            TimestampDoubleSet actual = (TimestampDoubleSet) res[i];
+            Assert.assertEquals(actual.getTimestamps(), expected.getTimestamps());
+            Assert.assertEquals(actual.toDoubleArray(), expected.toDoubleArray());
+        }
+
+        TimestampStringSet strings = new TimestampStringSet();
+        strings.put(1, "foo");
+        strings.put(4, "foo");
+        Object[] stringValues = new Object[]{strings};
+        TimestampStringSet actual = (TimestampStringSet) deserializeColumn(stringValues)[0];
+        Assert.assertEquals(actual.getTimestamps(), new int[]{1, 4});
+        Assert.assertEquals(actual.toArray(), new String[]{"foo", "foo"});
+    }
+
+    @Test
+    public void testStringTable() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = GraphGenerator.generateSmallGraphStore();
+        Column city = new ColumnImpl("city", String.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(city);
+        for (Node node : graphStore.getNodes().toArray()) {
+            node.setLabel((String) node.getId());
+            node.setAttribute(city, "Paris");
+        }
+
+        DataInputOutput out = new DataInputOutput();
+        new Serialization(graphStore).serializeGraphStore(out);
+
+        GraphStore l = new GraphStore();
+        new Serialization(l).deserializeGraphStore(new DataInputOutput(out.toByteArray()));
+        Assert.assertTrue(graphStore.nodeStore.equals(l.nodeStore));
+        Assert.assertTrue(graphStore.edgeStore.equals(l.edgeStore));
+
+        Column lCity = l.nodeColumnStore.getColumn("city");
+        Object sharedCity = null;
+        for (Node node : l.getNodes().toArray()) {
+            Assert.assertEquals(node.getLabel(), node.getId());
+            Assert.assertSame(node.getLabel(), node.getId());
+            Assert.assertEquals(node.getAttribute(lCity), "Paris");
+            if (sharedCity != null) {
+                Assert.assertSame(node.getAttribute(lCity), sharedCity);
+            }
+            sharedCity = node.getAttribute(lCity);
+        }
+    }
+
+    @Test
+    public void testAttributeColumns() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = new GraphStore();
+        Column age = new ColumnImpl("age", Integer.class, null, null, Origin.DATA, true);
+        Column weight = new ColumnImpl("weight", TimestampDoubleSet.class, null, null, Origin.DATA, false);
+        Column strength = new ColumnImpl("strength", Double.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(age);
+        graphStore.nodeColumnStore.addColumn(weight);
+        graphStore.edgeColumnStore.addColumn(strength);
+        NodeImpl[] nodes = new NodeImpl[10];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new NodeImpl(String.valueOf(i), graphStore);
+            graphStore.addNode(nodes[i]);
+            nodes[i].setAttribute(age, i % 2);
+            if (i % 3 != 0) {
+                nodes[i].setAttribute(weight, (double) i, 1.0);
+            }
+        }
+        EdgeImpl edge = new EdgeImpl("e", graphStore, nodes[0], nodes[1], 0, 1.0, true);
+        graphStore.addEdge(edge);
+        edge.setAttribute(strength, 0.5);
+
+        DataInputOutput out = new DataInputOutput();
+        new Serialization(graphStore).serializeGraphStore(out);
+        GraphStore l = new GraphStore();
+        new Serialization(l).deserializeGraphStore(new DataInputOutput(out.toByteArray()));
+
+        Column lAge = l.nodeColumnStore.getColumn("age");
+        Column lWeight = l.nodeColumnStore.getColumn("weight");
+        for (int i = 0; i < nodes.length; i++) {
+            NodeImpl node = l.getNode(String.valueOf(i));
+            Assert.assertEquals(node.getAttribute(lAge), i % 2);
+            TimestampDoubleSet set = (TimestampDoubleSet) node.getAttribute(lWeight);
+            if (i % 3 == 0) {
+                Assert.assertNull(set);
+            } else {
+                Assert.assertEquals(set.getDouble(l.timestampStore.getTimestampIndex(1.0)), (double) i, 0.0);
+            }
+        }
+        Assert.assertEquals(l.getEdge("e").getAttribute(l.edgeColumnStore.getColumn("strength")), 0.5);
+
+        //Attributes are set before the elements are added, so they're indexed
+        IndexImpl index = l.nodeColumnStore.indexStore.getIndex(l);
+        Assert.assertEquals(index.count(lAge, 1), 5);
+    }
+
+    @Test
+    public void testElementKeepsAttributesOutsideGraphStore() throws IOException, ClassNotFoundException {
+        GraphStore graphStore = new GraphStore();
+        Column age = new ColumnImpl("age", Integer.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(age);
+        NodeImpl node = new NodeImpl("Foo", graphStore);
+        node.setAttribute(age, 7);
+
+        //Element records only leave their attributes to the columns within a graph store
+        Serialization ser = new Serialization(graphStore);
+        DataInputOutput out = new DataInputOutput();
+        ser.serializeGraphStore(new DataInputOutput());
+        ser.serialize(out, node);
+        NodeImpl l = (NodeImpl) new Serialization(new GraphStore()).deserialize(new DataInputOutput(out.toByteArray()));
+        Assert.assertTrue(Arrays.deepEquals(l.attributes, node.attributes));
+    }
+
+    @Test
+    public void testStringRef() throws IOException, ClassNotFoundException {
+        Serialization ser = new Serialization(null);
+        DataInputOutput out = new DataInputOutput();
+        ser.serializeStringTable(out, new String[]{"foo", "bar"});
+        ser.serialize(out, "bar");
+        ser.serialize(out, "baz");
+        ser.setStringTable(null);
+
+        DataInputOutput in = new DataInputOutput(out.toByteArray());
+        Serialization l = new Serialization(null);
+        String[] table = (String[]) l.deserialize(in);
+        Assert.assertEquals(table, new String[]{"foo", "bar"});
+        Object bar = l.deserialize(in);
+        Assert.assertEquals(bar, "bar");
+        Assert.assertSame(bar, table[1]);
+        Assert.assertEquals(l.deserialize(in), "baz");
+        Assert.assertEquals(in.available(), 0);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testStringRefWithoutTable() throws IOException, ClassNotFoundException {
+        Serialization ser = new Serialization(null);
+        DataInputOutput out = new DataInputOutput();
+        ser.serializeStringTable(out, new String[]{"foo"});
+        ser.serialize(out, "foo");
+        byte[] buf = out.toByteArray();
+
+        //Skip the table
+        DataInputOutput tableOut = new DataInputOutput();
+        new Serialization(null).serializeStringTable(tableOut, new String[]{"foo"});
+        int tableLength = tableOut.toByteArray().length;
+        new Serialization(null).deserialize(new DataInputOutput(Arrays.copyOfRange(buf, tableLength, buf.length)));
+    }
+
+    @Test
+    public void testSharedStrings() {
+        Object2IntOpenHashMap<String> counts = new Object2IntOpenHashMap<String>();
+        counts.put("a", 1);
+        counts.put("b", 3);
+        counts.put("c", 2);
+        counts.put("d", 3);
+        Assert.assertEquals(Serialization.getSharedStrings(counts), new String[]{"b", "d", "c"});
+    }
+
+    @Test
+    public void testColumnValuesWithStringTable() throws IOException, ClassNotFoundException {
+        Object[] values = new Object[]{"foo", "bar", "foo", null, "qux", "bar"};
+        Serialization ser = new Serialization(null);
+        DataInputOutput out = new DataInputOutput();
+        ser.serializeStringTable(out, new String[]{"bar"});
+        ser.serializeColumnValues(out, values);
+
+        DataInputOutput in = new DataInputOutput(out.toByteArray());
+        Serialization l = new Serialization(null);
+        String[] table = (String[]) l.deserialize(in);
+        Object[] res = l.deserializeColumnValues(in, values.length);
+        Assert.assertEquals(res, values);
+        Assert.assertSame(res[1], table[0]);
+        Assert.assertSame(res[5], table[0]);
+        Assert.assertEquals(in.available(), 0);
+    }
+
+    private byte[] serializeColumn(Object[] values) throws IOException {
+        DataInputOutput out = new DataInputOutput();
+        new Serialization(null).serializeColumnValues(out, values);
+        return out.toByteArray();
+    }
+
+    private Object[] deserializeColumn(Object[] values) throws IOException, ClassNotFoundException {
+        DataInputOutput in = new DataInputOutput(serializeColumn(values));
+        Object[] res = new Serialization(null).deserializeColumnValues(in, values.length);
+        Assert.assertEquals(in.available(), 0);
+        return res;
+    }
 }
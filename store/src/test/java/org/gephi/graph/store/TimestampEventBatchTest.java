@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import org.gephi.attribute.api.Column;
+import org.gephi.attribute.api.Origin;
+import org.gephi.attribute.time.TimestampDoubleSet;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author mbastian
+ */
+public class TimestampEventBatchTest {
+
+    @Test
+    public void testEmpty() {
+        GraphStore graphStore = new GraphStore();
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore);
+        Assert.assertEquals(batch.flush(), 0);
+        Assert.assertEquals(graphStore.getNodeCount(), 0);
+    }
+
+    @Test
+    public void testNodeEvents() {
+        GraphStore graphStore = new GraphStore();
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore);
+        batch.addNodeEvent(2.0, "a");
+        batch.addNodeEvent(1.0, "a");
+        batch.addNodeEvent(1.0, "b");
+        Assert.assertEquals(batch.size(), 3);
+        Assert.assertEquals(graphStore.getNodeCount(), 0);
+
+        Assert.assertEquals(batch.flush(), 3);
+        Assert.assertEquals(batch.size(), 0);
+        Assert.assertEquals(graphStore.getNodeCount(), 2);
+        Assert.assertEquals(graphStore.getNode("a").getTimestamps(), new double[]{1.0, 2.0});
+        Assert.assertEquals(graphStore.getNode("b").getTimestamps(), new double[]{1.0});
+        Assert.assertTrue(graphStore.timestampStore.isSorted());
+    }
+
+    @Test
+    public void testEdgeEvents() {
+        GraphStore graphStore = new GraphStore();
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore);
+        batch.addEdgeEvent(1.0, "a", "b");
+        batch.addEdgeEvent(2.0, "a", "b");
+        batch.addEdgeEvent(2.0, "b", "c");
+        batch.flush();
+
+        Assert.assertEquals(graphStore.getNodeCount(), 3);
+        Assert.assertEquals(graphStore.getEdgeCount(), 2);
+        EdgeImpl edge = graphStore.edgeStore.get(graphStore.getNode("a"), graphStore.getNode("b"), 0);
+        Assert.assertNotNull(edge);
+        Assert.assertEquals(edge.getTimestamps(), new double[]{1.0, 2.0});
+    }
+
+    @Test
+    public void testExistingElements() {
+        GraphStore graphStore = new GraphStore();
+        NodeImpl n0 = (NodeImpl) graphStore.factory.newNode("a");
+        NodeImpl n1 = (NodeImpl) graphStore.factory.newNode("b");
+        graphStore.addNode(n0);
+        graphStore.addNode(n1);
+        EdgeImpl edge = (EdgeImpl) graphStore.factory.newEdge(n0, n1, 0);
+        graphStore.addEdge(edge);
+
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore);
+        batch.addEdgeEvent(1.0, "a", "b");
+        batch.flush();
+
+        Assert.assertEquals(graphStore.getEdgeCount(), 1);
+        Assert.assertEquals(edge.getTimestamps(), new double[]{1.0});
+    }
+
+    @Test
+    public void testAutoFlush() {
+        GraphStore graphStore = new GraphStore();
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore, 2);
+        batch.addNodeEvent(1.0, "a");
+        Assert.assertEquals(graphStore.getNodeCount(), 0);
+        batch.addNodeEvent(1.0, "b");
+        Assert.assertEquals(graphStore.getNodeCount(), 2);
+        Assert.assertEquals(batch.size(), 0);
+    }
+
+    @Test
+    public void testAttributes() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.edgeColumnStore.addColumn(new ColumnImpl("weight", TimestampDoubleSet.class, null, null, Origin.DATA, false));
+        Column column = graphStore.edgeColumnStore.getColumn("weight");
+
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore);
+        batch.addEdgeEvent(1.0, "a", "b", 0, new Column[]{column}, new Object[]{5.0});
+        batch.addEdgeEvent(2.0, "a", "b", 0, new Column[]{column}, new Object[]{6.0});
+        batch.flush();
+
+        EdgeImpl edge = graphStore.edgeStore.get(graphStore.getNode("a"), graphStore.getNode("b"), 0);
+        TimestampDoubleSet set = (TimestampDoubleSet) edge.getAttribute(column);
+        Assert.assertNotNull(set);
+        Assert.assertEquals(set.getDouble(graphStore.timestampStore.getTimestampIndex(1.0)), 5.0);
+        Assert.assertEquals(set.getDouble(graphStore.timestampStore.getTimestampIndex(2.0)), 6.0);
+    }
+
+    @Test
+    public void testStaticColumn() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.nodeColumnStore.addColumn(new ColumnImpl("age", Integer.class, null, null, Origin.DATA, false));
+        Column column = graphStore.nodeColumnStore.getColumn("age");
+
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore);
+        batch.addNodeEvent(1.0, "a");
+        try {
+            batch.addNodeEvent(2.0, "b", new Column[]{column}, new Object[]{5});
+            Assert.fail("Static columns should be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.assertEquals(batch.size(), 1);
+        Assert.assertEquals(batch.flush(), 1);
+        Assert.assertNull(graphStore.getNode("b"));
+    }
+
+    @Test
+    public void testWrongValueType() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.nodeColumnStore.addColumn(new ColumnImpl("weight", TimestampDoubleSet.class, null, null, Origin.DATA, false));
+        Column column = graphStore.nodeColumnStore.getColumn("weight");
+
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore);
+        try {
+            batch.addNodeEvent(1.0, "a", new Column[]{column}, new Object[]{"foo"});
+            Assert.fail("Values of the wrong type should be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.assertEquals(batch.size(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEdgeColumnOnNode() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.edgeColumnStore.addColumn(new ColumnImpl("weight", TimestampDoubleSet.class, null, null, Origin.DATA, false));
+        Column column = graphStore.edgeColumnStore.getColumn("weight");
+
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore);
+        batch.addNodeEvent(1.0, "a", new Column[]{column}, new Object[]{1.0});
+    }
+
+    @Test
+    public void testFailedFlushKeepsEvents() {
+        GraphStore graphStore = new GraphStore();
+        graphStore.nodeColumnStore.addColumn(new ColumnImpl("weight", TimestampDoubleSet.class, null, null, Origin.DATA, false));
+        Column column = graphStore.nodeColumnStore.getColumn("weight");
+
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore);
+        batch.addNodeEvent(3.0, "c");
+        batch.addNodeEvent(2.0, "b", new Column[]{column}, new Object[]{1.0});
+        batch.addNodeEvent(1.0, "a");
+        graphStore.nodeColumnStore.removeColumn(column);
+        try {
+            batch.flush();
+            Assert.fail("The removed column should fail the flush");
+        } catch (RuntimeException e) {
+        }
+
+        Assert.assertEquals(batch.size(), 2);
+        Assert.assertEquals(graphStore.getNode("a").getTimestamps(), new double[]{1.0});
+        Assert.assertEquals(graphStore.getNode("c").getTimestamps().length, 0);
+
+        batch.clear();
+        Assert.assertEquals(batch.size(), 0);
+        Assert.assertEquals(batch.flush(), 0);
+    }
+
+    @Test
+    public void testNoRetention() {
+        GraphStore graphStore = new GraphStore();
+        Assert.assertFalse(graphStore.timestampStore.hasRetention());
+        graphStore.timestampStore.setRetentionCount(1);
+        Assert.assertTrue(graphStore.timestampStore.hasRetention());
+
+        TimestampEventBatch batch = new TimestampEventBatch(graphStore);
+        batch.addNodeEvent(1.0, "a");
+        batch.addNodeEvent(2.0, "a");
+        batch.flush();
+        Assert.assertEquals(graphStore.getNode("a").getTimestamps(), new double[]{2.0});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNaN() {
+        TimestampEventBatch batch = new TimestampEventBatch(new GraphStore());
+        batch.addNodeEvent(Double.NaN, "a");
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void testNullId() {
+        TimestampEventBatch batch = new TimestampEventBatch(new GraphStore());
+        batch.addEdgeEvent(1.0, "a", null);
+    }
+}
@@ -19,6 +19,12 @@ import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectSet;
 import java.util.ArrayList;
 import java.util.List;
+import org.gephi.attribute.api.Column;
+import org.gephi.attribute.api.Origin;
+import org.gephi.attribute.api.TimestampIndex;
+import org.gephi.attribute.time.TimestampDoubleSet;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.NodeIterable;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -187,6 +193,33 @@ public class TimestampStoreTest {
         Assert.assertEquals(getArrayFromIterable(store.mainIndex.getNodes(1.0))[0], nodeImpl);
     }
 
+    @Test
+    public void testGetElementsReleaseLock() {
+        GraphLock lock = new GraphLock();
+        TimestampStore store = new TimestampStore(lock);
+
+        NodeImpl n0 = new NodeImpl(0);
+        NodeImpl n1 = new NodeImpl(1);
+        store.addElement(1.0, n0);
+        store.addElement(1.0, n1);
+
+        Assert.assertEquals(getArrayFromIterable(store.mainIndex.getNodes(1.0)).length, 2);
+        Assert.assertEquals(lock.readWriteLock.getReadHoldCount(), 0);
+
+        store.mainIndex.getNodes(0.0, 2.0);
+        Assert.assertEquals(lock.readWriteLock.getReadHoldCount(), 0);
+
+        store.mainIndex.getNodes(2.0);
+        Assert.assertEquals(lock.readWriteLock.getReadHoldCount(), 0);
+
+        NodeIterable nodes = store.mainIndex.getNodes(1.0);
+        nodes.iterator().hasNext();
+        Assert.assertEquals(lock.readWriteLock.getReadHoldCount(), 1);
+        nodes.close();
+        nodes.close();
+        Assert.assertEquals(lock.readWriteLock.getReadHoldCount(), 0);
+    }
+
     @Test
     public void testRemoveElement() {
         TimestampStore store = new TimestampStore(null);
@@ -401,6 +434,418 @@ public class TimestampStoreTest {
         Assert.assertEquals(store.size(), 0);
     }
 
+    @Test
+    public void testSortedAppend() {
+        TimestampStore store = new TimestampStore(null);
+
+        store.addTimestamp(1.0);
+        store.addTimestamp(2.0);
+        store.addTimestamp(3.0);
+        Assert.assertTrue(store.isSorted());
+
+        store.removeTimestamp(2.0);
+        store.addTimestamp(2.5);
+        Assert.assertTrue(store.isSorted());
+    }
+
+    @Test
+    public void testUnsorted() {
+        TimestampStore store = new TimestampStore(null);
+
+        store.addTimestamp(2.0);
+        store.addTimestamp(1.0);
+        Assert.assertFalse(store.isSorted());
+    }
+
+    @Test
+    public void testUnsortedGarbage() {
+        TimestampStore store = new TimestampStore(null);
+
+        store.addTimestamp(1.0);
+        store.addTimestamp(2.0);
+        store.addTimestamp(3.0);
+        store.removeTimestamp(2.0);
+        store.addTimestamp(6.0);
+        Assert.assertFalse(store.isSorted());
+    }
+
+    @Test
+    public void testCompact() {
+        TimestampStore store = new TimestampStore(null);
+
+        store.addTimestamp(3.0);
+        store.addTimestamp(1.0);
+        store.addTimestamp(4.0);
+        store.addTimestamp(2.0);
+        store.removeTimestamp(4.0);
+        store.compact();
+
+        Assert.assertTrue(store.isSorted());
+        Assert.assertTrue(store.garbageQueue.isEmpty());
+        Assert.assertEquals(store.size(), 3);
+        Assert.assertEquals(store.getTimestampIndex(1.0), 0);
+        Assert.assertEquals(store.getTimestampIndex(2.0), 1);
+        Assert.assertEquals(store.getTimestampIndex(3.0), 2);
+        Assert.assertEquals(store.getTimestamps(new int[]{0, 1, 2}), new double[]{1.0, 2.0, 3.0});
+    }
+
+    @Test
+    public void testCompactIndex() {
+        TimestampStore store = new TimestampStore(null);
+
+        NodeImpl n0 = new NodeImpl(0);
+        NodeImpl n1 = new NodeImpl(1);
+
+        store.addElement(2.0, n0);
+        store.addElement(1.0, n1);
+        store.compact();
+
+        ObjectSet r1 = new ObjectOpenHashSet(getArrayFromIterable(store.mainIndex.getNodes(1.0)));
+        Assert.assertTrue(r1.contains(n1));
+        Assert.assertEquals(r1.size(), 1);
+
+        ObjectSet r2 = new ObjectOpenHashSet(getArrayFromIterable(store.mainIndex.getNodes(1.5, 2.0)));
+        Assert.assertTrue(r2.contains(n0));
+        Assert.assertEquals(r2.size(), 1);
+    }
+
+    @Test
+    public void testCompactElements() {
+        GraphStore graphStore = new GraphStore();
+        TimestampStore store = graphStore.timestampStore;
+
+        NodeImpl n0 = (NodeImpl) graphStore.factory.newNode(0);
+        NodeImpl n1 = (NodeImpl) graphStore.factory.newNode(1);
+        graphStore.addNode(n0);
+        graphStore.addNode(n1);
+        n0.addTimestamp(3.0);
+        n1.addTimestamp(2.0);
+        n0.addTimestamp(1.0);
+
+        Assert.assertFalse(store.isSorted());
+        store.compact();
+
+        Assert.assertEquals(n0.getTimestamps(), new double[]{1.0, 3.0});
+        Assert.assertEquals(n1.getTimestamps(), new double[]{2.0});
+        Assert.assertEquals(n0.getTimestampSet().getTimestamps(), new int[]{0, 2});
+
+        ObjectSet r = new ObjectOpenHashSet(getArrayFromIterable(store.mainIndex.getNodes(1.5, 2.5)));
+        Assert.assertTrue(r.contains(n1));
+        Assert.assertEquals(r.size(), 1);
+    }
+
+    @Test
+    public void testViewIndexIncremental() {
+        GraphStore graphStore = new GraphStore();
+        TimestampStore store = graphStore.timestampStore;
+        NodeImpl[] nodes = new NodeImpl[4];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = (NodeImpl) graphStore.factory.newNode(i);
+            graphStore.addNode(nodes[i]);
+            nodes[i].addTimestamp(i);
+        }
+
+        GraphViewImpl view = graphStore.viewStore.createView();
+        view.addNode(nodes[0]);
+        TimestampIndex index = store.getIndex(graphStore.viewStore.getDirectedGraph(view));
+        Assert.assertTrue(index instanceof TimestampIndexImpl);
+        Assert.assertEquals(getArrayFromIterable(index.getNodes(0.0, 3.0)), new Object[]{nodes[0]});
+
+        view.addNode(nodes[1]);
+        ObjectSet r = new ObjectOpenHashSet(getArrayFromIterable(index.getNodes(0.0, 3.0)));
+        Assert.assertEquals(r.size(), 2);
+        Assert.assertTrue(r.contains(nodes[1]));
+        Assert.assertEquals(index.getMaxTimestamp(), 1.0);
+
+        view.removeNode(nodes[0]);
+        Assert.assertEquals(getArrayFromIterable(index.getNodes(0.0, 3.0)), new Object[]{nodes[1]});
+        Assert.assertEquals(index.getMinTimestamp(), 1.0);
+
+        view.clear();
+        Assert.assertFalse(index.getNodes(0.0, 3.0).iterator().hasNext());
+    }
+
+    @Test
+    public void testViewIndexDense() {
+        GraphStore graphStore = new GraphStore();
+        TimestampStore store = graphStore.timestampStore;
+        NodeImpl[] nodes = new NodeImpl[4];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = (NodeImpl) graphStore.factory.newNode(i);
+            graphStore.addNode(nodes[i]);
+            nodes[i].addTimestamp(i);
+        }
+
+        GraphViewImpl view = graphStore.viewStore.createView();
+        view.fill();
+        view.removeNode(nodes[3]);
+        TimestampIndex index = store.getIndex(graphStore.viewStore.getDirectedGraph(view));
+        Assert.assertTrue(index instanceof TimestampIndexViewDecorator);
+        Assert.assertTrue(store.viewIndexes.isEmpty());
+
+        ObjectSet r = new ObjectOpenHashSet(getArrayFromIterable(index.getNodes(0.0, 3.0)));
+        Assert.assertEquals(r.size(), 3);
+        Assert.assertFalse(r.contains(nodes[3]));
+        Assert.assertEquals(index.getMinTimestamp(), 0.0);
+        Assert.assertEquals(index.getMaxTimestamp(), 2.0);
+        Assert.assertFalse(index.getNodes(3.0).iterator().hasNext());
+    }
+
+    @Test
+    public void testSnapshotView() {
+        GraphStore graphStore = new GraphStore();
+        TimestampStore store = graphStore.timestampStore;
+        NodeImpl n0 = (NodeImpl) graphStore.factory.newNode(0);
+        NodeImpl n1 = (NodeImpl) graphStore.factory.newNode(1);
+        NodeImpl n2 = (NodeImpl) graphStore.factory.newNode(2);
+        graphStore.addNode(n0);
+        graphStore.addNode(n1);
+        graphStore.addNode(n2);
+        EdgeImpl e0 = (EdgeImpl) graphStore.factory.newEdge(n0, n1, 0, 1.0, true);
+        EdgeImpl e1 = (EdgeImpl) graphStore.factory.newEdge(n1, n2, 0, 1.0, true);
+        graphStore.addEdge(e0);
+        graphStore.addEdge(e1);
+        n0.addTimestamp(1.0);
+        n1.addTimestamp(1.0);
+        n1.addTimestamp(2.0);
+        n2.addTimestamp(2.0);
+
+        GraphViewImpl view = (GraphViewImpl) store.mainIndex.getSnapshotView(1.0);
+        Assert.assertTrue(view.isNodeView());
+        Assert.assertEquals(view.getNodeCount(), 2);
+        Assert.assertEquals(view.getEdgeCount(), 1);
+        Assert.assertTrue(view.containsEdge(e0));
+
+        view = (GraphViewImpl) store.mainIndex.getSnapshotView(1.0, 2.0);
+        Assert.assertEquals(view.getNodeCount(), 3);
+        Assert.assertEquals(view.getEdgeCount(), 2);
+    }
+
+    @Test
+    public void testSnapshotViewCache() {
+        GraphStore graphStore = new GraphStore();
+        TimestampStore store = graphStore.timestampStore;
+        NodeImpl n0 = (NodeImpl) graphStore.factory.newNode(0);
+        NodeImpl n1 = (NodeImpl) graphStore.factory.newNode(1);
+        graphStore.addNode(n0);
+        graphStore.addNode(n1);
+        n0.addTimestamp(1.0);
+
+        GraphViewImpl view = (GraphViewImpl) store.mainIndex.getSnapshotView(1.0);
+        Object entry = store.snapshots.values().iterator().next();
+        GraphViewImpl sameView = (GraphViewImpl) store.mainIndex.getSnapshotView(1.0);
+        Assert.assertNotSame(sameView, view);
+        Assert.assertTrue(sameView.containsNode(n0));
+        Assert.assertEquals(sameView.getNodeCount(), 1);
+        Assert.assertSame(store.snapshots.values().iterator().next(), entry);
+
+        n1.addTimestamp(1.0);
+        GraphViewImpl newView = (GraphViewImpl) store.mainIndex.getSnapshotView(1.0);
+        Assert.assertEquals(newView.getNodeCount(), 2);
+        Assert.assertEquals(view.getNodeCount(), 1);
+        Assert.assertTrue(graphStore.viewStore.contains(view));
+        Assert.assertTrue(graphStore.viewStore.contains(sameView));
+
+        //Views returned to the caller survive the cache eviction
+        for (int i = 0; i < GraphStoreConfiguration.TIMESTAMP_SNAPSHOT_CACHE_SIZE * 2; i++) {
+            graphStore.viewStore.destroyView(store.mainIndex.getSnapshotView(i, i + 1.0));
+        }
+        Assert.assertTrue(graphStore.viewStore.contains(view));
+        Assert.assertTrue(graphStore.viewStore.contains(newView));
+        Assert.assertTrue(store.snapshots.size() <= GraphStoreConfiguration.TIMESTAMP_SNAPSHOT_CACHE_SIZE);
+
+        graphStore.viewStore.destroyView(view);
+        Assert.assertTrue(sameView.containsNode(n0));
+    }
+
+    @Test
+    public void testSnapshotViewCompact() {
+        GraphStore graphStore = new GraphStore();
+        TimestampStore store = graphStore.timestampStore;
+        NodeImpl[] nodes = new NodeImpl[4];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = (NodeImpl) graphStore.factory.newNode(i);
+            graphStore.addNode(nodes[i]);
+        }
+        nodes[2].addTimestamp(1.0);
+        nodes[3].addTimestamp(1.0);
+
+        graphStore.removeNode(nodes[0]);
+        graphStore.removeNode(nodes[1]);
+
+        //The graph doesn't change between the calls, only its store ids
+        GraphViewImpl view = (GraphViewImpl) store.mainIndex.getSnapshotView(1.0);
+        Assert.assertEquals(view.getNodeCount(), 2);
+        graphStore.compact();
+        Assert.assertEquals(nodes[2].storeId, 0);
+
+        GraphViewImpl compacted = (GraphViewImpl) store.mainIndex.getSnapshotView(1.0);
+        Assert.assertEquals(compacted.getNodeCount(), 2);
+        Assert.assertTrue(compacted.containsNode(nodes[2]));
+        Assert.assertTrue(compacted.containsNode(nodes[3]));
+        Assert.assertTrue(view.containsNode(nodes[2]));
+        Assert.assertTrue(view.containsNode(nodes[3]));
+    }
+
+    @Test(expectedExceptions = IllegalMonitorStateException.class)
+    public void testSnapshotViewReadLock() {
+        GraphStore graphStore = new GraphStore();
+        TimestampStore store = graphStore.timestampStore;
+        NodeImpl n0 = (NodeImpl) graphStore.factory.newNode(0);
+        graphStore.addNode(n0);
+        n0.addTimestamp(1.0);
+
+        //Registering the view needs the write lock
+        graphStore.readLock();
+        try {
+            store.mainIndex.getSnapshotView(1.0);
+        } finally {
+            graphStore.readUnlock();
+        }
+    }
+
+    @Test
+    public void testSnapshotViewOwnership() {
+        GraphStore graphStore = new GraphStore();
+        TimestampStore store = graphStore.timestampStore;
+        NodeImpl n0 = (NodeImpl) graphStore.factory.newNode(0);
+        NodeImpl n1 = (NodeImpl) graphStore.factory.newNode(1);
+        graphStore.addNode(n0);
+        graphStore.addNode(n1);
+        n0.addTimestamp(1.0);
+        n1.addTimestamp(1.0);
+
+        GraphViewImpl view = (GraphViewImpl) store.mainIndex.getSnapshotView(1.0);
+        Assert.assertTrue(graphStore.viewStore.contains(view));
+
+        //Registered views follow the graph
+        graphStore.removeNode(n1);
+        Assert.assertEquals(view.getNodeCount(), 1);
+
+        graphStore.viewStore.destroyView(view);
+        Assert.assertFalse(graphStore.viewStore.contains(view));
+    }
+
+    @Test
+    public void testSnapshotViewSingleWriter() throws InterruptedException {
+        final GraphStore graphStore = new GraphStore(null, true);
+        final TimestampStore store = graphStore.timestampStore;
+        NodeImpl n0 = (NodeImpl) graphStore.factory.newNode(0);
+        graphStore.addNode(n0);
+        n0.addTimestamp(1.0);
+
+        final GraphView[] view = new GraphView[1];
+        final Throwable[] error = new Throwable[1];
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    view[0] = store.mainIndex.getSnapshotView(1.0);
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        });
+        reader.start();
+        reader.join();
+        Assert.assertNull(error[0]);
+        Assert.assertTrue(graphStore.viewStore.contains(view[0]));
+        graphStore.addNode(graphStore.factory.newNode(1));
+    }
+
+    @Test
+    public void testRetentionCount() {
+        TimestampStore store = new TimestampStore(null);
+        store.addTimestamp(1.0);
+        store.addTimestamp(2.0);
+        store.addTimestamp(3.0);
+        Assert.assertFalse(store.hasExpired());
+
+        store.setRetentionCount(2);
+        Assert.assertTrue(store.hasExpired());
+        Assert.assertEquals(store.evict(), 1);
+        Assert.assertFalse(store.contains(1.0));
+        Assert.assertTrue(store.contains(2.0));
+        Assert.assertEquals(store.size(), 2);
+        Assert.assertTrue(store.garbageQueue.contains(0));
+        Assert.assertEquals(store.addTimestamp(4.0), 0);
+    }
+
+    @Test
+    public void testRetentionWindowIncremental() {
+        TimestampStore store = new TimestampStore(null);
+        for (int i = 0; i < 10; i++) {
+            store.addTimestamp(i);
+        }
+        store.setRetentionWindow(2.0);
+        Assert.assertEquals(store.evict(3), 3);
+        Assert.assertTrue(store.hasExpired());
+        Assert.assertEquals(store.evict(), 4);
+        Assert.assertFalse(store.hasExpired());
+        Assert.assertEquals(store.timestampSortedMap.firstDoubleKey(), 7.0);
+    }
+
+    @Test
+    public void testRetentionElements() {
+        GraphStore graphStore = new GraphStore();
+        TimestampStore store = graphStore.timestampStore;
+        NodeImpl n0 = (NodeImpl) graphStore.factory.newNode(0);
+        NodeImpl n1 = (NodeImpl) graphStore.factory.newNode(1);
+        graphStore.addNode(n0);
+        graphStore.addNode(n1);
+        EdgeImpl e0 = (EdgeImpl) graphStore.factory.newEdge(n0, n1, 0);
+        graphStore.addEdge(e0);
+        n0.addTimestamp(1.0);
+        n0.addTimestamp(2.0);
+        n1.addTimestamp(1.0);
+        e0.addTimestamp(1.0);
+
+        store.setRetentionCount(1);
+        Assert.assertEquals(store.evict(), 1);
+
+        Assert.assertEquals(n0.getTimestamps(), new double[]{2.0});
+        Assert.assertFalse(graphStore.contains(n1));
+        Assert.assertFalse(graphStore.contains(e0));
+        Assert.assertTrue(graphStore.contains(n0));
+        Assert.assertFalse(store.mainIndex.getNodes(1.0).iterator().hasNext());
+    }
+
+    @Test
+    public void testRetentionAttributeValues() {
+        GraphStore graphStore = new GraphStore();
+        TimestampStore store = graphStore.timestampStore;
+        Column weight = new ColumnImpl("weight", TimestampDoubleSet.class, null, null, Origin.DATA, false);
+        graphStore.nodeColumnStore.addColumn(weight);
+        NodeImpl n0 = (NodeImpl) graphStore.factory.newNode(0);
+        graphStore.addNode(n0);
+        n0.addTimestamp(2.0);
+        n0.setAttribute(weight, 1.0, 1.0);
+        n0.setAttribute(weight, 2.0, 2.0);
+
+        store.setRetentionCount(1);
+        Assert.assertEquals(store.evict(), 1);
+        TimestampDoubleSet values = (TimestampDoubleSet) n0.getAttribute(weight);
+        Assert.assertEquals(values.getTimestamps(), new int[]{store.timestampMap.get(2.0)});
+
+        //The evicted slot is reused by the new timestamp
+        store.setRetentionCount(10);
+        int index = store.getTimestampIndex(3.0);
+        Assert.assertTrue(store.garbageQueue.isEmpty());
+        Assert.assertFalse(values.contains(index));
+        Assert.assertEquals(values.toDoubleArray(), new double[]{2.0});
+    }
+
+    @Test
+    public void testGetTimestamps() {
+        TimestampStore store = new TimestampStore(null);
+
+        store.addTimestamp(1.0);
+        store.addTimestamp(2.0);
+        store.addTimestamp(3.0);
+
+        Assert.assertEquals(store.getTimestamps(new int[]{2}), new double[]{3.0});
+    }
+
     @Test
     public void testEqualsEmpty() {
         TimestampStore store1 = new TimestampStore(null);
@@ -84,6 +84,36 @@ public class TimestampValueSetTest {
         Assert.assertEquals(set.getTimestamps()[1], 2);
     }
 
+    @Test
+    public void testRemoveFirst() {
+        TimestampDoubleSet set = new TimestampDoubleSet();
+
+        set.put(1, 1.0);
+        set.put(2, 2.0);
+        set.put(3, 3.0);
+
+        set.remove(1);
+        Assert.assertEquals(set.size(), 2);
+        Assert.assertFalse(set.contains(1));
+        Assert.assertEquals(set.getDouble(2), 2.0);
+        Assert.assertEquals(set.getDouble(3), 3.0);
+    }
+
+    @Test
+    public void testTrimToSize() {
+        TimestampDoubleSet set = new TimestampDoubleSet();
+
+        set.put(1, 1.0);
+        set.put(2, 2.0);
+        set.remove(2);
+        set.trimToSize();
+
+        Assert.assertEquals(set.getTimestamps().length, 1);
+        Assert.assertEquals(set.toArray().length, 1);
+        Assert.assertFalse(set.contains(2));
+        Assert.assertEquals(set.getDouble(1), 1.0);
+    }
+
     @Test
     public void testClear() {
         TimestampDoubleSet set = new TimestampDoubleSet();
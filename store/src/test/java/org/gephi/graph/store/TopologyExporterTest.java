@@ -0,0 +1,350 @@
+/*
+ * Copyright 2012-2013 Gephi Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.gephi.graph.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import org.gephi.graph.api.Graph;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author mbastian
+ */
+public class TopologyExporterTest {
+
+    @Test
+    public void testEdgeList() {
+        GraphStore graphStore = generateGraphStore();
+        TopologyExporter exporter = new TopologyExporter(graphStore);
+
+        Assert.assertEquals(exporter.getNodeCount(), 4);
+        Assert.assertEquals(exporter.getEdgeCount(), 4);
+
+        IntBuffer sources = IntBuffer.allocate(4);
+        IntBuffer targets = IntBuffer.allocate(4);
+        DoubleBuffer weights = DoubleBuffer.allocate(4);
+        Assert.assertEquals(exporter.writeEdgeList(sources, targets, weights), 4);
+        Assert.assertEquals(sources.position(), 4);
+        Assert.assertEquals(targets.position(), 4);
+        Assert.assertEquals(weights.position(), 4);
+
+        Assert.assertEquals(sources.array(), new int[]{0, 1, 2, 3});
+        Assert.assertEquals(targets.array(), new int[]{1, 2, 0, 3});
+        Assert.assertEquals(weights.array(), new double[]{1.0, 2.0, 3.0, 4.0});
+    }
+
+    @Test
+    public void testEdgeListPosition() {
+        GraphStore graphStore = generateGraphStore();
+        TopologyExporter exporter = new TopologyExporter(graphStore);
+
+        IntBuffer sources = IntBuffer.allocate(6);
+        IntBuffer targets = IntBuffer.allocate(6);
+        sources.position(2);
+        targets.position(2);
+        exporter.writeEdgeList(sources, targets, null);
+        Assert.assertEquals(sources.position(), 6);
+        Assert.assertEquals(sources.array(), new int[]{0, 0, 0, 1, 2, 3});
+        Assert.assertEquals(targets.array(), new int[]{0, 0, 1, 2, 0, 3});
+    }
+
+    @Test
+    public void testEdgeListDirect() {
+        GraphStore graphStore = generateGraphStore();
+        TopologyExporter exporter = new TopologyExporter(graphStore);
+
+        IntBuffer sources = ByteBuffer.allocateDirect(16).order(ByteOrder.nativeOrder()).asIntBuffer();
+        IntBuffer targets = ByteBuffer.allocateDirect(16).order(ByteOrder.nativeOrder()).asIntBuffer();
+        DoubleBuffer weights = ByteBuffer.allocateDirect(32).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        exporter.writeEdgeList(sources, targets, weights);
+        Assert.assertFalse(sources.hasRemaining());
+        Assert.assertEquals(sources.get(2), 2);
+        Assert.assertEquals(targets.get(2), 0);
+        Assert.assertEquals(weights.get(3), 4.0, 0.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEdgeListTooSmall() {
+        GraphStore graphStore = generateGraphStore();
+        TopologyExporter exporter = new TopologyExporter(graphStore);
+
+        exporter.writeEdgeList(IntBuffer.allocate(4), IntBuffer.allocate(3), null);
+    }
+
+    @Test
+    public void testEdgeListRemovedNode() {
+        GraphStore graphStore = generateGraphStore();
+        graphStore.removeNode(graphStore.getNode("1"));
+        TopologyExporter exporter = new TopologyExporter(graphStore);
+
+        IntBuffer sources = IntBuffer.allocate(2);
+        IntBuffer targets = IntBuffer.allocate(2);
+        exporter.writeEdgeList(sources, targets, null);
+        Assert.assertEquals(sources.array(), new int[]{1, 2});
+        Assert.assertEquals(targets.array(), new int[]{0, 2});
+    }
+
+    @Test
+    public void testCsr() {
+        GraphStore graphStore = generateGraphStore();
+        TopologyExporter exporter = new TopologyExporter(graphStore);
+
+        IntBuffer offsets = IntBuffer.allocate(5);
+        IntBuffer indices = IntBuffer.allocate(4);
+        DoubleBuffer weights = DoubleBuffer.allocate(4);
+        Assert.assertEquals(exporter.writeCsr(offsets, indices, weights), 4);
+        Assert.assertEquals(offsets.position(), 5);
+        Assert.assertEquals(indices.position(), 4);
+
+        Assert.assertEquals(offsets.array(), new int[]{0, 1, 2, 3, 4});
+        Assert.assertEquals(indices.array(), new int[]{1, 2, 0, 3});
+        Assert.assertEquals(weights.array(), new double[]{1.0, 2.0, 3.0, 4.0});
+    }
+
+    @Test
+    public void testCsrUndirectedEdge() {
+        GraphStore graphStore = generateGraphStore();
+        NodeImpl n0 = graphStore.getNode("0");
+        NodeImpl n3 = graphStore.getNode("3");
+        graphStore.addEdge(new EdgeImpl("4", n0, n3, 0, 5.0, false));
+        TopologyExporter exporter = new TopologyExporter(graphStore);
+
+        IntBuffer offsets = IntBuffer.allocate(5);
+        IntBuffer indices = IntBuffer.allocate(6);
+        DoubleBuffer weights = DoubleBuffer.allocate(6);
+        Assert.assertEquals(exporter.writeCsr(offsets, indices, weights), 6);
+
+        Assert.assertEquals(offsets.array(), new int[]{0, 2, 3, 4, 6});
+        Assert.assertEquals(getRow(offsets, indices, 0), new int[]{1, 3});
+        Assert.assertEquals(getRow(offsets, indices, 3), new int[]{0, 3});
+        Assert.assertEquals(weights.get(0) + weights.get(1), 6.0, 0.0);
+    }
+
+    @Test
+    public void testCsrUndirectedGraph() {
+        GraphStore graphStore = generateGraphStore();
+        TopologyExporter exporter = new TopologyExporter(graphStore.undirectedDecorator);
+
+        IntBuffer offsets = IntBuffer.allocate(5);
+        IntBuffer indices = IntBuffer.allocate(7);
+        Assert.assertEquals(exporter.writeCsr(offsets, indices, null), 7);
+
+        Assert.assertEquals(offsets.array(), new int[]{0, 2, 4, 6, 7});
+        Assert.assertEquals(getRow(offsets, indices, 0), new int[]{1, 2});
+        Assert.assertEquals(getRow(offsets, indices, 1), new int[]{0, 2});
+        Assert.assertEquals(getRow(offsets, indices, 2), new int[]{0, 1});
+        Assert.assertEquals(getRow(offsets, indices, 3), new int[]{3});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCsrTooSmall() {
+        GraphStore graphStore = generateGraphStore();
+        TopologyExporter exporter = new TopologyExporter(graphStore);
+
+        exporter.writeCsr(IntBuffer.allocate(4), IntBuffer.allocate(4), null);
+    }
+
+    @Test
+    public void testView() {
+        GraphStore graphStore = generateGraphStore();
+        GraphViewImpl view = graphStore.viewStore.createView();
+        view.addNode(graphStore.getNode("1"));
+        view.addNode(graphStore.getNode("2"));
+        view.addNode(graphStore.getNode("3"));
+        view.addEdge(graphStore.getEdge("1"));
+        view.addEdge(graphStore.getEdge("3"));
+        Graph graph = graphStore.viewStore.getDirectedGraph(view);
+        TopologyExporter exporter = new TopologyExporter(graph);
+
+        Assert.assertEquals(exporter.getNodeCount(), 3);
+        Assert.assertEquals(exporter.getEdgeCount(), 2);
+
+        IntBuffer sources = IntBuffer.allocate(2);
+        IntBuffer targets = IntBuffer.allocate(2);
+        exporter.writeEdgeList(sources, targets, null);
+        Assert.assertEquals(sources.array(), new int[]{0, 2});
+        Assert.assertEquals(targets.array(), new int[]{1, 2});
+
+        IntBuffer offsets = IntBuffer.allocate(4);
+        IntBuffer indices = IntBuffer.allocate(2);
+        exporter.writeCsr(offsets, indices, null);
+        Assert.assertEquals(offsets.array(), new int[]{0, 1, 1, 2});
+        Assert.assertEquals(indices.array(), new int[]{1, 2});
+    }
+
+    @Test
+    public void testArrow() throws IOException {
+        GraphStore graphStore = generateGraphStore();
+        TopologyExporter exporter = new TopologyExporter(graphStore);
+
+        ByteBuffer file = writeArrow(exporter);
+        byte[] magic = new byte[6];
+        file.get(magic);
+        Assert.assertEquals(magic, "ARROW1".getBytes("US-ASCII"));
+        file.position(file.limit() - 6);
+        file.get(magic);
+        Assert.assertEquals(magic, "ARROW1".getBytes("US-ASCII"));
+
+        //Footer
+        int footerLength = file.getInt(file.limit() - 10);
+        int footer = file.limit() - 10 - footerLength;
+        Assert.assertEquals(file.getInt(footer - 8), 0xFFFFFFFF);
+        Assert.assertEquals(file.getInt(footer - 4), 0);
+        int footerTable = footer + file.getInt(footer);
+        Assert.assertEquals(file.getShort(getField(file, footerTable, 0)), TopologyExporter.ARROW_METADATA_VERSION);
+        assertSchema(file, getTable(file, footerTable, 1));
+        int blocks = getTable(file, footerTable, 3);
+        Assert.assertEquals(file.getInt(blocks), 1);
+        Assert.assertEquals((blocks + 4) % 8, 0);
+        int batchOffset = (int) file.getLong(blocks + 4);
+        int batchMetadataLength = file.getInt(blocks + 12);
+        long bodyLength = file.getLong(blocks + 20);
+        Assert.assertEquals(bodyLength, 16 + 16 + 32);
+
+        //Schema message
+        Assert.assertEquals(file.getInt(8), 0xFFFFFFFF);
+        int schemaMessage = 16 + file.getInt(16);
+        Assert.assertEquals(file.get(getField(file, schemaMessage, 1)), TopologyExporter.ARROW_HEADER_SCHEMA);
+        assertSchema(file, getTable(file, schemaMessage, 2));
+        Assert.assertEquals(8 + 8 + file.getInt(12), batchOffset);
+
+        //Record batch message
+        Assert.assertEquals(file.getInt(batchOffset), 0xFFFFFFFF);
+        Assert.assertEquals(file.getInt(batchOffset + 4) + 8, batchMetadataLength);
+        Assert.assertEquals(batchMetadataLength % 8, 0);
+        int message = batchOffset + 8 + file.getInt(batchOffset + 8);
+        Assert.assertEquals(file.get(getField(file, message, 1)), TopologyExporter.ARROW_HEADER_RECORD_BATCH);
+        Assert.assertEquals(file.getLong(getField(file, message, 3)), bodyLength);
+        int recordBatch = getTable(file, message, 2);
+        Assert.assertEquals(file.getLong(getField(file, recordBatch, 0)), 4l);
+        int nodes = getTable(file, recordBatch, 1);
+        Assert.assertEquals(file.getInt(nodes), 3);
+        Assert.assertEquals(file.getLong(nodes + 4), 4l);
+        Assert.assertEquals(file.getLong(nodes + 12), 0l);
+        int buffers = getTable(file, recordBatch, 2);
+        Assert.assertEquals(file.getInt(buffers), 6);
+
+        //Body
+        int body = batchOffset + batchMetadataLength;
+        long[] expectedBuffers = new long[]{0, 0, 0, 16, 16, 0, 16, 16, 32, 0, 32, 32};
+        for (int i = 0; i < expectedBuffers.length; i++) {
+            Assert.assertEquals(file.getLong(buffers + 4 + i * 8), expectedBuffers[i]);
+        }
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(file.getInt(body + i * 4), new int[]{0, 1, 2, 3}[i]);
+            Assert.assertEquals(file.getInt(body + 16 + i * 4), new int[]{1, 2, 0, 3}[i]);
+            Assert.assertEquals(file.getDouble(body + 32 + i * 8), i + 1.0, 0.0);
+        }
+        Assert.assertEquals(body + bodyLength, footer - 8);
+    }
+
+    @Test
+    public void testArrowEmpty() throws IOException {
+        GraphStore graphStore = new GraphStore();
+        TopologyExporter exporter = new TopologyExporter(graphStore);
+
+        ByteBuffer file = writeArrow(exporter);
+        int footerLength = file.getInt(file.limit() - 10);
+        int footer = file.limit() - 10 - footerLength;
+        int footerTable = footer + file.getInt(footer);
+        int blocks = getTable(file, footerTable, 3);
+        Assert.assertEquals(file.getLong(blocks + 20), 0l);
+        Assert.assertEquals(file.getLong(blocks + 4) + file.getInt(blocks + 12), footer - 8);
+    }
+
+    private void assertSchema(ByteBuffer file, int schema) {
+        int fields = getTable(file, schema, 1);
+        Assert.assertEquals(file.getInt(fields), 3);
+        for (int i = 0; i < 3; i++) {
+            int field = fields + 4 + i * 4 + file.getInt(fields + 4 + i * 4);
+            int name = getTable(file, field, 0);
+            byte[] bytes = new byte[file.getInt(name)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = file.get(name + 4 + j);
+            }
+            Assert.assertEquals(new String(bytes), TopologyExporter.EDGE_COLUMNS[i]);
+            Assert.assertEquals(file.get(getField(file, field, 1)), (byte) 0);
+            int type = getTable(file, field, 3);
+            if (i < 2) {
+                Assert.assertEquals(file.get(getField(file, field, 2)), TopologyExporter.ARROW_TYPE_INT);
+                Assert.assertEquals(file.getInt(getField(file, type, 0)), 32);
+                Assert.assertEquals(file.get(getField(file, type, 1)), (byte) 1);
+            } else {
+                Assert.assertEquals(file.get(getField(file, field, 2)), TopologyExporter.ARROW_TYPE_FLOATING_POINT);
+                Assert.assertEquals(file.getShort(getField(file, type, 0)), TopologyExporter.ARROW_PRECISION_DOUBLE);
+            }
+        }
+    }
+
+    private int getField(ByteBuffer buffer, int table, int slot) {
+        int vtable = table - buffer.getInt(table);
+        Assert.assertTrue(4 + slot * 2 < buffer.getShort(vtable));
+        int offset = buffer.getShort(vtable + 4 + slot * 2);
+        Assert.assertTrue(offset > 0);
+        return table + offset;
+    }
+
+    private int getTable(ByteBuffer buffer, int table, int slot) {
+        int field = getField(buffer, table, slot);
+        return field + buffer.getInt(field);
+    }
+
+    private ByteBuffer writeArrow(TopologyExporter exporter) throws IOException {
+        File file = File.createTempFile("topology", ".arrow");
+        file.deleteOnExit();
+        try {
+            exporter.writeArrow(file);
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                byte[] bytes = new byte[(int) raf.length()];
+                raf.readFully(bytes);
+                return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            } finally {
+                raf.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private int[] getRow(IntBuffer offsets, IntBuffer indices, int row) {
+        int[] res = new int[offsets.get(row + 1) - offsets.get(row)];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = indices.get(offsets.get(row) + i);
+        }
+        Arrays.sort(res);
+        return res;
+    }
+
+    private GraphStore generateGraphStore() {
+        GraphStore graphStore = new GraphStore();
+        NodeImpl[] nodes = GraphGenerator.generateNodeList(4);
+        graphStore.addAllNodes(Arrays.asList(nodes));
+        graphStore.addEdge(new EdgeImpl("0", nodes[0], nodes[1], 0, 1.0, true));
+        graphStore.addEdge(new EdgeImpl("1", nodes[1], nodes[2], 0, 2.0, true));
+        graphStore.addEdge(new EdgeImpl("2", nodes[2], nodes[0], 0, 3.0, true));
+        graphStore.addEdge(new EdgeImpl("3", nodes[3], nodes[3], 0, 4.0, true));
+        return graphStore;
+    }
+}